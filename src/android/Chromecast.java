@@ -1,9 +1,8 @@
 package acidhax.cordova.chromecast;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Type;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.CallbackContext;
@@ -29,50 +28,87 @@ public final class Chromecast extends CordovaPlugin {
     private ChromecastConnection.ScanCallback clientScan;
     /** Holds the reference to the current client initiated scan callback. */
     private CallbackContext scanCallback;
-    /** Client's event listener callback. */
-    private CallbackContext eventCallback;
+    /** Turns the routes of the current client initiated scan into diffs. */
+    private ChromecastRouteTracker routeTracker;
+    /** Delivers the events to the client's event listener callback. */
+    private ChromecastEventPipeline events;
+    /** Runs the Cast SDK calls on the main thread, and the rest in the background. */
+    private ChromecastExecutor executor;
+    /** Records a timeline of the plugin's activity. */
+    private ChromecastTracer tracer;
+    /** Latency of the commands sent to the receiver. */
+    private final ChromecastMetrics metrics = new ChromecastMetrics();
     /** In the case that chromecast can't be used. **/
     private String noChromecastError;
+    /** Action name to handler, so execute doesn't have to reflect on every call. */
+    private final Map<String, Action> actions = new HashMap<>();
 
     @Override
     protected void pluginInitialize() {
         super.pluginInitialize();
+        registerActions();
+        tracer = new ChromecastTracer(preferences.getInteger("ChromecastTraceBuffer", 0));
+        events = new ChromecastEventPipeline(preferences.getInteger("ChromecastEventWindow", 16),
+                preferences.getBoolean("ChromecastMediaDeltas", true), tracer);
 
         try {
-            this.connection = new ChromecastConnection(cordova.getActivity(), new ChromecastConnection.Listener() {
+            executor = new ChromecastExecutor(preferences.getBoolean("ChromecastTrace", false), tracer);
+            this.connection = new ChromecastConnection(cordova.getActivity(), executor, new ChromecastConnection.Listener() {
                 @Override
-                public void onSessionRejoin(JSONObject jsonSession) {
-                    sendEvent("SESSION_LISTENER", new JSONArray().put(jsonSession));
+                public void onSessionRejoin(JSONObject jsonSession, boolean provisional) {
+                    sendEvent("SESSION_LISTENER", new JSONArray().put(jsonSession).put(provisional));
                 }
                 @Override
-                public void onSessionUpdate(JSONObject jsonSession) {
-                    sendEvent("SESSION_UPDATE", new JSONArray().put(jsonSession));
+                public void onSessionUpdate(final SessionSnapshot snapshot) {
+                    events.sendLatest("SESSION_UPDATE", snapshot, new ChromecastEventPipeline.Args() {
+                        @Override
+                        public void write(ChromecastJsonWriter out) {
+                            out.beginArray();
+                            ChromecastSerializer.writeSessionObject(out, snapshot);
+                            out.endArray();
+                        }
+                    });
                 }
                 @Override
                 public void onSessionEnd(JSONObject jsonSession) {
-                    onSessionUpdate(jsonSession);
+                    sendEvent("SESSION_UPDATE", new JSONArray().put(jsonSession));
                 }
                 @Override
                 public void onReceiverAvailableUpdate(boolean available) {
                     sendEvent("RECEIVER_LISTENER", new JSONArray().put(available));
                 }
                 @Override
-                public void onMediaLoaded(JSONObject jsonMedia) {
-                    sendEvent("MEDIA_LOAD", new JSONArray().put(jsonMedia));
+                public void onMediaLoaded(final MediaSnapshot snapshot) {
+                    events.send("MEDIA_LOAD", new ChromecastEventPipeline.Args() {
+                        @Override
+                        public void write(ChromecastJsonWriter out) {
+                            out.beginArray();
+                            if (snapshot != null) {
+                                ChromecastSerializer.writeMediaObject(out, snapshot);
+                            } else {
+                                out.nullValue();
+                            }
+                            out.endArray();
+                        }
+                    });
                 }
                 @Override
-                public void onMediaUpdate(JSONObject jsonMedia) {
-                    JSONArray out = new JSONArray();
-                    if (jsonMedia != null) {
-                        out.put(jsonMedia);
-                    }
-                    sendEvent("MEDIA_UPDATE", out);
+                public void onMediaUpdate(MediaSnapshot snapshot) {
+                    // The snapshot was captured on the main thread, the JSON is rendered on the event thread.
+                    // Don't let a newer update hide the end of a media.
+                    boolean ended = snapshot == null || ChromecastUtilities.getMediaIdleReason(snapshot.getIdleReason()) != null;
+                    events.sendMedia(snapshot, !ended);
+                }
+                @Override
+                public void onQueueLoadProgress(JSONObject progress) {
+                    sendEvent("QUEUE_LOAD_PROGRESS", new JSONArray().put(progress));
                 }
                 @Override
                 public void onMessageReceived(CastDevice device, String namespace, String message) {
                     sendEvent("RECEIVER_MESSAGE", new JSONArray().put(namespace).put(message));
                 }
             });
+            connection.setRouteCacheTtl(preferences.getInteger("ChromecastRouteCacheTtl", ChromecastConnection.DEFAULT_ROUTE_CACHE_TTL));
             this.media = connection.getChromecastSession();
         } catch (RuntimeException e) {
             noChromecastError = "Could not initialize chromecast: " + e.getMessage();
@@ -80,70 +116,317 @@ public final class Chromecast extends CordovaPlugin {
         }
     }
 
+    @Override
+    public void onPause(boolean multitasking) {
+        super.onPause(multitasking);
+        if (connection != null) {
+            // Keep the latest media for the next app start
+            connection.saveSession();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (events != null) {
+            events.shutdown();
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext cbContext) throws JSONException {
         if (noChromecastError != null) {
             cbContext.error(ChromecastUtilities.createError("api_not_initialized", noChromecastError));
             return true;
         }
+        Action handler = actions.get(action);
+        if (handler == null) {
+            return false;
+        }
+        CallbackContext callback = cbContext;
+        if (ChromecastMetrics.RECEIVER_COMMANDS.contains(action) && media != null) {
+            callback = metrics.track(action, media.getReceiverModel(), cbContext, webView);
+        }
+        callback = tracer.trace(action, callback, webView);
         try {
-            Method[] list = this.getClass().getMethods();
-            Method methodToExecute = null;
-            for (Method method : list) {
-                if (method.getName().equals(action)) {
-                    Type[] types = method.getGenericParameterTypes();
-                    // +1 is the cbContext
-                    if (args.length() + 1 == types.length) {
-                        boolean isValid = true;
-                        for (int i = 0; i < args.length(); i++) {
-                            // Handle null/undefined arguments
-                            if (JSONObject.NULL.equals(args.get(i))) {
-                                continue;
-                            }
-                            Class arg = args.get(i).getClass();
-                            if (types[i] != arg) {
-                                isValid = false;
-                                break;
-                            }
-                        }
-                        if (isValid) {
-                            methodToExecute = method;
-                            break;
-                        }
-                    }
+            return handler.run(args, callback);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Fills the action dispatch table.
+     * Each handler checks the argument types and returns false when they don't
+     * match any signature of the action (same as an unknown action).
+     */
+    private void registerActions() {
+        actions.put("setup", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args) && setup(cb);
+            }
+        });
+        actions.put("initialize", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                if (matches(args, String.class, String.class, String.class)) {
+                    return initialize(arg(args, 0, String.class), arg(args, 1, String.class), arg(args, 2, String.class), null, null, cb);
                 }
+                if (matches(args, String.class, String.class, String.class, JSONObject.class)) {
+                    return initialize(arg(args, 0, String.class), arg(args, 1, String.class), arg(args, 2, String.class),
+                            arg(args, 3, JSONObject.class), null, cb);
+                }
+                return matches(args, String.class, String.class, String.class, JSONObject.class, JSONObject.class)
+                        && initialize(arg(args, 0, String.class), arg(args, 1, String.class), arg(args, 2, String.class),
+                        arg(args, 3, JSONObject.class), arg(args, 4, JSONObject.class), cb);
             }
-            if (methodToExecute != null) {
-                Type[] types = methodToExecute.getGenericParameterTypes();
-                Object[] variableArgs = new Object[types.length];
-                for (int i = 0; i < args.length(); i++) {
-                    variableArgs[i] = args.get(i);
-                    // Translate null JSONObject to null
-                    if (JSONObject.NULL.equals(variableArgs[i])) {
-                        variableArgs[i] = null;
-                    }
+        });
+        actions.put("requestSession", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args) && requestSession(cb);
+            }
+        });
+        actions.put("selectRoute", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, String.class) && selectRoute(arg(args, 0, String.class), cb);
+            }
+        });
+        actions.put("setReceiverVolumeLevel", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                if (matches(args, Integer.class)) {
+                    return setReceiverVolumeLevel(arg(args, 0, Integer.class), cb);
                 }
-                variableArgs[variableArgs.length - 1] = cbContext;
-                Class<?> r = methodToExecute.getReturnType();
-                if (r == boolean.class) {
-                    return (Boolean) methodToExecute.invoke(this, variableArgs);
-                } else {
-                    methodToExecute.invoke(this, variableArgs);
-                    return true;
+                return matches(args, Double.class) && setReceiverVolumeLevel(arg(args, 0, Double.class), cb);
+            }
+        });
+        actions.put("setReceiverMuted", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, Boolean.class) && setReceiverMuted(arg(args, 0, Boolean.class), cb);
+            }
+        });
+        actions.put("sendMessage", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, String.class, String.class)
+                        && sendMessage(arg(args, 0, String.class), arg(args, 1, String.class), cb);
+            }
+        });
+        actions.put("addMessageListener", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, String.class) && addMessageListener(arg(args, 0, String.class), cb);
+            }
+        });
+        actions.put("loadMedia", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, String.class, JSONObject.class, String.class, Integer.class, String.class,
+                        Boolean.class, Integer.class, JSONObject.class, JSONObject.class)
+                        && loadMedia(arg(args, 0, String.class), arg(args, 1, JSONObject.class),
+                                arg(args, 2, String.class), arg(args, 3, Integer.class), arg(args, 4, String.class),
+                                arg(args, 5, Boolean.class), arg(args, 6, Integer.class),
+                                arg(args, 7, JSONObject.class), arg(args, 8, JSONObject.class), cb);
+            }
+        });
+        actions.put("mediaPlay", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args) && mediaPlay(cb);
+            }
+        });
+        actions.put("mediaPause", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args) && mediaPause(cb);
+            }
+        });
+        actions.put("mediaSeek", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, Integer.class, String.class)
+                        && mediaSeek(arg(args, 0, Integer.class), arg(args, 1, String.class), cb);
+            }
+        });
+        actions.put("setMediaVolume", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                if (matches(args, Integer.class, Boolean.class)) {
+                    return setMediaVolume(arg(args, 0, Integer.class), arg(args, 1, Boolean.class), cb);
                 }
-            } else {
-                return false;
+                return matches(args, Double.class, Boolean.class)
+                        && setMediaVolume(arg(args, 0, Double.class), arg(args, 1, Boolean.class), cb);
             }
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-            return false;
-        } catch (IllegalArgumentException e) {
-            e.printStackTrace();
-            return false;
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
+        });
+        actions.put("mediaStop", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args) && mediaStop(cb);
+            }
+        });
+        actions.put("mediaEditTracksInfo", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, JSONArray.class, JSONObject.class)
+                        && mediaEditTracksInfo(arg(args, 0, JSONArray.class), arg(args, 1, JSONObject.class), cb);
+            }
+        });
+        actions.put("queueLoad", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, JSONObject.class) && queueLoad(arg(args, 0, JSONObject.class), cb);
+            }
+        });
+        actions.put("queueJumpToItem", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                if (matches(args, Integer.class)) {
+                    return queueJumpToItem(arg(args, 0, Integer.class), cb);
+                }
+                return matches(args, Double.class) && queueJumpToItem(arg(args, 0, Double.class), cb);
+            }
+        });
+        actions.put("queueInsertItems", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, JSONObject.class) && queueInsertItems(arg(args, 0, JSONObject.class), cb);
+            }
+        });
+        actions.put("queueRemoveItems", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, JSONObject.class) && queueRemoveItems(arg(args, 0, JSONObject.class), cb);
+            }
+        });
+        actions.put("queueReorderItems", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, JSONObject.class) && queueReorderItems(arg(args, 0, JSONObject.class), cb);
+            }
+        });
+        actions.put("queueUpdateItems", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, JSONObject.class) && queueUpdateItems(arg(args, 0, JSONObject.class), cb);
+            }
+        });
+        actions.put("queueGetItems", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, Integer.class, String.class, Integer.class)
+                        && queueGetItems(arg(args, 0, Integer.class), arg(args, 1, String.class), arg(args, 2, Integer.class), cb);
+            }
+        });
+        actions.put("sessionStop", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args) && sessionStop(cb);
+            }
+        });
+        actions.put("sessionLeave", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args) && sessionLeave(cb);
+            }
+        });
+        actions.put("startRouteScan", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                if (matches(args)) {
+                    return startRouteScan(null, cb);
+                }
+                return matches(args, Integer.class) && startRouteScan(arg(args, 0, Integer.class), cb);
+            }
+        });
+        actions.put("stopRouteScan", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args) && stopRouteScan(cb);
+            }
+        });
+        actions.put("mediaResync", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args) && mediaResync(cb);
+            }
+        });
+        actions.put("getDiagnostics", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args) && getDiagnostics(cb);
+            }
+        });
+        actions.put("getMetrics", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args) && getMetrics(cb);
+            }
+        });
+        actions.put("startTrace", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args, Integer.class) && startTrace(arg(args, 0, Integer.class), cb);
+            }
+        });
+        actions.put("getTrace", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                return matches(args) && getTrace(cb);
+            }
+        });
+        actions.put("benchmarkConverters", new Action() {
+            @Override
+            public boolean run(JSONArray args, CallbackContext cb) {
+                if (matches(args)) {
+                    return benchmarkConverters(null, cb);
+                }
+                return matches(args, Integer.class) && benchmarkConverters(arg(args, 0, Integer.class), cb);
+            }
+        });
+    }
+
+    /**
+     * Checks whether the arguments match a signature.
+     * Null/undefined arguments match any type.
+     * @param args the arguments sent from the javascript side
+     * @param types the expected type of each argument
+     * @return true if the arguments match
+     */
+    static boolean matches(JSONArray args, Class<?>... types) {
+        if (args.length() != types.length) {
             return false;
         }
+        for (int i = 0; i < types.length; i++) {
+            Object arg = args.opt(i);
+            if (!JSONObject.NULL.equals(arg) && arg.getClass() != types[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets an argument that has already been checked with matches.
+     * @param args the arguments sent from the javascript side
+     * @param index the index of the argument
+     * @param type the type of the argument
+     * @param <T> the type of the argument
+     * @return the argument, or null for null/undefined arguments
+     */
+    static <T> T arg(JSONArray args, int index, Class<T> type) {
+        Object arg = args.opt(index);
+        if (JSONObject.NULL.equals(arg)) {
+            return null;
+        }
+        return type.cast(arg);
     }
 
     /**
@@ -153,7 +436,7 @@ public final class Chromecast extends CordovaPlugin {
      * @return true for cordova
      */
     public boolean setup(CallbackContext callbackContext) {
-        this.eventCallback = callbackContext;
+        events.setCallback(callbackContext);
         // Ensure any existing scan is stopped
         connection.stopRouteScan(clientScan, new Runnable() {
             @Override
@@ -174,10 +457,22 @@ public final class Chromecast extends CordovaPlugin {
      * @param appId               The appId we're going to use for ALL session requests
      * @param autoJoinPolicy      tab_and_origin_scoped | origin_scoped | page_scoped
      * @param defaultActionPolicy create_session | cast_this_tab
+     * @param queueWindow         {before, after}: number of queue items around the current one
+     *                            to send with the media, null for the default (1 each)
+     * @param joinRetry           how selectRoute retries to join, see ChromecastRetryPolicy,
+     *                            null to keep the current policy
      * @param callbackContext called with .success or .error depending on the result
      * @return true for cordova
      */
-    public boolean initialize(final String appId, String autoJoinPolicy, String defaultActionPolicy, final CallbackContext callbackContext) {
+    public boolean initialize(final String appId, String autoJoinPolicy, String defaultActionPolicy, JSONObject queueWindow,
+                              JSONObject joinRetry, final CallbackContext callbackContext) {
+        if (queueWindow != null) {
+            media.setQueueWindow(queueWindow.optInt("before", ChromecastQueueWindow.DEFAULT_BEFORE),
+                    queueWindow.optInt("after", ChromecastQueueWindow.DEFAULT_AFTER));
+        }
+        if (joinRetry != null) {
+            connection.setJoinRetryPolicy(new ChromecastRetryPolicy(joinRetry));
+        }
         connection.initialize(appId, callbackContext);
         return true;
     }
@@ -433,6 +728,67 @@ public final class Chromecast extends CordovaPlugin {
         }
     }
 
+    /**
+     * Inserts items into the queue, in a single request.
+     * @param request chrome.cast.media.QueueInsertItemsRequest
+     * @param callbackContext called with .success or .error depending on the result
+     * @return true for cordova
+     */
+    public boolean queueInsertItems(JSONObject request, final CallbackContext callbackContext) {
+        this.media.queueInsertItems(request, callbackContext);
+        return true;
+    }
+
+    /**
+     * Removes items from the queue, in a single request.
+     * @param request chrome.cast.media.QueueRemoveItemsRequest
+     * @param callbackContext called with .success or .error depending on the result
+     * @return true for cordova
+     */
+    public boolean queueRemoveItems(JSONObject request, final CallbackContext callbackContext) {
+        this.media.queueRemoveItems(request, callbackContext);
+        return true;
+    }
+
+    /**
+     * Moves items of the queue, in a single request.
+     * @param request chrome.cast.media.QueueReorderItemsRequest
+     * @param callbackContext called with .success or .error depending on the result
+     * @return true for cordova
+     */
+    public boolean queueReorderItems(JSONObject request, final CallbackContext callbackContext) {
+        this.media.queueReorderItems(request, callbackContext);
+        return true;
+    }
+
+    /**
+     * Updates items of the queue, in a single request.
+     * @param request chrome.cast.media.QueueUpdateItemsRequest
+     * @param callbackContext called with .success or .error depending on the result
+     * @return true for cordova
+     */
+    public boolean queueUpdateItems(JSONObject request, final CallbackContext callbackContext) {
+        this.media.queueUpdateItems(request, callbackContext);
+        return true;
+    }
+
+    /**
+     * Gets a page of the queue items.
+     * @param offset index of the first item, ignored if cursor is given
+     * @param cursor the nextCursor of a previous page, or null
+     * @param limit max number of items (at most 100)
+     * @param callbackContext called with {items, offset, totalItems, nextCursor} or error
+     * @return true for cordova
+     */
+    public boolean queueGetItems(Integer offset, String cursor, Integer limit, final CallbackContext callbackContext) {
+        if (cursor == null && offset == null || limit == null) {
+            callbackContext.error(ChromecastUtilities.createError("invalid_parameter", "An offset or cursor, and a limit are required."));
+            return true;
+        }
+        this.media.queueGetItems(offset != null ? offset : 0, cursor, limit, callbackContext);
+        return true;
+    }
+
     /**
      * Stops the session.
      * @param callbackContext called with .success or .error depending on the result
@@ -454,17 +810,35 @@ public final class Chromecast extends CordovaPlugin {
     }
 
     /**
-     * Will actively scan for routes and send a json array to the client.
+     * Will actively scan for routes and send the changes to the client
+     * as {added: [route], changed: [route], removed: [routeId]} (see ChromecastRouteTracker).
      * It is super important that client calls "stopRouteScan", otherwise the
      * battery could drain quickly.
+     * @param quietPeriod how long (ms) the routes must stay unchanged before a change is sent, null for the default
      * @param callbackContext called with .success or .error depending on the result
      * @return true for cordova
      */
-    public boolean startRouteScan(CallbackContext callbackContext) {
+    public boolean startRouteScan(Integer quietPeriod, CallbackContext callbackContext) {
         if (scanCallback != null) {
             scanCallback.error(ChromecastUtilities.createError("cancel", "Started a new route scan before stopping previous one."));
         }
+        if (routeTracker != null) {
+            routeTracker.stop();
+        }
         scanCallback = callbackContext;
+        final ChromecastRouteTracker tracker = new ChromecastRouteTracker(executor,
+                quietPeriod != null ? quietPeriod : ChromecastRouteTracker.DEFAULT_QUIET_PERIOD,
+                new ChromecastRouteTracker.Listener() {
+                    @Override
+                    public void onRoutesDiff(JSONObject diff) {
+                        if (scanCallback == callbackContext) {
+                            PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, diff);
+                            pluginResult.setKeepCallback(true);
+                            callbackContext.sendPluginResult(pluginResult);
+                        }
+                    }
+                });
+        routeTracker = tracker;
         Runnable startScan = new Runnable() {
             @Override
             public void run() {
@@ -472,10 +846,7 @@ public final class Chromecast extends CordovaPlugin {
                     @Override
                     void onRouteUpdate(List<RouteInfo> routes) {
                         if (scanCallback != null) {
-                            PluginResult pluginResult = new PluginResult(PluginResult.Status.OK,
-                                    ChromecastUtilities.createRoutesArray(routes));
-                            pluginResult.setKeepCallback(true);
-                            scanCallback.sendPluginResult(pluginResult);
+                            tracker.update(routes);
                         } else {
                             // Try to get the scan to stop because we already ended the scanCallback
                             connection.stopRouteScan(clientScan, null);
@@ -504,6 +875,10 @@ public final class Chromecast extends CordovaPlugin {
         connection.stopRouteScan(clientScan, new Runnable() {
             @Override
             public void run() {
+                if (routeTracker != null) {
+                    routeTracker.stop();
+                    routeTracker = null;
+                }
                 if (scanCallback != null) {
                     scanCallback.error(ChromecastUtilities.createError("cancel", "Scan stopped."));
                     scanCallback = null;
@@ -513,17 +888,121 @@ public final class Chromecast extends CordovaPlugin {
         });
         return true;
     }
+
+    /**
+     * Re-sends the current media object in full.
+     * Called by the javascript side when it misses a media delta.
+     * @param callbackContext called with .success or .error depending on the result
+     * @return true for cordova
+     */
+    public boolean mediaResync(CallbackContext callbackContext) {
+        events.resyncMedia();
+        callbackContext.success();
+        return true;
+    }
+
+    /**
+     * Returns counters that describe the plugin's activity.
+     * @param callbackContext called with .success or .error depending on the result
+     * @return true for cordova
+     */
+    public boolean getDiagnostics(CallbackContext callbackContext) {
+        JSONObject out = new JSONObject();
+        try {
+            out.put("events", events.getStats());
+            if (executor != null) {
+                out.put("mainThread", executor.getStats());
+            }
+            if (connection != null) {
+                out.put("routeScan", connection.getScanStats());
+                out.put("join", connection.getJoinStats());
+                out.put("rejoin", connection.getRejoinStats());
+                out.put("sessionListeners", connection.getSessionListenerStats());
+            }
+        } catch (JSONException e) {
+            LOG.w(TAG, "Incomplete diagnostics, " + e.getMessage());
+        }
+        callbackContext.success(out);
+        return true;
+    }
+
+    /**
+     * Returns the latency of the commands sent to the receiver, per command and receiver model.
+     * @param callbackContext called with .success or .error depending on the result
+     * @return true for cordova
+     */
+    public boolean getMetrics(CallbackContext callbackContext) {
+        callbackContext.success(metrics.getSnapshot());
+        return true;
+    }
+
+    /**
+     * Starts recording the plugin's activity in a new buffer, or stops recording.
+     * @param bufferSize number of events to keep, 0 to stop recording
+     * @param callbackContext called with .success or .error depending on the result
+     * @return true for cordova
+     */
+    public boolean startTrace(Integer bufferSize, CallbackContext callbackContext) {
+        if (bufferSize < 0) {
+            callbackContext.error(ChromecastUtilities.createError("invalid_parameter", "bufferSize must not be negative."));
+            return true;
+        }
+        tracer.setCapacity(bufferSize);
+        callbackContext.success();
+        return true;
+    }
+
+    /**
+     * Returns the recorded activity in the Chrome trace-event format (see ChromecastTracer).
+     * @param callbackContext called with .success or .error depending on the result
+     * @return true for cordova
+     */
+    public boolean getTrace(CallbackContext callbackContext) {
+        callbackContext.success(tracer.export());
+        return true;
+    }
+
+    /**
+     * Measures the converters between the javascript and Cast SDK objects (see ChromecastBenchmark).
+     * Runs on a background thread, it takes a few seconds.
+     * @param iterations number of measured iterations of each converter, null for the default
+     * @param callbackContext called with .success or .error depending on the result
+     * @return true for cordova
+     */
+    public boolean benchmarkConverters(final Integer iterations, final CallbackContext callbackContext) {
+        final int count = iterations != null && iterations > 0 ? iterations : ChromecastBenchmark.DEFAULT_ITERATIONS;
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callbackContext.success(ChromecastBenchmark.run(count));
+                } catch (JSONException e) {
+                    callbackContext.error(ChromecastUtilities.createError("invalid_parameter", e.getMessage()));
+                }
+            }
+        });
+        return true;
+    }
+
     /**
      * This triggers an event on the JS-side.
      * @param eventName - The name of the JS event to trigger
      * @param args - The arguments to pass the JS event
      */
     private void sendEvent(String eventName, JSONArray args) {
-        if (eventCallback == null) {
-            return;
-        }
-        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, new JSONArray().put(eventName).put(args));
-        pluginResult.setKeepCallback(true);
-        eventCallback.sendPluginResult(pluginResult);
+        events.send(eventName, args);
+    }
+
+    /**
+     * A plugin action that can be called from the javascript side.
+     */
+    interface Action {
+        /**
+         * Runs the action.
+         * @param args the arguments sent from the javascript side
+         * @param cbContext called with .success or .error depending on the result
+         * @return true for cordova, false if the arguments don't match the action
+         */
+        boolean run(JSONArray args, CallbackContext cbContext);
     }
 }
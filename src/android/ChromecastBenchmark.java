@@ -0,0 +1,901 @@
+package acidhax.cordova.chromecast;
+
+import android.graphics.Color;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Debug;
+
+import com.google.android.gms.cast.MediaInfo;
+import com.google.android.gms.cast.MediaMetadata;
+import com.google.android.gms.cast.MediaQueueItem;
+import com.google.android.gms.cast.MediaTrack;
+import com.google.android.gms.cast.TextTrackStyle;
+import com.google.android.gms.common.images.WebImage;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.LOG;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the converters between the javascript objects and the Cast SDK objects
+ * on the device the plugin runs on, so that changes to them can be compared
+ * and regressions caught.
+ *
+ * The fixture is a TV episode with 20 metadata keys and 10 text tracks, in a
+ * 3 item queue window.  Each converter is warmed up, then run the requested number
+ * of times, and reported as ns/op, ops/s and bytes allocated/op.
+ * The allocations are read from the runtime's counter (Android 6+), which counts
+ * the whole process: run it while the app is otherwise idle.
+ *
+ * createMediaQueueItem is also measured on a sparse item (the fields the javascript
+ * side sends by default), and both are compared with the Legacy converters.
+ *
+ * The decoding of large queue load requests (DECODE_SIZES items) is reported
+ * separately as wall-clock time on one core and on all of them.
+ *
+ * The dispatch of bridge calls is measured with the action table of Chromecast.execute
+ * (dispatchTable) and with the getMethods() scan and Method.invoke it replaced
+ * (dispatchReflective), on DispatchTarget whose actions do nothing, cycling through
+ * mediaPlay, setMediaVolume and mediaSeek.
+ *
+ * ChromecastConverterBenchmark (tests/jvm) runs the same fixtures with JMH on a desktop JVM.
+ *
+ * Must not be called on the main thread.
+ */
+final class ChromecastBenchmark {
+    /** Tag for logging. */
+    private static final String TAG = "Chromecast";
+
+    /** Default number of measured iterations. */
+    static final int DEFAULT_ITERATIONS = 2000;
+    /** Number of queue items in the fixture. */
+    private static final int QUEUE_SIZE = 3;
+    /** Number of text tracks of each fixture item. */
+    private static final int TRACK_COUNT = 10;
+    /** Number of items of the queue decoding benchmarks. */
+    private static final int[] DECODE_SIZES = {1000, 10000};
+    /** Number of measured decodings of the queue decoding benchmarks, for each size. */
+    private static final int[] DECODE_ROUNDS = {10, 3};
+
+    private ChromecastBenchmark() {
+        //not called
+    }
+
+    /**
+     * Runs all the benchmarks.
+     * @param iterations number of measured iterations of each converter
+     * @return {iterations, results: {converter or dispatcher: {nsPerOp, opsPerSec, bytesPerOp}},
+     *         decodeQueue: {parallelism, items: {size: {serialMs, parallelMs, speedup}}}},
+     *         bytesPerOp is -1 if the allocations can't be counted
+     * @throws JSONException if the fixture could not be built
+     */
+    static JSONObject run(int iterations) throws JSONException {
+        final JSONObject queueItem = createFixture(1);
+        final JSONObject sparseQueueItem = createSparseFixture(1);
+        final JSONObject mediaInfo = queueItem.getJSONObject("media");
+        final JSONObject textTrackStyle = mediaInfo.getJSONObject("textTrackStyle");
+        final MediaQueueItem[] items = new MediaQueueItem[QUEUE_SIZE];
+        for (int i = 0; i < QUEUE_SIZE; i++) {
+            items[i] = withTracks(ChromecastUtilities.createMediaQueueItem(createFixture(i + 1)));
+        }
+        final MediaQueueItem item = items[0];
+        final ChromecastJsonWriter writer = new ChromecastJsonWriter();
+
+        JSONObject results = new JSONObject();
+        results.put("createMediaQueueItem", measure(iterations, new Op() {
+            @Override
+            public Object run() throws JSONException {
+                return ChromecastUtilities.createMediaQueueItem(queueItem);
+            }
+        }));
+        results.put("legacyCreateMediaQueueItem", measure(iterations, new Op() {
+            @Override
+            public Object run() throws JSONException {
+                return Legacy.createMediaQueueItem(queueItem);
+            }
+        }));
+        results.put("createMediaQueueItemSparse", measure(iterations, new Op() {
+            @Override
+            public Object run() throws JSONException {
+                return ChromecastUtilities.createMediaQueueItem(sparseQueueItem);
+            }
+        }));
+        results.put("legacyCreateMediaQueueItemSparse", measure(iterations, new Op() {
+            @Override
+            public Object run() throws JSONException {
+                return Legacy.createMediaQueueItem(sparseQueueItem);
+            }
+        }));
+        results.put("createMediaInfo", measure(iterations, new Op() {
+            @Override
+            public Object run() {
+                return ChromecastUtilities.createMediaInfo(mediaInfo);
+            }
+        }));
+        results.put("parseTextTrackStyle", measure(iterations, new Op() {
+            @Override
+            public Object run() {
+                return ChromecastUtilities.parseTextTrackStyle(textTrackStyle);
+            }
+        }));
+        results.put("createQueueItem", measure(iterations, new Op() {
+            @Override
+            public Object run() {
+                return ChromecastUtilities.createQueueItem(item, 0);
+            }
+        }));
+        results.put("createQueueItems", measure(iterations, new Op() {
+            @Override
+            public Object run() {
+                JSONArray out = new JSONArray();
+                for (int i = 0; i < items.length; i++) {
+                    out.put(ChromecastUtilities.createQueueItem(items[i], i));
+                }
+                return out;
+            }
+        }));
+        // The media object can't be built without a receiver (MediaStatus),
+        // its bulk is the media info written like this
+        results.put("writeMediaInfoObject", measure(iterations, new Op() {
+            @Override
+            public Object run() {
+                writer.reset();
+                ChromecastSerializer.writeMediaInfoObject(writer, MediaSnapshot.Info.capture(item.getMedia()));
+                return writer;
+            }
+        }));
+        results.put("writeMetadataObject", measure(iterations, new Op() {
+            @Override
+            public Object run() {
+                writer.reset();
+                ChromecastSerializer.writeMetadataObject(writer,
+                        MediaSnapshot.Metadata.capture(item.getMedia().getMetadata()));
+                return writer;
+            }
+        }));
+
+        final DispatchTarget target = new DispatchTarget();
+        final Map<String, Chromecast.Action> actions = target.createActions();
+        final String[] dispatchActions = {"mediaPlay", "setMediaVolume", "mediaSeek"};
+        final JSONArray[] dispatchArgs = {
+            new JSONArray(),
+            new JSONArray().put(0.5).put(false),
+            new JSONArray().put(10).put("PLAYBACK_START"),
+        };
+        final CallbackContext callback = new CallbackContext("benchmark", null);
+        results.put("dispatchTable", measure(iterations, new Op() {
+            private int call;
+            @Override
+            public Object run() {
+                int i = call++ % dispatchActions.length;
+                Chromecast.Action handler = actions.get(dispatchActions[i]);
+                return handler != null && handler.run(dispatchArgs[i], callback);
+            }
+        }));
+        results.put("dispatchReflective", measure(iterations, new Op() {
+            private int call;
+            @Override
+            public Object run() throws JSONException {
+                int i = call++ % dispatchActions.length;
+                return Legacy.execute(target, dispatchActions[i], dispatchArgs[i], callback);
+            }
+        }));
+
+        JSONObject out = new JSONObject();
+        out.put("iterations", iterations);
+        out.put("results", results);
+        out.put("decodeQueue", measureDecode());
+        return out;
+    }
+
+    /**
+     * Measures ChromecastQueueDecoder on one core and on all of them.
+     * @return {parallelism, items: {size: {serialMs, parallelMs, speedup}}}
+     * @throws JSONException if the fixture could not be built
+     */
+    private static JSONObject measureDecode() throws JSONException {
+        JSONObject sizes = new JSONObject();
+        for (int s = 0; s < DECODE_SIZES.length; s++) {
+            JSONArray items = new JSONArray();
+            for (int i = 0; i < DECODE_SIZES[s]; i++) {
+                items.put(createFixture(i + 1));
+            }
+            double serial = measureDecode(items, DECODE_ROUNDS[s], 1);
+            double parallel = measureDecode(items, DECODE_ROUNDS[s], ChromecastQueueDecoder.DEFAULT_PARALLELISM);
+
+            JSONObject result = new JSONObject();
+            result.put("serialMs", serial);
+            result.put("parallelMs", parallel);
+            result.put("speedup", parallel > 0 ? serial / parallel : 0);
+            sizes.put(String.valueOf(DECODE_SIZES[s]), result);
+        }
+        JSONObject out = new JSONObject();
+        out.put("parallelism", ChromecastQueueDecoder.DEFAULT_PARALLELISM);
+        out.put("items", sizes);
+        return out;
+    }
+
+    private static double measureDecode(JSONArray items, int rounds, int parallelism) throws JSONException {
+        // Warm up, this also starts the pool threads
+        ChromecastQueueDecoder.decode(items, 0, items.length(), false, parallelism);
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            ChromecastQueueDecoder.decode(items, 0, items.length(), false, parallelism);
+        }
+        return (System.nanoTime() - start) / rounds / 1000000.0;
+    }
+
+    private static JSONObject measure(int iterations, Op op) throws JSONException {
+        // Warm up so that the JIT has compiled the converter
+        int warmup = Math.max(100, iterations / 2);
+        for (int i = 0; i < warmup; i++) {
+            op.run();
+        }
+        long bytesBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            op.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytesAfter = getAllocatedBytes();
+
+        JSONObject out = new JSONObject();
+        out.put("nsPerOp", elapsed / iterations);
+        out.put("opsPerSec", elapsed > 0 ? iterations * 1000000000L / elapsed : 0);
+        out.put("bytesPerOp", bytesBefore < 0 || bytesAfter < 0 ? -1 : (bytesAfter - bytesBefore) / iterations);
+        return out;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the process so far.
+     * @return the number of bytes, or -1 if the runtime doesn't tell
+     */
+    private static long getAllocatedBytes() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return -1;
+        }
+        String value = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Creates a queue item as the javascript side sends it.
+     * @param episode the episode number
+     * @return the queue item
+     * @throws JSONException never
+     */
+    static JSONObject createFixture(int episode) throws JSONException {
+        JSONObject metadata = new JSONObject();
+        metadata.put("metadataType", 2);
+        metadata.put("type", 2);
+        metadata.put("images", new JSONArray()
+                .put(new JSONObject().put("url", "https://example.com/img/" + episode + "/primary.jpg"))
+                .put(new JSONObject().put("url", "https://example.com/img/" + episode + "/backdrop.jpg")));
+        metadata.put("title", "Episode " + episode + ": The \"Quoted\" One");
+        metadata.put("seriesTitle", "Some Series");
+        metadata.put("subtitle", "A subtitle with unicode \u00e9 \u2713");
+        metadata.put("season", 3);
+        metadata.put("episode", episode);
+        metadata.put("studio", "Studio");
+        metadata.put("width", 1920);
+        metadata.put("height", 1080);
+        metadata.put("broadcastDate", 1580688000000L);
+        metadata.put("releaseDate", 1580688000000L);
+        metadata.put("sectionDuration", 2400000L);
+        metadata.put("latitude", 45.5);
+        metadata.put("longitude", -73.25);
+        metadata.put("locationName", "Montreal");
+        for (int i = 0; i < 6; i++) {
+            metadata.put("custom" + i, "value " + i);
+        }
+
+        JSONObject textTrackStyle = new JSONObject();
+        textTrackStyle.put("backgroundColor", "#000000FF");
+        textTrackStyle.put("edgeColor", "#00000000");
+        textTrackStyle.put("foregroundColor", "#FFFFFFFF");
+
+        JSONObject media = new JSONObject();
+        media.put("contentId", "https://example.com/video/" + episode + ".m3u8");
+        media.put("contentType", "application/x-mpegURL");
+        media.put("customData", new JSONObject().put("serverId", "abc").put("itemId", episode));
+        media.put("duration", 2400);
+        media.put("streamType", "buffered");
+        media.put("metadata", metadata);
+        media.put("textTrackStyle", textTrackStyle);
+
+        JSONObject item = new JSONObject();
+        item.put("media", media);
+        item.put("activeTrackIds", new JSONArray().put(1));
+        item.put("autoplay", true);
+        item.put("preloadTime", 20);
+        item.put("startTime", 0);
+        return item;
+    }
+
+    /**
+     * Creates a queue item as the javascript side sends it by default:
+     * new chrome.cast.media.QueueItem(new chrome.cast.media.MediaInfo(contentId, contentType)).
+     * @param episode the episode number
+     * @return the queue item
+     * @throws JSONException never
+     */
+    static JSONObject createSparseFixture(int episode) throws JSONException {
+        JSONObject media = new JSONObject();
+        media.put("contentId", "https://example.com/video/" + episode + ".m3u8");
+        media.put("streamType", "BUFFERED");
+        media.put("contentType", "application/x-mpegURL");
+        media.put("customData", JSONObject.NULL);
+        media.put("duration", JSONObject.NULL);
+        media.put("metadata", JSONObject.NULL);
+
+        JSONObject item = new JSONObject();
+        item.put("itemId", JSONObject.NULL);
+        item.put("media", media);
+        item.put("autoplay", true);
+        item.put("startTime", 0);
+        item.put("playbackDuration", JSONObject.NULL);
+        item.put("preloadTime", 0);
+        item.put("customData", JSONObject.NULL);
+        item.put("activeTrackIds", JSONObject.NULL);
+        return item;
+    }
+
+    /**
+     * Adds the text tracks to a queue item (createMediaInfo doesn't read tracks).
+     * @param item the queue item
+     * @return a copy of the queue item with TRACK_COUNT text tracks
+     */
+    static MediaQueueItem withTracks(MediaQueueItem item) {
+        MediaInfo info = item.getMedia();
+        List<MediaTrack> tracks = new ArrayList<>();
+        for (int i = 0; i < TRACK_COUNT; i++) {
+            tracks.add(new MediaTrack.Builder(i + 1, MediaTrack.TYPE_TEXT)
+                    .setSubtype(MediaTrack.SUBTYPE_SUBTITLES)
+                    .setContentId(info.getContentId() + "." + i + ".vtt")
+                    .setContentType("text/vtt")
+                    .setName("Subtitle " + i)
+                    .setLanguage("en")
+                    .build());
+        }
+        MediaInfo withTracks = new MediaInfo.Builder(info.getContentId())
+                .setContentType(info.getContentType())
+                .setCustomData(info.getCustomData())
+                .setStreamType(info.getStreamType())
+                .setStreamDuration(info.getStreamDuration())
+                .setMetadata(info.getMetadata())
+                .setTextTrackStyle(info.getTextTrackStyle())
+                .setMediaTracks(tracks)
+                .build();
+        return new MediaQueueItem.Builder(withTracks)
+                .setActiveTrackIds(item.getActiveTrackIds())
+                .setAutoplay(item.getAutoplay())
+                .setPreloadTime(item.getPreloadTime())
+                .setStartTime(item.getStartTime())
+                .build();
+    }
+
+    /**
+     * A converter call to measure.
+     */
+    private interface Op {
+        /**
+         * Runs the converter once.
+         * @return the result, so that the call can't be optimized away
+         * @throws JSONException if the converter throws
+         */
+        Object run() throws JSONException;
+    }
+
+    /**
+     * The actions of Chromecast, doing nothing, to measure the dispatch alone.
+     * It is a CordovaPlugin with the same public methods as Chromecast, so that the
+     * reflective dispatch scans as many methods.
+     */
+    public static final class DispatchTarget extends CordovaPlugin {
+        /** Number of actions run. */
+        private int calls;
+
+        /**
+         * Builds the action table the way Chromecast.registerActions does, for the measured actions.
+         * @return action name to handler
+         */
+        Map<String, Chromecast.Action> createActions() {
+            Map<String, Chromecast.Action> actions = new HashMap<>();
+            actions.put("mediaPlay", new Chromecast.Action() {
+                @Override
+                public boolean run(JSONArray args, CallbackContext cb) {
+                    return Chromecast.matches(args) && mediaPlay(cb);
+                }
+            });
+            actions.put("setMediaVolume", new Chromecast.Action() {
+                @Override
+                public boolean run(JSONArray args, CallbackContext cb) {
+                    if (Chromecast.matches(args, Integer.class, Boolean.class)) {
+                        return setMediaVolume(Chromecast.arg(args, 0, Integer.class), Chromecast.arg(args, 1, Boolean.class), cb);
+                    }
+                    return Chromecast.matches(args, Double.class, Boolean.class)
+                            && setMediaVolume(Chromecast.arg(args, 0, Double.class), Chromecast.arg(args, 1, Boolean.class), cb);
+                }
+            });
+            actions.put("mediaSeek", new Chromecast.Action() {
+                @Override
+                public boolean run(JSONArray args, CallbackContext cb) {
+                    return Chromecast.matches(args, Integer.class, String.class)
+                            && mediaSeek(Chromecast.arg(args, 0, Integer.class), Chromecast.arg(args, 1, String.class), cb);
+                }
+            });
+            return actions;
+        }
+
+        private boolean call() {
+            calls++;
+            return true;
+        }
+
+        public boolean setup(CallbackContext cb) {
+            return call();
+        }
+
+        public boolean initialize(String appId, String autoJoinPolicy, String defaultActionPolicy, JSONObject queueWindow, JSONObject joinRetry, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean requestSession(CallbackContext cb) {
+            return call();
+        }
+
+        public boolean selectRoute(String routeId, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean setReceiverVolumeLevel(Integer level, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean setReceiverVolumeLevel(Double level, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean setReceiverMuted(Boolean muted, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean sendMessage(String namespace, String message, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean addMessageListener(String namespace, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean loadMedia(String contentId, JSONObject customData, String contentType, Integer duration, String streamType, Boolean autoPlay, Integer currentTime, JSONObject metadata, JSONObject textTrackStyle, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean mediaPlay(CallbackContext cb) {
+            return call();
+        }
+
+        public boolean mediaPause(CallbackContext cb) {
+            return call();
+        }
+
+        public boolean mediaSeek(Integer seekTime, String resumeState, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean setMediaVolume(Integer level, Boolean muted, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean setMediaVolume(Double level, Boolean muted, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean mediaStop(CallbackContext cb) {
+            return call();
+        }
+
+        public boolean mediaEditTracksInfo(JSONArray activeTrackIds, JSONObject textTrackStyle, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean queueLoad(JSONObject queueLoadRequest, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean queueJumpToItem(Integer itemId, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean queueJumpToItem(Double itemId, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean queueInsertItems(JSONObject request, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean queueRemoveItems(JSONObject request, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean queueReorderItems(JSONObject request, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean queueUpdateItems(JSONObject request, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean queueGetItems(Integer offset, String cursor, Integer limit, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean sessionStop(CallbackContext cb) {
+            return call();
+        }
+
+        public boolean sessionLeave(CallbackContext cb) {
+            return call();
+        }
+
+        public boolean startRouteScan(Integer quietPeriod, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean stopRouteScan(CallbackContext cb) {
+            return call();
+        }
+
+        public boolean mediaResync(CallbackContext cb) {
+            return call();
+        }
+
+        public boolean getDiagnostics(CallbackContext cb) {
+            return call();
+        }
+
+        public boolean getMetrics(CallbackContext cb) {
+            return call();
+        }
+
+        public boolean startTrace(Integer bufferSize, CallbackContext cb) {
+            return call();
+        }
+
+        public boolean getTrace(CallbackContext cb) {
+            return call();
+        }
+
+        public boolean benchmarkConverters(Integer iterations, CallbackContext cb) {
+            return call();
+        }
+    }
+
+    /**
+     * The converters as they were before ChromecastDecoder, reading each optional field
+     * with getX() in a try/catch, and the reflective dispatch of Chromecast.execute as it was
+     * before the action table, kept to compare them.  The empty catches are how the
+     * optional fields were read, they are part of what is measured.
+     */
+    static final class Legacy {
+        private Legacy() {
+            //not called
+        }
+
+        /**
+         * Finds the public method of the plugin named action whose parameters match the
+         * arguments, and invokes it.
+         * @param plugin the plugin
+         * @param action the action
+         * @param args the arguments sent from the javascript side
+         * @param cbContext the callback
+         * @return what the action returned, false if no method matches
+         * @throws JSONException never
+         */
+        static boolean execute(Object plugin, String action, JSONArray args, CallbackContext cbContext) throws JSONException {
+            try {
+                Method[] list = plugin.getClass().getMethods();
+                Method methodToExecute = null;
+                for (Method method : list) {
+                    if (method.getName().equals(action)) {
+                        Type[] types = method.getGenericParameterTypes();
+                        // +1 is the cbContext
+                        if (args.length() + 1 == types.length) {
+                            boolean isValid = true;
+                            for (int i = 0; i < args.length(); i++) {
+                                // Handle null/undefined arguments
+                                if (JSONObject.NULL.equals(args.get(i))) {
+                                    continue;
+                                }
+                                Class arg = args.get(i).getClass();
+                                if (types[i] != arg) {
+                                    isValid = false;
+                                    break;
+                                }
+                            }
+                            if (isValid) {
+                                methodToExecute = method;
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (methodToExecute == null) {
+                    return false;
+                }
+                Type[] types = methodToExecute.getGenericParameterTypes();
+                Object[] variableArgs = new Object[types.length];
+                for (int i = 0; i < args.length(); i++) {
+                    variableArgs[i] = args.get(i);
+                    // Translate null JSONObject to null
+                    if (JSONObject.NULL.equals(variableArgs[i])) {
+                        variableArgs[i] = null;
+                    }
+                }
+                variableArgs[variableArgs.length - 1] = cbContext;
+                return (Boolean) methodToExecute.invoke(plugin, variableArgs);
+            } catch (IllegalAccessException e) {
+                return false;
+            } catch (IllegalArgumentException e) {
+                return false;
+            } catch (InvocationTargetException e) {
+                return false;
+            }
+        }
+
+        static TextTrackStyle parseTextTrackStyle(JSONObject textTrackSytle) {
+            TextTrackStyle out = new TextTrackStyle();
+
+            if (textTrackSytle == null) {
+                return out;
+            }
+
+            try {
+                if (!textTrackSytle.isNull("backgroundColor")) {
+                    out.setBackgroundColor(Color.parseColor(textTrackSytle.getString("backgroundColor")));
+                }
+
+                if (!textTrackSytle.isNull("edgeColor")) {
+                    out.setEdgeColor(Color.parseColor(textTrackSytle.getString("edgeColor")));
+                }
+
+                if (!textTrackSytle.isNull("foregroundColor")) {
+                    out.setForegroundColor(Color.parseColor(textTrackSytle.getString("foregroundColor")));
+                }
+            } catch (JSONException e) {
+            }
+
+            return out;
+        }
+
+        /**
+         * Creates a MediaQueueItem from a JSONObject representation of a MediaQueueItem.
+         * @param mediaQueueItem a JSONObject representation of a MediaQueueItem
+         * @return a MediaQueueItem
+         * @throws JSONException If the input mediaQueueItem is incorrect
+         */
+        static MediaQueueItem createMediaQueueItem(JSONObject mediaQueueItem) throws JSONException {
+            MediaInfo mediaInfo = createMediaInfo(mediaQueueItem.getJSONObject("media"));
+            MediaQueueItem.Builder builder = new MediaQueueItem.Builder(mediaInfo);
+
+            try {
+                long[] activeTrackIds;
+                JSONArray trackIds = mediaQueueItem.getJSONArray("activeTrackIds");
+                activeTrackIds = new long[trackIds.length()];
+                for (int i = 0; i < trackIds.length(); i++) {
+                    activeTrackIds[i] = trackIds.getLong(i);
+                }
+                builder.setActiveTrackIds(activeTrackIds);
+            } catch (JSONException e) {
+            }
+            try {
+                builder.setAutoplay(mediaQueueItem.getBoolean("autoplay"));
+            } catch (JSONException e) {
+            }
+            JSONObject customData = new JSONObject();
+            try {
+                customData.getJSONObject("customData");
+            } catch (JSONException e) {
+            }
+            try {
+                builder.setPlaybackDuration(mediaQueueItem.getDouble("playbackDuration"));
+            } catch (JSONException e) {
+            }
+            try {
+                builder.setPreloadTime(mediaQueueItem.getDouble("preloadTime"));
+            } catch (JSONException e) {
+            }
+            try {
+                builder.setStartTime(mediaQueueItem.getDouble("startTime"));
+            } catch (JSONException e) {
+            }
+            return builder.build();
+        }
+
+        static MediaInfo createMediaInfo(JSONObject mediaInfo) {
+            // Set defaults
+            String contentId = "";
+            JSONObject customData = new JSONObject();
+            String contentType = "unknown";
+            long duration = 0;
+            String streamType = "unknown";
+            JSONObject metadata = new JSONObject();
+            JSONObject textTrackStyle = new JSONObject();
+
+            // Try to get the actual values
+            try {
+                contentId = mediaInfo.getString("contentId");
+            } catch (JSONException e) {
+            }
+            try {
+                customData = mediaInfo.getJSONObject("customData");
+            } catch (JSONException e) {
+            }
+            try {
+                contentType = mediaInfo.getString("contentType");
+            } catch (JSONException e) {
+            }
+            try {
+                duration = mediaInfo.getLong("duration");
+            } catch (JSONException e) {
+            }
+            try {
+                streamType = mediaInfo.getString("streamType");
+            } catch (JSONException e) {
+            }
+            try {
+                metadata = mediaInfo.getJSONObject("metadata");
+            } catch (JSONException e) {
+            }
+            try {
+                textTrackStyle = mediaInfo.getJSONObject("textTrackStyle");
+            } catch (JSONException e) {
+            }
+
+            return createMediaInfo(contentId, customData, contentType, duration, streamType, metadata, textTrackStyle);
+        }
+
+        static MediaInfo createMediaInfo(String contentId, JSONObject customData, String contentType, long duration, String streamType, JSONObject metadata, JSONObject textTrackStyle) {
+            MediaInfo.Builder mediaInfoBuilder = new MediaInfo.Builder(contentId);
+
+            mediaInfoBuilder.setMetadata(createMediaMetadata(metadata));
+
+            int intStreamType;
+            switch (streamType) {
+                case "buffered":
+                    intStreamType = MediaInfo.STREAM_TYPE_BUFFERED;
+                    break;
+                case "live":
+                    intStreamType = MediaInfo.STREAM_TYPE_LIVE;
+                    break;
+                default:
+                    intStreamType = MediaInfo.STREAM_TYPE_NONE;
+            }
+
+            TextTrackStyle trackStyle = parseTextTrackStyle(textTrackStyle);
+
+            mediaInfoBuilder
+                    .setContentType(contentType)
+                    .setCustomData(customData)
+                    .setStreamType(intStreamType)
+                    .setStreamDuration(duration)
+                    .setTextTrackStyle(trackStyle);
+
+            return mediaInfoBuilder.build();
+        }
+
+        private static MediaMetadata createMediaMetadata(JSONObject metadata) {
+
+            MediaMetadata mediaMetadata;
+            try {
+                mediaMetadata = new MediaMetadata(metadata.getInt("metadataType"));
+            } catch (JSONException e) {
+                mediaMetadata = new MediaMetadata(MediaMetadata.MEDIA_TYPE_GENERIC);
+            }
+            // Add any images
+            try {
+                JSONArray images = metadata.getJSONArray("images");
+                for (int i = 0; i < images.length(); i++) {
+                    JSONObject imageObj = images.getJSONObject(i);
+                    try {
+                        Uri imageURI = Uri.parse(imageObj.getString("url"));
+                        mediaMetadata.addImage(new WebImage(imageURI));
+                    } catch (Exception e) {
+                    }
+                }
+            } catch (JSONException e) {
+            }
+
+            // Dynamically add other parameters
+            Iterator<String> keys = metadata.keys();
+            String key;
+            String convertedKey;
+            Object value;
+            while (keys.hasNext()) {
+                key = keys.next();
+                if (key.equals("metadataType")
+                        || key.equals("images")
+                        || key.equals("type")) {
+                    continue;
+                }
+                try {
+                    value = metadata.get(key);
+                    convertedKey = ChromecastUtilities.getAndroidMetadataName(key);
+                    // Try to add the translated version of the key
+                    switch (ChromecastUtilities.getMetadataType(convertedKey)) {
+                        case "string":
+                            mediaMetadata.putString(convertedKey, metadata.getString(key));
+                            break;
+                        case "int":
+                            mediaMetadata.putInt(convertedKey, metadata.getInt(key));
+                            break;
+                        case "double":
+                            mediaMetadata.putDouble(convertedKey, metadata.getDouble(key));
+                            break;
+                        case "date":
+                            GregorianCalendar c = new GregorianCalendar();
+                            if (value instanceof java.lang.Integer
+                                    || value instanceof java.lang.Long
+                                    || value instanceof java.lang.Float
+                                    || value instanceof java.lang.Double) {
+                                c.setTimeInMillis(metadata.getLong(key));
+                                mediaMetadata.putDate(convertedKey, c);
+                            } else {
+                                String stringValue;
+                                try {
+                                    stringValue = " value: " + metadata.getString(key);
+                                } catch (JSONException e) {
+                                    stringValue = "";
+                                }
+                                LOG.w(TAG, "Cannot date from metadata key: " + key + stringValue
+                                        + "\n Dates must be in milliseconds from epoch UTC");
+                            }
+                            break;
+                        case "ms":
+                            mediaMetadata.putTimeMillis(convertedKey, metadata.getLong(key));
+                            break;
+                        default:
+                    }
+                    // Also always add the client's version of the key because sometimes the
+                    // MediaMetadata object removes some parameters.
+                    // eg. If you pass metadataType == 2 == MEDIA_TYPE_TV_SHOW you will lose any
+                    // subtitle added for "com.google.android.gms.cast.metadata.SUBTITLE", but this
+                    // is not in-line with chrome desktop which preserves the value.
+                    if (!key.equals(convertedKey)) {
+                        // It is is really stubborn and if you try to add the key "subtitle" that is
+                        // also stripped.  (Hence the "cordova-plugin-chromecast_metadata_key=" prefix
+                        convertedKey = "cordova-plugin-chromecast_metadata_key=" + key;
+                    }
+                    mediaMetadata.putString(convertedKey, metadata.getString(key));
+                } catch (JSONException e) {
+                    LOG.w(TAG, "Ignored metadata key " + key + ", " + e.getMessage());
+                } catch (IllegalArgumentException e) {
+                    LOG.w(TAG, "Ignored metadata key " + key + ", " + e.getMessage());
+                }
+            }
+            return  mediaMetadata;
+        }
+    }
+}
@@ -4,8 +4,7 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.SharedPreferences;
-import android.os.Bundle;
-import android.os.Handler;
+import android.os.SystemClock;
 
 import androidx.arch.core.util.Function;
 import androidx.mediarouter.app.MediaRouteChooserDialog;
@@ -13,8 +12,8 @@ import androidx.mediarouter.media.MediaRouteSelector;
 import androidx.mediarouter.media.MediaRouter;
 import androidx.mediarouter.media.MediaRouter.RouteInfo;
 
-import com.google.android.gms.cast.CastDevice;
 import com.google.android.gms.cast.CastMediaControlIntent;
+import com.google.android.gms.cast.CastStatusCodes;
 import com.google.android.gms.cast.framework.CastContext;
 import com.google.android.gms.cast.framework.CastSession;
 import com.google.android.gms.cast.framework.CastState;
@@ -23,12 +22,18 @@ import com.google.android.gms.cast.framework.SessionManager;
 import com.google.android.gms.cast.framework.SessionManagerListener;
 
 import org.apache.cordova.CallbackContext;
+import org.apache.cordova.LOG;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ChromecastConnection {
+    /** Tag for logging. */
+    private static final String TAG = "Chromecast";
 
     /** Lifetime variable. */
     private Activity activity;
@@ -37,25 +42,76 @@ public class ChromecastConnection {
     /** Controls the media. */
     private ChromecastSession media;
 
-    /** Lifetime variable. */
-    private SessionListener newConnectionListener;
+    /** The waiter of the current requestSession/selectRoute join, or null. */
+    private SessionWaiter connectionWaiter;
+    /** The requests waiting on session events, see addWaiter. */
+    private final List<SessionWaiter> waiters = new ArrayList<>();
+    /** Number of waiters, for getSessionListenerStats. */
+    private volatile int waiterCount;
+    /** Max number of waiters at once, for getSessionListenerStats. */
+    private volatile int peakWaiters;
+    /** Number of waiters that timed out. */
+    private final AtomicLong expiredWaiters = new AtomicLong();
+    /** Number of SessionManagerListeners of the plugin. */
+    private volatile int sessionListeners;
     /** The Listener callback. */
     private Listener listener;
+    /** Runs the Cast SDK calls on the main thread, and the rest in the background. */
+    private final ChromecastExecutor executor;
+    /** Records the session manager events. */
+    private final ChromecastTracer tracer;
+    /** The route scans. */
+    private final ChromecastRouteScanner scanner;
+
+    /** Default of how long (ms) a route seen by a scan can be joined without scanning for it again. */
+    static final int DEFAULT_ROUTE_CACHE_TTL = 60000;
+    /** How long (ms) endSession waits for the session to end. */
+    private static final long END_SESSION_TIMEOUT = 10000L;
+    /** settings key of the id of the last session. */
+    private static final String LAST_SESSION_ID = "lastSessionId";
+    /** settings key of the id of the route of the last session. */
+    private static final String LAST_ROUTE_ID = "lastRouteId";
+    /** settings key of the last session object, with its media. */
+    private static final String LAST_SESSION = "lastSession";
 
     /** Initialize lifetime variable. */
     private String appId;
+    /** How long (ms) a route seen by a scan can be joined without scanning for it again, 0 to always scan. */
+    private long routeCacheTtl = DEFAULT_ROUTE_CACHE_TTL;
+    /** Decides if and when selectRoute tries again to join. */
+    private volatile RetryPolicy joinRetryPolicy = new ChromecastRetryPolicy(null);
+    /** The time to join of selectRoute. */
+    private final JoinStats joinStats = new JoinStats();
+
+    /** When the connection was created (elapsedRealtimeNanos), about when the app started. */
+    private final long created = SystemClock.elapsedRealtimeNanos();
+    /** The last session, sent to the client as provisional and not confirmed or retracted yet, or null. */
+    private JSONObject provisionalSession;
+    /** When initialize started the rejoin (elapsedRealtimeNanos). */
+    private long rejoinStart;
+    /** The id of the session the client rejoined since initialize, or null. */
+    private String rejoinedSessionId;
+    /** Whether the SDK is resuming a session. */
+    private boolean resuming;
+    /** The last rejoin, see getRejoinStats. */
+    private volatile JSONObject rejoinStats = new JSONObject();
 
     /**
      * Constructor.
      * @param act the current context
+     * @param commandExecutor runs the Cast SDK calls on the main thread, and the rest in the background
      * @param connectionListener client callbacks for specific events
      */
-    ChromecastConnection(Activity act, Listener connectionListener) {
+    ChromecastConnection(Activity act, ChromecastExecutor commandExecutor, Listener connectionListener) {
         this.activity = act;
+        this.executor = commandExecutor;
+        this.tracer = commandExecutor.getTracer();
         this.settings = activity.getSharedPreferences("CORDOVA-PLUGIN-CHROMECAST_ChromecastConnection", 0);
         this.appId = settings.getString("appId", CastMediaControlIntent.DEFAULT_MEDIA_RECEIVER_APPLICATION_ID);
         this.listener = connectionListener;
-        this.media = new ChromecastSession(activity, listener);
+        this.media = new ChromecastSession(activity, executor, listener);
+        this.scanner = new ChromecastRouteScanner(getMediaRouter(), tracer);
+        scanner.setSelector(getRouteSelector());
 
         // Set the initial appId
         CastOptionsProvider.setAppId(appId);
@@ -64,6 +120,8 @@ public class ChromecastConnection {
         // CastContext and prep it for searching for a session to rejoin
         // Also adds the receiver update callback
         getContext().addCastStateListener(listener);
+        getSessionManager().addSessionManagerListener(new SessionEvents(), CastSession.class);
+        sessionListeners++;
     }
 
     /**
@@ -80,7 +138,7 @@ public class ChromecastConnection {
      * @param callback called when initialization is complete
      */
     public void initialize(String applicationId, CallbackContext callback) {
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("initialize", new Runnable() {
             public void run() {
                 // If the app Id changed
                 if (applicationId == null || !applicationId.equals(appId)) {
@@ -98,6 +156,9 @@ public class ChromecastConnection {
                 // Tell the client that initialization was a success
                 callback.success();
 
+                // Tell the client about the last session now rather than after the scan
+                startRejoin();
+
                 // Check if there is any available receivers for 5 seconds
                 startRouteScan(5000L, new ScanCallback() {
                     @Override
@@ -114,16 +175,165 @@ public class ChromecastConnection {
                             // If we do have a session
                             if (session != null) {
                                 // Let the client know
-                                media.setSession(session);
-                                listener.onSessionRejoin(ChromecastUtilities.createSessionObject(session));
+                                confirmRejoin(session);
+                            }
+                        }
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        // If the SDK is resuming the session, its events will confirm or retract the rejoin
+                        if (provisionalSession != null && !resuming) {
+                            CastSession session = getSession();
+                            if (session != null && session.isConnected()) {
+                                confirmRejoin(session);
+                            } else {
+                                retractRejoin();
+                                clearSavedSession();
                             }
                         }
                     }
-                }, null);
+                });
             }
         });
     }
 
+    /**
+     * Tells the client about the session right away if the SDK already has it.
+     * Otherwise, sends the session of the last run as provisional (from settings),
+     * instead of leaving the client "not casting" while the SDK resumes the session.
+     * The SDK's answer confirms it (confirmRejoin) or retracts it (retractRejoin).
+     * Must be called on the main thread.
+     */
+    private void startRejoin() {
+        rejoinStart = SystemClock.elapsedRealtimeNanos();
+        rejoinedSessionId = null;
+        CastSession session = getSession();
+        if (session != null && session.isConnected()) {
+            confirmRejoin(session);
+            return;
+        }
+        if (provisionalSession == null) {
+            String saved = settings.getString(LAST_SESSION, null);
+            if (saved == null) {
+                return;
+            }
+            try {
+                provisionalSession = new JSONObject(saved);
+            } catch (JSONException e) {
+                clearSavedSession();
+                return;
+            }
+        }
+        // A session that isn't connected yet is being resumed
+        resuming = resuming || session != null;
+        recordRejoin("provisional");
+        listener.onSessionRejoin(provisionalSession, true);
+    }
+
+    /**
+     * Sends the session to the client, once per initialize.
+     * If it isn't the provisional session, that one is retracted first.
+     * Must be called on the main thread.
+     * @param session the session the SDK has
+     */
+    private void confirmRejoin(CastSession session) {
+        String sessionId = session.getSessionId();
+        if (sessionId != null && sessionId.equals(rejoinedSessionId)) {
+            return;
+        }
+        rejoinedSessionId = sessionId;
+        if (provisionalSession != null && !String.valueOf(sessionId).equals(provisionalSession.optString("sessionId"))) {
+            retractRejoin();
+        }
+        recordRejoin("confirmed");
+        provisionalSession = null;
+        media.setSession(session);
+        JSONObject jsonSession = ChromecastUtilities.createSessionObject(session);
+        saveSession(session, jsonSession);
+        listener.onSessionRejoin(jsonSession, false);
+    }
+
+    /**
+     * Tells the client that the provisional session is over, if there is one.
+     * Must be called on the main thread.
+     */
+    private void retractRejoin() {
+        if (provisionalSession == null) {
+            return;
+        }
+        recordRejoin("retracted");
+        JSONObject jsonSession = provisionalSession;
+        provisionalSession = null;
+        try {
+            jsonSession.put("status", "stopped");
+            jsonSession.put("media", new JSONArray());
+        } catch (JSONException e) {
+            LOG.w(TAG, "Incomplete retracted session, " + e.getMessage());
+        }
+        listener.onSessionEnd(jsonSession);
+    }
+
+    private void recordRejoin(String outcome) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("outcome", outcome);
+            stats.put("provisional", provisionalSession != null);
+            stats.put("rejoinMs", (now - rejoinStart) / 1000000.0);
+            stats.put("sinceStartMs", (now - created) / 1000000.0);
+            stats.put("routeId", settings.getString(LAST_ROUTE_ID, null));
+        } catch (JSONException e) {
+            LOG.w(TAG, "Incomplete rejoin stats, " + e.getMessage());
+        }
+        rejoinStats = stats;
+    }
+
+    /**
+     * Can be called from any thread.
+     * @return the last rejoin of initialize: {outcome, provisional, rejoinMs, sinceStartMs, routeId},
+     *         outcome is "provisional" until the SDK answers, then "confirmed" or "retracted",
+     *         rejoinMs is the time since initialize and sinceStartMs the time since the plugin started,
+     *         empty if there was nothing to rejoin
+     */
+    JSONObject getRejoinStats() {
+        return rejoinStats;
+    }
+
+    /**
+     * Saves the current session and its media, so that the next app start can tell
+     * the client about it right away.
+     */
+    void saveSession() {
+        executor.runOnMain("saveSession", new Runnable() {
+            public void run() {
+                CastSession session = getSession();
+                if (session != null && session.isConnected()) {
+                    saveSession(session, ChromecastUtilities.createSessionObject(session));
+                }
+            }
+        });
+    }
+
+    private void saveSession(CastSession session, JSONObject jsonSession) {
+        if (jsonSession.optString("sessionId", null) == null) {
+            return;
+        }
+        settings.edit()
+                .putString(LAST_SESSION_ID, session.getSessionId())
+                .putString(LAST_ROUTE_ID, getMediaRouter().getSelectedRoute().getId())
+                .putString(LAST_SESSION, jsonSession.toString())
+                .apply();
+    }
+
+    private void clearSavedSession() {
+        settings.edit()
+                .remove(LAST_SESSION_ID)
+                .remove(LAST_ROUTE_ID)
+                .remove(LAST_SESSION)
+                .apply();
+    }
+
     private MediaRouter getMediaRouter() {
         return MediaRouter.getInstance(activity);
     }
@@ -144,6 +354,71 @@ public class ChromecastConnection {
         this.appId = applicationId;
         this.settings.edit().putString("appId", appId).apply();
         getContext().setReceiverApplicationId(appId);
+        scanner.setSelector(getRouteSelector());
+    }
+
+    /**
+     * @param ttl how long (ms) a route seen by a scan can be joined by selectRoute
+     *            without scanning for it again, 0 to always scan
+     */
+    void setRouteCacheTtl(long ttl) {
+        this.routeCacheTtl = Math.max(0, ttl);
+    }
+
+    /**
+     * Can be called from any thread.
+     * @param policy decides if and when selectRoute tries again to join, applies to the next selectRoute
+     */
+    void setJoinRetryPolicy(RetryPolicy policy) {
+        this.joinRetryPolicy = policy;
+    }
+
+    /**
+     * Can be called from any thread.
+     * @return the time to join of selectRoute, for routes joined right away
+     *         from the route cache (cached) and routes that were scanned for (scan),
+     *         the time of each attempt (attempts) and the attempts of the last join (lastJoin):
+     *         {cacheHits, cacheMisses, fallbacks, retries, gaveUp, cached: {count, p50Ms, p95Ms, maxMs},
+     *         scan: {...}, attempts: {...}, lastJoin: [{attempt, startMs, durationMs, errorCode, retryInMs}]}
+     */
+    JSONObject getJoinStats() {
+        JSONObject out = new JSONObject();
+        try {
+            out.put("cacheHits", joinStats.cacheHits.get());
+            out.put("cacheMisses", joinStats.cacheMisses.get());
+            out.put("fallbacks", joinStats.fallbacks.get());
+            out.put("retries", joinStats.retries.get());
+            out.put("gaveUp", joinStats.gaveUp.get());
+            out.put("cached", toJSON(joinStats.cachedJoins));
+            out.put("scan", toJSON(joinStats.scanJoins));
+            out.put("attempts", toJSON(joinStats.attempts));
+            out.put("lastJoin", joinStats.lastJoin);
+        } catch (JSONException e) {
+            LOG.w(TAG, "Incomplete join stats, " + e.getMessage());
+        }
+        return out;
+    }
+
+    private static JSONObject toJSON(ChromecastHistogram histogram) throws JSONException {
+        return new JSONObject()
+                .put("count", histogram.getCount())
+                .put("p50Ms", histogram.percentile(0.5) / 1000.0)
+                .put("p95Ms", histogram.percentile(0.95) / 1000.0)
+                .put("maxMs", histogram.getMaxNanos() / 1000000.0);
+    }
+
+    private MediaRouteSelector getRouteSelector() {
+        return new MediaRouteSelector.Builder()
+                .addControlCategory(CastMediaControlIntent.categoryForCast(appId))
+                .build();
+    }
+
+    /**
+     * Can be called from any thread.
+     * @return the counters of the route scans, see ChromecastRouteScanner.getStats
+     */
+    JSONObject getScanStats() {
+        return scanner.getStats();
     }
 
     /**
@@ -153,10 +428,7 @@ public class ChromecastConnection {
      */
     private boolean isValidAppId(String applicationId) {
         try {
-            ScanCallback cb = new ScanCallback() {
-                @Override
-                void onRouteUpdate(List<RouteInfo> routes) { }
-            };
+            MediaRouter.Callback cb = new MediaRouter.Callback() { };
             // This will throw if the applicationId is invalid
             getMediaRouter().addCallback(new MediaRouteSelector.Builder()
                             .addControlCategory(CastMediaControlIntent.categoryForCast(applicationId))
@@ -179,7 +451,7 @@ public class ChromecastConnection {
      *                 or callback.onError if an error occurred
      */
     public void selectRoute(final String routeId, SelectRouteCallback callback) {
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("selectRoute", new Runnable() {
             public void run() {
                 if (getSession() != null && getSession().isConnected()) {
                     callback.onError(ChromecastUtilities.createError("session_error",
@@ -191,7 +463,16 @@ public class ChromecastConnection {
                 // to store it as a global variable, just always access first element
                 final boolean[] foundRoute = {false};
                 final boolean[] sentResult = {false};
-                final int[] retries = {0};
+                final boolean[] scanning = {false};
+                final int[] attempts = {0};
+                final long start = SystemClock.elapsedRealtimeNanos();
+                // When the last attempt selected the route (elapsedRealtimeNanos), 0 if none did
+                final long[] attemptStart = {0};
+                // The attempts, for getJoinStats
+                final JSONArray attemptLog = new JSONArray();
+                final RetryPolicy policy = joinRetryPolicy;
+                // A route seen by a recent scan that the router still knows can be joined right away
+                final RouteInfo cachedRoute = scanner.getCachedRoute(routeId, routeCacheTtl);
 
                 // We need to start an active scan because getMediaRouter().getRoutes() may be out
                 // of date.  Also, maintaining a list of known routes doesn't work.  It is possible
@@ -203,6 +484,29 @@ public class ChromecastConnection {
                 // getRoutes() fn will have no record of the route.  We need the active scan to
                 // avoid this situation as well.  PS. Just running the scan non-stop is a poor idea
                 // since it will drain battery power quickly.
+                // (That's why the cached route must also be in getMediaRouter().getRoutes(), and
+                // why the scan is only started when there is no such route or joining it failed.)
+                Function<RouteInfo, Boolean> select = new Function<RouteInfo, Boolean>() {
+                    @Override
+                    public Boolean apply(RouteInfo route) {
+                        foundRoute[0] = true;
+                        attempts[0]++;
+                        attemptStart[0] = SystemClock.elapsedRealtimeNanos();
+                        // try-catch for issue:
+                        // https://github.com/jellyfin/cordova-plugin-chromecast/issues/48
+                        try {
+                            // Try selecting the route!
+                            getMediaRouter().selectRoute(route);
+                            return true;
+                        } catch (NullPointerException e) {
+                            // Let it try to find the route again
+                            foundRoute[0] = false;
+                            attempts[0]--;
+                            return false;
+                        }
+                    }
+                };
+
                 ScanCallback scan = new ScanCallback() {
                     @Override
                     void onRouteUpdate(List<RouteInfo> routes) {
@@ -210,26 +514,34 @@ public class ChromecastConnection {
                         for (RouteInfo route : routes) {
                             if (!foundRoute[0] && route.getId().equals(routeId)) {
                                 // Found the route!
-                                foundRoute[0] = true;
-                                // try-catch for issue:
-                                // https://github.com/jellyfin/cordova-plugin-chromecast/issues/48
-                                try {
-                                    // Try selecting the route!
-                                    getMediaRouter().selectRoute(route);
-                                } catch (NullPointerException e) {
-                                    // Let it try to find the route again
-                                    foundRoute[0] = false;
-                                }
+                                select.apply(route);
                             }
                         }
                     }
                 };
 
+                Runnable startScan = new Runnable() {
+                    @Override
+                    public void run() {
+                        scanning[0] = true;
+                        startRouteScan(null, scan, null);
+                    }
+                };
+
                 Runnable retry = new Runnable() {
                     @Override
                     public void run() {
+                        if (sentResult[0]) {
+                            return;
+                        }
                         // Reset foundRoute
                         foundRoute[0] = false;
+                        if (!scanning[0]) {
+                            // The cached route did not work, fall back to scanning for it
+                            joinStats.fallbacks.incrementAndGet();
+                            startScan.run();
+                            return;
+                        }
                         // Feed current routes into scan so that it can retry.
                         // If route is there, it will try to join,
                         // if not, it should wait for the scan to find the route
@@ -243,6 +555,7 @@ public class ChromecastConnection {
                         if (!sentResult[0]) {
                             sentResult[0] = true;
                             stopRouteScan(scan, null);
+                            joinStats.lastJoin = attemptLog;
                             callback.onError(message);
                         }
                         return null;
@@ -252,43 +565,94 @@ public class ChromecastConnection {
                 listenForConnection(new ConnectionCallback() {
                     @Override
                     public void onJoin(JSONObject jsonSession) {
+                        if (!sentResult[0]) {
+                            long now = SystemClock.elapsedRealtimeNanos();
+                            logAttempt(now, -1, RetryPolicy.GIVE_UP);
+                            (scanning[0] ? joinStats.scanJoins : joinStats.cachedJoins).record(now - start);
+                            joinStats.lastJoin = attemptLog;
+                        }
                         sentResult[0] = true;
                         stopRouteScan(scan, null);
                         callback.onJoin(jsonSession);
                     }
                     @Override
                     public boolean onSessionStartFailed(int errorCode) {
-                        if (errorCode == 7 || errorCode == 15) {
-                            // It network or timeout error retry
-                            retry.run();
-                            return false;
-                        } else {
-                            sendErrorResult.apply(ChromecastUtilities.createError("session_error",
-                                    "Failed to start session with error code: " + errorCode));
-                            return true;
-                        }
+                        return onAttemptFailed(errorCode, false);
                     }
                     @Override
                     public boolean onSessionEndedBeforeStart(int errorCode) {
-                        if (retries[0] < 10) {
-                            retries[0]++;
-                            retry.run();
+                        return onAttemptFailed(errorCode, true);
+                    }
+                    @Override
+                    public void onTimeout() {
+                        sendErrorResult.apply(ChromecastUtilities.createError("timeout",
+                                "Failed to join route (" + routeId + ") after " + policy.getDeadline() / 1000 + "s and "
+                                        + attempts[0] + " tries."));
+                    }
+
+                    /**
+                     * Retries the join after the delay the policy asks for, or fails it.
+                     * @return true if we are done listening for join
+                     */
+                    private boolean onAttemptFailed(int errorCode, boolean endedBeforeStart) {
+                        if (sentResult[0]) {
+                            // Timed out
+                            return true;
+                        }
+                        long now = SystemClock.elapsedRealtimeNanos();
+                        long delay = policy.getRetryDelay(attempts[0], errorCode, endedBeforeStart, (now - start) / 1000000);
+                        logAttempt(now, errorCode, delay);
+                        if (delay != RetryPolicy.GIVE_UP) {
+                            joinStats.retries.incrementAndGet();
+                            executor.postOnMain("selectRouteRetry", retry, delay);
                             return false;
+                        }
+                        joinStats.gaveUp.incrementAndGet();
+                        if (endedBeforeStart) {
+                            sendErrorResult.apply(ChromecastUtilities.createError("session_error",
+                                    "Failed to join existing route (" + routeId + ") " + attempts[0] + " times before giving up."));
                         } else {
                             sendErrorResult.apply(ChromecastUtilities.createError("session_error",
-                                    "Failed to to join existing route (" + routeId + ") " + retries[0] + 1 + " times before giving up."));
-                            return true;
+                                    "Failed to start session with error code: " + errorCode));
                         }
+                        return true;
                     }
-                });
 
-                startRouteScan(15000L, scan, new Runnable() {
-                    @Override
-                    public void run() {
-                        sendErrorResult.apply(ChromecastUtilities.createError("timeout",
-                                "Failed to join route (" + routeId + ") after 15s and " + (retries[0] + 1) + " tries."));
+                    /**
+                     * Records the time of the last attempt.
+                     * @param end when it ended (elapsedRealtimeNanos)
+                     * @param errorCode its error, -1 if it joined
+                     * @param retryIn the delay before the next attempt, or GIVE_UP
+                     */
+                    private void logAttempt(long end, int errorCode, long retryIn) {
+                        long attemptBegin = attemptStart[0] != 0 ? attemptStart[0] : start;
+                        joinStats.attempts.record(end - attemptBegin);
+                        try {
+                            JSONObject attempt = new JSONObject()
+                                    .put("attempt", attempts[0])
+                                    .put("startMs", (attemptBegin - start) / 1000000.0)
+                                    .put("durationMs", (end - attemptBegin) / 1000000.0);
+                            if (errorCode != -1) {
+                                attempt.put("errorCode", errorCode);
+                                attempt.put("retryInMs", retryIn);
+                            }
+                            attemptLog.put(attempt);
+                        } catch (JSONException e) {
+                            LOG.w(TAG, "Incomplete join attempt log, " + e.getMessage());
+                        }
                     }
-                });
+                }, policy.getDeadline());
+
+                if (cachedRoute != null) {
+                    joinStats.cacheHits.incrementAndGet();
+                    if (select.apply(cachedRoute)) {
+                        return;
+                    }
+                    joinStats.fallbacks.incrementAndGet();
+                } else {
+                    joinStats.cacheMisses.incrementAndGet();
+                }
+                startScan.run();
             }
         });
     }
@@ -313,14 +677,14 @@ public class ChromecastConnection {
      *                 or callback.error if an error occurred or if the dialog was dismissed
      */
     public void requestSession(RequestSessionCallback callback) {
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("requestSession", new Runnable() {
             public void run() {
                 CastSession session = getSession();
                 if (session == null) {
                     // show the "choose a connection" dialog
 
-                    // Add the connection listener callback
-                    listenForConnection(callback);
+                    // Add the connection listener callback, its deadline starts once a route is chosen
+                    listenForConnection(callback, 0);
 
                     // Create the dialog
                     // TODO accept theme as a config.xml option
@@ -332,10 +696,20 @@ public class ChromecastConnection {
                     builder.setOnCancelListener(new DialogInterface.OnCancelListener() {
                         @Override
                         public void onCancel(DialogInterface dialog) {
-                            getSessionManager().removeSessionManagerListener(newConnectionListener, CastSession.class);
+                            stopListeningForConnection();
                             callback.onCancel();
                         }
                     });
+                    builder.setOnDismissListener(new DialogInterface.OnDismissListener() {
+                        @Override
+                        public void onDismiss(DialogInterface dialog) {
+                            // A route was chosen (the waiter is gone if the dialog was cancelled),
+                            // give the join as long as selectRoute's
+                            if (waiters.contains(connectionWaiter)) {
+                                setWaiterDeadline(connectionWaiter, joinRetryPolicy.getDeadline());
+                            }
+                        }
+                    });
                     builder.show();
                 } else {
                     // We are are already connected, so show the "connection options" Dialog
@@ -364,31 +738,110 @@ public class ChromecastConnection {
     /**
      * Must be called from the main thread.
      * @param callback calls callback.success when we have joined, or callback.error if an error occurred
+     * @param timeout ms until we stop listening and call callback.onTimeout, 0 for no deadline yet:
+     *                the caller must then call setWaiterDeadline or stopListeningForConnection
      */
-    private void listenForConnection(ConnectionCallback callback) {
-        // We should only ever have one of these listeners active at a time, so remove previous
-        getSessionManager().removeSessionManagerListener(newConnectionListener, CastSession.class);
-        newConnectionListener = new SessionListener() {
+    private void listenForConnection(ConnectionCallback callback, long timeout) {
+        // We should only ever have one of these waiters at a time, so remove previous
+        removeWaiter(connectionWaiter);
+        connectionWaiter = new SessionWaiter() {
             @Override
-            public void onSessionStarted(CastSession castSession, String sessionId) {
-                getSessionManager().removeSessionManagerListener(this, CastSession.class);
+            boolean onSessionStarted(CastSession castSession) {
+                // The client is now in a new session
+                retractRejoin();
                 media.setSession(castSession);
                 callback.onJoin(ChromecastUtilities.createSessionObject(castSession));
+                return true;
             }
             @Override
-            public void onSessionStartFailed(CastSession castSession, int errCode) {
-                if (callback.onSessionStartFailed(errCode)) {
-                    getSessionManager().removeSessionManagerListener(this, CastSession.class);
-                }
+            boolean onSessionStartFailed(int errorCode) {
+                return callback.onSessionStartFailed(errorCode);
             }
             @Override
-            public void onSessionEnded(CastSession castSession, int errCode) {
-                if (callback.onSessionEndedBeforeStart(errCode)) {
-                    getSessionManager().removeSessionManagerListener(this, CastSession.class);
-                }
+            boolean onSessionEnded(CastSession castSession, int errorCode) {
+                return callback.onSessionEndedBeforeStart(errorCode);
+            }
+            @Override
+            void onExpired() {
+                callback.onTimeout();
             }
         };
-        getSessionManager().addSessionManagerListener(newConnectionListener, CastSession.class);
+        addWaiter(connectionWaiter, timeout);
+    }
+
+    /**
+     * Must be called from the main thread.
+     */
+    private void stopListeningForConnection() {
+        removeWaiter(connectionWaiter);
+        connectionWaiter = null;
+    }
+
+    /**
+     * Registers a waiter for the session events.
+     * Must be called from the main thread.
+     * @param waiter the waiter
+     * @param timeout ms until the waiter expires if it isn't done, 0 for no deadline yet (see setWaiterDeadline)
+     */
+    private void addWaiter(SessionWaiter waiter, long timeout) {
+        waiters.add(waiter);
+        updateWaiterStats();
+        if (timeout > 0) {
+            setWaiterDeadline(waiter, timeout);
+        }
+    }
+
+    /**
+     * Makes a waiter expire if it is still registered in timeout ms.
+     * Must be called from the main thread.
+     * @param waiter the waiter
+     * @param timeout ms until the waiter expires
+     */
+    private void setWaiterDeadline(SessionWaiter waiter, long timeout) {
+        executor.postOnMain("sessionWaiterDeadline", new Runnable() {
+            @Override
+            public void run() {
+                if (waiters.remove(waiter)) {
+                    expiredWaiters.incrementAndGet();
+                    updateWaiterStats();
+                    waiter.onExpired();
+                }
+            }
+        }, timeout);
+    }
+
+    /**
+     * Must be called from the main thread.
+     * @param waiter the waiter to remove, does nothing if it isn't registered
+     */
+    private void removeWaiter(SessionWaiter waiter) {
+        if (waiters.remove(waiter)) {
+            updateWaiterStats();
+        }
+    }
+
+    private void updateWaiterStats() {
+        waiterCount = waiters.size();
+        peakWaiters = Math.max(peakWaiters, waiterCount);
+    }
+
+    /**
+     * Can be called from any thread.
+     * @return the listeners of the session manager events: {listeners, waiters, peakWaiters, expiredWaiters},
+     *         listeners is the number of SessionManagerListeners of the plugin (1 once initialized), waiters
+     *         the number of requests waiting on session events, expiredWaiters the number that timed out
+     */
+    JSONObject getSessionListenerStats() {
+        JSONObject out = new JSONObject();
+        try {
+            out.put("listeners", sessionListeners);
+            out.put("waiters", waiterCount);
+            out.put("peakWaiters", peakWaiters);
+            out.put("expiredWaiters", expiredWaiters.get());
+        } catch (JSONException e) {
+            LOG.w(TAG, "Incomplete session listener stats, " + e.getMessage());
+        }
+        return out;
     }
 
     /**
@@ -401,37 +854,27 @@ public class ChromecastConnection {
      * @param onTimeout called when the timeout hits
      */
     public void startRouteScan(Long timeout, ScanCallback callback, Runnable onTimeout) {
-        // Add the callback in active scan mode
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("startRouteScan", new Runnable() {
             public void run() {
-                callback.setMediaRouter(getMediaRouter());
-
                 if (timeout != null && timeout == 0) {
                     // Send out the one time routes
-                    callback.onFilteredRouteUpdate();
+                    callback.onRouteUpdate(scanner.getRoutes());
                     return;
                 }
 
-                // Add the callback in active scan mode
-                getMediaRouter().addCallback(new MediaRouteSelector.Builder()
-                        .addControlCategory(CastMediaControlIntent.categoryForCast(appId))
-                        .build(),
-                        callback,
-                        MediaRouter.CALLBACK_FLAG_PERFORM_ACTIVE_SCAN);
-
-                // Send out the initial routes after the callback has been added.
+                // Subscribe in active scan mode, this sends out the initial routes once subscribed.
                 // This is important because if the callback calls stopRouteScan only once, and it
-                // happens during this call of "onFilterRouteUpdate", there must actually be an
-                // added callback to remove to stop the scan.
-                callback.onFilteredRouteUpdate();
+                // happens during this first "onRouteUpdate", it must actually be subscribed
+                // to be unsubscribed.
+                scanner.subscribe(callback, true);
 
                 if (timeout != null) {
                     // remove the callback after timeout ms, and notify caller
-                    new Handler().postDelayed(new Runnable() {
+                    executor.postOnMain("routeScanTimeout", new Runnable() {
                         @Override
                         public void run() {
                             // And stop the scan for routes
-                            getMediaRouter().removeCallback(callback);
+                            scanner.unsubscribe(callback);
                             // Notify
                             if (onTimeout != null) {
                                 onTimeout.run();
@@ -453,10 +896,10 @@ public class ChromecastConnection {
             completionCallback.run();
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("stopRouteScan", new Runnable() {
             public void run() {
                 callback.stop();
-                getMediaRouter().removeCallback(callback);
+                scanner.unsubscribe(callback);
                 if (completionCallback != null) {
                     completionCallback.run();
                 }
@@ -470,19 +913,33 @@ public class ChromecastConnection {
      * @param callback called with .success or .error depending on the initial result
      */
     void endSession(boolean stopCasting, CallbackContext callback) {
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("endSession", new Runnable() {
             public void run() {
-                getSessionManager().addSessionManagerListener(new SessionListener() {
+                if (getSession() == null) {
+                    // onSessionEnded won't come
+                    if (callback != null) {
+                        callback.error(ChromecastUtilities.createError("session_error", "There is no session to end."));
+                    }
+                    return;
+                }
+                addWaiter(new SessionWaiter() {
                     @Override
-                    public void onSessionEnded(CastSession castSession, int error) {
-                        getSessionManager().removeSessionManagerListener(this, CastSession.class);
+                    boolean onSessionEnded(CastSession castSession, int error) {
                         media.setSession(null);
                         if (callback != null) {
                             callback.success();
                         }
                         listener.onSessionEnd(ChromecastUtilities.createSessionObject(castSession, stopCasting ? "stopped" : "disconnected"));
+                        return true;
+                    }
+                    @Override
+                    void onExpired() {
+                        if (callback != null) {
+                            callback.error(ChromecastUtilities.createError("timeout",
+                                    "The session did not end after " + END_SESSION_TIMEOUT / 1000 + "s."));
+                        }
                     }
-                }, CastSession.class);
+                }, END_SESSION_TIMEOUT);
 
                 getSessionManager().endCurrentSession(stopCasting);
             }
@@ -490,28 +947,154 @@ public class ChromecastConnection {
     }
 
     /**
-     * Create this empty class so that we don't have to override every function
-     * each time we need a SessionManagerListener.
+     * A request waiting on session events (eg. a join), see addWaiter.
+     * The methods are called on the main thread, those that return true are done
+     * with the events and the waiter is removed.
      */
-    private class SessionListener implements SessionManagerListener<CastSession> {
+    private abstract static class SessionWaiter {
+        boolean onSessionStarted(CastSession castSession) {
+            return false;
+        }
+        boolean onSessionStartFailed(int errorCode) {
+            return false;
+        }
+        boolean onSessionEnded(CastSession castSession, int errorCode) {
+            return false;
+        }
+        /**
+         * Called when the waiter is removed because it timed out.
+         */
+        void onExpired() { }
+    }
+
+    /**
+     * The single SessionManagerListener of the plugin.
+     * Records the session manager events, keeps the current session in settings
+     * for the next app start, confirms or retracts the provisional rejoin, tells the
+     * client when the session is suspended or resumed, and passes the events on
+     * to the waiters.
+     */
+    private class SessionEvents implements SessionManagerListener<CastSession> {
         @Override
-        public void onSessionStarting(CastSession castSession) { }
+        public void onSessionStarting(CastSession castSession) {
+            tracer.instant("sdk", "onSessionStarting");
+        }
         @Override
-        public void onSessionStarted(CastSession castSession, String sessionId) { }
+        public void onSessionStarted(CastSession castSession, String sessionId) {
+            tracer.instant("sdk", "onSessionStarted");
+            retractRejoin();
+            saveSession(castSession, ChromecastUtilities.createSessionObject(castSession));
+            for (SessionWaiter waiter : new ArrayList<>(waiters)) {
+                if (waiters.contains(waiter) && waiter.onSessionStarted(castSession)) {
+                    removeWaiter(waiter);
+                }
+            }
+        }
         @Override
-        public void onSessionStartFailed(CastSession castSession, int error) { }
+        public void onSessionStartFailed(CastSession castSession, int error) {
+            tracer.instant("sdk", "onSessionStartFailed");
+            for (SessionWaiter waiter : new ArrayList<>(waiters)) {
+                if (waiters.contains(waiter) && waiter.onSessionStartFailed(error)) {
+                    removeWaiter(waiter);
+                }
+            }
+        }
         @Override
-        public void onSessionEnding(CastSession castSession) { }
+        public void onSessionEnding(CastSession castSession) {
+            tracer.instant("sdk", "onSessionEnding");
+        }
         @Override
-        public void onSessionEnded(CastSession castSession, int error) { }
+        public void onSessionEnded(CastSession castSession, int error) {
+            tracer.instant("sdk", "onSessionEnded");
+            retractRejoin();
+            clearSavedSession();
+            for (SessionWaiter waiter : new ArrayList<>(waiters)) {
+                if (waiters.contains(waiter) && waiter.onSessionEnded(castSession, error)) {
+                    removeWaiter(waiter);
+                }
+            }
+        }
         @Override
-        public void onSessionResuming(CastSession castSession, String sessionId) { }
+        public void onSessionResuming(CastSession castSession, String sessionId) {
+            tracer.instant("sdk", "onSessionResuming");
+            resuming = true;
+        }
         @Override
-        public void onSessionResumed(CastSession castSession, boolean wasSuspended) { }
+        public void onSessionResumed(CastSession castSession, boolean wasSuspended) {
+            tracer.instant("sdk", "onSessionResumed");
+            resuming = false;
+            if (provisionalSession != null) {
+                confirmRejoin(castSession);
+                return;
+            }
+            // Bind the media to the resumed session and let the client know it is connected again
+            media.setSession(castSession);
+            saveSession(castSession, ChromecastUtilities.createSessionObject(castSession));
+            listener.onSessionUpdate(ChromecastUtilities.createSessionSnapshot(castSession, "connected"));
+        }
         @Override
-        public void onSessionResumeFailed(CastSession castSession, int error) { }
+        public void onSessionResumeFailed(CastSession castSession, int error) {
+            tracer.instant("sdk", "onSessionResumeFailed");
+            resuming = false;
+            retractRejoin();
+            clearSavedSession();
+        }
         @Override
-        public void onSessionSuspended(CastSession castSession, int reason) { }
+        public void onSessionSuspended(CastSession castSession, int reason) {
+            tracer.instant("sdk", "onSessionSuspended");
+            if (provisionalSession == null) {
+                // The connection to the receiver was lost for now, the SDK tries to resume it
+                listener.onSessionUpdate(ChromecastUtilities.createSessionSnapshot(castSession, "disconnected"));
+            }
+        }
+    }
+
+    /**
+     * The time to join of selectRoute.
+     */
+    private static final class JoinStats {
+        /** Number of joins that found the route in the cache. */
+        private final AtomicLong cacheHits = new AtomicLong();
+        /** Number of joins that had to scan for the route. */
+        private final AtomicLong cacheMisses = new AtomicLong();
+        /** Number of joins from the cache that failed and fell back to scanning. */
+        private final AtomicLong fallbacks = new AtomicLong();
+        /** Time to join of the routes joined from the cache. */
+        private final ChromecastHistogram cachedJoins = new ChromecastHistogram();
+        /** Time to join of the routes that were scanned for. */
+        private final ChromecastHistogram scanJoins = new ChromecastHistogram();
+        /** Number of attempts that were retried. */
+        private final AtomicLong retries = new AtomicLong();
+        /** Number of joins the retry policy gave up on. */
+        private final AtomicLong gaveUp = new AtomicLong();
+        /** Time from selecting a route to the session start or failure, of each attempt. */
+        private final ChromecastHistogram attempts = new ChromecastHistogram();
+        /** The attempts of the last join that is over. */
+        private volatile JSONArray lastJoin = new JSONArray();
+    }
+
+    /**
+     * Decides if and when selectRoute tries again to join, see ChromecastRetryPolicy.
+     */
+    interface RetryPolicy {
+        /** Returned by getRetryDelay to give up. */
+        long GIVE_UP = -1;
+
+        /**
+         * @return how long (ms) a join can take overall, it fails with a timeout error after that
+         */
+        long getDeadline();
+
+        /**
+         * Called on the main thread when an attempt failed.
+         * @param attempts number of attempts so far
+         * @param errorCode the error, see
+         *                  https://developers.google.com/android/reference/com/google/android/gms/cast/CastStatusCodes
+         * @param endedBeforeStart whether the session ended before it started rather than failed to start
+         * @param elapsedMs time since the join started
+         * @return how long (ms) to wait before the next attempt, or GIVE_UP to fail the join
+         */
+        long getRetryDelay(int attempts, int errorCode, boolean endedBeforeStart, long elapsedMs);
     }
 
     interface SelectRouteCallback {
@@ -532,6 +1115,10 @@ public class ChromecastConnection {
             onError(errorCode);
             return true;
         }
+        @Override
+        public final void onTimeout() {
+            onError(CastStatusCodes.TIMEOUT);
+        }
     }
 
     interface ConnectionCallback {
@@ -558,9 +1145,17 @@ public class ChromecastConnection {
          * @return true if we are done listening for join, false, if we to keep listening
          */
         boolean onSessionEndedBeforeStart(int errorCode);
+
+        /**
+         * Called when we stopped listening because the join took too long.
+         */
+        void onTimeout();
     }
 
-    public abstract static class ScanCallback extends MediaRouter.Callback {
+    /**
+     * Receives the routes of a scan, see ChromecastRouteScanner.
+     */
+    public abstract static class ScanCallback {
         /**
          * Called whenever a route is updated.
          * @param routes the currently available routes
@@ -569,16 +1164,6 @@ public class ChromecastConnection {
 
         /** records whether we have been stopped or not. */
         private boolean stopped = false;
-        /** Global mediaRouter object. */
-        private MediaRouter mediaRouter;
-
-        /**
-         * Sets the mediaRouter object.
-         * @param router mediaRouter object
-         */
-        void setMediaRouter(MediaRouter router) {
-            this.mediaRouter = router;
-        }
 
         /**
          * Call this method when you wish to stop scanning.
@@ -588,48 +1173,24 @@ public class ChromecastConnection {
         void stop() {
             stopped = true;
         }
-        private void onFilteredRouteUpdate() {
-            if (stopped || mediaRouter == null) {
-                return;
-            }
-            List<RouteInfo> outRoutes = new ArrayList<>();
-            // Filter the routes
-            for (RouteInfo route : mediaRouter.getRoutes()) {
-                // We don't want default routes, or duplicate active routes
-                // or multizone duplicates https://github.com/jellyfin/cordova-plugin-chromecast/issues/32
-                Bundle extras = route.getExtras();
-                if (extras != null) {
-                    CastDevice.getFromBundle(extras);
-                    if (extras.getString("com.google.android.gms.cast.EXTRA_SESSION_ID") != null) {
-                        continue;
-                    }
-                }
-                if (!route.isDefault()
-                        && !route.getDescription().equals("Google Cast Multizone Member")
-                        && route.getPlaybackType() == RouteInfo.PLAYBACK_TYPE_REMOTE
-                ) {
-                    outRoutes.add(route);
-                }
-            }
-            onRouteUpdate(outRoutes);
-        }
-        @Override
-        public final void onRouteAdded(MediaRouter router, RouteInfo route) {
-            onFilteredRouteUpdate();
-        }
-        @Override
-        public final void onRouteChanged(MediaRouter router, RouteInfo route) {
-            onFilteredRouteUpdate();
-        }
-        @Override
-        public final void onRouteRemoved(MediaRouter router, RouteInfo route) {
-            onFilteredRouteUpdate();
+
+        /**
+         * @return whether stop was called
+         */
+        boolean isStopped() {
+            return stopped;
         }
     }
 
     abstract static class Listener implements CastStateListener, ChromecastSession.Listener {
         abstract void onReceiverAvailableUpdate(boolean available);
-        abstract void onSessionRejoin(JSONObject jsonSession);
+        /**
+         * @param jsonSession the session to rejoin
+         * @param provisional whether it is the session of the last run, which the SDK
+         *                    hasn't resumed yet: it is followed by a confirmation (the
+         *                    same session not provisional) or an onSessionEnd
+         */
+        abstract void onSessionRejoin(JSONObject jsonSession, boolean provisional);
 
         /** CastStateListener functions. */
         @Override
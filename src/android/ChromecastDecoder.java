@@ -0,0 +1,501 @@
+package acidhax.cordova.chromecast;
+
+import android.graphics.Color;
+import android.net.Uri;
+
+import com.google.android.gms.cast.MediaInfo;
+import com.google.android.gms.cast.MediaMetadata;
+import com.google.android.gms.cast.MediaQueueItem;
+import com.google.android.gms.cast.TextTrackStyle;
+import com.google.android.gms.common.images.WebImage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads the media and queue items sent by the javascript side into Cast SDK objects.
+ *
+ * The fields of each type are declared once as descriptors, and read with presence
+ * and type checks rather than getX() calls in try/catch blocks: a request leaves out
+ * most of the optional fields, and each missing one used to throw and unwind a
+ * JSONException.  Values are converted like JSONObject.getX() does (eg. "12" is
+ * read as the number 12), so the objects built are the same as before.
+ *
+ * A value of the wrong type is left out like a missing one and added to the errors.
+ * Only a missing required value (the media of a queue item) makes the decoding fail.
+ *
+ * One decoder per request, it is not thread safe.
+ */
+final class ChromecastDecoder {
+
+    /** A string, any other value is converted to its string. */
+    private static final int STRING = 0;
+    /** A number, or a string of a number. */
+    private static final int LONG = 1;
+    /** A number, or a string of a number. */
+    private static final int INT = 2;
+    /** A number, or a string of a number. */
+    private static final int DOUBLE = 3;
+    /** A boolean, or "true" / "false". */
+    private static final int BOOLEAN = 4;
+    /** A JSONObject. */
+    private static final int OBJECT = 5;
+    /** A JSONArray of numbers. */
+    private static final int LONG_ARRAY = 6;
+
+    /** The fields of a chrome.cast.media.QueueItem. */
+    private static final Field[] QUEUE_ITEM = {
+        new Field("media", OBJECT),
+        new Field("activeTrackIds", LONG_ARRAY),
+        new Field("autoplay", BOOLEAN),
+        new Field("playbackDuration", DOUBLE),
+        new Field("preloadTime", DOUBLE),
+        new Field("startTime", DOUBLE),
+    };
+    /** Index of the field in QUEUE_ITEM. */
+    private static final int ITEM_MEDIA = 0;
+    /** Index of the field in QUEUE_ITEM. */
+    private static final int ITEM_ACTIVE_TRACK_IDS = 1;
+    /** Index of the field in QUEUE_ITEM. */
+    private static final int ITEM_AUTOPLAY = 2;
+    /** Index of the field in QUEUE_ITEM. */
+    private static final int ITEM_PLAYBACK_DURATION = 3;
+    /** Index of the field in QUEUE_ITEM. */
+    private static final int ITEM_PRELOAD_TIME = 4;
+    /** Index of the field in QUEUE_ITEM. */
+    private static final int ITEM_START_TIME = 5;
+
+    /** The fields of a chrome.cast.media.MediaInfo. */
+    private static final Field[] MEDIA_INFO = {
+        new Field("contentId", STRING),
+        new Field("customData", OBJECT),
+        new Field("contentType", STRING),
+        new Field("duration", LONG),
+        new Field("streamType", STRING),
+        new Field("metadata", OBJECT),
+        new Field("textTrackStyle", OBJECT),
+    };
+    /** Index of the field in MEDIA_INFO. */
+    private static final int MEDIA_CONTENT_ID = 0;
+    /** Index of the field in MEDIA_INFO. */
+    private static final int MEDIA_CUSTOM_DATA = 1;
+    /** Index of the field in MEDIA_INFO. */
+    private static final int MEDIA_CONTENT_TYPE = 2;
+    /** Index of the field in MEDIA_INFO. */
+    private static final int MEDIA_DURATION = 3;
+    /** Index of the field in MEDIA_INFO. */
+    private static final int MEDIA_STREAM_TYPE = 4;
+    /** Index of the field in MEDIA_INFO. */
+    private static final int MEDIA_METADATA = 5;
+    /** Index of the field in MEDIA_INFO. */
+    private static final int MEDIA_TEXT_TRACK_STYLE = 6;
+
+    /** The colors of a chrome.cast.media.TextTrackStyle that are read. */
+    private static final Field[] TEXT_TRACK_STYLE = {
+        new Field("backgroundColor", STRING),
+        new Field("edgeColor", STRING),
+        new Field("foregroundColor", STRING),
+    };
+
+    /** Metadata keys that are not copied as is. */
+    private static final String[] METADATA_SKIPPED = {"metadataType", "images", "type"};
+    /** The descriptors of the known metadata keys seen so far (those with a Cast SDK key), by client key. */
+    private static final ConcurrentHashMap<String, MetadataKey> METADATA_KEYS = new ConcurrentHashMap<>();
+
+    /** The errors found so far. */
+    private List<String> errors;
+    /** Whether a required value is missing. */
+    private boolean failed;
+
+    /**
+     * Reads a queue item.
+     * @param json a chrome.cast.media.QueueItem
+     * @return the item, or null if its media is missing (see getErrors)
+     */
+    MediaQueueItem queueItem(JSONObject json) {
+        Object[] values = read(json, QUEUE_ITEM, "");
+        if (values[ITEM_MEDIA] == null) {
+            failed = true;
+            error("", "media", "is required");
+            return null;
+        }
+        MediaQueueItem.Builder builder = new MediaQueueItem.Builder(mediaInfo((JSONObject) values[ITEM_MEDIA]));
+        if (values[ITEM_ACTIVE_TRACK_IDS] != null) {
+            builder.setActiveTrackIds((long[]) values[ITEM_ACTIVE_TRACK_IDS]);
+        }
+        if (values[ITEM_AUTOPLAY] != null) {
+            builder.setAutoplay((Boolean) values[ITEM_AUTOPLAY]);
+        }
+        if (values[ITEM_PLAYBACK_DURATION] != null) {
+            builder.setPlaybackDuration((Double) values[ITEM_PLAYBACK_DURATION]);
+        }
+        if (values[ITEM_PRELOAD_TIME] != null) {
+            builder.setPreloadTime((Double) values[ITEM_PRELOAD_TIME]);
+        }
+        if (values[ITEM_START_TIME] != null) {
+            builder.setStartTime((Double) values[ITEM_START_TIME]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads a media info, the missing fields get the defaults of loadMedia.
+     * @param json a chrome.cast.media.MediaInfo
+     * @return the media info
+     */
+    MediaInfo mediaInfo(JSONObject json) {
+        Object[] values = read(json, MEDIA_INFO, "media.");
+        MediaMetadata metadata = metadata(values[MEDIA_METADATA] != null ? (JSONObject) values[MEDIA_METADATA] : new JSONObject());
+        TextTrackStyle style = textTrackStyle(values[MEDIA_TEXT_TRACK_STYLE] != null ? (JSONObject) values[MEDIA_TEXT_TRACK_STYLE] : new JSONObject());
+        return ChromecastUtilities.createMediaInfo(
+                values[MEDIA_CONTENT_ID] != null ? (String) values[MEDIA_CONTENT_ID] : "",
+                values[MEDIA_CUSTOM_DATA] != null ? (JSONObject) values[MEDIA_CUSTOM_DATA] : new JSONObject(),
+                values[MEDIA_CONTENT_TYPE] != null ? (String) values[MEDIA_CONTENT_TYPE] : "unknown",
+                values[MEDIA_DURATION] != null ? (Long) values[MEDIA_DURATION] : 0,
+                values[MEDIA_STREAM_TYPE] != null ? (String) values[MEDIA_STREAM_TYPE] : "unknown",
+                metadata, style);
+    }
+
+    /**
+     * Reads a metadata object, the keys that have a Cast SDK equivalent are also added under it.
+     * @param json a chrome.cast.media.*MediaMetadata
+     * @return the metadata
+     */
+    MediaMetadata metadata(JSONObject json) {
+        Object type = json.opt("metadataType");
+        Integer metadataType = type != null ? toInt(type) : null;
+        MediaMetadata metadata = new MediaMetadata(metadataType != null ? metadataType : MediaMetadata.MEDIA_TYPE_GENERIC);
+
+        Object images = json.opt("images");
+        if (images instanceof JSONArray) {
+            JSONArray array = (JSONArray) images;
+            for (int i = 0; i < array.length(); i++) {
+                Object image = array.opt(i);
+                if (!(image instanceof JSONObject)) {
+                    // Like before, an incorrect image ends the list
+                    error("media.metadata.", "images[" + i + "]", "is not an object");
+                    break;
+                }
+                Object url = ((JSONObject) image).opt("url");
+                if (url != null) {
+                    metadata.addImage(new WebImage(Uri.parse(toStringValue(url))));
+                }
+            }
+        }
+
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            MetadataKey descriptor = getMetadataKey(key);
+            if (descriptor == null) {
+                continue;
+            }
+            Object value = json.opt(key);
+            try {
+                if (!putMetadata(metadata, descriptor, value)) {
+                    continue;
+                }
+                // Also always add the client's version of the key because the
+                // MediaMetadata object removes some parameters (see MetadataKey)
+                metadata.putString(descriptor.clientKey, toStringValue(value));
+            } catch (IllegalArgumentException e) {
+                // The SDK refuses the value for this key
+                error("media.metadata.", key, e.getMessage());
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Reads a text track style, only its colors are read.
+     * @param json a chrome.cast.media.TextTrackStyle, or null
+     * @return the style
+     */
+    TextTrackStyle textTrackStyle(JSONObject json) {
+        TextTrackStyle out = new TextTrackStyle();
+        if (json == null) {
+            return out;
+        }
+        Object[] values = read(json, TEXT_TRACK_STYLE, "media.textTrackStyle.");
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null || json.isNull(TEXT_TRACK_STYLE[i].key)) {
+                continue;
+            }
+            int color;
+            try {
+                color = Color.parseColor((String) values[i]);
+            } catch (IllegalArgumentException e) {
+                error("media.textTrackStyle.", TEXT_TRACK_STYLE[i].key, "is not a color");
+                continue;
+            }
+            if (i == 0) {
+                out.setBackgroundColor(color);
+            } else if (i == 1) {
+                out.setEdgeColor(color);
+            } else {
+                out.setForegroundColor(color);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return whether a required value was missing
+     */
+    boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the errors found so far, eg. "media.duration: is not a number"
+     */
+    List<String> getErrors() {
+        return errors != null ? errors : Collections.<String>emptyList();
+    }
+
+    /**
+     * Puts the typed value of a key that has a Cast SDK equivalent.
+     * @param metadata where to put it
+     * @param key the key
+     * @param value the value
+     * @return false if the value is incorrect, then the client's key is not added either
+     */
+    private boolean putMetadata(MediaMetadata metadata, MetadataKey key, Object value) {
+        switch (key.type) {
+            case "string":
+                metadata.putString(key.androidKey, toStringValue(value));
+                return true;
+            case "int":
+                Integer intValue = toInt(value);
+                if (intValue == null) {
+                    error("media.metadata.", key.clientKeyName, "is not a number");
+                    return false;
+                }
+                metadata.putInt(key.androidKey, intValue);
+                return true;
+            case "double":
+                Double doubleValue = toDouble(value);
+                if (doubleValue == null) {
+                    error("media.metadata.", key.clientKeyName, "is not a number");
+                    return false;
+                }
+                metadata.putDouble(key.androidKey, doubleValue);
+                return true;
+            case "date":
+                if (value instanceof Number) {
+                    GregorianCalendar c = new GregorianCalendar();
+                    c.setTimeInMillis(((Number) value).longValue());
+                    metadata.putDate(key.androidKey, c);
+                } else {
+                    // The client's key is still added
+                    error("media.metadata.", key.clientKeyName, "is not a date, dates must be in milliseconds from epoch UTC");
+                }
+                return true;
+            case "ms":
+                Long msValue = toLong(value);
+                if (msValue == null) {
+                    error("media.metadata.", key.clientKeyName, "is not a number");
+                    return false;
+                }
+                metadata.putTimeMillis(key.androidKey, msValue);
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Reads the fields of an object.
+     * @param json the object
+     * @param fields the fields to read
+     * @param path where the object is in the request, for the errors
+     * @return the values in the order of the fields, null for the missing or incorrect ones
+     */
+    private Object[] read(JSONObject json, Field[] fields, String path) {
+        Object[] values = new Object[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            Object value = json.opt(fields[i].key);
+            if (value == null) {
+                continue;
+            }
+            values[i] = convert(value, fields[i].kind);
+            if (values[i] == null && value != JSONObject.NULL) {
+                error(path, fields[i].key, "has an incorrect type");
+            }
+        }
+        return values;
+    }
+
+    private static Object convert(Object value, int kind) {
+        switch (kind) {
+            case STRING:
+                return toStringValue(value);
+            case LONG:
+                return toLong(value);
+            case INT:
+                return toInt(value);
+            case DOUBLE:
+                return toDouble(value);
+            case BOOLEAN:
+                return toBoolean(value);
+            case OBJECT:
+                return value instanceof JSONObject ? value : null;
+            case LONG_ARRAY:
+                return toLongArray(value);
+            default:
+                return null;
+        }
+    }
+
+    private static String toStringValue(Object value) {
+        return value instanceof String ? (String) value : String.valueOf(value);
+    }
+
+    private static Double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            return parseNumber((String) value);
+        }
+        return null;
+    }
+
+    private static Long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        Double number = value instanceof String ? parseNumber((String) value) : null;
+        return number != null ? number.longValue() : null;
+    }
+
+    private static Integer toInt(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        Double number = value instanceof String ? parseNumber((String) value) : null;
+        return number != null ? number.intValue() : null;
+    }
+
+    private static Boolean toBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if ("true".equalsIgnoreCase(String.valueOf(value))) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(String.valueOf(value))) {
+            return false;
+        }
+        return null;
+    }
+
+    private static long[] toLongArray(Object value) {
+        if (!(value instanceof JSONArray)) {
+            return null;
+        }
+        JSONArray array = (JSONArray) value;
+        long[] out = new long[array.length()];
+        for (int i = 0; i < out.length; i++) {
+            Long item = toLong(array.opt(i));
+            if (item == null) {
+                return null;
+            }
+            out[i] = item;
+        }
+        return out;
+    }
+
+    /**
+     * Parses a number sent as a string, rare enough that the exception of
+     * an incorrect one doesn't matter.
+     * @param value the string
+     * @return the number, or null if it isn't one
+     */
+    private static Double parseNumber(String value) {
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void error(String path, String key, String message) {
+        if (errors == null) {
+            errors = new ArrayList<>();
+        }
+        errors.add(path + key + ": " + message);
+    }
+
+    /**
+     * Gets the descriptor of a metadata key.
+     * The descriptors of the known keys are computed once, the others each time so
+     * that keys made up by the page don't pile up in METADATA_KEYS.
+     * @param key the client's key
+     * @return the descriptor, or null if the key is not copied
+     */
+    private static MetadataKey getMetadataKey(String key) {
+        MetadataKey descriptor = METADATA_KEYS.get(key);
+        if (descriptor == null) {
+            for (String skipped : METADATA_SKIPPED) {
+                if (skipped.equals(key)) {
+                    return null;
+                }
+            }
+            descriptor = new MetadataKey(key);
+            if (!descriptor.androidKey.equals(key)) {
+                METADATA_KEYS.put(key, descriptor);
+            }
+        }
+        return descriptor;
+    }
+
+    /**
+     * A field of an object sent by the javascript side.
+     */
+    private static final class Field {
+        /** The key of the field. */
+        private final String key;
+        /** The kind of value, eg. STRING. */
+        private final int kind;
+
+        Field(String fieldKey, int fieldKind) {
+            this.key = fieldKey;
+            this.kind = fieldKind;
+        }
+    }
+
+    /**
+     * How a metadata key of the javascript side is added to the MediaMetadata.
+     */
+    private static final class MetadataKey {
+        /** The key of the javascript side. */
+        private final String clientKeyName;
+        /** The Cast SDK key, or the client's key if there is none. */
+        private final String androidKey;
+        /** The type of the Cast SDK key, see ChromecastUtilities.getMetadataType. */
+        private final String type;
+        /**
+         * The key the client's value is also added under.
+         * If you pass metadataType == 2 == MEDIA_TYPE_TV_SHOW you will lose any subtitle added
+         * for "com.google.android.gms.cast.metadata.SUBTITLE", but this is not in-line with
+         * chrome desktop which preserves the value.  It is really stubborn and if you try to
+         * add the key "subtitle" that is also stripped, hence the prefix.
+         */
+        private final String clientKey;
+
+        MetadataKey(String key) {
+            this.clientKeyName = key;
+            this.androidKey = ChromecastUtilities.getAndroidMetadataName(key);
+            this.type = ChromecastUtilities.getMetadataType(androidKey);
+            this.clientKey = key.equals(androidKey) ? key : "cordova-plugin-chromecast_metadata_key=" + key;
+        }
+    }
+}
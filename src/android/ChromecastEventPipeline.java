@@ -0,0 +1,371 @@
+package acidhax.cordova.chromecast;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers the events going to the javascript side so that a burst of events
+ * crosses the bridge as a single PluginResult.
+ *
+ * Events sent with sendLatest (eg. MEDIA_UPDATE) replace any pending event
+ * with the same name, all other events are delivered in the order they were sent.
+ * MEDIA_UPDATE events are delta encoded when they are flushed (see ChromecastMediaDelta).
+ *
+ * Flushes run on a background thread: the arguments of an event are given
+ * as an {@link Args} that is only rendered there, so that the (potentially large)
+ * JSON is never built on the main thread.  Since flushes happen on a single
+ * thread in the order the events were sent, event order is preserved.
+ *
+ * The events are rendered with a reused ChromecastJsonWriter straight to the
+ * string that crosses the bridge, no JSONObject trees are built along the way.
+ *
+ * An event can be sent with a fingerprint (eg. a MediaSnapshot): if it equals
+ * the fingerprint of the previous event with the same name, the event carries
+ * nothing new and is dropped.
+ */
+final class ChromecastEventPipeline {
+    /** Tag for logging. */
+    private static final String TAG = "Chromecast";
+
+    /** Name of the event that wraps multiple events. */
+    static final String BATCH_EVENT = "BATCH";
+    /** Name of the event that carries media updates. */
+    static final String MEDIA_UPDATE_EVENT = "MEDIA_UPDATE";
+    /** Fingerprint to use for an event without a value (eg. a MEDIA_UPDATE without media). */
+    static final Object NO_VALUE = new Object();
+
+    /** The thread the flushes run on. */
+    private final ChromecastLoop loop;
+    /** How long (ms) to buffer events before flushing, 0 to send them right away. */
+    private final int window;
+    /** The events waiting for the next flush. */
+    private final List<Event> pending = new ArrayList<>();
+    /** Encodes the media updates. */
+    private final ChromecastMediaDelta mediaDelta;
+    /** Records the events and the flushes. */
+    private final ChromecastTracer tracer;
+    /** Renders the events, only used on the flush thread. */
+    private final ChromecastJsonWriter writer = new ChromecastJsonWriter();
+    /** Client's event listener callback. */
+    private CallbackContext eventCallback;
+    /** Whether a flush has been posted to the loop. */
+    private boolean flushScheduled = false;
+    /** The fingerprint of the last event sent with each name, if it had one. */
+    private final Map<String, Object> fingerprints = new HashMap<>();
+
+    /** Number of events sent to the pipeline. */
+    private long eventsIn = 0;
+    /** Number of events dropped because a newer one replaced them. */
+    private long eventsCollapsed = 0;
+    /** Number of events dropped because they were identical to the previous one. */
+    private long eventsSuppressed = 0;
+    /** Number of PluginResults sent to the javascript side. */
+    private long crossingsOut = 0;
+
+    /** Runs a flush. */
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Constructor.
+     * @param windowMs how long (ms) to buffer events before flushing, 0 to disable buffering
+     * @param mediaDeltas whether media updates should be sent as deltas
+     * @param timelineTracer records the events and the flushes
+     */
+    ChromecastEventPipeline(int windowMs, boolean mediaDeltas, ChromecastTracer timelineTracer) {
+        this(ChromecastLooper.start("ChromecastEvents"), windowMs, mediaDeltas, timelineTracer);
+    }
+
+    /**
+     * Constructor.
+     * @param flushLoop the thread the flushes run on, it is quit by shutdown
+     * @param windowMs how long (ms) to buffer events before flushing, 0 to disable buffering
+     * @param mediaDeltas whether media updates should be sent as deltas
+     * @param timelineTracer records the events and the flushes
+     */
+    ChromecastEventPipeline(ChromecastLoop flushLoop, int windowMs, boolean mediaDeltas, ChromecastTracer timelineTracer) {
+        this.tracer = timelineTracer;
+        this.loop = flushLoop;
+        this.window = Math.max(0, windowMs);
+        this.mediaDelta = new ChromecastMediaDelta(mediaDeltas);
+    }
+
+    /**
+     * Sets the callback that will receive the events.
+     * Pending events that were meant for the previous callback are discarded.
+     * @param callback client's event listener callback
+     */
+    synchronized void setCallback(CallbackContext callback) {
+        this.eventCallback = callback;
+        pending.clear();
+        fingerprints.clear();
+        mediaDelta.reset();
+    }
+
+    /**
+     * Re-sends the last media object in full, and makes the next media update a full one.
+     * Called when the javascript side could not apply a media delta.
+     */
+    void resyncMedia() {
+        MediaSnapshot lastMedia = mediaDelta.resync();
+        synchronized (this) {
+            for (Event event : pending) {
+                if (event.name.equals(MEDIA_UPDATE_EVENT)) {
+                    // This newer update will be sent in full anyways
+                    return;
+                }
+            }
+        }
+        if (lastMedia != null) {
+            post(new Event(MEDIA_UPDATE_EVENT, new MediaArgs(lastMedia), true), null);
+        }
+    }
+
+    /**
+     * Stops the flush thread, pending events are discarded.
+     */
+    void shutdown() {
+        synchronized (this) {
+            eventCallback = null;
+            pending.clear();
+        }
+        loop.quit();
+    }
+
+    /**
+     * Sends an event, keeping its order relative to all other events.
+     * @param eventName the name of the JS event to trigger
+     * @param args the arguments to pass the JS event
+     */
+    void send(String eventName, JSONArray args) {
+        send(eventName, new Ready(args));
+    }
+
+    /**
+     * Sends an event, keeping its order relative to all other events.
+     * @param eventName the name of the JS event to trigger
+     * @param args builds the arguments to pass the JS event, called on the flush thread
+     */
+    void send(String eventName, Args args) {
+        post(new Event(eventName, args, false), null);
+    }
+
+    /**
+     * Sends an event that supersedes any pending event with the same name.
+     * Only the latest one will reach the javascript side.
+     * @param eventName the name of the JS event to trigger
+     * @param args the arguments to pass the JS event
+     */
+    void sendLatest(String eventName, JSONArray args) {
+        sendLatest(eventName, new Ready(args));
+    }
+
+    /**
+     * Sends a MEDIA_UPDATE event, it is dropped if the media didn't change.
+     * @param media the media, or null if there is none
+     * @param collapsible whether a newer media update may replace this one
+     */
+    void sendMedia(MediaSnapshot media, boolean collapsible) {
+        post(new Event(MEDIA_UPDATE_EVENT, new MediaArgs(media), collapsible), media != null ? media : NO_VALUE);
+    }
+
+    /**
+     * Sends an event that supersedes any pending event with the same name.
+     * Only the latest one will reach the javascript side.
+     * @param eventName the name of the JS event to trigger
+     * @param args builds the arguments to pass the JS event, called on the flush thread
+     */
+    void sendLatest(String eventName, Args args) {
+        post(new Event(eventName, args, true), null);
+    }
+
+    /**
+     * Sends an event that supersedes any pending event with the same name.
+     * The event is dropped if its fingerprint equals the one of the previous event with the same name.
+     * @param eventName the name of the JS event to trigger
+     * @param fingerprint identifies the content of the event, must implement equals and hashCode
+     * @param args builds the arguments to pass the JS event, called on the flush thread
+     */
+    void sendLatest(String eventName, Object fingerprint, Args args) {
+        post(new Event(eventName, args, true), fingerprint);
+    }
+
+    private void post(Event event, Object fingerprint) {
+        synchronized (this) {
+            if (eventCallback == null) {
+                return;
+            }
+            tracer.instant("event", event.name);
+            eventsIn++;
+            if (fingerprint == null) {
+                // We can't tell what the javascript side has anymore
+                fingerprints.remove(event.name);
+            } else {
+                Object prev = fingerprints.put(event.name, fingerprint);
+                // The hash codes are cached by the snapshots, so this is cheap when they differ
+                if (prev != null && prev.hashCode() == fingerprint.hashCode() && prev.equals(fingerprint)) {
+                    eventsSuppressed++;
+                    return;
+                }
+            }
+            if (event.collapsible) {
+                for (int i = pending.size() - 1; i >= 0; i--) {
+                    Event prev = pending.get(i);
+                    if (prev.collapsible && prev.name.equals(event.name)) {
+                        pending.remove(i);
+                        eventsCollapsed++;
+                        break;
+                    }
+                }
+            }
+            pending.add(event);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                loop.post(flushRunnable, window);
+            }
+        }
+    }
+
+    /**
+     * Sends all pending events to the javascript side.
+     * Runs on the flush thread.
+     */
+    private void flush() {
+        long start = System.nanoTime();
+        CallbackContext callback;
+        List<Event> events;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty() || eventCallback == null) {
+                pending.clear();
+                return;
+            }
+            callback = eventCallback;
+            events = new ArrayList<>(pending);
+            pending.clear();
+            crossingsOut++;
+        }
+        // Render the JSON outside of the lock so that the main thread never waits on it
+        writer.reset();
+        if (events.size() == 1) {
+            write(events.get(0));
+        } else {
+            writer.beginArray().value(BATCH_EVENT).beginArray();
+            for (Event event : events) {
+                write(event);
+            }
+            writer.endArray().endArray();
+        }
+        PluginResult pluginResult = new ChromecastRenderedResult(writer.toString());
+        pluginResult.setKeepCallback(true);
+        callback.sendPluginResult(pluginResult);
+        tracer.span("event", "flush", System.nanoTime() - start);
+    }
+
+    private void write(Event event) {
+        if (event.args instanceof MediaArgs) {
+            mediaDelta.write(writer, ((MediaArgs) event.args).media);
+            return;
+        }
+        writer.beginArray().value(event.name);
+        event.args.write(writer);
+        writer.endArray();
+    }
+
+    /**
+     * Gets the event counters.
+     * @return the counters as JSON
+     */
+    synchronized JSONObject getStats() {
+        JSONObject out = new JSONObject();
+        try {
+            out.put("window", window);
+            out.put("eventsIn", eventsIn);
+            out.put("eventsCollapsed", eventsCollapsed);
+            out.put("eventsSuppressed", eventsSuppressed);
+            out.put("crossingsOut", crossingsOut);
+            out.put("media", mediaDelta.getStats());
+        } catch (JSONException e) {
+            LOG.w(TAG, "Incomplete event stats, " + e.getMessage());
+        }
+        return out;
+    }
+
+    /**
+     * Renders the arguments of an event.
+     */
+    interface Args {
+        /**
+         * Called on the flush thread when the event is sent.
+         * Must write the array of arguments to pass the JS event.
+         * @param out where to write the arguments
+         */
+        void write(ChromecastJsonWriter out);
+    }
+
+    /**
+     * Arguments that are already built.
+     */
+    private static final class Ready implements Args {
+        /** The arguments to pass the JS event. */
+        private final JSONArray args;
+
+        Ready(JSONArray eventArgs) {
+            this.args = eventArgs;
+        }
+
+        @Override
+        public void write(ChromecastJsonWriter out) {
+            out.value(args);
+        }
+    }
+
+    /**
+     * The arguments of a MEDIA_UPDATE event, rendered by the ChromecastMediaDelta.
+     */
+    private static final class MediaArgs implements Args {
+        /** The media, null if there is none. */
+        private final MediaSnapshot media;
+
+        MediaArgs(MediaSnapshot snapshot) {
+            this.media = snapshot;
+        }
+
+        @Override
+        public void write(ChromecastJsonWriter out) {
+            out.beginArray();
+            if (media != null) {
+                ChromecastSerializer.writeMediaObject(out, media);
+            }
+            out.endArray();
+        }
+    }
+
+    private static final class Event {
+        /** The name of the JS event to trigger. */
+        private final String name;
+        /** Builds the arguments to pass the JS event. */
+        private final Args args;
+        /** Whether a newer event with the same name replaces this one. */
+        private final boolean collapsible;
+
+        Event(String eventName, Args eventArgs, boolean isCollapsible) {
+            this.name = eventName;
+            this.args = eventArgs;
+            this.collapsible = isCollapsible;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package acidhax.cordova.chromecast;
+
+import android.os.Build;
+import android.os.Trace;
+
+import org.apache.cordova.LOG;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Where the plugin's work runs.
+ *
+ * Only the Cast SDK (and MediaRouter) calls, which must be made on the main thread,
+ * are run on the main looper.  Everything else, eg. decoding the requests of the
+ * javascript side and encoding the results, runs on the plugin's own background
+ * looper so that it doesn't compete with the app's rendering.
+ *
+ * Every task the plugin runs on the main thread goes through here and is timed:
+ * per task type, the time it ran and the time it waited in the main looper's queue
+ * are kept in lock-free histograms (see getStats and ChromecastHistogram).  The tasks can also be shown
+ * in system traces as "Chromecast:&lt;task&gt;" sections.
+ *
+ * The threads are {@link ChromecastLoop}s: the Android loopers in the app, plain
+ * threads when the plugin is run on a JVM (see ChromecastLoadTest).
+ */
+final class ChromecastExecutor {
+    /** Tag for logging. */
+    private static final String TAG = "Chromecast";
+
+    /** Runs the work of the main thread. */
+    private final ChromecastLoop main;
+    /** Runs the work of the background thread. */
+    private final ChromecastLoop background;
+    /** Whether the main thread tasks are added to system traces. */
+    private final boolean trace;
+    /** Records the main thread tasks, and the rest of the plugin's activity. */
+    private final ChromecastTracer tracer;
+    /** The stats of the main thread tasks by task type. */
+    private final ConcurrentHashMap<String, TaskStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor, starts the background looper.
+     * @param traceTasks whether to add the main thread tasks to system traces (Android 4.3+)
+     * @param timelineTracer records the main thread tasks, it is also shared with the classes using the executor
+     */
+    ChromecastExecutor(boolean traceTasks, ChromecastTracer timelineTracer) {
+        this(ChromecastLooper.main(), ChromecastLooper.start("ChromecastWorker"),
+                traceTasks && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2, timelineTracer);
+    }
+
+    /**
+     * Constructor.
+     * @param mainLoop runs the work of the main thread
+     * @param backgroundLoop runs the work of the background thread, it is quit by shutdown
+     * @param traceTasks whether to add the main thread tasks to system traces, only on Android 4.3+
+     * @param timelineTracer records the main thread tasks, it is also shared with the classes using the executor
+     */
+    ChromecastExecutor(ChromecastLoop mainLoop, ChromecastLoop backgroundLoop, boolean traceTasks, ChromecastTracer timelineTracer) {
+        this.main = mainLoop;
+        this.background = backgroundLoop;
+        this.trace = traceTasks;
+        this.tracer = timelineTracer;
+    }
+
+    /**
+     * @return the plugin's timeline recorder
+     */
+    ChromecastTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Runs Cast SDK work on the main thread, right away if called from it.
+     * @param task the type of task, for the stats
+     * @param work the work
+     */
+    void runOnMain(String task, Runnable work) {
+        if (main.isCurrentThread()) {
+            run(task, work, System.nanoTime());
+        } else {
+            postOnMain(task, work, 0);
+        }
+    }
+
+    /**
+     * Posts work to the main thread.
+     * @param task the type of task, for the stats
+     * @param work the work
+     * @param delay ms to wait before running it
+     */
+    void postOnMain(final String task, final Runnable work, long delay) {
+        final long due = System.nanoTime() + delay * 1000000;
+        main.post(new Runnable() {
+            @Override
+            public void run() {
+                ChromecastExecutor.this.run(task, work, due);
+            }
+        }, delay);
+    }
+
+    /**
+     * Runs work that doesn't need the main thread on the background looper.
+     * @param work the work
+     */
+    void runInBackground(Runnable work) {
+        background.post(work, 0);
+    }
+
+    /**
+     * Stops the background looper, once the work already posted is done.
+     */
+    void shutdown() {
+        background.quit();
+    }
+
+    private void run(String task, Runnable work, long due) {
+        long start = System.nanoTime();
+        if (trace) {
+            Trace.beginSection("Chromecast:" + task);
+        }
+        try {
+            work.run();
+        } finally {
+            if (trace) {
+                Trace.endSection();
+            }
+            long duration = System.nanoTime() - start;
+            tracer.span("main", task, duration);
+            TaskStats taskStats = stats.get(task);
+            if (taskStats == null) {
+                TaskStats created = new TaskStats();
+                taskStats = stats.putIfAbsent(task, created);
+                if (taskStats == null) {
+                    taskStats = created;
+                }
+            }
+            taskStats.duration.record(duration);
+            taskStats.queueDelay.record(start - due);
+        }
+    }
+
+    /**
+     * Gets the stats of the main thread tasks since the plugin started.
+     * The percentiles are accurate to 12.5% (see ChromecastHistogram).
+     * @return {task: {count, totalMs, avgUs, p50Us, p95Us, maxUs,
+     *         queueDelay: {p50Us, p95Us, maxUs}}}
+     */
+    JSONObject getStats() {
+        JSONObject out = new JSONObject();
+        try {
+            for (Map.Entry<String, TaskStats> entry : stats.entrySet()) {
+                ChromecastHistogram duration = entry.getValue().duration;
+                ChromecastHistogram queueDelay = entry.getValue().queueDelay;
+                long count = duration.getCount();
+                JSONObject json = new JSONObject();
+                json.put("count", count);
+                json.put("totalMs", duration.getTotalNanos() / 1000000.0);
+                json.put("avgUs", count > 0 ? duration.getTotalNanos() / count / 1000 : 0);
+                json.put("p50Us", duration.percentile(0.5));
+                json.put("p95Us", duration.percentile(0.95));
+                json.put("maxUs", duration.getMaxNanos() / 1000);
+                json.put("queueDelay", new JSONObject()
+                        .put("p50Us", queueDelay.percentile(0.5))
+                        .put("p95Us", queueDelay.percentile(0.95))
+                        .put("maxUs", queueDelay.getMaxNanos() / 1000));
+                out.put(entry.getKey(), json);
+            }
+        } catch (JSONException e) {
+            LOG.w(TAG, "Incomplete main thread stats, " + e.getMessage());
+        }
+        return out;
+    }
+
+    /**
+     * The stats of a type of task.
+     */
+    private static final class TaskStats {
+        /** How long the task ran. */
+        private final ChromecastHistogram duration = new ChromecastHistogram();
+        /** How long the task waited in the main looper's queue, 0 if it ran right away. */
+        private final ChromecastHistogram queueDelay = new ChromecastHistogram();
+    }
+}
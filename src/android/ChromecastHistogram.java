@@ -0,0 +1,106 @@
+package acidhax.cordova.chromecast;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations with a fixed memory footprint.
+ *
+ * Like an HdrHistogram, each power of 2 (in us) is split in SUB_BUCKETS buckets
+ * of the same width, so the percentiles are accurate to 1 / SUB_BUCKETS of the
+ * value whatever its magnitude (exact below SUB_BUCKETS us).
+ * Recording is safe from any thread.
+ */
+final class ChromecastHistogram {
+
+    /** Number of buckets per power of 2. */
+    private static final int SUB_BUCKETS = 8;
+    /** log2(SUB_BUCKETS). */
+    private static final int SUB_BITS = 3;
+    /** Number of buckets, the last one gets everything above ~3 days. */
+    private static final int BUCKETS = 36 * SUB_BUCKETS;
+
+    /** Number of durations recorded. */
+    private final AtomicLong count = new AtomicLong();
+    /** Sum of the durations. */
+    private final AtomicLong totalNanos = new AtomicLong();
+    /** Longest duration. */
+    private final AtomicLong maxNanos = new AtomicLong();
+    /** Number of durations in each bucket. */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records a duration, negative ones count as 0.
+     * @param nanos the duration
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        count.incrementAndGet();
+        totalNanos.addAndGet(value);
+        buckets.incrementAndGet(bucket(value / 1000));
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * @return the number of durations recorded
+     */
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of the durations
+     */
+    long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /**
+     * @return the longest duration
+     */
+    long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @param fraction eg. 0.95 for p95
+     * @return the upper bound (us) of the bucket of the percentile, 0 if there is nothing recorded
+     */
+    long percentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += buckets.get(i);
+        }
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return upperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        // The bits after the highest one give the bucket within its power of 2
+        int log = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) ((micros >> (log - SUB_BITS)) & (SUB_BUCKETS - 1));
+        return Math.min(BUCKETS - 1, (log - SUB_BITS + 1) * SUB_BUCKETS + sub);
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int log = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1L) << (log - SUB_BITS)) - 1;
+    }
+}
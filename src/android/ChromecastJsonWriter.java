@@ -0,0 +1,389 @@
+package acidhax.cordova.chromecast;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A minimal streaming JSON writer over a reusable StringBuilder.
+ *
+ * Used to render the outbound events straight to the string Cordova sends over
+ * the bridge, instead of building a JSONObject tree and stringifying it.
+ * Unlike android.util.JsonWriter it can splice already rendered JSON (see raw)
+ * and record where the top-level fields of an object were written (see recordFields),
+ * which is what the media deltas need.
+ *
+ * Follows org.json's conventions: null fields are left out, and so are
+ * non-finite numbers since JSON can't hold them.
+ * Not thread safe.
+ */
+final class ChromecastJsonWriter {
+
+    /** Initial capacity of the buffer. */
+    private static final int INITIAL_CAPACITY = 2048;
+    /** Above this capacity the buffer is dropped on reset instead of being reused. */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    /** The output. */
+    private StringBuilder out = new StringBuilder(INITIAL_CAPACITY);
+    /** For each open array/object, whether it already holds a value. */
+    private boolean[] nonEmpty = new boolean[16];
+    /** Number of open arrays/objects. */
+    private int depth = 0;
+    /** Whether a name was just written and its value is expected. */
+    private boolean afterName = false;
+
+    /** Whether the top-level fields of the root object are being recorded. */
+    private boolean recording = false;
+    /** The names of the recorded fields. */
+    private final List<String> fieldNames = new ArrayList<>();
+    /** The start (inclusive) and end (exclusive) of each recorded value, 2 ints per field. */
+    private int[] fieldBounds = new int[64];
+
+    /**
+     * Clears the output so the writer can be reused.
+     */
+    void reset() {
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            out = new StringBuilder(INITIAL_CAPACITY);
+        } else {
+            out.setLength(0);
+        }
+        depth = 0;
+        afterName = false;
+        recording = false;
+        fieldNames.clear();
+    }
+
+    /**
+     * Records where each field of the next root object is written.
+     * Must be called right after reset.
+     */
+    void recordFields() {
+        recording = true;
+    }
+
+    int getFieldCount() {
+        return fieldNames.size();
+    }
+    String getFieldName(int i) {
+        return fieldNames.get(i);
+    }
+    int getFieldStart(int i) {
+        return fieldBounds[i * 2];
+    }
+    int getFieldEnd(int i) {
+        return fieldBounds[i * 2 + 1];
+    }
+
+    int length() {
+        return out.length();
+    }
+    char charAt(int index) {
+        return out.charAt(index);
+    }
+    String substring(int start, int end) {
+        return out.substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+    ChromecastJsonWriter beginObject() {
+        beforeValue();
+        out.append('{');
+        push();
+        return this;
+    }
+
+    ChromecastJsonWriter endObject() {
+        if (recording && depth == 1) {
+            endField();
+        }
+        depth--;
+        out.append('}');
+        return this;
+    }
+
+    ChromecastJsonWriter beginArray() {
+        beforeValue();
+        out.append('[');
+        push();
+        return this;
+    }
+
+    ChromecastJsonWriter endArray() {
+        depth--;
+        out.append(']');
+        return this;
+    }
+
+    ChromecastJsonWriter name(String name) {
+        if (recording && depth == 1) {
+            endField();
+        }
+        separate();
+        string(name);
+        out.append(':');
+        afterName = true;
+        if (recording && depth == 1) {
+            int i = fieldNames.size();
+            if (fieldBounds.length < (i + 1) * 2) {
+                int[] bounds = new int[fieldBounds.length * 2];
+                System.arraycopy(fieldBounds, 0, bounds, 0, fieldBounds.length);
+                fieldBounds = bounds;
+            }
+            fieldNames.add(name);
+            fieldBounds[i * 2] = out.length();
+            fieldBounds[i * 2 + 1] = -1;
+        }
+        return this;
+    }
+
+    ChromecastJsonWriter nullValue() {
+        beforeValue();
+        out.append("null");
+        return this;
+    }
+
+    ChromecastJsonWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    ChromecastJsonWriter value(boolean value) {
+        beforeValue();
+        out.append(value);
+        return this;
+    }
+
+    ChromecastJsonWriter value(long value) {
+        beforeValue();
+        out.append(value);
+        return this;
+    }
+
+    /**
+     * Writes a number, integral values are written without a fraction (like org.json).
+     * @param value the value, non-finite values are written as null
+     * @return this
+     */
+    ChromecastJsonWriter value(double value) {
+        if (!isFinite(value)) {
+            return nullValue();
+        }
+        beforeValue();
+        long longValue = (long) value;
+        if (value == (double) longValue) {
+            out.append(longValue);
+        } else {
+            out.append(value);
+        }
+        return this;
+    }
+
+    /**
+     * Writes any org.json value: JSONObject, JSONArray, String, Boolean, Number or JSONObject.NULL.
+     * @param value the value, null is written as null
+     * @return this
+     */
+    ChromecastJsonWriter value(Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            return nullValue();
+        }
+        if (value instanceof String) {
+            return value((String) value);
+        }
+        if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        }
+        if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return value(((Number) value).doubleValue());
+        }
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            beginObject();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                field(key, object.opt(key));
+            }
+            return endObject();
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                value(array.opt(i));
+            }
+            return endArray();
+        }
+        if (value instanceof Number) {
+            beforeValue();
+            out.append(value);
+            return this;
+        }
+        return value(value.toString());
+    }
+
+    /**
+     * Writes an already rendered JSON value.
+     * @param json the rendered value
+     * @param start start of the value in json (inclusive)
+     * @param end end of the value in json (exclusive)
+     * @return this
+     */
+    ChromecastJsonWriter raw(CharSequence json, int start, int end) {
+        beforeValue();
+        out.append(json, start, end);
+        return this;
+    }
+
+    ChromecastJsonWriter raw(CharSequence json) {
+        return raw(json, 0, json.length());
+    }
+
+    /**
+     * Copies JSON rendered by another writer.
+     * @param json the other writer
+     * @param start start of the value in json (inclusive)
+     * @param end end of the value in json (exclusive)
+     * @return this
+     */
+    ChromecastJsonWriter raw(ChromecastJsonWriter json, int start, int end) {
+        return raw(json.out, start, end);
+    }
+
+    /**
+     * Writes a field, unless the value is null.
+     * @param name the field name
+     * @param value any value accepted by value(Object)
+     * @return this
+     */
+    ChromecastJsonWriter field(String name, Object value) {
+        if (value == null) {
+            return this;
+        }
+        return name(name).value(value);
+    }
+
+    ChromecastJsonWriter field(String name, String value) {
+        if (value == null) {
+            return this;
+        }
+        return name(name).value(value);
+    }
+
+    ChromecastJsonWriter field(String name, long value) {
+        return name(name).value(value);
+    }
+
+    ChromecastJsonWriter field(String name, boolean value) {
+        return name(name).value(value);
+    }
+
+    /**
+     * Writes a number field, unless the value is not finite.
+     * @param name the field name
+     * @param value the value
+     * @return this
+     */
+    ChromecastJsonWriter field(String name, double value) {
+        if (!isFinite(value)) {
+            return this;
+        }
+        return name(name).value(value);
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+
+    private void push() {
+        if (depth == nonEmpty.length) {
+            boolean[] stack = new boolean[depth * 2];
+            System.arraycopy(nonEmpty, 0, stack, 0, depth);
+            nonEmpty = stack;
+        }
+        nonEmpty[depth++] = false;
+    }
+
+    private void separate() {
+        if (depth > 0) {
+            if (nonEmpty[depth - 1]) {
+                out.append(',');
+            }
+            nonEmpty[depth - 1] = true;
+        }
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+        } else {
+            separate();
+        }
+    }
+
+    private void endField() {
+        int i = fieldNames.size() - 1;
+        if (i >= 0 && fieldBounds[i * 2 + 1] < 0) {
+            fieldBounds[i * 2 + 1] = out.length();
+        }
+    }
+
+    private void string(String value) {
+        out.append('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    out.append('\\').append(c);
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F || c == '\u2028' || c == '\u2029') {
+                        // Also escape the line separators, they are not valid in javascript strings
+                        out.append("\\u");
+                        String hex = Integer.toHexString(c);
+                        for (int j = hex.length(); j < 4; j++) {
+                            out.append('0');
+                        }
+                        out.append(hex);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,26 @@
+package acidhax.cordova.chromecast;
+
+/**
+ * A thread that runs the work posted to it in order.
+ *
+ * In the app a loop is an Android looper (see ChromecastLooper), when the
+ * plugin is run on a JVM it is a plain thread (see ChromecastLoadTest).
+ */
+interface ChromecastLoop {
+    /**
+     * @return whether this is called from the loop's thread
+     */
+    boolean isCurrentThread();
+
+    /**
+     * Posts work to the loop.
+     * @param work the work
+     * @param delay ms to wait before running it
+     */
+    void post(Runnable work, long delay);
+
+    /**
+     * Stops the loop, once the work already posted is done.
+     */
+    void quit();
+}
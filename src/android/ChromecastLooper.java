@@ -0,0 +1,55 @@
+package acidhax.cordova.chromecast;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+/**
+ * A loop on an Android looper.
+ */
+final class ChromecastLooper implements ChromecastLoop {
+
+    /** Posts to the looper. */
+    private final Handler handler;
+
+    /**
+     * Constructor.
+     * @param looper the looper
+     */
+    ChromecastLooper(Looper looper) {
+        this.handler = new Handler(looper);
+    }
+
+    /**
+     * @return the loop of the main thread
+     */
+    static ChromecastLooper main() {
+        return new ChromecastLooper(Looper.getMainLooper());
+    }
+
+    /**
+     * Starts a looper on a new thread.
+     * @param name the name of the thread
+     * @return the loop, quit stops the thread
+     */
+    static ChromecastLooper start(String name) {
+        HandlerThread thread = new HandlerThread(name);
+        thread.start();
+        return new ChromecastLooper(thread.getLooper());
+    }
+
+    @Override
+    public boolean isCurrentThread() {
+        return Looper.myLooper() == handler.getLooper();
+    }
+
+    @Override
+    public void post(Runnable work, long delay) {
+        handler.postDelayed(work, delay);
+    }
+
+    @Override
+    public void quit() {
+        handler.getLooper().quitSafely();
+    }
+}
@@ -0,0 +1,196 @@
+package acidhax.cordova.chromecast;
+
+import org.apache.cordova.LOG;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Encodes MEDIA_UPDATE events as deltas relative to the last media object sent.
+ *
+ * The first update (and any update after a resync) is sent in full as
+ * ["MEDIA_UPDATE", [media, seq]].  The following ones only contain the
+ * top-level fields that changed: ["MEDIA_DELTA", [seq, changedFields, removedKeys]].
+ * The javascript side merges the deltas and asks for a resync if it ever
+ * receives a seq it didn't expect.
+ *
+ * The media object is rendered once into a scratch writer that records where each
+ * top-level field was written, the fields are compared in place with the ones
+ * last sent and copied to the output as is.
+ */
+final class ChromecastMediaDelta {
+    /** Tag for logging. */
+    private static final String TAG = "Chromecast";
+
+    /** Whether deltas are sent at all, if false every update is sent in full. */
+    private final boolean enabled;
+    /** Renders the media objects. */
+    private final ChromecastJsonWriter scratch = new ChromecastJsonWriter();
+    /** Sequence number of the last media update sent. */
+    private long seq = 0;
+    /** The last media sent, null if there is none. */
+    private MediaSnapshot lastMedia;
+    /** The rendered JSON of each top-level field of lastMedia. */
+    private final Map<String, String> lastValues = new HashMap<>();
+    /** Whether the next update must be sent in full. */
+    private boolean forceFull = true;
+
+    /** Number of updates sent in full. */
+    private long fullUpdates = 0;
+    /** Number of updates sent as deltas. */
+    private long deltaUpdates = 0;
+    /** Number of resyncs requested. */
+    private long resyncs = 0;
+
+    /**
+     * Constructor.
+     * @param useDeltas if false, every update is sent in full
+     */
+    ChromecastMediaDelta(boolean useDeltas) {
+        this.enabled = useDeltas;
+    }
+
+    /**
+     * Makes the next update a full one, eg. when the javascript side is reloaded.
+     */
+    synchronized void reset() {
+        forceFull = true;
+        lastMedia = null;
+        lastValues.clear();
+    }
+
+    /**
+     * Makes the next update a full one, and returns the last media sent
+     * so that it can be re-sent right away.
+     * @return the last media sent, or null if there is none
+     */
+    synchronized MediaSnapshot resync() {
+        resyncs++;
+        forceFull = true;
+        return lastMedia;
+    }
+
+    /**
+     * Writes a MEDIA_UPDATE event as [eventName, args].
+     * @param out where to write the event
+     * @param media the media to send, or null if there is none
+     */
+    synchronized void write(ChromecastJsonWriter out, MediaSnapshot media) {
+        seq++;
+        if (media == null) {
+            lastMedia = null;
+            lastValues.clear();
+            forceFull = false;
+            fullUpdates++;
+            out.beginArray().value("MEDIA_UPDATE").beginArray().nullValue().value(seq).endArray().endArray();
+            return;
+        }
+
+        boolean full = !enabled || forceFull || lastMedia == null;
+        // The queue items only change along with the queue (and can be many),
+        // so they are not rendered and compared again on every status update
+        boolean sameItems = !full && media.getItems() == lastMedia.getItems();
+        scratch.reset();
+        scratch.recordFields();
+        ChromecastSerializer.writeMediaObject(scratch, media, !sameItems);
+
+        lastMedia = media;
+        forceFull = false;
+
+        if (full) {
+            fullUpdates++;
+            if (enabled) {
+                diff(null, false);
+            }
+            out.beginArray().value("MEDIA_UPDATE").beginArray();
+            out.raw(scratch, 0, scratch.length());
+            out.value(seq).endArray().endArray();
+            return;
+        }
+        deltaUpdates++;
+        out.beginArray().value("MEDIA_DELTA").beginArray().value(seq);
+        diff(out, sameItems);
+        out.endArray().endArray();
+    }
+
+    /**
+     * Updates lastValues with the fields in scratch.
+     * @param out if not null, the changed fields are written to it as an object,
+     *            followed by an array of the removed keys
+     * @param keepItems if true, the items were left out of scratch because they didn't change
+     */
+    private void diff(ChromecastJsonWriter out, boolean keepItems) {
+        if (out != null) {
+            out.beginObject();
+        }
+        int count = scratch.getFieldCount();
+        for (int i = 0; i < count; i++) {
+            String key = scratch.getFieldName(i);
+            int start = scratch.getFieldStart(i);
+            int end = scratch.getFieldEnd(i);
+            if (!matches(lastValues.get(key), start, end)) {
+                lastValues.put(key, scratch.substring(start, end));
+                if (out != null) {
+                    out.name(key).raw(scratch, start, end);
+                }
+            }
+        }
+        if (out != null) {
+            out.endObject().beginArray();
+        }
+        Iterator<String> keys = lastValues.keySet().iterator();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!isField(key, count) && !(keepItems && key.equals("items"))) {
+                keys.remove();
+                if (out != null) {
+                    out.value(key);
+                }
+            }
+        }
+        if (out != null) {
+            out.endArray();
+        }
+    }
+
+    private boolean matches(String last, int start, int end) {
+        if (last == null || last.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < last.length(); i++) {
+            if (last.charAt(i) != scratch.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isField(String key, int count) {
+        for (int i = 0; i < count; i++) {
+            if (key.equals(scratch.getFieldName(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the delta counters.
+     * @return the counters as JSON
+     */
+    synchronized JSONObject getStats() {
+        JSONObject out = new JSONObject();
+        try {
+            out.put("enabled", enabled);
+            out.put("fullUpdates", fullUpdates);
+            out.put("deltaUpdates", deltaUpdates);
+            out.put("resyncs", resyncs);
+        } catch (JSONException e) {
+            LOG.w(TAG, "Incomplete media delta stats, " + e.getMessage());
+        }
+        return out;
+    }
+}
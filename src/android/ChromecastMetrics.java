@@ -0,0 +1,173 @@
+package acidhax.cordova.chromecast;
+
+import android.os.SystemClock;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency of the commands sent to the receiver, per command and receiver model.
+ *
+ * A command is timed from its entry in Chromecast.execute until its result is
+ * sent back to javascript, which for these commands happens in the receiver's
+ * result callback (see track).  The latencies are kept in fixed-memory
+ * histograms (see ChromecastHistogram) along with the number of successes and
+ * failures, see getSnapshot.
+ */
+final class ChromecastMetrics {
+    /** Tag for logging. */
+    private static final String TAG = "Chromecast";
+
+    /** The actions that wait on the receiver. */
+    static final Set<String> RECEIVER_COMMANDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "setReceiverVolumeLevel", "setReceiverMuted", "sendMessage", "loadMedia", "mediaPlay", "mediaPause",
+            "mediaSeek", "setMediaVolume", "mediaStop", "mediaEditTracksInfo", "queueLoad", "queueJumpToItem",
+            "queueInsertItems", "queueRemoveItems", "queueReorderItems", "queueUpdateItems")));
+    /** Max number of receiver models tracked separately, the other ones are counted as OTHER_MODEL. */
+    static final int MAX_MODELS = 16;
+    /** The model of the commands sent without a session. */
+    static final String NO_MODEL = "none";
+    /** The model of the commands sent to receivers once MAX_MODELS are tracked. */
+    static final String OTHER_MODEL = "other";
+
+    /** command -> receiver model -> stats. */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, CommandStats>> commands = new ConcurrentHashMap<>();
+    /** The receiver models tracked so far. */
+    private final ConcurrentHashMap<String, Boolean> models = new ConcurrentHashMap<>();
+    /** When the metrics started (elapsedRealtime ms). */
+    private final long started = SystemClock.elapsedRealtime();
+
+    /**
+     * Starts timing a command.
+     * @param command the action
+     * @param receiverModel the model of the session's receiver, or null if there is no session
+     * @param callbackContext the action's callback
+     * @param webView the plugin's webView
+     * @return the callback to use instead of callbackContext, it records the latency with the first final result
+     */
+    CallbackContext track(String command, String receiverModel, CallbackContext callbackContext, CordovaWebView webView) {
+        return new TimedCallbackContext(callbackContext.getCallbackId(), webView,
+                getStats(command, receiverModel), SystemClock.elapsedRealtimeNanos());
+    }
+
+    private CommandStats getStats(String command, String receiverModel) {
+        String model = receiverModel == null ? NO_MODEL : receiverModel;
+        if (!models.containsKey(model)) {
+            if (models.size() >= MAX_MODELS) {
+                model = OTHER_MODEL;
+            } else {
+                models.putIfAbsent(model, Boolean.TRUE);
+            }
+        }
+        ConcurrentHashMap<String, CommandStats> byModel = commands.get(command);
+        if (byModel == null) {
+            ConcurrentHashMap<String, CommandStats> created = new ConcurrentHashMap<>();
+            byModel = commands.putIfAbsent(command, created);
+            if (byModel == null) {
+                byModel = created;
+            }
+        }
+        CommandStats stats = byModel.get(model);
+        if (stats == null) {
+            CommandStats created = new CommandStats();
+            stats = byModel.putIfAbsent(model, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Gets the latencies since the plugin started.
+     * The percentiles are accurate to 12.5%.
+     * @return {uptimeMs, commands: {command: {receiverModel: {count, success, failure,
+     *         avgMs, p50Ms, p90Ms, p99Ms, maxMs}}}}
+     */
+    JSONObject getSnapshot() {
+        JSONObject out = new JSONObject();
+        try {
+            JSONObject jsonCommands = new JSONObject();
+            for (Map.Entry<String, ConcurrentHashMap<String, CommandStats>> command : commands.entrySet()) {
+                JSONObject jsonModels = new JSONObject();
+                for (Map.Entry<String, CommandStats> model : command.getValue().entrySet()) {
+                    CommandStats stats = model.getValue();
+                    long count = stats.latency.getCount();
+                    jsonModels.put(model.getKey(), new JSONObject()
+                            .put("count", count)
+                            .put("success", stats.success.get())
+                            .put("failure", stats.failure.get())
+                            .put("avgMs", count > 0 ? stats.latency.getTotalNanos() / count / 1000000.0 : 0)
+                            .put("p50Ms", stats.latency.percentile(0.5) / 1000.0)
+                            .put("p90Ms", stats.latency.percentile(0.9) / 1000.0)
+                            .put("p99Ms", stats.latency.percentile(0.99) / 1000.0)
+                            .put("maxMs", stats.latency.getMaxNanos() / 1000000.0));
+                }
+                jsonCommands.put(command.getKey(), jsonModels);
+            }
+            out.put("uptimeMs", SystemClock.elapsedRealtime() - started);
+            out.put("commands", jsonCommands);
+        } catch (JSONException e) {
+            LOG.w(TAG, "Incomplete metrics, " + e.getMessage());
+        }
+        return out;
+    }
+
+    /**
+     * The latencies of a command on a receiver model.
+     */
+    private static final class CommandStats {
+        /** Time from the command's entry to its result. */
+        private final ChromecastHistogram latency = new ChromecastHistogram();
+        /** Number of commands that succeeded. */
+        private final AtomicLong success = new AtomicLong();
+        /** Number of commands that failed. */
+        private final AtomicLong failure = new AtomicLong();
+    }
+
+    /**
+     * Sends the results to the same javascript callback as the action's
+     * CallbackContext, and records the latency of the first final one.
+     */
+    private static final class TimedCallbackContext extends CallbackContext {
+        /** Where the latency goes. */
+        private final CommandStats stats;
+        /** When the command started (elapsedRealtimeNanos). */
+        private final long start;
+
+        TimedCallbackContext(String callbackId, CordovaWebView webView, CommandStats commandStats, long startNanos) {
+            super(callbackId, webView);
+            this.stats = commandStats;
+            this.start = startNanos;
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            boolean first;
+            synchronized (this) {
+                first = !isFinished();
+                super.sendPluginResult(pluginResult);
+            }
+            if (first && !pluginResult.getKeepCallback()) {
+                stats.latency.record(SystemClock.elapsedRealtimeNanos() - start);
+                if (pluginResult.getStatus() == PluginResult.Status.OK.ordinal()) {
+                    stats.success.incrementAndGet();
+                } else {
+                    stats.failure.incrementAndGet();
+                }
+            }
+        }
+    }
+}
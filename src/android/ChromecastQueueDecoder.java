@@ -0,0 +1,178 @@
+package acidhax.cordova.chromecast;
+
+import com.google.android.gms.cast.MediaQueueItem;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts the items of a queue request to MediaQueueItems on several cores.
+ *
+ * The items are split in chunks of CHUNK_SIZE that the calling thread and up to
+ * parallelism - 1 pool threads claim in order, each item is written at its index
+ * so the result keeps the order of the request.  When an item is incorrect no new
+ * chunk after it is started, and the error reports the lowest incorrect index
+ * (the chunks before it were all claimed already, so they still get checked).
+ *
+ * The calling thread does its share of the work, so decoding finishes even if
+ * the pool threads are busy.
+ */
+final class ChromecastQueueDecoder {
+
+    /** Number of items per chunk. */
+    static final int CHUNK_SIZE = 32;
+    /** Below this number of items, the items are converted on the calling thread only. */
+    static final int MIN_PARALLEL_ITEMS = 2 * CHUNK_SIZE;
+    /** Number of threads that convert the items, including the calling thread. */
+    static final int DEFAULT_PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /** The pool threads, idle ones time out. */
+    private static ThreadPoolExecutor pool;
+
+    private ChromecastQueueDecoder() {
+        //not called
+    }
+
+    /**
+     * Converts a range of queue items with DEFAULT_PARALLELISM threads.
+     * @param items JSONObject representations of MediaQueueItems
+     * @param from index of the first item
+     * @param to index after the last item
+     * @param withItemIds whether the items keep their itemId
+     * @return the MediaQueueItems, in order
+     * @throws JSONException If an item is incorrect, the message starts with "items[index]: "
+     */
+    static MediaQueueItem[] decode(JSONArray items, int from, int to, boolean withItemIds) throws JSONException {
+        return decode(items, from, to, withItemIds, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Converts a range of queue items.
+     * @param items JSONObject representations of MediaQueueItems
+     * @param from index of the first item
+     * @param to index after the last item
+     * @param withItemIds whether the items keep their itemId
+     * @param parallelism max number of threads converting the items, including the calling thread
+     * @return the MediaQueueItems, in order
+     * @throws JSONException If an item is incorrect, the message starts with "items[index]: "
+     */
+    static MediaQueueItem[] decode(JSONArray items, int from, int to, boolean withItemIds, int parallelism) throws JSONException {
+        MediaQueueItem[] out = new MediaQueueItem[to - from];
+        int chunks = (out.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int helpers = Math.min(parallelism, chunks) - 1;
+        if (out.length < MIN_PARALLEL_ITEMS || helpers <= 0) {
+            for (int i = 0; i < out.length; i++) {
+                out[i] = decodeItem(items, from + i, withItemIds);
+            }
+            return out;
+        }
+
+        final Job job = new Job(items, from, out, withItemIds, chunks);
+        ThreadPoolExecutor executor = getPool();
+        for (int i = 0; i < helpers; i++) {
+            executor.execute(job);
+        }
+        job.run();
+        try {
+            job.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JSONException("Interrupted while converting the queue items.");
+        }
+        if (job.error != null) {
+            throw job.error;
+        }
+        return out;
+    }
+
+    private static MediaQueueItem decodeItem(JSONArray items, int index, boolean withItemIds) throws JSONException {
+        try {
+            return ChromecastUtilities.createMediaQueueItem(items.getJSONObject(index), withItemIds);
+        } catch (JSONException e) {
+            throw new JSONException("items[" + index + "]: " + e.getMessage());
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getPool() {
+        if (pool == null) {
+            int threads = Math.max(1, DEFAULT_PARALLELISM - 1);
+            pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "ChromecastDecode-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+
+    /**
+     * The conversion of a range of items, run by all the threads taking part.
+     */
+    private static final class Job implements Runnable {
+        /** The items of the request. */
+        private final JSONArray items;
+        /** Index of the first item to convert. */
+        private final int from;
+        /** Where the converted items go. */
+        private final MediaQueueItem[] out;
+        /** Whether the items keep their itemId. */
+        private final boolean withItemIds;
+        /** Number of chunks. */
+        private final int chunks;
+        /** The next chunk to claim. */
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        /** The lowest incorrect index found so far (in out), out.length if none. */
+        private final AtomicInteger failedAt;
+        /** Counts down the claimed chunks as they are done. */
+        private final CountDownLatch done;
+        /** The error of the lowest incorrect item, guarded by this. */
+        private JSONException error;
+
+        Job(JSONArray queueItems, int first, MediaQueueItem[] result, boolean keepItemIds, int chunkCount) {
+            this.items = queueItems;
+            this.from = first;
+            this.out = result;
+            this.withItemIds = keepItemIds;
+            this.chunks = chunkCount;
+            this.failedAt = new AtomicInteger(result.length);
+            this.done = new CountDownLatch(chunkCount);
+        }
+
+        @Override
+        public void run() {
+            for (int chunk = nextChunk.getAndIncrement(); chunk < chunks; chunk = nextChunk.getAndIncrement()) {
+                int start = chunk * CHUNK_SIZE;
+                int end = Math.min(out.length, start + CHUNK_SIZE);
+                for (int i = start; i < end && i < failedAt.get(); i++) {
+                    try {
+                        out[i] = decodeItem(items, from + i, withItemIds);
+                    } catch (JSONException e) {
+                        fail(i, e);
+                        break;
+                    }
+                }
+                done.countDown();
+            }
+        }
+
+        private synchronized void fail(int index, JSONException e) {
+            if (index < failedAt.get()) {
+                failedAt.set(index);
+                error = e;
+            }
+        }
+    }
+}
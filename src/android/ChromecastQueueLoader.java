@@ -0,0 +1,224 @@
+package acidhax.cordova.chromecast;
+
+import com.google.android.gms.cast.MediaQueueItem;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Loads the rest of a large queue once its first items were loaded with queueLoad
+ * (see the progressive option of chrome.cast.media.QueueLoadRequest).
+ *
+ * The items after the loaded ones are appended first, since they are the ones that
+ * play next, then the items before them are inserted before the first loaded item.
+ *
+ * The items are converted a batch at a time on the background thread, and at most
+ * maxInFlight batches wait on the receiver at once.  The batches are sent in order
+ * from the main thread, and the receiver handles the requests in the order it gets
+ * them, so the queue ends up in the order of the request.
+ *
+ * Loading stops at the first error, or when cancelled (eg. another queue is loaded).
+ * All the methods must be called on the main thread.
+ */
+final class ChromecastQueueLoader {
+
+    /** Default number of items loaded before playback starts. */
+    static final int DEFAULT_INITIAL_ITEMS = 20;
+    /** Default number of items per insert request. */
+    static final int DEFAULT_BATCH_SIZE = 100;
+    /** Default number of insert requests waiting on the receiver at once. */
+    static final int DEFAULT_MAX_IN_FLIGHT = 2;
+
+    /** Where the items are inserted. */
+    private final ChromecastSession.Receiver client;
+    /** All the items of the queue load request. */
+    private final JSONArray items;
+    /** Index of the first item that was loaded with queueLoad. */
+    private final int loadedFrom;
+    /** Index after the last item that was loaded with queueLoad. */
+    private final int loadedTo;
+    /** Max number of items per insert request. */
+    private final int batchSize;
+    /** Max number of insert requests waiting on the receiver at once. */
+    private final int maxInFlight;
+    /** Notified of the progress. */
+    private final Listener listener;
+    /** Converts the batches in the background and sends them from the main thread. */
+    private final ChromecastExecutor executor;
+    /** The id of the first item that was loaded with queueLoad, the items before it are inserted before it. */
+    private int anchorItemId;
+    /** Position of the next item to convert, in load order (see indexAt). */
+    private int next;
+    /** Number of insert requests that were not answered yet. */
+    private int inFlight;
+    /** Number of items in the receiver's queue. */
+    private int loaded;
+    /** Whether loading is over. */
+    private boolean finished;
+
+    /**
+     * Constructor.
+     * @param receiver where the items are inserted
+     * @param mainExecutor converts and sends the batches
+     * @param queueItems all the items of the queue load request
+     * @param from index of the first item that was loaded with queueLoad
+     * @param to index after the last item that was loaded with queueLoad
+     * @param itemsPerBatch max number of items per insert request
+     * @param batchesInFlight max number of insert requests waiting on the receiver at once
+     * @param progressListener notified of the progress
+     */
+    ChromecastQueueLoader(ChromecastSession.Receiver receiver, ChromecastExecutor mainExecutor, JSONArray queueItems, int from, int to,
+                          int itemsPerBatch, int batchesInFlight, Listener progressListener) {
+        this.client = receiver;
+        this.executor = mainExecutor;
+        this.items = queueItems;
+        this.loadedFrom = from;
+        this.loadedTo = to;
+        this.batchSize = Math.max(1, itemsPerBatch);
+        this.maxInFlight = Math.max(1, batchesInFlight);
+        this.listener = progressListener;
+        this.loaded = to - from;
+    }
+
+    /**
+     * Starts inserting the remaining items.
+     * @param firstItemId the id the receiver gave to the first loaded item
+     */
+    void start(int firstItemId) {
+        anchorItemId = firstItemId;
+        if (loadedFrom > 0 && anchorItemId == MediaQueueItem.INVALID_ITEM_ID) {
+            fail(ChromecastUtilities.createError("session_error", "Could not find the loaded items in the queue."));
+            return;
+        }
+        listener.onProgress(loaded, items.length(), null);
+        pump();
+    }
+
+    /**
+     * Stops inserting items, the requests already sent are not undone.
+     */
+    void cancel() {
+        if (!finished) {
+            fail(ChromecastUtilities.createError("cancel", "Another queue or media was loaded."));
+        }
+    }
+
+    /**
+     * @return the total number of items to insert
+     */
+    private int remaining() {
+        return items.length() - (loadedTo - loadedFrom);
+    }
+
+    /**
+     * The items after the loaded ones come first, then the ones before them.
+     * @param position the position in load order
+     * @return the index of the item in the request
+     */
+    private int indexAt(int position) {
+        int after = items.length() - loadedTo;
+        return position < after ? loadedTo + position : position - after;
+    }
+
+    /**
+     * Sends batches until maxInFlight are waiting on the receiver.
+     */
+    private void pump() {
+        int after = items.length() - loadedTo;
+        while (!finished && inFlight < maxInFlight && next < remaining()) {
+            final int from = next;
+            // A batch is either appended or inserted before the loaded items, not both
+            int end = from < after ? after : remaining();
+            final int to = Math.min(end, from + batchSize);
+            next = to;
+            inFlight++;
+            executor.runInBackground(new Runnable() {
+                @Override
+                public void run() {
+                    convert(from, to);
+                }
+            });
+        }
+    }
+
+    /**
+     * Converts a batch, on the background thread.
+     * @param from position of the first item, in load order
+     * @param to position after the last item, in load order
+     */
+    private void convert(int from, int to) {
+        final MediaQueueItem[] batch = new MediaQueueItem[to - from];
+        for (int i = 0; i < batch.length; i++) {
+            int index = indexAt(from + i);
+            try {
+                batch[i] = ChromecastUtilities.createMediaQueueItem(items.getJSONObject(index));
+            } catch (JSONException e) {
+                final JSONObject error = ChromecastUtilities.createError("invalid_parameter", "items[" + index + "]: " + e.getMessage());
+                executor.runOnMain("queueLoadFail", new Runnable() {
+                    @Override
+                    public void run() {
+                        fail(error);
+                    }
+                });
+                return;
+            }
+        }
+        final int insertBefore = indexAt(from) < loadedFrom ? anchorItemId : MediaQueueItem.INVALID_ITEM_ID;
+        executor.runOnMain("queueLoadBatch", new Runnable() {
+            @Override
+            public void run() {
+                send(batch, insertBefore);
+            }
+        });
+    }
+
+    /**
+     * Sends a batch to the receiver.
+     * @param batch the items
+     * @param insertBefore id of the item to insert them before, or INVALID_ITEM_ID to append them
+     */
+    private void send(final MediaQueueItem[] batch, int insertBefore) {
+        if (finished) {
+            return;
+        }
+        client.queueInsertItems(batch, insertBefore, null, new ChromecastSession.Receiver.Result() {
+            @Override
+            public void onResult(boolean success, JSONObject customData) {
+                if (finished) {
+                    return;
+                }
+                inFlight--;
+                if (!success) {
+                    fail(ChromecastUtilities.createError("session_error", "Failed to insert queue items."));
+                    return;
+                }
+                loaded += batch.length;
+                if (loaded == items.length()) {
+                    finished = true;
+                }
+                listener.onProgress(loaded, items.length(), null);
+                pump();
+            }
+        });
+    }
+
+    private void fail(JSONObject error) {
+        finished = true;
+        listener.onProgress(loaded, items.length(), error);
+    }
+
+    /**
+     * Notified as the items are inserted.
+     */
+    interface Listener {
+        /**
+         * Called when loading starts, after each batch, and when loading stops.
+         * Loading is over when loadedItems == totalItems or there is an error.
+         * @param loadedItems number of items in the receiver's queue
+         * @param totalItems number of items in the queue load request
+         * @param error why loading stopped, or null
+         */
+        void onProgress(int loadedItems, int totalItems, JSONObject error);
+    }
+}
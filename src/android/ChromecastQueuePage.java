@@ -0,0 +1,129 @@
+package acidhax.cordova.chromecast;
+
+import com.google.android.gms.cast.MediaQueueItem;
+
+import java.util.Arrays;
+
+/**
+ * A page of queue items requested by the javascript side (see queueGetItems).
+ *
+ * The item ids of the page are taken from the queue when the page is requested,
+ * then the items are looked up by id while they are fetched.  So a page never mixes
+ * items from before and after a queue change: items that move are still returned,
+ * and items that are removed meanwhile are left out.
+ *
+ * The cursor returned with a page points at the item that follows it, by id,
+ * so the next page starts at the same item even if items were inserted, removed
+ * or reordered before it.  If that item was removed, the next page starts
+ * at the index it had.
+ *
+ * Not thread safe, the caller synchronizes.
+ */
+final class ChromecastQueuePage {
+
+    /** Max number of items in a page. */
+    static final int MAX_LIMIT = 100;
+
+    /** The ids of the items of the page. */
+    private final int[] itemIds;
+    /** The rendered items, null until they are available. */
+    private final String[] items;
+    /** Whether each item was removed from the queue while the page was being fetched. */
+    private final boolean[] removed;
+    /** The index of the first item of the page. */
+    private final int offset;
+    /** The number of items in the queue when the page was requested. */
+    private final int totalItems;
+    /** Where the next page starts, null if this is the last page. */
+    private final String nextCursor;
+
+    private ChromecastQueuePage(int[] ids, int first, int total, String next) {
+        this.itemIds = ids;
+        this.items = new String[ids.length];
+        this.removed = new boolean[ids.length];
+        this.offset = first;
+        this.totalItems = total;
+        this.nextCursor = next;
+    }
+
+    /**
+     * Creates a page from the current queue.
+     * @param source the queue
+     * @param offset index of the first item, ignored if cursor is given
+     * @param cursor the nextCursor of a previous page, or null
+     * @param limit max number of items, at most MAX_LIMIT
+     * @return the page, its items still need to be fetched with fill
+     */
+    static ChromecastQueuePage create(ChromecastQueueWindow.Source source, int offset, String cursor, int limit) {
+        int[] ids = source.getItemIds();
+        int start = cursor != null ? resolveCursor(source, cursor, ids.length) : offset;
+        start = Math.max(0, Math.min(start, ids.length));
+        int end = Math.min(ids.length, start + Math.max(0, Math.min(limit, MAX_LIMIT)));
+        String next = end < ids.length ? ids[end] + ":" + end : null;
+        return new ChromecastQueuePage(Arrays.copyOfRange(ids, start, end), start, ids.length, next);
+    }
+
+    private static int resolveCursor(ChromecastQueueWindow.Source source, String cursor, int length) {
+        int separator = cursor.indexOf(':');
+        if (separator == -1) {
+            return length;
+        }
+        try {
+            int index = source.indexOfItemWithId(Integer.parseInt(cursor.substring(0, separator)));
+            if (index != -1) {
+                return index;
+            }
+            // The item was removed, start where it was
+            return Integer.parseInt(cursor.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return length;
+        }
+    }
+
+    /**
+     * Gets the items that are available, and requests the others.
+     * @param source the queue
+     * @param writer used to render the items
+     * @return true if all the items are available
+     */
+    boolean fill(ChromecastQueueWindow.Source source, ChromecastJsonWriter writer) {
+        boolean complete = true;
+        for (int i = 0; i < itemIds.length; i++) {
+            if (items[i] != null || removed[i]) {
+                continue;
+            }
+            int index = source.indexOfItemWithId(itemIds[i]);
+            if (index == -1) {
+                removed[i] = true;
+                continue;
+            }
+            // If this returns null the item is being fetched, and itemsUpdatedAtIndexes will be called
+            MediaQueueItem item = source.getItemAtIndex(index);
+            if (item == null) {
+                complete = false;
+            } else {
+                items[i] = ChromecastSerializer.renderQueueItem(writer, item, index);
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Renders the page as {items, offset, totalItems, nextCursor}.
+     * @param out where to render
+     */
+    void write(ChromecastJsonWriter out) {
+        out.beginObject();
+        out.name("items").beginArray();
+        for (String item : items) {
+            if (item != null) {
+                out.raw(item);
+            }
+        }
+        out.endArray();
+        out.field("offset", offset);
+        out.field("totalItems", totalItems);
+        out.name("nextCursor").value(nextCursor);
+        out.endObject();
+    }
+}
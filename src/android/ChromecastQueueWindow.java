@@ -0,0 +1,266 @@
+package acidhax.cordova.chromecast;
+
+import com.google.android.gms.cast.MediaQueueItem;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the queue items around the current item that are sent along with the
+ * media, fetching them from the receiver's queue as needed.
+ *
+ * By default the window is [i-1, i, i+1] (matches chrome desktop implementation),
+ * it can be widened in either direction with setSize.
+ *
+ * Each item is rendered to JSON once and cached by item id.  A cached item is only
+ * rendered again when the queue reports it changed (itemsUpdatedAtIndexes) or when
+ * its index changed, and is dropped once it leaves the window (eg. it was removed).
+ *
+ * The queue is read through a {@link Source} rather than the SDK's MediaQueue,
+ * so the window logic can be driven by something other than a live receiver.
+ * Not thread safe, the caller synchronizes.
+ */
+final class ChromecastQueueWindow {
+
+    /** Default number of items before the current one. */
+    static final int DEFAULT_BEFORE = 1;
+    /** Default number of items after the current one. */
+    static final int DEFAULT_AFTER = 1;
+
+    /** Where the queue items are read from. */
+    private final Source source;
+    /** Called when all the items of the window are available. */
+    private final Listener listener;
+    /** Renders the items. */
+    private final ChromecastJsonWriter writer = new ChromecastJsonWriter();
+    /** The rendered items by item id. */
+    private final Map<Integer, CachedItem> cache = new HashMap<>();
+    /** The indexes of the window that we are waiting on before sending out an update. */
+    private final BitSet pending = new BitSet();
+    /** Number of items before the current one. */
+    private int before = DEFAULT_BEFORE;
+    /** Number of items after the current one. */
+    private int after = DEFAULT_AFTER;
+    /** Index of the first item of the window. */
+    private int first = 0;
+    /** Index of the last item of the window, first - 1 if the window is empty. */
+    private int last = -1;
+    /** Index of the current item, -1 if there is none. */
+    private int current = -1;
+
+    /**
+     * Constructor.
+     * @param queueSource where the queue items are read from
+     * @param windowListener called when all the items of the window are available
+     */
+    ChromecastQueueWindow(Source queueSource, Listener windowListener) {
+        this.source = queueSource;
+        this.listener = windowListener;
+    }
+
+    /**
+     * Sets how many items around the current one are in the window.
+     * Takes effect on the next refresh.
+     * @param itemsBefore number of items before the current one
+     * @param itemsAfter number of items after the current one
+     */
+    void setSize(int itemsBefore, int itemsAfter) {
+        this.before = Math.max(0, itemsBefore);
+        this.after = Math.max(0, itemsAfter);
+    }
+
+    /**
+     * Given i == index of the current item, get items [i-before, i+after].
+     * Note: Exclude items out of range, eg. < 0 and > queue.length.
+     */
+    void refresh() {
+        int len = source.getItemCount();
+        int index = source.getCurrentItemIndex();
+
+        current = index;
+        pending.clear();
+        if (index == -1) {
+            first = 0;
+            last = -1;
+        } else {
+            first = Math.max(0, index - before);
+            last = Math.min(len - 1, index + after);
+            pending.set(first, last + 1);
+        }
+        checkPending();
+    }
+
+    /**
+     * Called when items of the queue were fetched or changed.
+     * @param indexes the indexes of the items
+     */
+    void itemsUpdatedAtIndexes(int[] indexes) {
+        boolean changed = false;
+        for (int index : indexes) {
+            // If we weren't looking for an index, that means it was changed
+            // (rather than just retrieved from the cache)
+            if (!pending.get(index)) {
+                changed = true;
+            }
+            cache.remove(source.getItemIdAtIndex(index));
+        }
+        if (changed) {
+            // The changed item might not be part of the window anyways, so let refresh handle it
+            refresh();
+        } else {
+            // Else, we got new items from the cache
+            checkPending();
+        }
+    }
+
+    /**
+     * Called when items were inserted in the queue.
+     * @param startIndex the index of the first inserted item
+     * @param insertCount the number of inserted items
+     */
+    void itemsInsertedInRange(int startIndex, int insertCount) {
+        if (!isAfterFullWindow(startIndex)) {
+            refresh();
+        }
+    }
+
+    /**
+     * Called when items were removed from the queue.
+     * @param indexes the indexes the items had
+     */
+    void itemsRemovedAtIndexes(int[] indexes) {
+        for (int index : indexes) {
+            if (!isAfterFullWindow(index)) {
+                refresh();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Whether a change at an index leaves the window as is: the index is after the
+     * window, and the window already holds all the items after the current one it can.
+     * @param index the index of the change
+     * @return true if the window doesn't need to be refreshed
+     */
+    private boolean isAfterFullWindow(int index) {
+        return current != -1 && index > last && last - current >= after;
+    }
+
+    /**
+     * Drops all the rendered items, eg. when the whole queue was reloaded.
+     */
+    void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Works to get all the pending items.
+     * After all have been found, send out an update.
+     */
+    private void checkPending() {
+        for (int index = pending.nextSetBit(0); index >= 0; index = pending.nextSetBit(index + 1)) {
+            int itemId = source.getItemIdAtIndex(index);
+            CachedItem cached = cache.get(itemId);
+            if (cached == null || cached.orderId != index) {
+                MediaQueueItem item = source.getItemAtIndex(index);
+                // If this returns null that means the item is not in the cache, which will
+                // trigger itemsUpdatedAtIndexes, which will trigger checkPending again
+                if (item == null) {
+                    continue;
+                }
+                cached = new CachedItem(index, ChromecastSerializer.renderQueueItem(writer, item, index));
+                cache.put(item.getItemId(), cached);
+            }
+            pending.clear(index);
+        }
+        if (pending.isEmpty()) {
+            listener.onWindowUpdated(collect());
+        }
+    }
+
+    /**
+     * Gets the rendered items of the window, and drops the ones that left it.
+     * @return the rendered items
+     */
+    private List<String> collect() {
+        List<String> items = new ArrayList<>(last - first + 1);
+        Map<Integer, CachedItem> kept = new HashMap<>();
+        for (int index = first; index <= last; index++) {
+            int itemId = source.getItemIdAtIndex(index);
+            CachedItem cached = cache.get(itemId);
+            if (cached != null) {
+                items.add(cached.json);
+                kept.put(itemId, cached);
+            }
+        }
+        cache.clear();
+        cache.putAll(kept);
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * The queue of a receiver.
+     */
+    interface Source {
+        /**
+         * @return the number of items in the queue
+         */
+        int getItemCount();
+        /**
+         * @return the index of the current item, -1 if there is none
+         */
+        int getCurrentItemIndex();
+        /**
+         * @return the ids of all the items, available even if the items themselves aren't
+         */
+        int[] getItemIds();
+        /**
+         * @param index the index of an item
+         * @return the id of the item, available even if the item itself isn't
+         */
+        int getItemIdAtIndex(int index);
+        /**
+         * @param itemId the id of an item
+         * @return the index of the item, -1 if it isn't in the queue
+         */
+        int indexOfItemWithId(int itemId);
+        /**
+         * Gets an item, if it isn't available yet it must be fetched and
+         * itemsUpdatedAtIndexes called once it is.
+         * @param index the index of the item
+         * @return the item, or null if it isn't available yet
+         */
+        MediaQueueItem getItemAtIndex(int index);
+    }
+
+    /**
+     * Receives the items of the window.
+     */
+    interface Listener {
+        /**
+         * Called when all the items of the window are available.
+         * @param items the rendered queue items
+         */
+        void onWindowUpdated(List<String> items);
+    }
+
+    /**
+     * A rendered queue item.
+     */
+    private static final class CachedItem {
+        /** The index of the item when it was rendered. */
+        private final int orderId;
+        /** The rendered item. */
+        private final String json;
+
+        CachedItem(int index, String rendered) {
+            this.orderId = index;
+            this.json = rendered;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package acidhax.cordova.chromecast;
+
+import org.apache.cordova.PluginResult;
+
+/**
+ * A successful result whose JSON message is already rendered (eg. by a ChromecastJsonWriter).
+ * Cordova copies the message of JSON results as is into the javascript it evaluates,
+ * so we hand it the rendered string instead of a JSONObject it would stringify.
+ */
+final class ChromecastRenderedResult extends PluginResult {
+    /** The rendered JSON message. */
+    private final String json;
+
+    /**
+     * Constructor.
+     * @param message the rendered JSON, must be valid JSON
+     */
+    ChromecastRenderedResult(String message) {
+        super(Status.OK, message);
+        this.json = message;
+    }
+
+    @Override
+    public int getMessageType() {
+        return MESSAGE_TYPE_JSON;
+    }
+
+    @Override
+    public String getMessage() {
+        return json;
+    }
+}
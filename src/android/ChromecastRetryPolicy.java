@@ -0,0 +1,101 @@
+package acidhax.cordova.chromecast;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The default retry policy of selectRoute: exponential backoff with jitter.
+ *
+ * The n-th retry waits initialDelay * multiplier^(n-1) ms, at most maxDelay,
+ * minus a random part of up to jitter of it so that the clients of a busy
+ * receiver don't retry in lockstep.  A session start failure is retried if its
+ * error code is one of retryOn (by default network error and timeout, see
+ * https://developers.google.com/android/reference/com/google/android/gms/cast/CastStatusCodes),
+ * a session that ends before it started always is (see ConnectionCallback.onSessionEndedBeforeStart).
+ * There are no retries after maxAttempts attempts, or when the next attempt would
+ * start after the deadline: the error is sent right away instead of at the deadline.
+ *
+ * All the methods must be called on the main thread.
+ */
+final class ChromecastRetryPolicy implements ChromecastConnection.RetryPolicy {
+
+    /** Default max number of attempts (the first one and 10 retries). */
+    static final int DEFAULT_MAX_ATTEMPTS = 11;
+    /** Default delay (ms) before the first retry. */
+    static final long DEFAULT_INITIAL_DELAY = 200;
+    /** Default max delay (ms) between two attempts. */
+    static final long DEFAULT_MAX_DELAY = 3000;
+    /** Default growth of the delay from one retry to the next. */
+    static final double DEFAULT_MULTIPLIER = 2;
+    /** Default random part of the delays. */
+    static final double DEFAULT_JITTER = 0.5;
+    /** Default time (ms) a join can take overall. */
+    static final long DEFAULT_DEADLINE = 15000;
+    /** CastStatusCodes.NETWORK_ERROR. */
+    private static final int NETWORK_ERROR = 7;
+    /** CastStatusCodes.TIMEOUT. */
+    private static final int TIMEOUT = 15;
+
+    /** Max number of attempts. */
+    private final int maxAttempts;
+    /** Delay (ms) before the first retry. */
+    private final long initialDelay;
+    /** Max delay (ms) between two attempts. */
+    private final long maxDelay;
+    /** Growth of the delay from one retry to the next. */
+    private final double multiplier;
+    /** Random part of the delays, from 0 (none) to 1 (anything from 0 to the delay). */
+    private final double jitter;
+    /** Time (ms) a join can take overall. */
+    private final long deadline;
+    /** The session start error codes that are retried. */
+    private final Set<Integer> retryOn = new HashSet<>();
+    /** Picks the jitter. */
+    private final Random random = new Random();
+
+    /**
+     * Constructor.
+     * @param options {maxAttempts, initialDelay, maxDelay, multiplier, jitter, deadline, retryOn: [errorCode]},
+     *                all optional, null for the defaults
+     */
+    ChromecastRetryPolicy(JSONObject options) {
+        JSONObject opts = options != null ? options : new JSONObject();
+        this.maxAttempts = Math.max(1, opts.optInt("maxAttempts", DEFAULT_MAX_ATTEMPTS));
+        this.initialDelay = Math.max(0, opts.optLong("initialDelay", DEFAULT_INITIAL_DELAY));
+        this.maxDelay = Math.max(initialDelay, opts.optLong("maxDelay", DEFAULT_MAX_DELAY));
+        this.multiplier = Math.max(1, opts.optDouble("multiplier", DEFAULT_MULTIPLIER));
+        this.jitter = Math.min(1, Math.max(0, opts.optDouble("jitter", DEFAULT_JITTER)));
+        this.deadline = Math.max(0, opts.optLong("deadline", DEFAULT_DEADLINE));
+        JSONArray codes = opts.optJSONArray("retryOn");
+        if (codes == null) {
+            retryOn.add(NETWORK_ERROR);
+            retryOn.add(TIMEOUT);
+        } else {
+            for (int i = 0; i < codes.length(); i++) {
+                retryOn.add(codes.optInt(i));
+            }
+        }
+    }
+
+    @Override
+    public long getDeadline() {
+        return deadline;
+    }
+
+    @Override
+    public long getRetryDelay(int attempts, int errorCode, boolean endedBeforeStart, long elapsedMs) {
+        if (attempts >= maxAttempts || (!endedBeforeStart && !retryOn.contains(errorCode))) {
+            return GIVE_UP;
+        }
+        double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, attempts - 1));
+        long jittered = Math.round(delay * (1 - jitter * random.nextDouble()));
+        if (elapsedMs + jittered >= deadline) {
+            return GIVE_UP;
+        }
+        return jittered;
+    }
+}
@@ -0,0 +1,275 @@
+package acidhax.cordova.chromecast;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import androidx.mediarouter.media.MediaRouteSelector;
+import androidx.mediarouter.media.MediaRouter;
+import androidx.mediarouter.media.MediaRouter.RouteInfo;
+
+import com.google.android.gms.cast.CastDevice;
+
+import org.apache.cordova.LOG;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The single MediaRouter callback of the plugin, shared by all the route scans
+ * (initialize's availability check, selectRoute and the client's startRouteScan).
+ *
+ * The routes are filtered once per MediaRouter event and the result is fanned out
+ * to the subscribed ScanCallbacks.  Subscribers that need an active scan are
+ * reference counted: the active scan runs while at least one of them is
+ * subscribed, then the callback drops to passive discovery while there are
+ * other subscribers, and is removed when there are none.
+ *
+ * The routes seen by the scans are remembered with the time they were last seen
+ * (see getCachedRoute), so that selectRoute can join a route without scanning for it.
+ *
+ * All the methods must be called on the main thread, except getStats.
+ */
+final class ChromecastRouteScanner {
+    /** Tag for logging. */
+    private static final String TAG = "Chromecast";
+
+    /** Flags of the callback while nothing is registered. */
+    private static final int NOT_REGISTERED = -1;
+
+    /** The router. */
+    private final MediaRouter router;
+    /** Records the route events. */
+    private final ChromecastTracer tracer;
+    /** The subscribers, and whether each needs an active scan. */
+    private final Map<ChromecastConnection.ScanCallback, Boolean> subscribers = new LinkedHashMap<>();
+    /** Number of subscribers that need an active scan. */
+    private int activeRequests;
+    /** The routes to look for. */
+    private MediaRouteSelector selector;
+    /** The flags the callback is registered with, or NOT_REGISTERED. */
+    private int registeredFlags = NOT_REGISTERED;
+    /** When each route was last seen by a scan (elapsedRealtime), by id. */
+    private final Map<String, Long> lastSeen = new HashMap<>();
+
+    /** Number of subscribers, for getStats, guarded by this. */
+    private int subscriberCount;
+    /** Number of subscribers that need an active scan, for getStats, guarded by this. */
+    private int activeCount;
+    /** Number of times the active scan was started, guarded by this. */
+    private long activeScans;
+    /** Time spent in active scans that are over, guarded by this. */
+    private long activeScanNanos;
+    /** When the current active scan started, 0 if none, guarded by this. */
+    private long activeSince;
+    /** Number of MediaRouter route events, guarded by this. */
+    private long routeEvents;
+
+    /** Receives the MediaRouter events. */
+    private final MediaRouter.Callback callback = new MediaRouter.Callback() {
+        @Override
+        public void onRouteAdded(MediaRouter mediaRouter, RouteInfo route) {
+            tracer.instant("sdk", "onRouteAdded");
+            onRoutesChanged();
+        }
+        @Override
+        public void onRouteChanged(MediaRouter mediaRouter, RouteInfo route) {
+            tracer.instant("sdk", "onRouteChanged");
+            onRoutesChanged();
+        }
+        @Override
+        public void onRouteRemoved(MediaRouter mediaRouter, RouteInfo route) {
+            tracer.instant("sdk", "onRouteRemoved");
+            onRoutesChanged();
+        }
+    };
+
+    /**
+     * Constructor.
+     * @param mediaRouter the router
+     * @param timelineTracer records the route events
+     */
+    ChromecastRouteScanner(MediaRouter mediaRouter, ChromecastTracer timelineTracer) {
+        this.router = mediaRouter;
+        this.tracer = timelineTracer;
+    }
+
+    /**
+     * Sets the routes to look for, eg. when the appId changes.
+     * @param routeSelector the routes to look for
+     */
+    void setSelector(MediaRouteSelector routeSelector) {
+        selector = routeSelector;
+        if (registeredFlags != NOT_REGISTERED) {
+            // Flags and selectors can only be added to a registered callback, so start over
+            router.removeCallback(callback);
+            router.addCallback(selector, callback, registeredFlags);
+        }
+    }
+
+    /**
+     * Subscribes to the filtered routes, or changes whether the subscriber needs an active scan.
+     * The subscriber gets the current routes right away.
+     * @param scan the subscriber
+     * @param activeScan whether the subscriber needs an active scan
+     */
+    void subscribe(ChromecastConnection.ScanCallback scan, boolean activeScan) {
+        Boolean prev = subscribers.put(scan, activeScan);
+        if (prev != null && prev) {
+            activeRequests--;
+        }
+        if (activeScan) {
+            activeRequests++;
+        }
+        update();
+        // After the callback was registered, so that the subscriber can unsubscribe from here
+        scan.onRouteUpdate(getRoutes());
+    }
+
+    /**
+     * Stops sending routes to a subscriber, does nothing if it isn't subscribed.
+     * @param scan the subscriber
+     */
+    void unsubscribe(ChromecastConnection.ScanCallback scan) {
+        Boolean active = subscribers.remove(scan);
+        if (active == null) {
+            return;
+        }
+        if (active) {
+            activeRequests--;
+        }
+        update();
+    }
+
+    /**
+     * @return the routes that can be cast to, from what the router knows now
+     */
+    List<RouteInfo> getRoutes() {
+        List<RouteInfo> out = new ArrayList<>();
+        for (RouteInfo route : router.getRoutes()) {
+            // We don't want default routes, or duplicate active routes
+            // or multizone duplicates https://github.com/jellyfin/cordova-plugin-chromecast/issues/32
+            Bundle extras = route.getExtras();
+            if (extras != null) {
+                CastDevice.getFromBundle(extras);
+                if (extras.getString("com.google.android.gms.cast.EXTRA_SESSION_ID") != null) {
+                    continue;
+                }
+            }
+            if (!route.isDefault()
+                    && !route.getDescription().equals("Google Cast Multizone Member")
+                    && route.getPlaybackType() == RouteInfo.PLAYBACK_TYPE_REMOTE
+            ) {
+                out.add(route);
+            }
+        }
+        long now = SystemClock.elapsedRealtime();
+        for (RouteInfo route : out) {
+            lastSeen.put(route.getId(), now);
+        }
+        return Collections.unmodifiableList(out);
+    }
+
+    /**
+     * Finds a route that was seen recently, so that it can be selected without scanning for it.
+     * The router ignores attempts to select a route it removed, so the route must also
+     * still be known by the router (routes come and go between scans).
+     * @param routeId the route id
+     * @param ttl how long (ms) ago the route may have been seen
+     * @return the router's route, or null if it wasn't seen in the last ttl ms or the router doesn't know it
+     */
+    RouteInfo getCachedRoute(String routeId, long ttl) {
+        Long seen = lastSeen.get(routeId);
+        if (seen == null || SystemClock.elapsedRealtime() - seen > ttl) {
+            return null;
+        }
+        for (RouteInfo route : router.getRoutes()) {
+            if (route.getId().equals(routeId)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Can be called from any thread.
+     * @return {subscribers, activeRequests, activeScans, activeScanMs, routeEvents},
+     *         activeScanMs includes the current active scan
+     */
+    synchronized JSONObject getStats() {
+        JSONObject out = new JSONObject();
+        try {
+            long nanos = activeScanNanos;
+            if (activeSince != 0) {
+                nanos += SystemClock.elapsedRealtimeNanos() - activeSince;
+            }
+            out.put("subscribers", subscriberCount);
+            out.put("activeRequests", activeCount);
+            out.put("activeScans", activeScans);
+            out.put("activeScanMs", nanos / 1000000);
+            out.put("routeEvents", routeEvents);
+        } catch (JSONException e) {
+            LOG.w(TAG, "Incomplete route scan stats, " + e.getMessage());
+        }
+        return out;
+    }
+
+    private void onRoutesChanged() {
+        synchronized (this) {
+            routeEvents++;
+        }
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        List<RouteInfo> routes = getRoutes();
+        // Subscribers may unsubscribe while being notified
+        for (ChromecastConnection.ScanCallback scan : new ArrayList<>(subscribers.keySet())) {
+            if (subscribers.containsKey(scan) && !scan.isStopped()) {
+                scan.onRouteUpdate(routes);
+            }
+        }
+    }
+
+    /**
+     * Registers the callback with the flags the subscribers need.
+     */
+    private void update() {
+        synchronized (this) {
+            subscriberCount = subscribers.size();
+            activeCount = activeRequests;
+        }
+        int flags;
+        if (activeRequests > 0) {
+            flags = MediaRouter.CALLBACK_FLAG_PERFORM_ACTIVE_SCAN;
+        } else if (!subscribers.isEmpty()) {
+            flags = MediaRouter.CALLBACK_FLAG_REQUEST_DISCOVERY;
+        } else {
+            flags = NOT_REGISTERED;
+        }
+        if (flags == registeredFlags) {
+            return;
+        }
+        if (registeredFlags != NOT_REGISTERED) {
+            router.removeCallback(callback);
+        }
+        if (flags != NOT_REGISTERED) {
+            router.addCallback(selector, callback, flags);
+        }
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtimeNanos();
+            if (flags == MediaRouter.CALLBACK_FLAG_PERFORM_ACTIVE_SCAN) {
+                activeScans++;
+                activeSince = now;
+            } else if (activeSince != 0) {
+                activeScanNanos += now - activeSince;
+                activeSince = 0;
+            }
+            registeredFlags = flags;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package acidhax.cordova.chromecast;
+
+import android.os.SystemClock;
+
+import androidx.mediarouter.media.MediaRouter;
+import androidx.mediarouter.media.MediaRouter.RouteInfo;
+
+import com.google.android.gms.cast.CastDevice;
+
+import org.apache.cordova.LOG;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the route updates of a scan into debounced diffs for the javascript side.
+ *
+ * The tracker keeps the routes last sent to javascript by id.  The first update is
+ * sent right away, later ones once no update came for quietPeriod ms (or at most
+ * MAX_QUIET_PERIODS quiet periods after the first pending update), as
+ * {added: [route], changed: [route], removed: [id]}.  Updates that leave the visible
+ * routes (id, name, isNearbyDevice, isCastGroup) unchanged are not sent, except for
+ * the first one.
+ *
+ * All the methods must be called on the main thread, except stop.
+ */
+final class ChromecastRouteTracker {
+    /** Tag for logging. */
+    private static final String TAG = "Chromecast";
+
+    /** Default quiet period (ms). */
+    static final int DEFAULT_QUIET_PERIOD = 200;
+    /** A pending diff is sent after at most this many quiet periods, even if the routes keep changing. */
+    static final int MAX_QUIET_PERIODS = 4;
+
+    /** Posts the delayed flushes. */
+    private final ChromecastExecutor executor;
+    /** Quiet period (ms). */
+    private final int quietPeriod;
+    /** Gets the diffs. */
+    private final Listener listener;
+    /** The routes last sent, by id. */
+    private final Map<String, Route> sent = new LinkedHashMap<>();
+    /** The latest routes, not sent yet, or null. */
+    private List<RouteInfo> pending;
+    /** When the oldest pending update came (elapsedRealtime), 0 if none. */
+    private long pendingSince;
+    /** Incremented with each update, a flush only sends if no update came after it was posted. */
+    private int generation;
+    /** Whether the first update was sent. */
+    private boolean started;
+    /** Whether the tracker was stopped. */
+    private volatile boolean stopped;
+
+    /**
+     * Constructor.
+     * @param mainExecutor posts the delayed flushes
+     * @param quietPeriodMs how long (ms) the routes must stay unchanged before a diff is sent
+     * @param diffListener gets the diffs
+     */
+    ChromecastRouteTracker(ChromecastExecutor mainExecutor, int quietPeriodMs, Listener diffListener) {
+        this.executor = mainExecutor;
+        this.quietPeriod = Math.max(0, quietPeriodMs);
+        this.listener = diffListener;
+    }
+
+    /**
+     * @param routes the current routes of the scan
+     */
+    void update(List<RouteInfo> routes) {
+        if (stopped) {
+            return;
+        }
+        pending = routes;
+        if (!started || quietPeriod == 0) {
+            // The first diff is sent even if empty, so that javascript knows the routes
+            flush(!started);
+            started = true;
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (pendingSince == 0) {
+            pendingSince = now;
+        }
+        final int flushGeneration = ++generation;
+        // The last flush that can run is due MAX_QUIET_PERIODS after the first pending update
+        long delay = Math.min(quietPeriod, pendingSince + (long) MAX_QUIET_PERIODS * quietPeriod - now);
+        executor.postOnMain("routeDiff", new Runnable() {
+            @Override
+            public void run() {
+                long age = SystemClock.elapsedRealtime() - pendingSince;
+                if (flushGeneration == generation || (pendingSince != 0 && age >= (long) MAX_QUIET_PERIODS * quietPeriod)) {
+                    flush(false);
+                }
+            }
+        }, Math.max(0, delay));
+    }
+
+    /**
+     * Makes the tracker send nothing anymore, can be called from any thread.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    private void flush(boolean force) {
+        List<RouteInfo> routes = pending;
+        pending = null;
+        pendingSince = 0;
+        if (routes == null || stopped) {
+            return;
+        }
+        JSONArray added = new JSONArray();
+        JSONArray changed = new JSONArray();
+        JSONArray removed = new JSONArray();
+        Map<String, Route> current = new LinkedHashMap<>();
+        for (RouteInfo info : routes) {
+            Route route = new Route(info);
+            current.put(route.id, route);
+            Route prev = sent.get(route.id);
+            if (prev == null) {
+                added.put(route.toJSON());
+            } else if (!prev.equals(route)) {
+                changed.put(route.toJSON());
+            }
+        }
+        for (String id : sent.keySet()) {
+            if (!current.containsKey(id)) {
+                removed.put(id);
+            }
+        }
+        sent.clear();
+        sent.putAll(current);
+        if (!force && added.length() == 0 && changed.length() == 0 && removed.length() == 0) {
+            return;
+        }
+        JSONObject diff = new JSONObject();
+        try {
+            diff.put("added", added);
+            diff.put("changed", changed);
+            diff.put("removed", removed);
+        } catch (JSONException e) {
+            LOG.w(TAG, "Incomplete routes diff, " + e.getMessage());
+        }
+        listener.onRoutesDiff(diff);
+    }
+
+    /**
+     * What the javascript side knows of a route (see chrome.cast.cordova.Route).
+     */
+    private static final class Route {
+        /** The route id. */
+        private final String id;
+        /** The route name. */
+        private final String name;
+        /** Whether the device is not on the local network, null if it isn't a cast device. */
+        private final Boolean nearby;
+        /** Whether the route is a group, null if it isn't a cast device. */
+        private final Boolean group;
+
+        Route(RouteInfo route) {
+            this.id = route.getId();
+            this.name = route.getName();
+            CastDevice device = CastDevice.getFromBundle(route.getExtras());
+            this.nearby = device != null ? !device.isOnLocalNetwork() : null;
+            this.group = device != null ? route instanceof MediaRouter.RouteGroup : null;
+        }
+
+        JSONObject toJSON() {
+            JSONObject obj = new JSONObject();
+            try {
+                obj.put("name", name);
+                obj.put("id", id);
+                if (nearby != null) {
+                    obj.put("isNearbyDevice", nearby);
+                    obj.put("isCastGroup", group);
+                }
+            } catch (JSONException e) {
+                LOG.w(TAG, "Incomplete route, " + e.getMessage());
+            }
+            return obj;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Route)) {
+                return false;
+            }
+            Route other = (Route) o;
+            return id.equals(other.id) && equal(name, other.name) && equal(nearby, other.nearby) && equal(group, other.group);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * Gets the route diffs.
+     */
+    interface Listener {
+        /**
+         * @param diff {added: [route], changed: [route], removed: [id]}, only the first one can be empty
+         */
+        void onRoutesDiff(JSONObject diff);
+    }
+}
@@ -0,0 +1,294 @@
+package acidhax.cordova.chromecast;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.cast.ApplicationMetadata;
+import com.google.android.gms.cast.Cast;
+import com.google.android.gms.cast.MediaLoadRequestData;
+import com.google.android.gms.cast.MediaQueueItem;
+import com.google.android.gms.cast.MediaSeekOptions;
+import com.google.android.gms.cast.MediaStatus;
+import com.google.android.gms.cast.TextTrackStyle;
+import com.google.android.gms.cast.framework.CastSession;
+import com.google.android.gms.cast.framework.media.MediaQueue;
+import com.google.android.gms.cast.framework.media.RemoteMediaClient;
+import com.google.android.gms.cast.framework.media.RemoteMediaClient.MediaChannelResult;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.common.api.Status;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The receiver of a live CastSession, through its RemoteMediaClient and MediaQueue.
+ * All the methods must be called on the main thread.
+ */
+final class ChromecastSdkReceiver implements ChromecastSession.Receiver {
+
+    /** The session. */
+    private final CastSession session;
+    /** The media client of the session. */
+    private final RemoteMediaClient client;
+    /** The queue of the media client. */
+    private final MediaQueue queue;
+
+    private ChromecastSdkReceiver(CastSession castSession, RemoteMediaClient remoteMediaClient) {
+        this.session = castSession;
+        this.client = remoteMediaClient;
+        this.queue = remoteMediaClient.getMediaQueue();
+    }
+
+    /**
+     * @param castSession the session
+     * @return the receiver of the session, or null if the session has no media client
+     */
+    static ChromecastSdkReceiver create(@NonNull CastSession castSession) {
+        RemoteMediaClient remoteMediaClient = castSession.getRemoteMediaClient();
+        return remoteMediaClient == null ? null : new ChromecastSdkReceiver(castSession, remoteMediaClient);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ChromecastSdkReceiver && session.equals(((ChromecastSdkReceiver) o).session);
+    }
+
+    @Override
+    public int hashCode() {
+        return session.hashCode();
+    }
+
+    @Override
+    public String getModelName() {
+        return session.getCastDevice() != null ? session.getCastDevice().getModelName() : null;
+    }
+
+    @Override
+    public boolean hasMediaStatus() {
+        return client.getMediaStatus() != null;
+    }
+
+    @Override
+    public int getPlayerState() {
+        MediaStatus status = client.getMediaStatus();
+        return status != null ? status.getPlayerState() : MediaStatus.PLAYER_STATE_UNKNOWN;
+    }
+
+    @Override
+    public int getCurrentItemId() {
+        MediaStatus status = client.getMediaStatus();
+        return status != null ? status.getCurrentItemId() : MediaQueueItem.INVALID_ITEM_ID;
+    }
+
+    @Override
+    public MediaSnapshot captureMedia(List<String> queueItems) {
+        return MediaSnapshot.capture(session, queueItems);
+    }
+
+    @Override
+    public SessionSnapshot captureSession(List<String> queueItems, String state) {
+        return SessionSnapshot.capture(session, queueItems, state);
+    }
+
+    @Override
+    public void setListener(final Listener listener) {
+        client.registerCallback(new RemoteMediaClient.Callback() {
+            @Override
+            public void onStatusUpdated() {
+                listener.onStatusUpdated();
+            }
+            @Override
+            public void onQueueStatusUpdated() {
+                listener.onQueueStatusUpdated();
+            }
+        });
+        session.addCastListener(new Cast.Listener() {
+            @Override
+            public void onApplicationStatusChanged() {
+                listener.onApplicationUpdated();
+            }
+            @Override
+            public void onApplicationMetadataChanged(ApplicationMetadata appMetadata) {
+                listener.onApplicationUpdated();
+            }
+            @Override
+            public void onApplicationDisconnected(int i) {
+                listener.onApplicationDisconnected();
+            }
+            @Override
+            public void onActiveInputStateChanged(int i) {
+                listener.onApplicationUpdated();
+            }
+            @Override
+            public void onStandbyStateChanged(int i) {
+                listener.onApplicationUpdated();
+            }
+            @Override
+            public void onVolumeChanged() {
+                listener.onApplicationUpdated();
+            }
+        });
+    }
+
+    @Override
+    public void setQueueListener(final QueueListener listener) {
+        queue.registerCallback(new MediaQueue.Callback() {
+            @Override
+            public void itemsReloaded() {
+                listener.itemsReloaded();
+            }
+            @Override
+            public void itemsUpdatedAtIndexes(int[] indexes) {
+                listener.itemsUpdatedAtIndexes(indexes);
+            }
+            @Override
+            public void itemsInsertedInRange(int insertIndex, int insertCount) {
+                listener.itemsInsertedInRange(insertIndex, insertCount);
+            }
+            @Override
+            public void itemsRemovedAtIndexes(int[] indexes) {
+                listener.itemsRemovedAtIndexes(indexes);
+            }
+            @Override
+            public void itemsReorderedAtIndexes(List<Integer> indexes, int insertBeforeIndex) {
+                listener.itemsReorderedAtIndexes(indexes, insertBeforeIndex);
+            }
+        });
+    }
+
+    @Override
+    public void addMessageListener(String namespace, Cast.MessageReceivedCallback callback) throws IOException {
+        session.setMessageReceivedCallbacks(namespace, callback);
+    }
+
+    @Override
+    public void sendMessage(String namespace, String message, final Result result) {
+        session.sendMessage(namespace, message).setResultCallback(new ResultCallback<Status>() {
+            @Override
+            public void onResult(@NonNull Status status) {
+                result.onResult(status.isSuccess(), null);
+            }
+        });
+    }
+
+    @Override
+    public void setVolume(double volume) throws IOException {
+        session.setVolume(volume);
+    }
+
+    @Override
+    public void setMute(boolean muted) throws IOException {
+        session.setMute(muted);
+    }
+
+    @Override
+    public void load(MediaLoadRequestData request, Result result) {
+        client.load(request).setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void play(Result result) {
+        client.play().setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void pause(Result result) {
+        client.pause().setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void stop(Result result) {
+        client.stop().setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void seek(MediaSeekOptions options, Result result) {
+        client.seek(options).setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void setStreamVolume(double level, Result result) {
+        client.setStreamVolume(level).setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void setStreamMute(boolean muted, Result result) {
+        client.setStreamMute(muted).setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void setActiveMediaTracks(long[] trackIds, Result result) {
+        client.setActiveMediaTracks(trackIds).setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void setTextTrackStyle(TextTrackStyle style, Result result) {
+        client.setTextTrackStyle(style).setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void queueLoad(MediaQueueItem[] items, int startIndex, int repeatMode, long playPosition,
+                          JSONObject customData, Result result) {
+        client.queueLoad(items, startIndex, repeatMode, playPosition, customData).setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void queueInsertItems(MediaQueueItem[] items, int insertBeforeItemId, JSONObject customData, Result result) {
+        client.queueInsertItems(items, insertBeforeItemId, customData).setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void queueRemoveItems(int[] itemIds, JSONObject customData, Result result) {
+        client.queueRemoveItems(itemIds, customData).setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void queueReorderItems(int[] itemIds, int insertBeforeItemId, JSONObject customData, Result result) {
+        client.queueReorderItems(itemIds, insertBeforeItemId, customData).setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void queueUpdateItems(MediaQueueItem[] items, JSONObject customData, Result result) {
+        client.queueUpdateItems(items, customData).setResultCallback(wrap(result));
+    }
+
+    @Override
+    public void queueJumpToItem(int itemId, JSONObject customData, Result result) {
+        client.queueJumpToItem(itemId, customData).setResultCallback(wrap(result));
+    }
+
+    @Override
+    public int getQueueItemCount() {
+        return queue.getItemCount();
+    }
+
+    @Override
+    public int[] getQueueItemIds() {
+        return queue.getItemIds();
+    }
+
+    @Override
+    public int getQueueItemIdAtIndex(int index) {
+        return queue.itemIdAtIndex(index);
+    }
+
+    @Override
+    public int getQueueIndexOfItemWithId(int itemId) {
+        return queue.indexOfItemWithId(itemId);
+    }
+
+    @Override
+    public MediaQueueItem getQueueItemAtIndex(int index) {
+        return queue.getItemAtIndex(index, true);
+    }
+
+    private static ResultCallback<MediaChannelResult> wrap(final Result result) {
+        return new ResultCallback<MediaChannelResult>() {
+            @Override
+            public void onResult(@NonNull MediaChannelResult channelResult) {
+                result.onResult(channelResult.getStatus().isSuccess(), channelResult.getCustomData());
+            }
+        };
+    }
+}
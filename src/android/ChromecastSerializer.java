@@ -0,0 +1,338 @@
+package acidhax.cordova.chromecast;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.cast.MediaQueueItem;
+import com.google.android.gms.cast.MediaStatus;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders the JSON objects sent to the javascript side from the snapshots
+ * (SessionSnapshot, ReceiverSnapshot, MediaSnapshot).
+ *
+ * The objects are streamed to a ChromecastJsonWriter, so the events never
+ * exist as JSONObject trees.  The create* methods return JSONObjects for the
+ * (rarer) callback results.
+ *
+ * The snapshots are null-safe so nothing here relies on catching exceptions:
+ * missing values are simply left out, and so are non-finite numbers.
+ * Can be called from any thread.
+ */
+final class ChromecastSerializer {
+
+    private ChromecastSerializer() {
+        //not called
+    }
+
+    static JSONObject createSessionObject(SessionSnapshot session) {
+        ChromecastJsonWriter out = new ChromecastJsonWriter();
+        writeSessionObject(out, session);
+        return parse(out);
+    }
+
+    /**
+     * Builds the media object from a snapshot.
+     * @param media the snapshot
+     * @return the media object, or null if media is null
+     */
+    static JSONObject createMediaObject(MediaSnapshot media) {
+        if (media == null) {
+            return null;
+        }
+        ChromecastJsonWriter out = new ChromecastJsonWriter();
+        writeMediaObject(out, media);
+        return parse(out);
+    }
+
+    static JSONObject createQueueItem(@NonNull MediaQueueItem item, int orderId) {
+        ChromecastJsonWriter out = new ChromecastJsonWriter();
+        writeQueueItem(out, item, orderId);
+        return parse(out);
+    }
+
+    /**
+     * Renders a queue item.
+     * @param out a writer to render with, it is reset
+     * @param item the item
+     * @param orderId the index of the item in the queue
+     * @return the rendered item
+     */
+    static String renderQueueItem(ChromecastJsonWriter out, @NonNull MediaQueueItem item, int orderId) {
+        out.reset();
+        writeQueueItem(out, item, orderId);
+        return out.toString();
+    }
+
+    private static JSONObject parse(ChromecastJsonWriter out) {
+        try {
+            return new JSONObject(out.toString());
+        } catch (JSONException e) {
+            // We wrote it ourselves, so this can't happen
+            e.printStackTrace();
+            return new JSONObject();
+        }
+    }
+
+    static void writeSessionObject(ChromecastJsonWriter out, SessionSnapshot session) {
+        out.beginObject();
+        if (session.hasApplication()) {
+            out.field("appId", session.getAppId());
+            out.name("appImages");
+            writeImagesArray(out, session.getAppImages());
+            out.field("displayName", session.getDisplayName());
+            out.name("media").beginArray();
+            if (session.getMedia() != null) {
+                writeMediaObject(out, session.getMedia());
+            }
+            out.endArray();
+            out.name("receiver");
+            writeReceiverObject(out, session.getReceiver());
+            out.field("sessionId", session.getSessionId());
+        }
+        out.field("status", session.getStatus());
+        out.endObject();
+    }
+
+    private static void writeImagesArray(ChromecastJsonWriter out, List<String> images) {
+        out.beginArray();
+        for (String url : images) {
+            out.beginObject().field("url", url).endObject();
+        }
+        out.endArray();
+    }
+
+    static void writeReceiverObject(ChromecastJsonWriter out, ReceiverSnapshot receiver) {
+        out.beginObject();
+        if (receiver != null) {
+            out.field("friendlyName", receiver.getFriendlyName());
+            out.field("label", receiver.getLabel());
+            out.name("volume").beginObject();
+            if (receiver.hasVolume()) {
+                out.field("level", receiver.getVolume());
+                out.field("muted", receiver.isMuted());
+            }
+            out.endObject();
+        }
+        out.endObject();
+    }
+
+    static void writeMediaObject(ChromecastJsonWriter out, MediaSnapshot media) {
+        writeMediaObject(out, media, true);
+    }
+
+    /**
+     * Writes the media object.
+     * @param out where to write
+     * @param media the snapshot
+     * @param withItems whether to write the queue items
+     */
+    static void writeMediaObject(ChromecastJsonWriter out, MediaSnapshot media, boolean withItems) {
+        out.beginObject();
+        // TODO: Missing attributes are commented out.
+        //  These are returned by the chromecast desktop SDK, we should probbaly return them too
+        //out.field("breakStatus",);
+        out.field("currentItemId", media.getCurrentItemId());
+        out.field("currentTime", media.getStreamPosition() / 1000.0);
+        out.field("customData", media.getCustomData());
+        //out.field("extendedStatus",);
+        out.field("idleReason", ChromecastUtilities.getMediaIdleReason(media.getIdleReason()));
+        if (withItems) {
+            writeQueueItems(out, media.getItems());
+        }
+        out.field("isAlive", media.getPlayerState() != MediaStatus.PLAYER_STATE_IDLE);
+        //out.field("liveSeekableRange",);
+        out.field("loadingItemId", media.getLoadingItemId());
+        out.name("media");
+        writeMediaInfoObject(out, media.getMedia());
+        out.field("mediaSessionId", 1);
+        out.field("playbackRate", media.getPlaybackRate());
+        out.field("playerState", ChromecastUtilities.getMediaPlayerState(media.getPlayerState()));
+        out.field("preloadedItemId", media.getPreloadedItemId());
+        writeQueueData(out, media);
+        out.field("repeatMode", ChromecastUtilities.getRepeatMode(media.getRepeatMode()));
+        out.field("sessionId", media.getSessionId());
+        //out.field("supportedMediaCommands", );
+        //out.field("videoInfo", );
+
+        out.name("volume").beginObject();
+        out.field("level", media.getVolume());
+        out.field("muted", media.isMuted());
+        out.endObject();
+        writeActiveTrackIds(out, media.getActiveTrackIds());
+        out.endObject();
+    }
+
+    /**
+     * Writes the queue items, they are already rendered (see ChromecastQueueWindow).
+     * @param out where to write
+     * @param items the rendered items, nothing is written if null
+     */
+    static void writeQueueItems(ChromecastJsonWriter out, List<String> items) {
+        if (items == null) {
+            return;
+        }
+        out.name("items").beginArray();
+        for (String item : items) {
+            out.raw(item);
+        }
+        out.endArray();
+    }
+
+    private static void writeActiveTrackIds(ChromecastJsonWriter out, long[] activeTrackIds) {
+        if (activeTrackIds == null || activeTrackIds.length == 0) {
+            return;
+        }
+        out.name("activeTrackIds").beginArray();
+        for (long id : activeTrackIds) {
+            out.value(id);
+        }
+        out.endArray();
+    }
+
+    private static void writeQueueData(ChromecastJsonWriter out, MediaSnapshot media) {
+        if (!media.hasQueueData()) {
+            return;
+        }
+        out.name("queueData").beginObject();
+        out.field("repeatMode", ChromecastUtilities.getRepeatMode(media.getQueueDataRepeatMode()));
+        out.field("shuffle", media.getQueueDataRepeatMode() == MediaStatus.REPEAT_MODE_REPEAT_ALL_AND_SHUFFLE);
+        out.field("startIndex", media.getQueueDataStartIndex());
+        out.endObject();
+    }
+
+    static void writeQueueItem(ChromecastJsonWriter out, @NonNull MediaQueueItem item, int orderId) {
+        out.beginObject();
+        writeActiveTrackIds(out, item.getActiveTrackIds());
+        out.field("autoplay", item.getAutoplay());
+        out.field("customData", item.getCustomData());
+        out.field("itemId", item.getItemId());
+        out.name("media");
+        writeMediaInfoObject(out, MediaSnapshot.Info.capture(item.getMedia()));
+        out.field("orderId", orderId);
+        // Infinite playbackDuration and NaN startTime are left out
+        out.field("playbackDuration", item.getPlaybackDuration());
+        out.field("preloadTime", item.getPreloadTime());
+        out.field("startTime", item.getStartTime());
+        out.endObject();
+    }
+
+    private static void writeMediaInfoTracks(ChromecastJsonWriter out, MediaSnapshot.Info mediaInfo) {
+        out.beginArray();
+        for (MediaSnapshot.Track track : mediaInfo.getTracks()) {
+            out.beginObject();
+
+            // TODO: Missing attributes are commented out.
+            //  These are returned by the chromecast desktop SDK, we should probbaly return them too
+
+            out.field("trackId", track.getId());
+            out.field("customData", track.getCustomData());
+            out.field("language", track.getLanguage());
+            out.field("name", track.getName());
+            out.field("subtype", ChromecastUtilities.getTrackSubtype(track.getSubtype()));
+            out.field("trackContentId", track.getContentId());
+            out.field("trackContentType", track.getContentType());
+            out.field("type", ChromecastUtilities.getTrackType(track.getType()));
+
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    static void writeMediaInfoObject(ChromecastJsonWriter out, MediaSnapshot.Info mediaInfo) {
+        out.beginObject();
+        if (mediaInfo != null) {
+            // TODO: Missing attributes are commented out.
+            //  These are returned by the chromecast desktop SDK, we should probably return them too
+            //out.field("breakClips",);
+            //out.field("breaks",);
+            out.field("contentId", mediaInfo.getContentId());
+            out.field("contentType", mediaInfo.getContentType());
+            out.field("customData", mediaInfo.getCustomData());
+            out.field("duration", mediaInfo.getStreamDuration() / 1000.0);
+            //out.field("mediaCategory",);
+            out.name("metadata");
+            writeMetadataObject(out, mediaInfo.getMetadata());
+            out.field("streamType", ChromecastUtilities.getMediaInfoStreamType(mediaInfo.getStreamType()));
+            out.name("tracks");
+            writeMediaInfoTracks(out, mediaInfo);
+            writeTextTrackObject(out, mediaInfo.getTextTrackStyle());
+        }
+        out.endObject();
+    }
+
+    static void writeMetadataObject(ChromecastJsonWriter out, MediaSnapshot.Metadata metadata) {
+        out.beginObject();
+        if (metadata == null) {
+            out.endObject();
+            return;
+        }
+        out.name("images");
+        writeImagesArray(out, metadata.getImages());
+        out.field("metadataType", metadata.getMediaType());
+        out.field("type", metadata.getMediaType());
+
+        Map<String, Object> values = metadata.getValues();
+        String outKey;
+        // First translate and add the Android specific keys
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            outKey = ChromecastUtilities.getClientMetadataName(entry.getKey());
+            if (outKey.equals(entry.getKey()) || outKey.equals("type")) {
+                continue;
+            }
+            out.field(outKey, entry.getValue());
+        }
+        // Then add the non-Android specific keys ensuring we don't overwrite existing keys
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            outKey = ChromecastUtilities.getClientMetadataName(entry.getKey());
+            if (!outKey.equals(entry.getKey()) || outKey.equals("type") || isWrittenKey(outKey, values)) {
+                continue;
+            }
+            if (outKey.startsWith("cordova-plugin-chromecast_metadata_key=")) {
+                // Written last so that it wins over the key it collided with
+                outKey = outKey.substring("cordova-plugin-chromecast_metadata_key=".length());
+            }
+            out.field(outKey, entry.getValue());
+        }
+        out.endObject();
+    }
+
+    /**
+     * Whether a key was already written by the first part of writeMetadataObject.
+     * @param clientKey the key of a custom value
+     * @param values all the metadata values
+     * @return true if writing the custom value would duplicate a key
+     */
+    private static boolean isWrittenKey(String clientKey, Map<String, Object> values) {
+        if (clientKey.equals("images") || clientKey.equals("metadataType")) {
+            return true;
+        }
+        String androidKey = ChromecastUtilities.getAndroidMetadataName(clientKey);
+        return !androidKey.equals(clientKey) && values.containsKey(androidKey)
+                && ChromecastUtilities.getClientMetadataName(androidKey).equals(clientKey);
+    }
+
+    private static void writeTextTrackObject(ChromecastJsonWriter out, MediaSnapshot.TextStyle textTrackStyle) {
+        if (textTrackStyle == null) {
+            return;
+        }
+        out.name("textTrackStyle").beginObject();
+        out.field("backgroundColor", ChromecastUtilities.getHexColor(textTrackStyle.getBackgroundColor()));
+        out.field("customData", textTrackStyle.getCustomData());
+        out.field("edgeColor", ChromecastUtilities.getHexColor(textTrackStyle.getEdgeColor()));
+        out.field("edgeType", ChromecastUtilities.getEdgeType(textTrackStyle.getEdgeType()));
+        out.field("fontFamily", textTrackStyle.getFontFamily());
+        out.field("fontGenericFamily", ChromecastUtilities.getFontGenericFamily(textTrackStyle.getFontGenericFamily()));
+        out.field("fontScale", textTrackStyle.getFontScale());
+        out.field("fontStyle", ChromecastUtilities.getFontStyle(textTrackStyle.getFontStyle()));
+        out.field("foregroundColor", ChromecastUtilities.getHexColor(textTrackStyle.getForegroundColor()));
+        out.field("windowColor", ChromecastUtilities.getHexColor(textTrackStyle.getWindowColor()));
+        out.field("windowRoundedCornerRadius", textTrackStyle.getWindowCornerRadius());
+        out.field("windowType", ChromecastUtilities.getWindowType(textTrackStyle.getWindowType()));
+        out.endObject();
+    }
+}
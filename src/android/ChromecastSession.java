@@ -2,25 +2,21 @@ package acidhax.cordova.chromecast;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.cordova.CallbackContext;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import com.google.android.gms.cast.ApplicationMetadata;
 import com.google.android.gms.cast.Cast;
 import com.google.android.gms.cast.MediaInfo;
 import com.google.android.gms.cast.MediaLoadRequestData;
 import com.google.android.gms.cast.MediaQueueItem;
 import com.google.android.gms.cast.MediaSeekOptions;
 import com.google.android.gms.cast.MediaStatus;
+import com.google.android.gms.cast.TextTrackStyle;
 import com.google.android.gms.cast.framework.CastSession;
-import com.google.android.gms.cast.framework.media.MediaQueue;
-import com.google.android.gms.cast.framework.media.RemoteMediaClient;
-import com.google.android.gms.cast.framework.media.RemoteMediaClient.MediaChannelResult;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.common.api.Status;
 
 import android.app.Activity;
 
@@ -28,131 +24,166 @@ import androidx.annotation.NonNull;
 
 /*
  * All of the Chromecast session specific functions should start here.
+ *
+ * The receiver is reached through a {@link Receiver}: the Cast SDK's session (see ChromecastSdkReceiver)
+ * in the app, or an in-memory receiver to run the session and queue code on a JVM (see ChromecastLoadTest).
  */
 public class ChromecastSession {
     /** The current context. */
     private Activity activity;
+    /** Runs the Cast SDK calls on the main thread, and the rest in the background. */
+    private final ChromecastExecutor executor;
+    /** Records the SDK callbacks. */
+    private final ChromecastTracer tracer;
     /** A registered callback that we will un-register and re-register each time the session changes. */
     private Listener clientListener;
-    /** The current session. */
-    private CastSession session;
-    /** The current session's client for controlling playback. */
-    private RemoteMediaClient client;
-    /** Indicates whether we are requesting media or not. **/
-    private boolean requestingMedia = false;
+    /** The current session's receiver, also read from the decoding threads. */
+    private volatile Receiver session;
+    /** The current session's receiver for controlling playback, null once the session ended (also read from the decoding threads). */
+    private volatile Receiver client;
+    /** The model of the current session's receiver, read from any thread (see getReceiverModel). */
+    private volatile String receiverModel;
+    /** Indicates whether we are requesting media or not, also read from the decoding threads. **/
+    private volatile boolean requestingMedia = false;
     /** Handles and used to trigger queue updates. **/
     private MediaQueueController mediaQueueCallback;
+    /** How long (ms) to wait for the items of a queue page to be fetched. **/
+    private static final int PAGE_TIMEOUT = 10000;
     /** Stores a callback that should be called when the queue is loaded. **/
     private Runnable queueReloadCallback;
     /** Stores a callback that should be called when the queue status is updated. **/
     private Runnable queueStatusUpdatedCallback;
+    /** Number of queue items before the current one that are sent with the media. **/
+    private int queueWindowBefore = ChromecastQueueWindow.DEFAULT_BEFORE;
+    /** Number of queue items after the current one that are sent with the media. **/
+    private int queueWindowAfter = ChromecastQueueWindow.DEFAULT_AFTER;
+    /** Inserts the rest of a progressively loaded queue, null if there is none. **/
+    private ChromecastQueueLoader queueLoader;
 
     /**
      * ChromecastSession constructor.
      * @param act the current activity
+     * @param commandExecutor runs the Cast SDK calls on the main thread, and the rest in the background
      * @param listener callback that will notify of certain events
      */
-    public ChromecastSession(Activity act, @NonNull Listener listener) {
+    public ChromecastSession(Activity act, ChromecastExecutor commandExecutor, @NonNull Listener listener) {
         this.activity = act;
+        this.executor = commandExecutor;
+        this.tracer = commandExecutor.getTracer();
         this.clientListener = listener;
     }
 
+    /**
+     * Can be called from any thread.
+     * @return the model of the current session's receiver, or null if there is no session
+     */
+    public String getReceiverModel() {
+        return receiverModel;
+    }
+
     /**
      * Sets the session object the will be used for other commands in this class.
      * @param castSession the session to use
      */
     public void setSession(CastSession castSession) {
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("setSession", new Runnable() {
             public void run() {
-                if (castSession == null) {
-                    client = null;
-                    return;
-                }
-                if (castSession.equals(session)) {
-                    // Don't client and listeners if session did not change
-                    return;
-                }
-                session = castSession;
-                client = session.getRemoteMediaClient();
-                if (client == null) {
+                // Without a media client, the session can't be controlled
+                bind(castSession == null ? null : ChromecastSdkReceiver.create(castSession));
+            }
+        });
+    }
+
+    /**
+     * Sets the receiver that will be used for other commands in this class.
+     * @param receiver the receiver to use, or null once the session ended
+     */
+    void setReceiver(Receiver receiver) {
+        executor.runOnMain("setSession", new Runnable() {
+            public void run() {
+                bind(receiver);
+            }
+        });
+    }
+
+    /**
+     * Binds the commands and the listeners to a receiver.
+     * Must be called on the main thread.
+     * @param receiver the receiver to use, or null once the session ended
+     */
+    private void bind(final Receiver receiver) {
+        if (receiver == null) {
+            cancelQueueLoad();
+            client = null;
+            receiverModel = null;
+            return;
+        }
+        if (receiver.equals(session)) {
+            // Don't client and listeners if session did not change
+            return;
+        }
+        cancelQueueLoad();
+        session = receiver;
+        receiverModel = receiver.getModelName();
+        client = receiver;
+        setupQueue();
+        client.setListener(new Receiver.Listener() {
+            private Integer prevItemId;
+            @Override
+            public void onStatusUpdated() {
+                tracer.instant("sdk", "onStatusUpdated");
+                if (requestingMedia
+                        || queueStatusUpdatedCallback != null
+                        || queueReloadCallback != null) {
                     return;
                 }
-                setupQueue();
-                client.registerCallback(new RemoteMediaClient.Callback() {
-                    private Integer prevItemId;
-                    @Override
-                    public void onStatusUpdated() {
-                        MediaStatus status = client.getMediaStatus();
-                        if (requestingMedia
-                                || queueStatusUpdatedCallback != null
-                                || queueReloadCallback != null) {
-                            return;
-                        }
 
-                        if (status != null) {
-                            if (prevItemId == null) {
-                                prevItemId = status.getCurrentItemId();
-                            }
-                            boolean shouldSkipUpdate = false;
-                            if (status.getPlayerState() == MediaStatus.PLAYER_STATE_LOADING) {
-                                // It appears the queue has advanced to the next item
-                                // So send an update to indicate the previous has finished
-                                clientListener.onMediaUpdate(createMediaObject(MediaStatus.IDLE_REASON_FINISHED));
-                                shouldSkipUpdate = true;
-                            }
-                            if (prevItemId != null && prevItemId != status.getCurrentItemId() && mediaQueueCallback.getCurrentItemIndex() != -1) {
-                                // The currentItem has changed, so update the current queue items
-                                setQueueReloadCallback(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        prevItemId = status.getCurrentItemId();
-                                    }
-                                });
-                                mediaQueueCallback.refreshQueueItems();
-                                shouldSkipUpdate = true;
-                            }
-                            if (shouldSkipUpdate) {
-                                return;
-                            }
-                        }
-                        // Send update
-                        clientListener.onMediaUpdate(createMediaObject());
-                    }
-                    @Override
-                    public void onQueueStatusUpdated() {
-                        if (queueStatusUpdatedCallback != null) {
-                            queueStatusUpdatedCallback.run();
-                            setQueueStatusUpdatedCallback(null);
-                        }
-                    }
-                });
-                session.addCastListener(new Cast.Listener() {
-                    @Override
-                    public void onApplicationStatusChanged() {
-                        clientListener.onSessionUpdate(createSessionObject());
-                    }
-                    @Override
-                    public void onApplicationMetadataChanged(ApplicationMetadata appMetadata) {
-                        clientListener.onSessionUpdate(createSessionObject());
-                    }
-                    @Override
-                    public void onApplicationDisconnected(int i) {
-                        clientListener.onSessionEnd(
-                                ChromecastUtilities.createSessionObject(session, "stopped"));
+                if (receiver.hasMediaStatus()) {
+                    final int currentItemId = receiver.getCurrentItemId();
+                    if (prevItemId == null) {
+                        prevItemId = currentItemId;
                     }
-                    @Override
-                    public void onActiveInputStateChanged(int i) {
-                        clientListener.onSessionUpdate(createSessionObject());
+                    boolean shouldSkipUpdate = false;
+                    if (receiver.getPlayerState() == MediaStatus.PLAYER_STATE_LOADING) {
+                        // It appears the queue has advanced to the next item
+                        // So send an update to indicate the previous has finished
+                        clientListener.onMediaUpdate(createMediaSnapshot(MediaStatus.IDLE_REASON_FINISHED));
+                        shouldSkipUpdate = true;
                     }
-                    @Override
-                    public void onStandbyStateChanged(int i) {
-                        clientListener.onSessionUpdate(createSessionObject());
+                    if (prevItemId != null && prevItemId != currentItemId && mediaQueueCallback.getCurrentItemIndex() != -1) {
+                        // The currentItem has changed, so update the current queue items
+                        setQueueReloadCallback(new Runnable() {
+                            @Override
+                            public void run() {
+                                prevItemId = currentItemId;
+                            }
+                        });
+                        mediaQueueCallback.refreshQueueItems();
+                        shouldSkipUpdate = true;
                     }
-                    @Override
-                    public void onVolumeChanged() {
-                        clientListener.onSessionUpdate(createSessionObject());
+                    if (shouldSkipUpdate) {
+                        return;
                     }
-                });
+                }
+                // Send update
+                clientListener.onMediaUpdate(createMediaSnapshot());
+            }
+            @Override
+            public void onQueueStatusUpdated() {
+                tracer.instant("sdk", "onQueueStatusUpdated");
+                if (queueStatusUpdatedCallback != null) {
+                    queueStatusUpdatedCallback.run();
+                    setQueueStatusUpdatedCallback(null);
+                }
+            }
+            @Override
+            public void onApplicationUpdated() {
+                clientListener.onSessionUpdate(createSessionSnapshot());
+            }
+            @Override
+            public void onApplicationDisconnected() {
+                clientListener.onSessionEnd(ChromecastSerializer.createSessionObject(
+                        ChromecastUtilities.createSessionSnapshot(session, "stopped")));
             }
         });
     }
@@ -165,10 +196,10 @@ public class ChromecastSession {
         if (client == null || session == null) {
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("addMessageListener", new Runnable() {
             public void run() {
                 try {
-                    session.setMessageReceivedCallbacks(namespace, clientListener);
+                    session.addMessageListener(namespace, clientListener);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -187,15 +218,15 @@ public class ChromecastSession {
             callback.error("session_error");
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("sendMessage", new Runnable() {
             public void run() {
-                session.sendMessage(namespace, message).setResultCallback(new ResultCallback<Status>() {
+                session.sendMessage(namespace, message, new Receiver.Result() {
                     @Override
-                    public void onResult(Status result) {
-                        if (!result.isSuccess()) {
+                    public void onResult(boolean success, JSONObject customData) {
+                        if (success) {
                             callback.success();
                         } else {
-                            callback.error(result.toString());
+                            callback.error("Failed to send the message.");
                         }
                     }
                 });
@@ -224,7 +255,7 @@ public class ChromecastSession {
             callback.error("session_error");
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runInBackground(new Runnable() {
             public void run() {
                 MediaInfo mediaInfo = ChromecastUtilities.createMediaInfo(contentId, customData, contentType, duration, streamType, metadata, textTrackStyle);
                 MediaLoadRequestData loadRequest = new MediaLoadRequestData.Builder()
@@ -233,21 +264,32 @@ public class ChromecastSession {
                         .setCurrentTime((long) currentTime * 1000)
                         .build();
 
-                requestingMedia = true;
-                setQueueReloadCallback(new Runnable() {
-                    @Override
+                executor.runOnMain("loadMedia", new Runnable() {
                     public void run() {
-                        callback.success(createMediaObject());
-                    }
-                });
-                client.load(loadRequest).setResultCallback(new ResultCallback<MediaChannelResult>() {
-                    @Override
-                    public void onResult(@NonNull MediaChannelResult result) {
-                        requestingMedia = false;
-                        if (!result.getStatus().isSuccess()) {
+                        // The session may have ended while the request was being converted
+                        Receiver mediaClient = client;
+                        if (mediaClient == null || session == null) {
                             callback.error("session_error");
-                            setQueueReloadCallback(null);
+                            return;
                         }
+                        cancelQueueLoad();
+                        requestingMedia = true;
+                        setQueueReloadCallback(new Runnable() {
+                            @Override
+                            public void run() {
+                                sendMediaObject(callback, null);
+                            }
+                        });
+                        mediaClient.load(loadRequest, new Receiver.Result() {
+                            @Override
+                            public void onResult(boolean success, JSONObject result) {
+                                requestingMedia = false;
+                                if (!success) {
+                                    callback.error("session_error");
+                                    setQueueReloadCallback(null);
+                                }
+                            }
+                        });
                     }
                 });
             }
@@ -263,10 +305,9 @@ public class ChromecastSession {
             callback.error("session_error");
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("mediaPlay", new Runnable() {
             public void run() {
-                client.play()
-                        .setResultCallback(getResultCallback(callback, "Failed to play."));
+                client.play(getResultCallback(callback, "Failed to play."));
             }
         });
     }
@@ -280,10 +321,9 @@ public class ChromecastSession {
             callback.error("session_error");
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("mediaPause", new Runnable() {
             public void run() {
-                client.pause()
-                        .setResultCallback(getResultCallback(callback, "Failed to pause."));
+                client.pause(getResultCallback(callback, "Failed to pause."));
             }
         });
     }
@@ -299,7 +339,7 @@ public class ChromecastSession {
             callback.error("session_error");
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("mediaSeek", new Runnable() {
             public void run() {
                 int resState;
                 switch (resumeState) {
@@ -316,8 +356,8 @@ public class ChromecastSession {
                 client.seek(new MediaSeekOptions.Builder()
                         .setPosition(seekPosition)
                         .setResumeState(resState)
-                        .build()
-                ).setResultCallback(getResultCallback(callback, "Failed to seek."));
+                        .build(),
+                        getResultCallback(callback, "Failed to seek."));
             }
         });
     }
@@ -333,7 +373,7 @@ public class ChromecastSession {
             callback.error("session_error");
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("mediaSetVolume", new Runnable() {
             public void run() {
                 // Figure out the number of callbacks we expect to receive
                 int calls = 0;
@@ -351,7 +391,7 @@ public class ChromecastSession {
 
                 // We need this callback so that we can wait for a variable number of calls to come back
                 final int expectedCalls = calls;
-                ResultCallback<MediaChannelResult> cb = new ResultCallback<MediaChannelResult>() {
+                Receiver.Result cb = new Receiver.Result() {
                     private int callsCompleted = 0;
                     private String finalErr = null;
                     private void completionCall() {
@@ -366,12 +406,11 @@ public class ChromecastSession {
                         }
                     }
                     @Override
-                    public void onResult(@NonNull MediaChannelResult result) {
-                        if (!result.getStatus().isSuccess()) {
+                    public void onResult(boolean success, JSONObject errorResult) {
+                        if (!success) {
                             if (finalErr == null) {
                                 finalErr = "Failed to set media volume/mute state:\n";
                             }
-                            JSONObject errorResult = result.getCustomData();
                             if (errorResult != null) {
                                 finalErr += "\n" + errorResult;
                             }
@@ -381,12 +420,10 @@ public class ChromecastSession {
                 };
 
                 if (level != null) {
-                    client.setStreamVolume(level)
-                            .setResultCallback(cb);
+                    client.setStreamVolume(level, cb);
                 }
                 if (muted != null) {
-                    client.setStreamMute(muted)
-                            .setResultCallback(cb);
+                    client.setStreamMute(muted, cb);
                 }
             }
         });
@@ -401,10 +438,9 @@ public class ChromecastSession {
             callback.error("session_error");
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("mediaStop", new Runnable() {
             public void run() {
-                client.stop()
-                        .setResultCallback(getResultCallback(callback, "Failed to stop."));
+                client.stop(getResultCallback(callback, "Failed to stop."));
             }
         });
     }
@@ -420,18 +456,46 @@ public class ChromecastSession {
             callback.error("session_error");
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runInBackground(new Runnable() {
             public void run() {
-                client.setActiveMediaTracks(activeTracksIds)
-                        .setResultCallback(getResultCallback(callback, "Failed to set active media tracks."));
-                client.setTextTrackStyle(ChromecastUtilities.parseTextTrackStyle(textTrackStyle))
-                        .setResultCallback(getResultCallback(callback, "Failed to set text track style."));
+                TextTrackStyle style = ChromecastUtilities.parseTextTrackStyle(textTrackStyle);
+                executor.runOnMain("mediaEditTracksInfo", new Runnable() {
+                    public void run() {
+                        // The session may have ended while the request was being converted
+                        Receiver mediaClient = client;
+                        if (mediaClient == null || session == null) {
+                            callback.error("session_error");
+                            return;
+                        }
+                        mediaClient.setActiveMediaTracks(activeTracksIds,
+                                getResultCallback(callback, "Failed to set active media tracks."));
+                        mediaClient.setTextTrackStyle(style,
+                                getResultCallback(callback, "Failed to set text track style."));
+                    }
+                });
             }
         });
     }
 
 /* ------------------------------------   QUEUE FNs   ------------------------------------------- */
 
+    /**
+     * Sets how many queue items around the current one are sent along with the media.
+     * @param before number of items before the current one
+     * @param after number of items after the current one
+     */
+    public void setQueueWindow(int before, int after) {
+        executor.runOnMain("setQueueWindow", new Runnable() {
+            public void run() {
+                queueWindowBefore = before;
+                queueWindowAfter = after;
+                if (mediaQueueCallback != null) {
+                    mediaQueueCallback.setWindowSize(before, after);
+                }
+            }
+        });
+    }
+
     private void setQueueReloadCallback(Runnable callback) {
         this.queueReloadCallback = callback;
     }
@@ -444,99 +508,138 @@ public class ChromecastSession {
      * Sets up the objects and listeners required for queue functionality.
      */
     private void setupQueue() {
-        MediaQueue queue = client.getMediaQueue();
         setQueueReloadCallback(null);
-        mediaQueueCallback = new MediaQueueController(queue);
-        queue.registerCallback(mediaQueueCallback);
+        mediaQueueCallback = new MediaQueueController(client);
+        client.setQueueListener(mediaQueueCallback);
     }
 
-    private class MediaQueueController extends MediaQueue.Callback {
-        /** The MediaQueue object. **/
-        private MediaQueue queue;
-        /** Contains the item indexes that we need before sending out an update. **/
-        private ArrayList<Integer> lookingForIndexes = new ArrayList<Integer>();
-        /** Keeps track of the queueItems. **/
-        private JSONArray queueItems;
+    /**
+     * Reads the items of the receiver's queue for the queue window,
+     * and forwards the queue callbacks to it.
+     */
+    private class MediaQueueController
+            implements Receiver.QueueListener, ChromecastQueueWindow.Source, ChromecastQueueWindow.Listener {
+        /** The receiver whose queue is read, also locked while the queue is handled. **/
+        private final Receiver queue;
+        /** The items around the current item. **/
+        private ChromecastQueueWindow window;
+        /** The pages requested with queueGetItems that are waiting on items to be fetched. **/
+        private final List<PendingPage> pages = new ArrayList<>();
+        /** Renders the pages. **/
+        private final ChromecastJsonWriter pageWriter = new ChromecastJsonWriter();
 
-        MediaQueueController(MediaQueue q) {
+        MediaQueueController(Receiver q) {
             this.queue = q;
+            this.window = new ChromecastQueueWindow(this, this);
+            this.window.setSize(queueWindowBefore, queueWindowAfter);
         }
 
-        /**
-         * Given i == currentItemId, get items [i-1, i, i+1].
-         * Note: Exclude items out of range, eg. < 0 and > queue.length.
-         * Therefore, it is always 2-3 items (matches chrome desktop implementation).
-         */
         void refreshQueueItems() {
-            int len = queue.getItemIds().length;
-            int index = getCurrentItemIndex();
-
-            // Reset lookingForIndexes
-            lookingForIndexes = new ArrayList<>();
-
-            // Only add indexes to look for it the currentItemIndex is valid
-            if (index != -1) {
-                // init i-1, i, i+1 (exclude items out of range), so always 2-3 items
-                for (int i = index - 1; i <= index + 1; i++) {
-                    if (i >= 0 && i < len) {
-                        lookingForIndexes.add(i);
-                    }
+            window.refresh();
+        }
+
+        void setWindowSize(int before, int after) {
+            synchronized (queue) {
+                window.setSize(before, after);
+                if (queue.getQueueItemCount() > 0) {
+                    refreshQueueItems();
                 }
             }
-            checkLookingForIndexes();
         }
-        private int getCurrentItemIndex() {
-            return queue.indexOfItemWithId(client.getMediaStatus().getCurrentItemId());
+
+        @Override
+        public int getItemCount() {
+            return queue.getQueueItemCount();
         }
-        /**
-         * Works to get all items listed in lookingForIndexes.
-         * After all have been found, send out an update.
-         */
-        private void checkLookingForIndexes() {
-            // reset queueItems
-            queueItems = new JSONArray();
-
-            // Can we get all items in lookingForIndex?
-            MediaQueueItem item;
-            boolean foundAllIndexes = true;
-            for (int index : lookingForIndexes) {
-                item = queue.getItemAtIndex(index, true);
-                // If this returns null that means the item is not in the cache, which will
-                // trigger itemsUpdatedAtIndexes, which will trigger checkLookingForIndexes again
-                if (item != null) {
-                    queueItems.put(ChromecastUtilities.createQueueItem(item, index));
-                } else {
-                    foundAllIndexes = false;
-                }
-            }
-            if (foundAllIndexes) {
-                lookingForIndexes.clear();
-                updateFinished();
-            }
+        @Override
+        public int getCurrentItemIndex() {
+            return queue.getQueueIndexOfItemWithId(queue.getCurrentItemId());
+        }
+        @Override
+        public int[] getItemIds() {
+            return queue.getQueueItemIds();
+        }
+        @Override
+        public int getItemIdAtIndex(int index) {
+            return queue.getQueueItemIdAtIndex(index);
+        }
+        @Override
+        public int indexOfItemWithId(int itemId) {
+            return queue.getQueueIndexOfItemWithId(itemId);
         }
-        private void updateFinished() {
+        @Override
+        public MediaQueueItem getItemAtIndex(int index) {
+            return queue.getQueueItemAtIndex(index);
+        }
+        @Override
+        public void onWindowUpdated(List<String> queueItems) {
             // Update the queueItems
             ChromecastUtilities.setQueueItems(queueItems);
-            if (queueReloadCallback != null && queue.getItemCount() > 0) {
+            if (queueReloadCallback != null && queue.getQueueItemCount() > 0) {
                 queueReloadCallback.run();
                 setQueueReloadCallback(null);
             }
-            clientListener.onMediaUpdate(createMediaObject());
+            clientListener.onMediaUpdate(createMediaSnapshot());
+        }
+
+        /**
+         * Gets a page of items, the callback is called once they have all been fetched.
+         * @param offset index of the first item, ignored if cursor is given
+         * @param cursor the nextCursor of a previous page, or null
+         * @param limit max number of items
+         * @param callback called with the page
+         */
+        void getPage(int offset, String cursor, int limit, CallbackContext callback) {
+            synchronized (queue) {
+                final PendingPage pending = new PendingPage(ChromecastQueuePage.create(this, offset, cursor, limit), callback);
+                pages.add(pending);
+                checkPages();
+                if (pages.contains(pending)) {
+                    executor.postOnMain("queueGetPageTimeout", new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (queue) {
+                                if (pages.remove(pending)) {
+                                    pending.callback.error(ChromecastUtilities.createError("timeout",
+                                            "Timed out fetching the queue items."));
+                                }
+                            }
+                        }
+                    }, PAGE_TIMEOUT);
+                }
+            }
+        }
+
+        /**
+         * Sends the pages whose items have all been fetched.
+         */
+        private void checkPages() {
+            for (int i = pages.size() - 1; i >= 0; i--) {
+                PendingPage pending = pages.get(i);
+                if (pending.page.fill(this, pageWriter)) {
+                    pages.remove(i);
+                    pageWriter.reset();
+                    pending.page.write(pageWriter);
+                    pending.callback.sendPluginResult(new ChromecastRenderedResult(pageWriter.toString()));
+                }
+            }
         }
 
         @Override
         public void itemsReloaded() {
+            tracer.instant("sdk", "itemsReloaded");
             synchronized (queue) {
-                int itemCount = queue.getItemCount();
+                int itemCount = queue.getQueueItemCount();
                 if (itemCount == 0) {
                     return;
                 }
+                window.clear();
                 if (queueReloadCallback == null) {
                     setQueueReloadCallback(new Runnable() {
                         @Override
                         public void run() {
                             // This was externally loaded
-                            clientListener.onMediaLoaded(createMediaObject());
+                            clientListener.onMediaLoaded(createMediaSnapshot());
                         }
                     });
                 }
@@ -544,38 +647,78 @@ public class ChromecastSession {
             }
         }
         @Override
-        public void itemsUpdatedAtIndexes(int[] ints) {
+        public void itemsUpdatedAtIndexes(int[] indexes) {
+            tracer.instant("sdk", "itemsUpdatedAtIndexes");
             synchronized (queue) {
-                // Check if we were looking for all the ints
-                for (int i = 0; i < ints.length; i++) {
-                    // If we weren't looking for an ints, that means it was changed
-                    // (rather than just retrieved from the cache)
-                    if (lookingForIndexes.indexOf(ints[i]) == -1) {
-                        // So refresh the queue (the changed item might not be part
-                        // of the items we want to output anyways, so let refresh
-                        // handle it.
-                        refreshQueueItems();
-                        return;
-                    }
-                }
-                // Else, we got new items from the cache
-                checkLookingForIndexes();
+                window.itemsUpdatedAtIndexes(indexes);
+                checkPages();
             }
         }
         @Override
         public void itemsInsertedInRange(int startIndex, int insertCount) {
+            tracer.instant("sdk", "itemsInsertedInRange");
             synchronized (queue) {
-                refreshQueueItems();
+                window.itemsInsertedInRange(startIndex, insertCount);
+                checkPages();
+            }
+        }
+        @Override
+        public void itemsRemovedAtIndexes(int[] indexes) {
+            tracer.instant("sdk", "itemsRemovedAtIndexes");
+            synchronized (queue) {
+                window.itemsRemovedAtIndexes(indexes);
+                checkPages();
             }
         }
         @Override
-        public void itemsRemovedAtIndexes(int[] ints) {
+        public void itemsReorderedAtIndexes(List<Integer> indexes, int insertBeforeIndex) {
+            tracer.instant("sdk", "itemsReorderedAtIndexes");
             synchronized (queue) {
                 refreshQueueItems();
+                checkPages();
             }
         }
     };
 
+    /**
+     * A page requested with queueGetItems.
+     */
+    private static final class PendingPage {
+        /** The page. **/
+        private final ChromecastQueuePage page;
+        /** Called with the page once its items are fetched. **/
+        private final CallbackContext callback;
+
+        PendingPage(ChromecastQueuePage queuePage, CallbackContext callbackContext) {
+            this.page = queuePage;
+            this.callback = callbackContext;
+        }
+    }
+
+    /**
+     * Gets a page of the queue items, fetching them from the receiver as needed.
+     * Pages can be walked with the returned cursor, it is stable across queue changes.
+     * @param offset index of the first item, ignored if cursor is given
+     * @param cursor the nextCursor of a previous page, or null
+     * @param limit max number of items (at most 100)
+     * @param callback called with {items, offset, totalItems, nextCursor} or error
+     */
+    public void queueGetItems(int offset, String cursor, int limit, CallbackContext callback) {
+        if (client == null || session == null) {
+            callback.error("session_error");
+            return;
+        }
+        executor.runOnMain("queueGetItems", new Runnable() {
+            public void run() {
+                if (mediaQueueCallback == null) {
+                    callback.error("session_error");
+                    return;
+                }
+                mediaQueueCallback.getPage(offset, cursor, limit, callback);
+            }
+        });
+    }
+
     /**
      * Loads a queue of media to the Chromecast.
      * @param queueLoadRequest chrome.cast.media.QueueLoadRequest
@@ -586,46 +729,293 @@ public class ChromecastSession {
             callback.error("session_error");
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runInBackground(new Runnable() {
             public void run() {
-                try {
-                    JSONArray qItems = queueLoadRequest.getJSONArray("items");
-                    MediaQueueItem[] items = new MediaQueueItem[qItems.length()];
-                    for (int i = 0; i < qItems.length(); i++) {
-                        items[i] = ChromecastUtilities.createMediaQueueItem(qItems.getJSONObject(i));
+                loadQueue(queueLoadRequest, callback);
+            }
+        });
+    }
+
+    /**
+     * Converts the items of a queue load request, then loads them on the main thread.
+     * Must be called on the background looper.
+     * @param queueLoadRequest chrome.cast.media.QueueLoadRequest
+     * @param callback called with success or error
+     */
+    private void loadQueue(JSONObject queueLoadRequest, CallbackContext callback) {
+        // The loader and the queueLoad call must use the same client
+        final Receiver mediaClient = client;
+        if (mediaClient == null) {
+            callback.error("session_error");
+            return;
+        }
+        final MediaQueueItem[] items;
+        final int startIndex;
+        final int repeatMode;
+        final ChromecastQueueLoader loader;
+        try {
+            JSONArray qItems = queueLoadRequest.getJSONArray("items");
+            int index = queueLoadRequest.getInt("startIndex");
+            repeatMode = ChromecastUtilities.getAndroidRepeatMode(queueLoadRequest.getString("repeatMode"));
+            JSONObject progressive = queueLoadRequest.optJSONObject("progressive");
+            int initialItems = progressive == null ? 0
+                    : progressive.optInt("initialItems", ChromecastQueueLoader.DEFAULT_INITIAL_ITEMS);
+            if (progressive != null && index >= 0 && index < qItems.length()
+                    && (index > 0 || initialItems < qItems.length())) {
+                // Only load the items from the start index, the loader inserts the others
+                int to = Math.min(qItems.length(), index + Math.max(1, initialItems));
+                items = ChromecastUtilities.createMediaQueueItems(qItems, index, to, false);
+                startIndex = 0;
+                loader = new ChromecastQueueLoader(mediaClient, executor, qItems, index, to,
+                        progressive.optInt("batchSize", ChromecastQueueLoader.DEFAULT_BATCH_SIZE),
+                        progressive.optInt("maxInFlight", ChromecastQueueLoader.DEFAULT_MAX_IN_FLIGHT),
+                        new ChromecastQueueLoader.Listener() {
+                            @Override
+                            public void onProgress(int loadedItems, int totalItems, JSONObject error) {
+                                onQueueLoadProgress(loadedItems, totalItems, error);
+                            }
+                        });
+            } else {
+                items = ChromecastUtilities.createMediaQueueItems(qItems, false);
+                startIndex = index;
+                loader = null;
+            }
+        } catch (JSONException e) {
+            callback.error(ChromecastUtilities.createError("invalid_parameter", e.getMessage()));
+            return;
+        }
+        if (startIndex < 0 || startIndex >= items.length) {
+            callback.error(ChromecastUtilities.createError("invalid_parameter", "startIndex is out of range."));
+            return;
+        }
+        final long playPosition = Double.valueOf(items[startIndex].getStartTime() * 1000).longValue();
+        final JSONObject customData = queueLoadRequest.optJSONObject("customData");
+        executor.runOnMain("queueLoad", new Runnable() {
+            public void run() {
+                // The session may have ended, or changed, while the items were being converted
+                if (client != mediaClient || session == null) {
+                    callback.error("session_error");
+                    return;
+                }
+                cancelQueueLoad();
+                queueLoader = loader;
+                setQueueReloadCallback(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Start inserting the rest once the media was returned, so that
+                        // the javascript side can listen to the progress of the media
+                        sendMediaObject(callback, loader == null ? null : new Runnable() {
+                            @Override
+                            public void run() {
+                                if (queueLoader == loader) {
+                                    // The first loaded item is the one that is playing
+                                    loader.start(mediaClient.getCurrentItemId());
+                                }
+                            }
+                        });
+                    }
+                });
+                mediaClient.queueLoad(items, startIndex, repeatMode, playPosition, customData, new Receiver.Result() {
+                    @Override
+                    public void onResult(boolean success, JSONObject result) {
+                        if (!success) {
+                            callback.error("session_error");
+                            setQueueReloadCallback(null);
+                            if (queueLoader == loader) {
+                                queueLoader = null;
+                            }
+                        }
                     }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stops inserting the rest of a progressively loaded queue, if any.
+     * Must be called on the main thread.
+     */
+    private void cancelQueueLoad() {
+        if (queueLoader != null) {
+            queueLoader.cancel();
+            queueLoader = null;
+        }
+    }
+
+    private void onQueueLoadProgress(int loadedItems, int totalItems, JSONObject error) {
+        JSONObject progress = new JSONObject();
+        try {
+            progress.put("loadedItems", loadedItems);
+            progress.put("totalItems", totalItems);
+            progress.put("done", loadedItems == totalItems || error != null);
+            progress.put("error", error != null ? error : JSONObject.NULL);
+        } catch (JSONException e) {
+        }
+        clientListener.onQueueLoadProgress(progress);
+    }
 
-                    int startIndex = queueLoadRequest.getInt("startIndex");
-                    int repeatMode = ChromecastUtilities.getAndroidRepeatMode(queueLoadRequest.getString("repeatMode"));
-                    long playPosition = Double.valueOf(items[startIndex].getStartTime() * 1000).longValue();
-                    JSONObject customData = null;
-                    try {
-                        customData = queueLoadRequest.getJSONObject("customData");
-                    } catch (JSONException e) {
+    /**
+     * Inserts items into the queue, in a single request.
+     * @param request chrome.cast.media.QueueInsertItemsRequest {items, insertBefore, customData},
+     *                the items are appended if insertBefore is null
+     * @param callback called with success or error
+     */
+    public void queueInsertItems(JSONObject request, CallbackContext callback) {
+        if (client == null || session == null) {
+            callback.error("session_error");
+            return;
+        }
+        executor.runInBackground(new Runnable() {
+            public void run() {
+                final MediaQueueItem[] items;
+                final int insertBefore;
+                try {
+                    items = ChromecastUtilities.createMediaQueueItems(request.getJSONArray("items"), false);
+                    insertBefore = getItemId(request, "insertBefore");
+                } catch (JSONException e) {
+                    callback.error(ChromecastUtilities.createError("invalid_parameter", e.getMessage()));
+                    return;
+                }
+                executor.runOnMain("queueInsertItems", new Runnable() {
+                    public void run() {
+                        // The session may have ended while the request was being converted
+                        Receiver mediaClient = client;
+                        if (mediaClient == null || session == null) {
+                            callback.error("session_error");
+                            return;
+                        }
+                        mediaClient.queueInsertItems(items, insertBefore, request.optJSONObject("customData"),
+                                getResultCallback(callback, "Failed to insert queue items."));
                     }
+                });
+            }
+        });
+    }
 
-                    setQueueReloadCallback(new Runnable() {
-                        @Override
-                        public void run() {
-                            callback.success(createMediaObject());
+    /**
+     * Removes items from the queue, in a single request.
+     * @param request chrome.cast.media.QueueRemoveItemsRequest {itemIds, customData}
+     * @param callback called with success or error
+     */
+    public void queueRemoveItems(JSONObject request, CallbackContext callback) {
+        if (client == null || session == null) {
+            callback.error("session_error");
+            return;
+        }
+        executor.runInBackground(new Runnable() {
+            public void run() {
+                final int[] itemIds;
+                try {
+                    itemIds = getItemIds(request.getJSONArray("itemIds"));
+                } catch (JSONException e) {
+                    callback.error(ChromecastUtilities.createError("invalid_parameter", e.getMessage()));
+                    return;
+                }
+                executor.runOnMain("queueRemoveItems", new Runnable() {
+                    public void run() {
+                        // The session may have ended while the request was being converted
+                        Receiver mediaClient = client;
+                        if (mediaClient == null || session == null) {
+                            callback.error("session_error");
+                            return;
                         }
-                    });
-                    client.queueLoad(items, startIndex, repeatMode, playPosition, customData).setResultCallback(new ResultCallback<MediaChannelResult>() {
-                        @Override
-                        public void onResult(@NonNull MediaChannelResult result) {
-                            if (!result.getStatus().isSuccess()) {
-                                callback.error("session_error");
-                                setQueueReloadCallback(null);
-                            }
+                        mediaClient.queueRemoveItems(itemIds, request.optJSONObject("customData"),
+                                getResultCallback(callback, "Failed to remove queue items."));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Moves items of the queue, in a single request.
+     * @param request chrome.cast.media.QueueReorderItemsRequest {itemIds, insertBefore, customData},
+     *                the items are moved to the end if insertBefore is null
+     * @param callback called with success or error
+     */
+    public void queueReorderItems(JSONObject request, CallbackContext callback) {
+        if (client == null || session == null) {
+            callback.error("session_error");
+            return;
+        }
+        executor.runInBackground(new Runnable() {
+            public void run() {
+                final int[] itemIds;
+                final int insertBefore;
+                try {
+                    itemIds = getItemIds(request.getJSONArray("itemIds"));
+                    insertBefore = getItemId(request, "insertBefore");
+                } catch (JSONException e) {
+                    callback.error(ChromecastUtilities.createError("invalid_parameter", e.getMessage()));
+                    return;
+                }
+                executor.runOnMain("queueReorderItems", new Runnable() {
+                    public void run() {
+                        // The session may have ended while the request was being converted
+                        Receiver mediaClient = client;
+                        if (mediaClient == null || session == null) {
+                            callback.error("session_error");
+                            return;
                         }
-                    });
+                        mediaClient.queueReorderItems(itemIds, insertBefore, request.optJSONObject("customData"),
+                                getResultCallback(callback, "Failed to reorder queue items."));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Updates items of the queue, in a single request.
+     * @param request chrome.cast.media.QueueUpdateItemsRequest {items, customData},
+     *                each item must have its itemId
+     * @param callback called with success or error
+     */
+    public void queueUpdateItems(JSONObject request, CallbackContext callback) {
+        if (client == null || session == null) {
+            callback.error("session_error");
+            return;
+        }
+        executor.runInBackground(new Runnable() {
+            public void run() {
+                final MediaQueueItem[] items;
+                try {
+                    items = ChromecastUtilities.createMediaQueueItems(request.getJSONArray("items"), true);
                 } catch (JSONException e) {
                     callback.error(ChromecastUtilities.createError("invalid_parameter", e.getMessage()));
+                    return;
                 }
+                executor.runOnMain("queueUpdateItems", new Runnable() {
+                    public void run() {
+                        // The session may have ended while the request was being converted
+                        Receiver mediaClient = client;
+                        if (mediaClient == null || session == null) {
+                            callback.error("session_error");
+                            return;
+                        }
+                        mediaClient.queueUpdateItems(items, request.optJSONObject("customData"),
+                                getResultCallback(callback, "Failed to update queue items."));
+                    }
+                });
             }
         });
     }
 
+    private static int getItemId(JSONObject request, String key) throws JSONException {
+        if (request.isNull(key)) {
+            return MediaQueueItem.INVALID_ITEM_ID;
+        }
+        return request.getInt(key);
+    }
+
+    private static int[] getItemIds(JSONArray ids) throws JSONException {
+        int[] itemIds = new int[ids.length()];
+        for (int i = 0; i < itemIds.length; i++) {
+            itemIds[i] = ids.getInt(i);
+        }
+        return itemIds;
+    }
+
     /**
      * Plays the item with itemId in the queue.
      * @param itemId The ID of the item to jump to.
@@ -637,24 +1027,22 @@ public class ChromecastSession {
             return;
         }
 
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("queueJumpToItem", new Runnable() {
             public void run() {
                 setQueueStatusUpdatedCallback(new Runnable() {
                     @Override
                     public void run() {
-                        clientListener.onMediaUpdate(createMediaObject(MediaStatus.IDLE_REASON_INTERRUPTED));
+                        clientListener.onMediaUpdate(createMediaSnapshot(MediaStatus.IDLE_REASON_INTERRUPTED));
                     }
                 });
-                client.queueJumpToItem(itemId, null)
-                        .setResultCallback(new ResultCallback<MediaChannelResult>() {
+                client.queueJumpToItem(itemId, null, new Receiver.Result() {
                     @Override
-                    public void onResult(@NonNull MediaChannelResult result) {
+                    public void onResult(boolean success, JSONObject errorResult) {
 
-                        if (result.getStatus().isSuccess()) {
+                        if (success) {
                             callback.success();
                         } else {
                             setQueueStatusUpdatedCallback(null);
-                            JSONObject errorResult = result.getCustomData();
                             String error = "Failed to jump to queue item with ID: " + itemId;
                             if (errorResult != null) {
                                 error += "\nError details: " + errorResult;
@@ -679,7 +1067,7 @@ public class ChromecastSession {
             callback.error("session_error");
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("setVolume", new Runnable() {
             public void run() {
                 try {
                     session.setVolume(volume);
@@ -701,7 +1089,7 @@ public class ChromecastSession {
             callback.error("session_error");
             return;
         }
-        activity.runOnUiThread(new Runnable() {
+        executor.runOnMain("setMute", new Runnable() {
             public void run() {
                 try {
                     session.setMute(muted);
@@ -719,16 +1107,15 @@ public class ChromecastSession {
      * Returns a resultCallback that wraps the callback and calls the onMediaUpdate listener.
      * @param callback client callback
      * @param errorMsg error message if failure
-     * @return a callback for use in PendingResult.setResultCallback()
+     * @return a callback for the requests of the Receiver
      */
-    private ResultCallback<MediaChannelResult> getResultCallback(CallbackContext callback, String errorMsg) {
-        return new ResultCallback<MediaChannelResult>() {
+    private Receiver.Result getResultCallback(CallbackContext callback, String errorMsg) {
+        return new Receiver.Result() {
             @Override
-            public void onResult(@NonNull MediaChannelResult result) {
-                if (result.getStatus().isSuccess()) {
+            public void onResult(boolean success, JSONObject errorResult) {
+                if (success) {
                     callback.success();
                 } else {
-                    JSONObject errorResult = result.getCustomData();
                     String error = errorMsg;
                     if (errorResult != null) {
                         error += "\nError details: " + errorMsg;
@@ -739,34 +1126,131 @@ public class ChromecastSession {
         };
     }
 
-    private JSONObject createSessionObject() {
-        return ChromecastUtilities.createSessionObject(session);
+    private SessionSnapshot createSessionSnapshot() {
+        return session == null ? null : ChromecastUtilities.createSessionSnapshot(session, null);
     }
 
-    /** Last sent media object. **/
-    private JSONObject lastMediaObject;
-    private JSONObject createMediaObject() {
-        return createMediaObject(null);
+    /**
+     * Captures the media on the main thread, and sends it to the callback from the background.
+     * @param callback called with the media object
+     * @param then run on the main thread once the media was sent, or null
+     */
+    private void sendMediaObject(final CallbackContext callback, final Runnable then) {
+        final MediaSnapshot snapshot = createMediaSnapshot();
+        executor.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                callback.success(ChromecastSerializer.createMediaObject(snapshot));
+                if (then != null) {
+                    executor.runOnMain("queueLoad", then);
+                }
+            }
+        });
     }
 
-    private JSONObject createMediaObject(Integer idleReason) {
-        if (idleReason != null && lastMediaObject != null) {
-            try {
-                lastMediaObject.put("playerState", ChromecastUtilities.getMediaPlayerState(MediaStatus.PLAYER_STATE_IDLE));
-                lastMediaObject.put("idleReason", ChromecastUtilities.getMediaIdleReason(idleReason));
-                return lastMediaObject;
-            } catch (JSONException e) {
-            }
+    /** Last sent media snapshot. **/
+    private MediaSnapshot lastMediaSnapshot;
+    private MediaSnapshot createMediaSnapshot() {
+        lastMediaSnapshot = session == null ? null : ChromecastUtilities.createMediaSnapshot(session);
+        return lastMediaSnapshot;
+    }
+
+    private MediaSnapshot createMediaSnapshot(int idleReason) {
+        if (lastMediaSnapshot != null) {
+            return lastMediaSnapshot.withIdleReason(idleReason);
         }
-        JSONObject out = ChromecastUtilities.createMediaObject(session);
-        lastMediaObject = out;
-        return out;
+        return createMediaSnapshot();
     }
 
     interface Listener extends Cast.MessageReceivedCallback {
-        void onMediaLoaded(JSONObject jsonMedia);
-        void onMediaUpdate(JSONObject jsonMedia);
-        void onSessionUpdate(JSONObject jsonSession);
+        void onMediaLoaded(MediaSnapshot media);
+        void onMediaUpdate(MediaSnapshot media);
+        void onSessionUpdate(SessionSnapshot snapshot);
         void onSessionEnd(JSONObject jsonSession);
+        void onQueueLoadProgress(JSONObject progress);
+    }
+
+    /**
+     * The receiver a session talks to: its CastSession, RemoteMediaClient and MediaQueue
+     * (see ChromecastSdkReceiver), or an in-memory receiver (see ChromecastFakeReceiver).
+     * Two Receivers are equal if they are the same session.
+     * All the methods are called on the main thread, and the listeners and results
+     * are called on the main thread too.
+     */
+    interface Receiver {
+        String getModelName();
+        boolean hasMediaStatus();
+        /** @return MediaStatus.PLAYER_STATE_*, PLAYER_STATE_UNKNOWN without media status */
+        int getPlayerState();
+        /** @return the current item id, MediaQueueItem.INVALID_ITEM_ID without media status */
+        int getCurrentItemId();
+        /**
+         * @param queueItems the rendered items of the queue window
+         * @return the media snapshot, or null without media status
+         */
+        MediaSnapshot captureMedia(List<String> queueItems);
+        SessionSnapshot captureSession(List<String> queueItems, String state);
+
+        void setListener(Listener listener);
+        void setQueueListener(QueueListener listener);
+
+        void addMessageListener(String namespace, Cast.MessageReceivedCallback callback) throws IOException;
+        void sendMessage(String namespace, String message, Result result);
+        void setVolume(double volume) throws IOException;
+        void setMute(boolean muted) throws IOException;
+
+        void load(MediaLoadRequestData request, Result result);
+        void play(Result result);
+        void pause(Result result);
+        void stop(Result result);
+        void seek(MediaSeekOptions options, Result result);
+        void setStreamVolume(double level, Result result);
+        void setStreamMute(boolean muted, Result result);
+        void setActiveMediaTracks(long[] trackIds, Result result);
+        void setTextTrackStyle(TextTrackStyle style, Result result);
+
+        void queueLoad(MediaQueueItem[] items, int startIndex, int repeatMode, long playPosition,
+                       JSONObject customData, Result result);
+        void queueInsertItems(MediaQueueItem[] items, int insertBeforeItemId, JSONObject customData, Result result);
+        void queueRemoveItems(int[] itemIds, JSONObject customData, Result result);
+        void queueReorderItems(int[] itemIds, int insertBeforeItemId, JSONObject customData, Result result);
+        void queueUpdateItems(MediaQueueItem[] items, JSONObject customData, Result result);
+        void queueJumpToItem(int itemId, JSONObject customData, Result result);
+
+        int getQueueItemCount();
+        int[] getQueueItemIds();
+        int getQueueItemIdAtIndex(int index);
+        int getQueueIndexOfItemWithId(int itemId);
+        /**
+         * @param index the index of the item
+         * @return the item, or null if it is being fetched (itemsUpdatedAtIndexes follows)
+         */
+        MediaQueueItem getQueueItemAtIndex(int index);
+
+        /** The status and application events of a receiver. */
+        interface Listener {
+            void onStatusUpdated();
+            void onQueueStatusUpdated();
+            void onApplicationUpdated();
+            void onApplicationDisconnected();
+        }
+
+        /** The changes of a receiver's queue, like MediaQueue.Callback. */
+        interface QueueListener {
+            void itemsReloaded();
+            void itemsUpdatedAtIndexes(int[] indexes);
+            void itemsInsertedInRange(int insertIndex, int insertCount);
+            void itemsRemovedAtIndexes(int[] indexes);
+            void itemsReorderedAtIndexes(List<Integer> indexes, int insertBeforeIndex);
+        }
+
+        /** The result of a request. */
+        interface Result {
+            /**
+             * @param success whether the request succeeded
+             * @param customData the custom data of the result, or null
+             */
+            void onResult(boolean success, JSONObject customData);
+        }
     }
 }
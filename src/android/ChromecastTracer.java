@@ -0,0 +1,255 @@
+package acidhax.cordova.chromecast;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records a timeline of what the plugin does, to look into reports like
+ * "casting was laggy" after the fact.
+ *
+ * The spans (eg. bridge calls, main thread tasks) and instants (eg. SDK callbacks,
+ * events sent to javascript) go to a ring buffer of a fixed number of events that
+ * keeps the newest ones, see export for the Chrome trace-event format it dumps to
+ * (open it in chrome://tracing or ui.perfetto.dev).
+ *
+ * Recording is off until a buffer size is set, and then costs a volatile read
+ * per call site.  All the methods can be called from any thread.
+ */
+final class ChromecastTracer {
+    /** Tag for logging. */
+    private static final String TAG = "Chromecast";
+
+    /** Max number of events in the buffer. */
+    static final int MAX_CAPACITY = 100000;
+    /** Span phase in the trace-event format (complete event). */
+    private static final char SPAN = 'X';
+    /** Instant phase in the trace-event format. */
+    private static final char INSTANT = 'i';
+
+    /** The events, null when recording is off. */
+    private volatile Buffer buffer;
+
+    /**
+     * Constructor.
+     * @param capacity number of events to keep, 0 to not record until setCapacity is called
+     */
+    ChromecastTracer(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Starts recording in a new, empty buffer.
+     * @param capacity number of events to keep (at most MAX_CAPACITY), 0 to stop recording
+     */
+    void setCapacity(int capacity) {
+        int size = Math.min(MAX_CAPACITY, capacity);
+        buffer = size > 0 ? new Buffer(size) : null;
+    }
+
+    /**
+     * @return whether events are recorded
+     */
+    boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * Records something that happened now.
+     * @param category eg. "sdk"
+     * @param name eg. "onStatusUpdated"
+     */
+    void instant(String category, String name) {
+        Buffer events = buffer;
+        if (events != null) {
+            events.add(INSTANT, category, name, SystemClock.elapsedRealtimeNanos(), 0, Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * Records something that ends now.
+     * @param category eg. "main"
+     * @param name eg. "loadMedia"
+     * @param durationNanos how long it took
+     */
+    void span(String category, String name, long durationNanos) {
+        Buffer events = buffer;
+        if (events != null) {
+            events.add(SPAN, category, name, SystemClock.elapsedRealtimeNanos() - durationNanos, durationNanos,
+                    Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * Records a bridge call as a span from now until its result is sent to javascript.
+     * @param action the action
+     * @param callbackContext the action's callback
+     * @param webView the plugin's webView
+     * @return the callback to use instead of callbackContext, or callbackContext if recording is off
+     */
+    CallbackContext trace(String action, CallbackContext callbackContext, CordovaWebView webView) {
+        if (buffer == null) {
+            return callbackContext;
+        }
+        return new TracedCallbackContext(action, callbackContext, webView);
+    }
+
+    /**
+     * Dumps the buffer in the Chrome trace-event format, times are in us since boot.
+     * @return {traceEvents: [...], displayTimeUnit, otherData: {capacity, dropped}},
+     *         traceEvents is empty when recording is off
+     */
+    JSONObject export() {
+        JSONObject out = new JSONObject();
+        JSONArray traceEvents = new JSONArray();
+        Buffer events = buffer;
+        try {
+            int pid = Process.myPid();
+            long dropped = 0;
+            if (events != null) {
+                Map<String, Integer> threads = new HashMap<>();
+                synchronized (events) {
+                    dropped = events.dropped;
+                    int first = events.size < events.capacity ? 0 : events.next;
+                    for (int i = 0; i < events.size; i++) {
+                        int index = (first + i) % events.capacity;
+                        Integer tid = threads.get(events.threads[index]);
+                        if (tid == null) {
+                            tid = threads.size() + 1;
+                            threads.put(events.threads[index], tid);
+                        }
+                        JSONObject event = new JSONObject()
+                                .put("name", events.names[index])
+                                .put("cat", events.categories[index])
+                                .put("ph", String.valueOf(events.phases[index]))
+                                .put("ts", events.starts[index] / 1000)
+                                .put("pid", pid)
+                                .put("tid", tid);
+                        if (events.phases[index] == SPAN) {
+                            event.put("dur", events.durations[index] / 1000);
+                        } else {
+                            event.put("s", "t");
+                        }
+                        traceEvents.put(event);
+                    }
+                }
+                for (Map.Entry<String, Integer> thread : threads.entrySet()) {
+                    traceEvents.put(new JSONObject()
+                            .put("name", "thread_name")
+                            .put("ph", "M")
+                            .put("pid", pid)
+                            .put("tid", thread.getValue())
+                            .put("args", new JSONObject().put("name", thread.getKey())));
+                }
+            }
+            out.put("traceEvents", traceEvents);
+            out.put("displayTimeUnit", "ms");
+            out.put("otherData", new JSONObject()
+                    .put("capacity", events != null ? events.capacity : 0)
+                    .put("dropped", dropped));
+        } catch (JSONException e) {
+            LOG.w(TAG, "Incomplete trace, " + e.getMessage());
+        }
+        return out;
+    }
+
+    /**
+     * Ring buffer of events, as parallel arrays so that recording doesn't allocate.
+     */
+    private static final class Buffer {
+        /** Max number of events. */
+        private final int capacity;
+        /** Phase of each event. */
+        private final char[] phases;
+        /** Category of each event. */
+        private final String[] categories;
+        /** Name of each event. */
+        private final String[] names;
+        /** Start of each event (elapsedRealtimeNanos). */
+        private final long[] starts;
+        /** Duration of each span. */
+        private final long[] durations;
+        /** Thread of each event. */
+        private final String[] threads;
+        /** Where the next event goes. */
+        private int next;
+        /** Number of events in the buffer. */
+        private int size;
+        /** Number of events overwritten by newer ones. */
+        private long dropped;
+
+        Buffer(int maxEvents) {
+            this.capacity = maxEvents;
+            this.phases = new char[maxEvents];
+            this.categories = new String[maxEvents];
+            this.names = new String[maxEvents];
+            this.starts = new long[maxEvents];
+            this.durations = new long[maxEvents];
+            this.threads = new String[maxEvents];
+        }
+
+        synchronized void add(char phase, String category, String name, long start, long duration, String thread) {
+            phases[next] = phase;
+            categories[next] = category;
+            names[next] = name;
+            starts[next] = start;
+            durations[next] = duration;
+            threads[next] = thread;
+            next = (next + 1) % capacity;
+            if (size < capacity) {
+                size++;
+            } else {
+                dropped++;
+            }
+        }
+    }
+
+    /**
+     * Sends the results through the action's CallbackContext, and records the
+     * bridge call when the first final one is sent.
+     */
+    private final class TracedCallbackContext extends CallbackContext {
+        /** The action. */
+        private final String action;
+        /** The action's callback. */
+        private final CallbackContext callback;
+        /** When the bridge call started (elapsedRealtimeNanos). */
+        private final long start = SystemClock.elapsedRealtimeNanos();
+        /** The thread of the bridge call. */
+        private final String thread = Thread.currentThread().getName();
+
+        TracedCallbackContext(String actionName, CallbackContext callbackContext, CordovaWebView webView) {
+            super(callbackContext.getCallbackId(), webView);
+            this.action = actionName;
+            this.callback = callbackContext;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return callback.isFinished();
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            boolean first;
+            synchronized (this) {
+                first = !callback.isFinished();
+                callback.sendPluginResult(pluginResult);
+            }
+            Buffer events = buffer;
+            if (first && !pluginResult.getKeepCallback() && events != null) {
+                events.add(SPAN, "bridge", action, start, SystemClock.elapsedRealtimeNanos() - start, thread);
+            }
+        }
+    }
+}
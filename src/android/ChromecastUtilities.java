@@ -1,35 +1,27 @@
 package acidhax.cordova.chromecast;
 
-import android.graphics.Color;
-import android.net.Uri;
-
 import androidx.annotation.NonNull;
-import androidx.mediarouter.media.MediaRouter;
 
-import com.google.android.gms.cast.ApplicationMetadata;
-import com.google.android.gms.cast.CastDevice;
 import com.google.android.gms.cast.MediaInfo;
 import com.google.android.gms.cast.MediaMetadata;
-import com.google.android.gms.cast.MediaQueueData;
 import com.google.android.gms.cast.MediaQueueItem;
 import com.google.android.gms.cast.MediaStatus;
 import com.google.android.gms.cast.MediaTrack;
 import com.google.android.gms.cast.TextTrackStyle;
 import com.google.android.gms.cast.framework.CastSession;
-import com.google.android.gms.common.images.WebImage;
 
+import org.apache.cordova.LOG;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.GregorianCalendar;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 
 final class ChromecastUtilities {
-    /** Stores a cache of the queueItems for building Media Objects. */
-    private static JSONArray queueItems = null;
+    /** Tag for logging. */
+    private static final String TAG = "Chromecast";
+    /** Stores a cache of the rendered queueItems for building Media Objects. */
+    private static List<String> queueItems = null;
 
     private ChromecastUtilities() {
         //not called
@@ -38,9 +30,9 @@ final class ChromecastUtilities {
     /**
      * Sets the queueItems to be returned with the media object so they don't have to be calculated
      * every time we need to send an update.
-     * @param items queueItems
+     * @param items the rendered queueItems
      */
-    static void setQueueItems(JSONArray items) {
+    static void setQueueItems(List<String> items) {
         queueItems = items;
     }
 
@@ -78,8 +70,8 @@ final class ChromecastUtilities {
         }
     }
 
-    static String getMediaInfoStreamType(MediaInfo mediaInfo) {
-        switch (mediaInfo.getStreamType()) {
+    static String getMediaInfoStreamType(int streamType) {
+        switch (streamType) {
             case MediaInfo.STREAM_TYPE_BUFFERED:
                 return "BUFFERED";
             case MediaInfo.STREAM_TYPE_LIVE:
@@ -91,8 +83,8 @@ final class ChromecastUtilities {
         }
     }
 
-    static String getTrackType(MediaTrack track) {
-        switch (track.getType()) {
+    static String getTrackType(int type) {
+        switch (type) {
             case MediaTrack.TYPE_AUDIO:
                 return "AUDIO";
             case MediaTrack.TYPE_TEXT:
@@ -104,8 +96,8 @@ final class ChromecastUtilities {
         }
     }
 
-    static String getTrackSubtype(MediaTrack track) {
-        switch (track.getSubtype()) {
+    static String getTrackSubtype(int subtype) {
+        switch (subtype) {
             case MediaTrack.SUBTYPE_CAPTIONS:
                 return "CAPTIONS";
             case MediaTrack.SUBTYPE_CHAPTERS:
@@ -123,8 +115,8 @@ final class ChromecastUtilities {
         }
     }
 
-    static String getEdgeType(TextTrackStyle textTrackStyle) {
-        switch (textTrackStyle.getEdgeType()) {
+    static String getEdgeType(int edgeType) {
+        switch (edgeType) {
             case TextTrackStyle.EDGE_TYPE_DEPRESSED:
                 return "DEPRESSED";
             case TextTrackStyle.EDGE_TYPE_DROP_SHADOW:
@@ -139,8 +131,8 @@ final class ChromecastUtilities {
         }
     }
 
-    static String getFontGenericFamily(TextTrackStyle textTrackStyle) {
-        switch (textTrackStyle.getFontGenericFamily()) {
+    static String getFontGenericFamily(int fontGenericFamily) {
+        switch (fontGenericFamily) {
             case TextTrackStyle.FONT_FAMILY_CURSIVE:
                 return "CURSIVE";
             case TextTrackStyle.FONT_FAMILY_MONOSPACED_SANS_SERIF:
@@ -158,8 +150,8 @@ final class ChromecastUtilities {
         }
     }
 
-    static String getFontStyle(TextTrackStyle textTrackStyle) {
-        switch (textTrackStyle.getFontStyle()) {
+    static String getFontStyle(int fontStyle) {
+        switch (fontStyle) {
             case TextTrackStyle.FONT_STYLE_NORMAL:
                 return "NORMAL";
             case TextTrackStyle.FONT_STYLE_BOLD:
@@ -174,8 +166,8 @@ final class ChromecastUtilities {
         }
     }
 
-    static String getWindowType(TextTrackStyle textTrackStyle) {
-        switch (textTrackStyle.getWindowType()) {
+    static String getWindowType(int windowType) {
+        switch (windowType) {
             case TextTrackStyle.WINDOW_TYPE_NORMAL:
                 return "NORMAL";
             case TextTrackStyle.WINDOW_TYPE_ROUNDED:
@@ -385,27 +377,9 @@ final class ChromecastUtilities {
     }
 
     static TextTrackStyle parseTextTrackStyle(JSONObject textTrackSytle) {
-        TextTrackStyle out = new TextTrackStyle();
-
-        if (textTrackSytle == null) {
-            return out;
-        }
-
-        try {
-            if (!textTrackSytle.isNull("backgroundColor")) {
-                out.setBackgroundColor(Color.parseColor(textTrackSytle.getString("backgroundColor")));
-            }
-
-            if (!textTrackSytle.isNull("edgeColor")) {
-                out.setEdgeColor(Color.parseColor(textTrackSytle.getString("edgeColor")));
-            }
-
-            if (!textTrackSytle.isNull("foregroundColor")) {
-                out.setForegroundColor(Color.parseColor(textTrackSytle.getString("foregroundColor")));
-            }
-        } catch (JSONException e) {
-        }
-
+        ChromecastDecoder decoder = new ChromecastDecoder();
+        TextTrackStyle out = decoder.textTrackStyle(textTrackSytle);
+        logErrors(decoder);
         return out;
     }
 
@@ -414,457 +388,163 @@ final class ChromecastUtilities {
     }
 
     static JSONObject createSessionObject(CastSession session, String state) {
-        JSONObject s = createSessionObject(session);
-        if (state != null) {
-            try {
-                s.put("status", state);
-            } catch (JSONException e) {
-            }
-        }
-        return s;
+        return ChromecastSerializer.createSessionObject(SessionSnapshot.capture(session, queueItems, state));
     }
 
     static JSONObject createSessionObject(CastSession session) {
-        JSONObject out = new JSONObject();
-
-        try {
-            ApplicationMetadata metadata = session.getApplicationMetadata();
-            out.put("appId", metadata.getApplicationId());
-            try {
-                out.put("appImages", createImagesArray(metadata.getImages()));
-            } catch (NullPointerException e) {
-            }
-            out.put("displayName", metadata.getName());
-            out.put("media", createMediaArray(session));
-            out.put("receiver", createReceiverObject(session));
-            out.put("sessionId", session.getSessionId());
-
-        } catch (JSONException e) {
-        } catch (NullPointerException e) {
-        } catch (IllegalStateException e) {
-        }
-
-        return out;
+        return createSessionObject(session, null);
     }
 
-    private static JSONArray createImagesArray(List<WebImage> images) throws JSONException {
-        JSONArray appImages = new JSONArray();
-        JSONObject img;
-        for (WebImage o : images) {
-            img = new JSONObject();
-            img.put("url", o.getUrl().toString());
-            appImages.put(img);
-        }
-        return appImages;
+    /**
+     * Captures a session along with the cached queueItems.
+     * Must be called on the main thread.
+     * @param session the session
+     * @return the snapshot
+     */
+    static SessionSnapshot createSessionSnapshot(CastSession session) {
+        return createSessionSnapshot(session, null);
     }
 
-    private static JSONObject createReceiverObject(CastSession session) {
-        JSONObject out = new JSONObject();
-        try {
-            out.put("friendlyName", session.getCastDevice().getFriendlyName());
-            out.put("label", session.getCastDevice().getDeviceId());
-
-            JSONObject volume = new JSONObject();
-            try {
-                volume.put("level", session.getVolume());
-                volume.put("muted", session.isMute());
-            } catch (JSONException e) {
-            }
-            out.put("volume", volume);
-
-        } catch (JSONException e) {
-        } catch (NullPointerException e) {
-        }
-        return out;
+    /**
+     * Captures a session along with the cached queueItems.
+     * Must be called on the main thread.
+     * @param session the session
+     * @param state the status to report (eg. "disconnected"), or null
+     * @return the snapshot
+     */
+    static SessionSnapshot createSessionSnapshot(CastSession session, String state) {
+        return SessionSnapshot.capture(session, queueItems, state);
     }
 
-    static JSONArray createMediaArray(CastSession session) {
-        JSONArray out = new JSONArray();
-        JSONObject mediaInfoObj = createMediaObject(session);
-        if (mediaInfoObj != null) {
-            out.put(mediaInfoObj);
-        }
-        return out;
+    /**
+     * Captures the session of a receiver along with the cached queueItems.
+     * Must be called on the main thread.
+     * @param receiver the receiver
+     * @param state the status to report (eg. "stopped"), or null
+     * @return the snapshot
+     */
+    static SessionSnapshot createSessionSnapshot(ChromecastSession.Receiver receiver, String state) {
+        return receiver.captureSession(queueItems, state);
     }
 
     static JSONObject createMediaObject(CastSession session) {
-        return createMediaObject(session, queueItems);
-    };
-
-    static JSONObject createMediaObject(CastSession session, JSONArray items) {
-        JSONObject out = new JSONObject();
-
-        try {
-            MediaStatus mediaStatus = session.getRemoteMediaClient().getMediaStatus();
-
-            // TODO: Missing attributes are commented out.
-            //  These are returned by the chromecast desktop SDK, we should probbaly return them too
-            //out.put("breakStatus",);
-            out.put("currentItemId", mediaStatus.getCurrentItemId());
-            out.put("currentTime", mediaStatus.getStreamPosition() / 1000.0);
-            out.put("customData", mediaStatus.getCustomData());
-            //out.put("extendedStatus",);
-            String idleReason = ChromecastUtilities.getMediaIdleReason(mediaStatus.getIdleReason());
-            if (idleReason != null) {
-                out.put("idleReason", idleReason);
-            }
-            out.put("items", items);
-            out.put("isAlive", mediaStatus.getPlayerState() != MediaStatus.PLAYER_STATE_IDLE);
-            //out.put("liveSeekableRange",);
-            out.put("loadingItemId", mediaStatus.getLoadingItemId());
-            out.put("media", createMediaInfoObject(session.getRemoteMediaClient().getMediaInfo()));
-            out.put("mediaSessionId", 1);
-            out.put("playbackRate", mediaStatus.getPlaybackRate());
-            out.put("playerState", ChromecastUtilities.getMediaPlayerState(mediaStatus.getPlayerState()));
-            out.put("preloadedItemId", mediaStatus.getPreloadedItemId());
-            out.put("queueData", createQueueData(mediaStatus));
-            out.put("repeatMode", getRepeatMode(mediaStatus.getQueueRepeatMode()));
-            out.put("sessionId", session.getSessionId());
-            //out.put("supportedMediaCommands", );
-            //out.put("videoInfo", );
-
-            JSONObject volume = new JSONObject();
-            volume.put("level", mediaStatus.getStreamVolume());
-            volume.put("muted", mediaStatus.isMute());
-            out.put("volume", volume);
-            out.put("activeTrackIds", createActiveTrackIds(mediaStatus.getActiveTrackIds()));
-        } catch (JSONException e) {
-        } catch (NullPointerException e) {
-            return null;
-        }
-
-        return out;
+        return ChromecastSerializer.createMediaObject(createMediaSnapshot(session));
     }
 
-    private static JSONArray createActiveTrackIds(long[] activeTrackIds) {
-        JSONArray out = new JSONArray();
-        try {
-            if (activeTrackIds.length == 0) {
-                return null;
-            }
-            for (long id : activeTrackIds) {
-                out.put(id);
-            }
-        } catch (NullPointerException e) {
-            return null;
-        }
-        return out;
+    /**
+     * Captures the media status of a session along with the cached queueItems.
+     * Must be called on the main thread.
+     * @param session the session
+     * @return the snapshot, or null if there is no media status
+     */
+    static MediaSnapshot createMediaSnapshot(CastSession session) {
+        return MediaSnapshot.capture(session, queueItems);
     }
 
-    static JSONObject createQueueData(MediaStatus status) {
-        JSONObject out = new JSONObject();
-        try {
-            MediaQueueData data = status.getQueueData();
-            if (data == null) {
-                return null;
-            }
-            out.put("repeatMode", ChromecastUtilities.getRepeatMode(data.getRepeatMode()));
-            out.put("shuffle", data.getRepeatMode() == MediaStatus.REPEAT_MODE_REPEAT_ALL_AND_SHUFFLE);
-            out.put("startIndex", data.getStartIndex());
-        } catch (JSONException e) {
-            e.printStackTrace();
-            throw new RuntimeException("See above stack trace for error: " + e.getMessage());
-        }
-        return out;
+    /**
+     * Captures the media status of a receiver along with the cached queueItems.
+     * Must be called on the main thread.
+     * @param receiver the receiver
+     * @return the snapshot, or null if there is no media status
+     */
+    static MediaSnapshot createMediaSnapshot(ChromecastSession.Receiver receiver) {
+        return receiver.captureMedia(queueItems);
     }
 
     static JSONObject createQueueItem(@NonNull MediaQueueItem item, int orderId) {
-        JSONObject out = new JSONObject();
-        try {
-            out.put("activeTrackIds", createActiveTrackIds(item.getActiveTrackIds()));
-            out.put("autoplay", item.getAutoplay());
-            out.put("customData", item.getCustomData());
-            out.put("itemId", item.getItemId());
-            out.put("media", createMediaInfoObject(item.getMedia()));
-            out.put("orderId", orderId);
-            Double playbackDuration = item.getPlaybackDuration();
-            if (Double.isInfinite(playbackDuration)) {
-                playbackDuration = null;
-            }
-            out.put("playbackDuration", playbackDuration);
-            out.put("preloadTime", item.getPreloadTime());
-            Double startTime = item.getStartTime();
-            if (Double.isNaN(startTime)) {
-                startTime = null;
-            }
-            out.put("startTime", startTime);
-        } catch (JSONException e) {
-            e.printStackTrace();
-            throw new RuntimeException("See above stack trace for error: " + e.getMessage());
-        }
-        return out;
+        return ChromecastSerializer.createQueueItem(item, orderId);
     }
 
-    private static JSONArray createMediaInfoTracks(MediaInfo mediaInfo) {
-        JSONArray out = new JSONArray();
-
-        try {
-            if (mediaInfo.getMediaTracks() == null) {
-                return out;
-            }
-
-            for (MediaTrack track : mediaInfo.getMediaTracks()) {
-                JSONObject jsonTrack = new JSONObject();
-
-
-                // TODO: Missing attributes are commented out.
-                //  These are returned by the chromecast desktop SDK, we should probbaly return them too
-
-                jsonTrack.put("trackId", track.getId());
-                jsonTrack.put("customData", track.getCustomData());
-                jsonTrack.put("language", track.getLanguage());
-                jsonTrack.put("name", track.getName());
-                jsonTrack.put("subtype", ChromecastUtilities.getTrackSubtype(track));
-                jsonTrack.put("trackContentId", track.getContentId());
-                jsonTrack.put("trackContentType", track.getContentType());
-                jsonTrack.put("type", ChromecastUtilities.getTrackType(track));
-
-                out.put(jsonTrack);
-            }
-        } catch (JSONException e) {
-        } catch (NullPointerException e) {
-        }
-
-        return out;
-    }
-
-    private static JSONObject createMediaInfoObject(MediaInfo mediaInfo) {
+    static JSONObject createError(String code, String message) {
         JSONObject out = new JSONObject();
-
         try {
-            // TODO: Missing attributes are commented out.
-            //  These are returned by the chromecast desktop SDK, we should probably return them too
-            //out.put("breakClips",);
-            //out.put("breaks",);
-            out.put("contentId", mediaInfo.getContentId());
-            out.put("contentType", mediaInfo.getContentType());
-            out.put("customData", mediaInfo.getCustomData());
-            out.put("duration", mediaInfo.getStreamDuration() / 1000.0);
-            //out.put("mediaCategory",);
-            out.put("metadata", createMetadataObject(mediaInfo.getMetadata()));
-            out.put("streamType", ChromecastUtilities.getMediaInfoStreamType(mediaInfo));
-            out.put("tracks", createMediaInfoTracks(mediaInfo));
-            out.put("textTrackStyle", ChromecastUtilities.createTextTrackObject(mediaInfo.getTextTrackStyle()));
-
+            out.put("code", code);
+            out.put("description", message);
         } catch (JSONException e) {
-        } catch (NullPointerException e) {
         }
-
         return out;
     }
 
-    static JSONObject createMetadataObject(MediaMetadata metadata) {
-        JSONObject out = new JSONObject();
-        if (metadata == null) {
-            return out;
-        }
-        try {
-            try {
-                // Must be in own try catch
-                out.put("images", createImagesArray(metadata.getImages()));
-            } catch (Exception e) {
-            }
-            out.put("metadataType", metadata.getMediaType());
-            out.put("type", metadata.getMediaType());
-
-            Set<String> keys = metadata.keySet();
-            String outKey;
-            // First translate and add the Android specific keys
-            for (String key : keys) {
-                outKey = ChromecastUtilities.getClientMetadataName(key);
-                if (outKey.equals(key) || outKey.equals("type")) {
-                    continue;
-                }
-                switch (ChromecastUtilities.getMetadataType(key)) {
-                    case "string":
-                        out.put(outKey, metadata.getString(key));
-                        break;
-                    case "int":
-                        out.put(outKey, metadata.getInt(key));
-                        break;
-                    case "double":
-                        out.put(outKey, metadata.getDouble(key));
-                        break;
-                    case "date":
-                        out.put(outKey, metadata.getDate(key).getTimeInMillis());
-                        break;
-                    case "ms":
-                        out.put(outKey, metadata.getTimeMillis(key));
-                        break;
-                    default:
-                }
-            }
-            // Then add the non-Android specific keys ensuring we don't overwrite existing keys
-            for (String key : keys) {
-                outKey = ChromecastUtilities.getClientMetadataName(key);
-                if (!outKey.equals(key) || out.has(outKey) || outKey.equals("type")) {
-                    continue;
-                }
-                if (outKey.startsWith("cordova-plugin-chromecast_metadata_key=")) {
-                    outKey = outKey.substring("cordova-plugin-chromecast_metadata_key=".length());
-                }
-                out.put(outKey, metadata.getString(key));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return out;
-    }
+/* -------------------   Create NON-JSON (non-output) Objects  ---------------------------------- */
 
-    private static JSONObject createTextTrackObject(TextTrackStyle textTrackStyle) {
-        if (textTrackStyle == null) {
-            return null;
-        }
-        JSONObject out = new JSONObject();
-        try {
-            out.put("backgroundColor", getHexColor(textTrackStyle.getBackgroundColor()));
-            out.put("customData", textTrackStyle.getCustomData());
-            out.put("edgeColor", getHexColor(textTrackStyle.getEdgeColor()));
-            out.put("edgeType", getEdgeType(textTrackStyle));
-            out.put("fontFamily", textTrackStyle.getFontFamily());
-            out.put("fontGenericFamily", getFontGenericFamily(textTrackStyle));
-            out.put("fontScale", textTrackStyle.getFontScale());
-            out.put("fontStyle", getFontStyle(textTrackStyle));
-            out.put("foregroundColor", getHexColor(textTrackStyle.getForegroundColor()));
-            out.put("windowColor", getHexColor(textTrackStyle.getWindowColor()));
-            out.put("windowRoundedCornerRadius", textTrackStyle.getWindowCornerRadius());
-            out.put("windowType", getWindowType(textTrackStyle));
-        } catch (JSONException e) {
+    /**
+     * Creates a MediaQueueItem from a JSONObject representation of a MediaQueueItem.
+     * @param mediaQueueItem a JSONObject representation of a MediaQueueItem
+     * @return a MediaQueueItem
+     * @throws JSONException If the input mediaQueueItem is incorrect
+     */
+    static MediaQueueItem createMediaQueueItem(JSONObject mediaQueueItem) throws JSONException {
+        ChromecastDecoder decoder = new ChromecastDecoder();
+        MediaQueueItem item = decoder.queueItem(mediaQueueItem);
+        if (decoder.hasFailed()) {
+            throw new JSONException(decoder.getErrors().get(decoder.getErrors().size() - 1));
         }
-
-        return out;
+        logErrors(decoder);
+        return item;
     }
 
     /**
-     * Simple helper to convert a route to JSON for passing down to the javascript side.
-     * @param routes the routes to convert
-     * @return a JSON Array of JSON representations of the routes
+     * Creates MediaQueueItems from their JSONObject representations.
+     * @param mediaQueueItems JSONObject representations of MediaQueueItems
+     * @param withItemIds whether the items keep their itemId (eg. to update them), it is required then
+     * @return the MediaQueueItems
+     * @throws JSONException If an item is incorrect
      */
-    static JSONArray createRoutesArray(List<MediaRouter.RouteInfo> routes) {
-        JSONArray routesArray = new JSONArray();
-        for (MediaRouter.RouteInfo route : routes) {
-            try {
-                JSONObject obj = new JSONObject();
-                obj.put("name", route.getName());
-                obj.put("id", route.getId());
-
-                CastDevice device = CastDevice.getFromBundle(route.getExtras());
-                if (device != null) {
-                    obj.put("isNearbyDevice", !device.isOnLocalNetwork());
-                    obj.put("isCastGroup", route instanceof MediaRouter.RouteGroup);
-                }
-
-                routesArray.put(obj);
-            } catch (JSONException e) {
-            }
-        }
-        return routesArray;
+    static MediaQueueItem[] createMediaQueueItems(JSONArray mediaQueueItems, boolean withItemIds) throws JSONException {
+        return createMediaQueueItems(mediaQueueItems, 0, mediaQueueItems.length(), withItemIds);
     }
 
-    static JSONObject createError(String code, String message) {
-        JSONObject out = new JSONObject();
-        try {
-            out.put("code", code);
-            out.put("description", message);
-        } catch (JSONException e) {
-        }
-        return out;
+    /**
+     * Creates MediaQueueItems from a range of JSONObject representations.
+     * Large ranges are converted on several cores (see ChromecastQueueDecoder).
+     * @param mediaQueueItems JSONObject representations of MediaQueueItems
+     * @param from index of the first item
+     * @param to index after the last item
+     * @param withItemIds whether the items keep their itemId (eg. to update them), it is required then
+     * @return the MediaQueueItems, in order
+     * @throws JSONException If an item is incorrect, the message starts with "items[index]: "
+     */
+    static MediaQueueItem[] createMediaQueueItems(JSONArray mediaQueueItems, int from, int to, boolean withItemIds) throws JSONException {
+        return ChromecastQueueDecoder.decode(mediaQueueItems, from, to, withItemIds);
     }
 
-/* -------------------   Create NON-JSON (non-output) Objects  ---------------------------------- */
-
     /**
      * Creates a MediaQueueItem from a JSONObject representation of a MediaQueueItem.
      * @param mediaQueueItem a JSONObject representation of a MediaQueueItem
+     * @param withItemId whether the item keeps its itemId (eg. to update it), it is required then
      * @return a MediaQueueItem
      * @throws JSONException If the input mediaQueueItem is incorrect
      */
-    static MediaQueueItem createMediaQueueItem(JSONObject mediaQueueItem) throws JSONException {
-        MediaInfo mediaInfo = createMediaInfo(mediaQueueItem.getJSONObject("media"));
-        MediaQueueItem.Builder builder = new MediaQueueItem.Builder(mediaInfo);
-
-        try {
-            long[] activeTrackIds;
-            JSONArray trackIds = mediaQueueItem.getJSONArray("activeTrackIds");
-            activeTrackIds = new long[trackIds.length()];
-            for (int i = 0; i < trackIds.length(); i++) {
-                activeTrackIds[i] = trackIds.getLong(i);
-            }
-            builder.setActiveTrackIds(activeTrackIds);
-        } catch (JSONException e) {
-        }
-        try {
-            builder.setAutoplay(mediaQueueItem.getBoolean("autoplay"));
-        } catch (JSONException e) {
-        }
-        JSONObject customData = new JSONObject();
-        try {
-            customData.getJSONObject("customData");
-        } catch (JSONException e) {
-        }
-        try {
-            builder.setPlaybackDuration(mediaQueueItem.getDouble("playbackDuration"));
-        } catch (JSONException e) {
+    static MediaQueueItem createMediaQueueItem(JSONObject mediaQueueItem, boolean withItemId) throws JSONException {
+        MediaQueueItem item = createMediaQueueItem(mediaQueueItem);
+        if (!withItemId) {
+            return item;
         }
-        try {
-            builder.setPreloadTime(mediaQueueItem.getDouble("preloadTime"));
-        } catch (JSONException e) {
-        }
-        try {
-            builder.setStartTime(mediaQueueItem.getDouble("startTime"));
-        } catch (JSONException e) {
-        }
-        return builder.build();
+        // The builder can only set the itemId from JSON
+        JSONObject json = item.toJson();
+        json.put("itemId", mediaQueueItem.getInt("itemId"));
+        return new MediaQueueItem.Builder(json).build();
     }
 
     static MediaInfo createMediaInfo(JSONObject mediaInfo) {
-        // Set defaults
-        String contentId = "";
-        JSONObject customData = new JSONObject();
-        String contentType = "unknown";
-        long duration = 0;
-        String streamType = "unknown";
-        JSONObject metadata = new JSONObject();
-        JSONObject textTrackStyle = new JSONObject();
-
-        // Try to get the actual values
-        try {
-            contentId = mediaInfo.getString("contentId");
-        } catch (JSONException e) {
-        }
-        try {
-            customData = mediaInfo.getJSONObject("customData");
-        } catch (JSONException e) {
-        }
-        try {
-            contentType = mediaInfo.getString("contentType");
-        } catch (JSONException e) {
-        }
-        try {
-            duration = mediaInfo.getLong("duration");
-        } catch (JSONException e) {
-        }
-        try {
-            streamType = mediaInfo.getString("streamType");
-        } catch (JSONException e) {
-        }
-        try {
-            metadata = mediaInfo.getJSONObject("metadata");
-        } catch (JSONException e) {
-        }
-        try {
-            textTrackStyle = mediaInfo.getJSONObject("textTrackStyle");
-        } catch (JSONException e) {
-        }
-
-        return createMediaInfo(contentId, customData, contentType, duration, streamType, metadata, textTrackStyle);
+        ChromecastDecoder decoder = new ChromecastDecoder();
+        MediaInfo out = decoder.mediaInfo(mediaInfo);
+        logErrors(decoder);
+        return out;
     }
 
     static MediaInfo createMediaInfo(String contentId, JSONObject customData, String contentType, long duration, String streamType, JSONObject metadata, JSONObject textTrackStyle) {
+        ChromecastDecoder decoder = new ChromecastDecoder();
+        MediaInfo out = createMediaInfo(contentId, customData, contentType, duration, streamType,
+                decoder.metadata(metadata != null ? metadata : new JSONObject()), decoder.textTrackStyle(textTrackStyle));
+        logErrors(decoder);
+        return out;
+    }
+
+    static MediaInfo createMediaInfo(String contentId, JSONObject customData, String contentType, long duration, String streamType, MediaMetadata metadata, TextTrackStyle textTrackStyle) {
         MediaInfo.Builder mediaInfoBuilder = new MediaInfo.Builder(contentId);
 
-        mediaInfoBuilder.setMetadata(createMediaMetadata(metadata));
+        mediaInfoBuilder.setMetadata(metadata);
 
         int intStreamType;
         switch (streamType) {
@@ -878,109 +558,24 @@ final class ChromecastUtilities {
                 intStreamType = MediaInfo.STREAM_TYPE_NONE;
         }
 
-        TextTrackStyle trackStyle = ChromecastUtilities.parseTextTrackStyle(textTrackStyle);
-
         mediaInfoBuilder
                 .setContentType(contentType)
                 .setCustomData(customData)
                 .setStreamType(intStreamType)
                 .setStreamDuration(duration)
-                .setTextTrackStyle(trackStyle);
+                .setTextTrackStyle(textTrackStyle);
 
         return mediaInfoBuilder.build();
     }
 
-    private static MediaMetadata createMediaMetadata(JSONObject metadata) {
-
-        MediaMetadata mediaMetadata;
-        try {
-            mediaMetadata = new MediaMetadata(metadata.getInt("metadataType"));
-        } catch (JSONException e) {
-            mediaMetadata = new MediaMetadata(MediaMetadata.MEDIA_TYPE_GENERIC);
-        }
-        // Add any images
-        try {
-            JSONArray images = metadata.getJSONArray("images");
-            for (int i = 0; i < images.length(); i++) {
-                JSONObject imageObj = images.getJSONObject(i);
-                try {
-                    Uri imageURI = Uri.parse(imageObj.getString("url"));
-                    mediaMetadata.addImage(new WebImage(imageURI));
-                } catch (Exception e) {
-                }
-            }
-        } catch (JSONException e) {
-        }
-
-        // Dynamically add other parameters
-        Iterator<String> keys = metadata.keys();
-        String key;
-        String convertedKey;
-        Object value;
-        while (keys.hasNext()) {
-            key = keys.next();
-            if (key.equals("metadataType")
-                    || key.equals("images")
-                    || key.equals("type")) {
-                continue;
-            }
-            try {
-                value = metadata.get(key);
-                convertedKey = ChromecastUtilities.getAndroidMetadataName(key);
-                // Try to add the translated version of the key
-                switch (ChromecastUtilities.getMetadataType(convertedKey)) {
-                    case "string":
-                        mediaMetadata.putString(convertedKey, metadata.getString(key));
-                        break;
-                    case "int":
-                        mediaMetadata.putInt(convertedKey, metadata.getInt(key));
-                        break;
-                    case "double":
-                        mediaMetadata.putDouble(convertedKey, metadata.getDouble(key));
-                        break;
-                    case "date":
-                        GregorianCalendar c = new GregorianCalendar();
-                        if (value instanceof java.lang.Integer
-                                || value instanceof java.lang.Long
-                                || value instanceof java.lang.Float
-                                || value instanceof java.lang.Double) {
-                            c.setTimeInMillis(metadata.getLong(key));
-                            mediaMetadata.putDate(convertedKey, c);
-                        } else {
-                            String stringValue;
-                            try {
-                                stringValue = " value: " + metadata.getString(key);
-                            } catch (JSONException e) {
-                                stringValue = "";
-                            }
-                            new Error("Cannot date from metadata key: " + key + stringValue
-                                    + "\n Dates must be in milliseconds from epoch UTC")
-                                    .printStackTrace();
-                        }
-                        break;
-                    case "ms":
-                        mediaMetadata.putTimeMillis(convertedKey, metadata.getLong(key));
-                        break;
-                    default:
-                }
-                // Also always add the client's version of the key because sometimes the
-                // MediaMetadata object removes some parameters.
-                // eg. If you pass metadataType == 2 == MEDIA_TYPE_TV_SHOW you will lose any
-                // subtitle added for "com.google.android.gms.cast.metadata.SUBTITLE", but this
-                // is not in-line with chrome desktop which preserves the value.
-                if (!key.equals(convertedKey)) {
-                    // It is is really stubborn and if you try to add the key "subtitle" that is
-                    // also stripped.  (Hence the "cordova-plugin-chromecast_metadata_key=" prefix
-                    convertedKey = "cordova-plugin-chromecast_metadata_key=" + key;
-                }
-                mediaMetadata.putString(convertedKey, metadata.getString(key));
-            } catch (JSONException e) {
-                e.printStackTrace();
-            } catch (IllegalArgumentException e) {
-                e.printStackTrace();
-            }
+    /**
+     * Logs the incorrect values that a decoder left out.
+     * @param decoder the decoder
+     */
+    private static void logErrors(ChromecastDecoder decoder) {
+        for (String error : decoder.getErrors()) {
+            LOG.w(TAG, "Ignored incorrect value, " + error);
         }
-        return  mediaMetadata;
     }
 
 }
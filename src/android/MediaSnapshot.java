@@ -0,0 +1,704 @@
+package acidhax.cordova.chromecast;
+
+import com.google.android.gms.cast.MediaInfo;
+import com.google.android.gms.cast.MediaMetadata;
+import com.google.android.gms.cast.MediaQueueData;
+import com.google.android.gms.cast.MediaQueueItem;
+import com.google.android.gms.cast.MediaStatus;
+import com.google.android.gms.cast.MediaTrack;
+import com.google.android.gms.cast.TextTrackStyle;
+import com.google.android.gms.cast.framework.CastSession;
+import com.google.android.gms.cast.framework.media.RemoteMediaClient;
+import com.google.android.gms.common.images.WebImage;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An immutable copy of the media status fields that we send to the javascript side.
+ *
+ * The SDK objects (MediaStatus, MediaInfo, ...) must be read on the main thread,
+ * so a snapshot is captured there and the JSON is built from it on another thread
+ * (see ChromecastSerializer).
+ *
+ * Snapshots can be compared: two equal snapshots serialize to the same JSON.
+ * The queue items are compared by reference, a new list is never equal to the old one.
+ */
+final class MediaSnapshot {
+    /** The session id. */
+    private final String sessionId;
+    /** The current queue item id. */
+    private final int currentItemId;
+    /** The stream position in ms. */
+    private final long streamPosition;
+    /** The custom data of the media status. */
+    private final JSONObject customData;
+    /** MediaStatus.IDLE_REASON_*. */
+    private final int idleReason;
+    /** MediaStatus.PLAYER_STATE_*. */
+    private final int playerState;
+    /** The loading queue item id. */
+    private final int loadingItemId;
+    /** The preloaded queue item id. */
+    private final int preloadedItemId;
+    /** The playback rate. */
+    private final double playbackRate;
+    /** Whether the media status has queue data. */
+    private final boolean hasQueueData;
+    /** The repeat mode of the queue data. */
+    private final int queueDataRepeatMode;
+    /** The start index of the queue data. */
+    private final int queueDataStartIndex;
+    /** The queue repeat mode of the media status. */
+    private final int repeatMode;
+    /** The stream volume. */
+    private final double volume;
+    /** Whether the stream is muted. */
+    private final boolean muted;
+    /** The active track ids, may be null. */
+    private final long[] activeTrackIds;
+    /** The rendered queue items that are sent along with the media, may be null. */
+    private final List<String> items;
+    /** The media info, may be null. */
+    private final Info media;
+    /** Cached hash code, 0 if not computed yet. */
+    private int hash;
+
+    private MediaSnapshot(String session, MediaStatus status, Info info, List<String> queueItems) {
+        this.sessionId = session;
+        this.currentItemId = status.getCurrentItemId();
+        this.streamPosition = status.getStreamPosition();
+        this.customData = status.getCustomData();
+        this.idleReason = status.getIdleReason();
+        this.playerState = status.getPlayerState();
+        this.loadingItemId = status.getLoadingItemId();
+        this.preloadedItemId = status.getPreloadedItemId();
+        this.playbackRate = status.getPlaybackRate();
+        MediaQueueData queueData = status.getQueueData();
+        this.hasQueueData = queueData != null;
+        this.queueDataRepeatMode = queueData != null ? queueData.getRepeatMode() : MediaStatus.REPEAT_MODE_REPEAT_OFF;
+        this.queueDataStartIndex = queueData != null ? queueData.getStartIndex() : 0;
+        this.repeatMode = status.getQueueRepeatMode();
+        this.volume = status.getStreamVolume();
+        this.muted = status.isMute();
+        this.activeTrackIds = copy(status.getActiveTrackIds());
+        this.items = queueItems;
+        this.media = info;
+    }
+
+    private MediaSnapshot(String session, Info info, int itemId, int state, int reason, long position, double rate,
+                          int queueRepeatMode, double level, boolean mute, long[] trackIds, List<String> queueItems) {
+        this.sessionId = session;
+        this.currentItemId = itemId;
+        this.streamPosition = position;
+        this.customData = null;
+        this.idleReason = reason;
+        this.playerState = state;
+        this.loadingItemId = MediaQueueItem.INVALID_ITEM_ID;
+        this.preloadedItemId = MediaQueueItem.INVALID_ITEM_ID;
+        this.playbackRate = rate;
+        this.hasQueueData = false;
+        this.queueDataRepeatMode = MediaStatus.REPEAT_MODE_REPEAT_OFF;
+        this.queueDataStartIndex = 0;
+        this.repeatMode = queueRepeatMode;
+        this.volume = level;
+        this.muted = mute;
+        this.activeTrackIds = copy(trackIds);
+        this.items = queueItems;
+        this.media = info;
+    }
+
+    private MediaSnapshot(MediaSnapshot from, int newPlayerState, int newIdleReason) {
+        this.sessionId = from.sessionId;
+        this.currentItemId = from.currentItemId;
+        this.streamPosition = from.streamPosition;
+        this.customData = from.customData;
+        this.idleReason = newIdleReason;
+        this.playerState = newPlayerState;
+        this.loadingItemId = from.loadingItemId;
+        this.preloadedItemId = from.preloadedItemId;
+        this.playbackRate = from.playbackRate;
+        this.hasQueueData = from.hasQueueData;
+        this.queueDataRepeatMode = from.queueDataRepeatMode;
+        this.queueDataStartIndex = from.queueDataStartIndex;
+        this.repeatMode = from.repeatMode;
+        this.volume = from.volume;
+        this.muted = from.muted;
+        this.activeTrackIds = from.activeTrackIds;
+        this.items = from.items;
+        this.media = from.media;
+    }
+
+    /**
+     * Captures the current media status of a session.
+     * Must be called on the main thread.
+     * @param session the session
+     * @param queueItems the rendered queue items to send along with the media
+     * @return the snapshot, or null if there is no media status
+     */
+    static MediaSnapshot capture(CastSession session, List<String> queueItems) {
+        if (session == null) {
+            return null;
+        }
+        RemoteMediaClient client = session.getRemoteMediaClient();
+        if (client == null) {
+            return null;
+        }
+        MediaStatus status = client.getMediaStatus();
+        if (status == null) {
+            return null;
+        }
+        return new MediaSnapshot(session.getSessionId(), status, Info.capture(client.getMediaInfo()), queueItems);
+    }
+
+    /**
+     * Creates the snapshot of media that isn't read from a MediaStatus (see ChromecastFakeReceiver).
+     * The media has no custom data, no queue data, and no loading or preloaded item.
+     * @param session the session id
+     * @param mediaInfo the media info, or null
+     * @param itemId the current queue item id
+     * @param state MediaStatus.PLAYER_STATE_*
+     * @param reason MediaStatus.IDLE_REASON_*
+     * @param position the stream position in ms
+     * @param rate the playback rate
+     * @param queueRepeatMode the queue repeat mode
+     * @param level the stream volume
+     * @param mute whether the stream is muted
+     * @param trackIds the active track ids, or null
+     * @param queueItems the rendered queue items to send along with the media
+     * @return the snapshot
+     */
+    static MediaSnapshot create(String session, MediaInfo mediaInfo, int itemId, int state, int reason, long position, double rate,
+                                int queueRepeatMode, double level, boolean mute, long[] trackIds, List<String> queueItems) {
+        return new MediaSnapshot(session, Info.capture(mediaInfo), itemId, state, reason, position, rate,
+                queueRepeatMode, level, mute, trackIds, queueItems);
+    }
+
+    /**
+     * Returns a copy of this snapshot in the idle state.
+     * @param reason MediaStatus.IDLE_REASON_*
+     * @return the idle copy
+     */
+    MediaSnapshot withIdleReason(int reason) {
+        return new MediaSnapshot(this, MediaStatus.PLAYER_STATE_IDLE, reason);
+    }
+
+    String getSessionId() {
+        return sessionId;
+    }
+    int getCurrentItemId() {
+        return currentItemId;
+    }
+    long getStreamPosition() {
+        return streamPosition;
+    }
+    JSONObject getCustomData() {
+        return customData;
+    }
+    int getIdleReason() {
+        return idleReason;
+    }
+    int getPlayerState() {
+        return playerState;
+    }
+    int getLoadingItemId() {
+        return loadingItemId;
+    }
+    int getPreloadedItemId() {
+        return preloadedItemId;
+    }
+    double getPlaybackRate() {
+        return playbackRate;
+    }
+    boolean hasQueueData() {
+        return hasQueueData;
+    }
+    int getQueueDataRepeatMode() {
+        return queueDataRepeatMode;
+    }
+    int getQueueDataStartIndex() {
+        return queueDataStartIndex;
+    }
+    int getRepeatMode() {
+        return repeatMode;
+    }
+    double getVolume() {
+        return volume;
+    }
+    boolean isMuted() {
+        return muted;
+    }
+    long[] getActiveTrackIds() {
+        return copy(activeTrackIds);
+    }
+    List<String> getItems() {
+        return items;
+    }
+    Info getMedia() {
+        return media;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MediaSnapshot)) {
+            return false;
+        }
+        MediaSnapshot that = (MediaSnapshot) o;
+        return currentItemId == that.currentItemId
+                && streamPosition == that.streamPosition
+                && idleReason == that.idleReason
+                && playerState == that.playerState
+                && loadingItemId == that.loadingItemId
+                && preloadedItemId == that.preloadedItemId
+                && Double.compare(playbackRate, that.playbackRate) == 0
+                && hasQueueData == that.hasQueueData
+                && queueDataRepeatMode == that.queueDataRepeatMode
+                && queueDataStartIndex == that.queueDataStartIndex
+                && repeatMode == that.repeatMode
+                && Double.compare(volume, that.volume) == 0
+                && muted == that.muted
+                && items == that.items
+                && Arrays.equals(activeTrackIds, that.activeTrackIds)
+                && Objects.equals(sessionId, that.sessionId)
+                && Objects.equals(media, that.media)
+                && sameJSON(customData, that.customData);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = Objects.hash(sessionId, currentItemId, streamPosition, idleReason, playerState,
+                    loadingItemId, preloadedItemId, playbackRate, hasQueueData, queueDataRepeatMode,
+                    queueDataStartIndex, repeatMode, volume, muted, media, jsonHash(customData));
+            h = 31 * h + Arrays.hashCode(activeTrackIds);
+            h = 31 * h + System.identityHashCode(items);
+            hash = h;
+        }
+        return h;
+    }
+
+    private static long[] copy(long[] array) {
+        return array == null ? null : array.clone();
+    }
+
+    /**
+     * Compares two JSON values by their string form.
+     * The SDK replaces the custom data objects instead of modifying them, so this is rarely needed.
+     * @param a a JSON value or null
+     * @param b a JSON value or null
+     * @return true if both serialize to the same string
+     */
+    static boolean sameJSON(Object a, Object b) {
+        return a == b || a != null && b != null && a.toString().equals(b.toString());
+    }
+
+    /**
+     * Hash code matching sameJSON.
+     * @param a a JSON value or null
+     * @return the hash code
+     */
+    static int jsonHash(Object a) {
+        return a == null ? 0 : a.toString().hashCode();
+    }
+
+    /**
+     * An immutable copy of a MediaInfo.
+     */
+    static final class Info {
+        /** The content id. */
+        private final String contentId;
+        /** The content type. */
+        private final String contentType;
+        /** The custom data. */
+        private final JSONObject customData;
+        /** The stream duration in ms. */
+        private final long streamDuration;
+        /** MediaInfo.STREAM_TYPE_*. */
+        private final int streamType;
+        /** The metadata, may be null. */
+        private final Metadata metadata;
+        /** The tracks. */
+        private final List<Track> tracks;
+        /** The text track style, may be null. */
+        private final TextStyle textTrackStyle;
+
+        private Info(MediaInfo info) {
+            this.contentId = info.getContentId();
+            this.contentType = info.getContentType();
+            this.customData = info.getCustomData();
+            this.streamDuration = info.getStreamDuration();
+            this.streamType = info.getStreamType();
+            this.metadata = Metadata.capture(info.getMetadata());
+            List<Track> trackList = new ArrayList<>();
+            if (info.getMediaTracks() != null) {
+                for (MediaTrack track : info.getMediaTracks()) {
+                    trackList.add(new Track(track));
+                }
+            }
+            this.tracks = Collections.unmodifiableList(trackList);
+            this.textTrackStyle = info.getTextTrackStyle() != null ? new TextStyle(info.getTextTrackStyle()) : null;
+        }
+
+        /**
+         * Captures a MediaInfo.
+         * @param info the media info
+         * @return the snapshot, or null if info is null
+         */
+        static Info capture(MediaInfo info) {
+            return info == null ? null : new Info(info);
+        }
+
+        String getContentId() {
+            return contentId;
+        }
+        String getContentType() {
+            return contentType;
+        }
+        JSONObject getCustomData() {
+            return customData;
+        }
+        long getStreamDuration() {
+            return streamDuration;
+        }
+        int getStreamType() {
+            return streamType;
+        }
+        Metadata getMetadata() {
+            return metadata;
+        }
+        List<Track> getTracks() {
+            return tracks;
+        }
+        TextStyle getTextTrackStyle() {
+            return textTrackStyle;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Info)) {
+                return false;
+            }
+            Info that = (Info) o;
+            return streamDuration == that.streamDuration
+                    && streamType == that.streamType
+                    && Objects.equals(contentId, that.contentId)
+                    && Objects.equals(contentType, that.contentType)
+                    && Objects.equals(metadata, that.metadata)
+                    && tracks.equals(that.tracks)
+                    && Objects.equals(textTrackStyle, that.textTrackStyle)
+                    && sameJSON(customData, that.customData);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(contentId, contentType, streamDuration, streamType, metadata, tracks,
+                    textTrackStyle, jsonHash(customData));
+        }
+    }
+
+    /**
+     * An immutable copy of a MediaMetadata.
+     */
+    static final class Metadata {
+        /** MediaMetadata.MEDIA_TYPE_*. */
+        private final int mediaType;
+        /** The image urls. */
+        private final List<String> images;
+        /**
+         * The values keyed by their android key.
+         * Dates are stored as ms since epoch, custom keys as strings.
+         */
+        private final Map<String, Object> values;
+
+        private Metadata(MediaMetadata metadata) {
+            this.mediaType = metadata.getMediaType();
+            List<String> urls = new ArrayList<>();
+            if (metadata.getImages() != null) {
+                for (WebImage image : metadata.getImages()) {
+                    if (image.getUrl() != null) {
+                        urls.add(image.getUrl().toString());
+                    }
+                }
+            }
+            this.images = Collections.unmodifiableList(urls);
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (String key : metadata.keySet()) {
+                Object value = read(metadata, key);
+                if (value != null) {
+                    map.put(key, value);
+                }
+            }
+            this.values = Collections.unmodifiableMap(map);
+        }
+
+        /**
+         * Captures a MediaMetadata.
+         * @param metadata the metadata
+         * @return the snapshot, or null if metadata is null
+         */
+        static Metadata capture(MediaMetadata metadata) {
+            return metadata == null ? null : new Metadata(metadata);
+        }
+
+        private static Object read(MediaMetadata metadata, String key) {
+            try {
+                switch (ChromecastUtilities.getMetadataType(key)) {
+                    case "int":
+                        return metadata.getInt(key);
+                    case "double":
+                        double value = metadata.getDouble(key);
+                        // JSON can't hold NaN or infinity
+                        return Double.isNaN(value) || Double.isInfinite(value) ? null : value;
+                    case "date":
+                        Calendar date = metadata.getDate(key);
+                        return date == null ? null : date.getTimeInMillis();
+                    case "ms":
+                        return metadata.getTimeMillis(key);
+                    case "string":
+                    default:
+                        return metadata.getString(key);
+                }
+            } catch (IllegalArgumentException e) {
+                // The value is not of the type the key requires
+                return null;
+            }
+        }
+
+        int getMediaType() {
+            return mediaType;
+        }
+        List<String> getImages() {
+            return images;
+        }
+        Map<String, Object> getValues() {
+            return values;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Metadata)) {
+                return false;
+            }
+            Metadata that = (Metadata) o;
+            return mediaType == that.mediaType
+                    && images.equals(that.images)
+                    && values.equals(that.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mediaType, images, values);
+        }
+    }
+
+    /**
+     * An immutable copy of a MediaTrack.
+     */
+    static final class Track {
+        /** The track id. */
+        private final long id;
+        /** The custom data. */
+        private final JSONObject customData;
+        /** The language. */
+        private final String language;
+        /** The name. */
+        private final String name;
+        /** MediaTrack.TYPE_*. */
+        private final int type;
+        /** MediaTrack.SUBTYPE_*. */
+        private final int subtype;
+        /** The content id. */
+        private final String contentId;
+        /** The content type. */
+        private final String contentType;
+
+        private Track(MediaTrack track) {
+            this.id = track.getId();
+            this.customData = track.getCustomData();
+            this.language = track.getLanguage();
+            this.name = track.getName();
+            this.type = track.getType();
+            this.subtype = track.getSubtype();
+            this.contentId = track.getContentId();
+            this.contentType = track.getContentType();
+        }
+
+        long getId() {
+            return id;
+        }
+        JSONObject getCustomData() {
+            return customData;
+        }
+        String getLanguage() {
+            return language;
+        }
+        String getName() {
+            return name;
+        }
+        int getType() {
+            return type;
+        }
+        int getSubtype() {
+            return subtype;
+        }
+        String getContentId() {
+            return contentId;
+        }
+        String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Track)) {
+                return false;
+            }
+            Track that = (Track) o;
+            return id == that.id
+                    && type == that.type
+                    && subtype == that.subtype
+                    && Objects.equals(language, that.language)
+                    && Objects.equals(name, that.name)
+                    && Objects.equals(contentId, that.contentId)
+                    && Objects.equals(contentType, that.contentType)
+                    && sameJSON(customData, that.customData);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, type, subtype, language, name, contentId, contentType, jsonHash(customData));
+        }
+    }
+
+    /**
+     * An immutable copy of a TextTrackStyle.
+     */
+    static final class TextStyle {
+        /** The background color. */
+        private final int backgroundColor;
+        /** The custom data. */
+        private final JSONObject customData;
+        /** The edge color. */
+        private final int edgeColor;
+        /** TextTrackStyle.EDGE_TYPE_*. */
+        private final int edgeType;
+        /** The font family. */
+        private final String fontFamily;
+        /** TextTrackStyle.FONT_FAMILY_*. */
+        private final int fontGenericFamily;
+        /** The font scale. */
+        private final float fontScale;
+        /** TextTrackStyle.FONT_STYLE_*. */
+        private final int fontStyle;
+        /** The foreground color. */
+        private final int foregroundColor;
+        /** The window color. */
+        private final int windowColor;
+        /** The window corner radius. */
+        private final int windowCornerRadius;
+        /** TextTrackStyle.WINDOW_TYPE_*. */
+        private final int windowType;
+
+        private TextStyle(TextTrackStyle style) {
+            this.backgroundColor = style.getBackgroundColor();
+            this.customData = style.getCustomData();
+            this.edgeColor = style.getEdgeColor();
+            this.edgeType = style.getEdgeType();
+            this.fontFamily = style.getFontFamily();
+            this.fontGenericFamily = style.getFontGenericFamily();
+            this.fontScale = style.getFontScale();
+            this.fontStyle = style.getFontStyle();
+            this.foregroundColor = style.getForegroundColor();
+            this.windowColor = style.getWindowColor();
+            this.windowCornerRadius = style.getWindowCornerRadius();
+            this.windowType = style.getWindowType();
+        }
+
+        int getBackgroundColor() {
+            return backgroundColor;
+        }
+        JSONObject getCustomData() {
+            return customData;
+        }
+        int getEdgeColor() {
+            return edgeColor;
+        }
+        int getEdgeType() {
+            return edgeType;
+        }
+        String getFontFamily() {
+            return fontFamily;
+        }
+        int getFontGenericFamily() {
+            return fontGenericFamily;
+        }
+        float getFontScale() {
+            return fontScale;
+        }
+        int getFontStyle() {
+            return fontStyle;
+        }
+        int getForegroundColor() {
+            return foregroundColor;
+        }
+        int getWindowColor() {
+            return windowColor;
+        }
+        int getWindowCornerRadius() {
+            return windowCornerRadius;
+        }
+        int getWindowType() {
+            return windowType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TextStyle)) {
+                return false;
+            }
+            TextStyle that = (TextStyle) o;
+            return backgroundColor == that.backgroundColor
+                    && edgeColor == that.edgeColor
+                    && edgeType == that.edgeType
+                    && fontGenericFamily == that.fontGenericFamily
+                    && Float.compare(fontScale, that.fontScale) == 0
+                    && fontStyle == that.fontStyle
+                    && foregroundColor == that.foregroundColor
+                    && windowColor == that.windowColor
+                    && windowCornerRadius == that.windowCornerRadius
+                    && windowType == that.windowType
+                    && Objects.equals(fontFamily, that.fontFamily)
+                    && sameJSON(customData, that.customData);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(backgroundColor, edgeColor, edgeType, fontGenericFamily, fontScale, fontStyle,
+                    foregroundColor, windowColor, windowCornerRadius, windowType, fontFamily, jsonHash(customData));
+        }
+    }
+}
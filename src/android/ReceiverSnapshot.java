@@ -0,0 +1,96 @@
+package acidhax.cordova.chromecast;
+
+import com.google.android.gms.cast.CastDevice;
+import com.google.android.gms.cast.framework.CastSession;
+
+import java.util.Objects;
+
+/**
+ * An immutable copy of the receiver fields of a session that we send to the javascript side.
+ */
+final class ReceiverSnapshot {
+    /** The friendly name of the cast device. */
+    private final String friendlyName;
+    /** The device id of the cast device. */
+    private final String label;
+    /** Whether the volume could be read (only when the session is connected). */
+    private final boolean hasVolume;
+    /** The device volume. */
+    private final double volume;
+    /** Whether the device is muted. */
+    private final boolean muted;
+
+    private ReceiverSnapshot(String name, String deviceId, boolean connected, double level, boolean mute) {
+        this.friendlyName = name;
+        this.label = deviceId;
+        this.hasVolume = connected;
+        this.volume = level;
+        this.muted = mute;
+    }
+
+    /**
+     * Captures the receiver of a session.
+     * Must be called on the main thread.
+     * @param session the session
+     * @return the snapshot, or null if the session has no cast device
+     */
+    static ReceiverSnapshot capture(CastSession session) {
+        CastDevice device = session.getCastDevice();
+        if (device == null) {
+            return null;
+        }
+        if (!session.isConnected()) {
+            return new ReceiverSnapshot(device.getFriendlyName(), device.getDeviceId(), false, 0, false);
+        }
+        return new ReceiverSnapshot(device.getFriendlyName(), device.getDeviceId(), true, session.getVolume(), session.isMute());
+    }
+
+    /**
+     * Creates the snapshot of a connected receiver that isn't a cast device (see ChromecastFakeReceiver).
+     * @param name the friendly name
+     * @param deviceId the device id
+     * @param level the volume
+     * @param mute whether it is muted
+     * @return the snapshot
+     */
+    static ReceiverSnapshot create(String name, String deviceId, double level, boolean mute) {
+        return new ReceiverSnapshot(name, deviceId, true, level, mute);
+    }
+
+    String getFriendlyName() {
+        return friendlyName;
+    }
+    String getLabel() {
+        return label;
+    }
+    boolean hasVolume() {
+        return hasVolume;
+    }
+    double getVolume() {
+        return volume;
+    }
+    boolean isMuted() {
+        return muted;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ReceiverSnapshot)) {
+            return false;
+        }
+        ReceiverSnapshot that = (ReceiverSnapshot) o;
+        return hasVolume == that.hasVolume
+                && Double.compare(volume, that.volume) == 0
+                && muted == that.muted
+                && Objects.equals(friendlyName, that.friendlyName)
+                && Objects.equals(label, that.label);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(friendlyName, label, hasVolume, volume, muted);
+    }
+}
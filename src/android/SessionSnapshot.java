@@ -0,0 +1,157 @@
+package acidhax.cordova.chromecast;
+
+import com.google.android.gms.cast.ApplicationMetadata;
+import com.google.android.gms.cast.framework.CastSession;
+import com.google.android.gms.common.images.WebImage;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable copy of the session fields that we send to the javascript side.
+ * Captured on the main thread, serialized by ChromecastSerializer.
+ */
+final class SessionSnapshot {
+    /** Whether the session had application metadata, if not the session object is empty. */
+    private final boolean hasApplication;
+    /** The application id. */
+    private final String appId;
+    /** The application image urls. */
+    private final List<String> appImages;
+    /** The application name. */
+    private final String displayName;
+    /** The current media, may be null. */
+    private final MediaSnapshot media;
+    /** The receiver, may be null. */
+    private final ReceiverSnapshot receiver;
+    /** The session id. */
+    private final String sessionId;
+    /** The status to report (eg. "stopped"), may be null. */
+    private final String status;
+    /** Cached hash code, 0 if not computed yet. */
+    private int hash;
+
+    private SessionSnapshot(CastSession session, ApplicationMetadata metadata, List<String> queueItems, String state) {
+        this.hasApplication = metadata != null;
+        List<String> urls = new ArrayList<>();
+        if (metadata != null) {
+            this.appId = metadata.getApplicationId();
+            this.displayName = metadata.getName();
+            if (metadata.getImages() != null) {
+                for (WebImage image : metadata.getImages()) {
+                    if (image.getUrl() != null) {
+                        urls.add(image.getUrl().toString());
+                    }
+                }
+            }
+            this.media = MediaSnapshot.capture(session, queueItems);
+            this.receiver = ReceiverSnapshot.capture(session);
+            this.sessionId = session.getSessionId();
+        } else {
+            this.appId = null;
+            this.displayName = null;
+            this.media = null;
+            this.receiver = null;
+            this.sessionId = null;
+        }
+        this.appImages = Collections.unmodifiableList(urls);
+        this.status = state;
+    }
+
+    private SessionSnapshot(String id, String applicationId, String name, MediaSnapshot mediaSnapshot,
+                            ReceiverSnapshot receiverSnapshot, String state) {
+        this.hasApplication = true;
+        this.appId = applicationId;
+        this.appImages = Collections.emptyList();
+        this.displayName = name;
+        this.media = mediaSnapshot;
+        this.receiver = receiverSnapshot;
+        this.sessionId = id;
+        this.status = state;
+    }
+
+    /**
+     * Captures a session.
+     * Must be called on the main thread.
+     * @param session the session, may be null
+     * @param queueItems the rendered queue items to send along with the media
+     * @param state the status to report (eg. "stopped"), or null
+     * @return the snapshot
+     */
+    static SessionSnapshot capture(CastSession session, List<String> queueItems, String state) {
+        ApplicationMetadata metadata = session != null ? session.getApplicationMetadata() : null;
+        return new SessionSnapshot(session, metadata, queueItems, state);
+    }
+
+    /**
+     * Creates the snapshot of a session that isn't a CastSession (see ChromecastFakeReceiver).
+     * @param id the session id
+     * @param applicationId the application id
+     * @param name the application name
+     * @param mediaSnapshot the current media, or null
+     * @param receiverSnapshot the receiver, or null
+     * @param state the status to report (eg. "stopped"), or null
+     * @return the snapshot
+     */
+    static SessionSnapshot create(String id, String applicationId, String name, MediaSnapshot mediaSnapshot,
+                                  ReceiverSnapshot receiverSnapshot, String state) {
+        return new SessionSnapshot(id, applicationId, name, mediaSnapshot, receiverSnapshot, state);
+    }
+
+    boolean hasApplication() {
+        return hasApplication;
+    }
+    String getAppId() {
+        return appId;
+    }
+    List<String> getAppImages() {
+        return appImages;
+    }
+    String getDisplayName() {
+        return displayName;
+    }
+    MediaSnapshot getMedia() {
+        return media;
+    }
+    ReceiverSnapshot getReceiver() {
+        return receiver;
+    }
+    String getSessionId() {
+        return sessionId;
+    }
+    String getStatus() {
+        return status;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SessionSnapshot)) {
+            return false;
+        }
+        SessionSnapshot that = (SessionSnapshot) o;
+        return hasApplication == that.hasApplication
+                && Objects.equals(appId, that.appId)
+                && appImages.equals(that.appImages)
+                && Objects.equals(displayName, that.displayName)
+                && Objects.equals(sessionId, that.sessionId)
+                && Objects.equals(status, that.status)
+                && Objects.equals(receiver, that.receiver)
+                && Objects.equals(media, that.media);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = Objects.hash(hasApplication, appId, appImages, displayName, sessionId, status, receiver, media);
+            hash = h;
+        }
+        return h;
+    }
+}
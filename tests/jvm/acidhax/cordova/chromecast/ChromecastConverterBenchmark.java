@@ -0,0 +1,175 @@
+package acidhax.cordova.chromecast;
+
+import com.google.android.gms.cast.MediaQueueItem;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the converters and of the bridge dispatch, on a plain JVM.
+ * It is not part of the plugin (see "Load tests" in the README).
+ *
+ * The fixtures and the Legacy converters are those of ChromecastBenchmark, which
+ * measures the same on the device (chrome.cast.cordova.benchmarkConverters).  Here
+ * JMH handles the warm up, forks and dead code elimination, and counts the
+ * allocations with -prof gc, which the device benchmark can only read from ART.
+ *
+ * Usage: java -cp ... org.openjdk.jmh.Main ChromecastConverterBenchmark [-prof gc]
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChromecastConverterBenchmark {
+
+    /** The actions cycled through by the dispatch benchmarks. */
+    private static final String[] DISPATCH_ACTIONS = {"mediaPlay", "setMediaVolume", "mediaSeek"};
+
+    /** A queue item with all the fields. */
+    private JSONObject queueItem;
+    /** A queue item as the javascript side sends it by default. */
+    private JSONObject sparseQueueItem;
+    /** The media of queueItem. */
+    private JSONObject mediaInfo;
+    /** The text track style of mediaInfo. */
+    private JSONObject textTrackStyle;
+    /** queueItem converted, with text tracks. */
+    private MediaQueueItem item;
+    /** The plugin whose actions are dispatched. */
+    private ChromecastBenchmark.DispatchTarget target;
+    /** The action table of target. */
+    private Map<String, Chromecast.Action> actions;
+    /** The arguments of DISPATCH_ACTIONS. */
+    private JSONArray[] dispatchArgs;
+    /** The callback given to the actions. */
+    private CallbackContext callback;
+    /** Number of dispatched calls, to cycle through the actions. */
+    private int call;
+
+    /**
+     * Builds the fixtures.
+     * @throws JSONException never
+     */
+    @Setup
+    public void setUp() throws JSONException {
+        queueItem = ChromecastBenchmark.createFixture(1);
+        sparseQueueItem = ChromecastBenchmark.createSparseFixture(1);
+        mediaInfo = queueItem.getJSONObject("media");
+        textTrackStyle = mediaInfo.getJSONObject("textTrackStyle");
+        item = ChromecastBenchmark.withTracks(ChromecastUtilities.createMediaQueueItem(queueItem));
+        target = new ChromecastBenchmark.DispatchTarget();
+        actions = target.createActions();
+        dispatchArgs = new JSONArray[] {
+            new JSONArray(),
+            new JSONArray().put(0.5).put(false),
+            new JSONArray().put(10).put("PLAYBACK_START"),
+        };
+        callback = new CallbackContext("benchmark", null);
+    }
+
+    /**
+     * ChromecastUtilities.createMediaQueueItem of a full item.
+     * @return the converted item
+     * @throws JSONException never
+     */
+    @Benchmark
+    public MediaQueueItem createMediaQueueItem() throws JSONException {
+        return ChromecastUtilities.createMediaQueueItem(queueItem);
+    }
+
+    /**
+     * The Legacy createMediaQueueItem of a full item.
+     * @return the converted item
+     * @throws JSONException never
+     */
+    @Benchmark
+    public MediaQueueItem legacyCreateMediaQueueItem() throws JSONException {
+        return ChromecastBenchmark.Legacy.createMediaQueueItem(queueItem);
+    }
+
+    /**
+     * ChromecastUtilities.createMediaQueueItem of a sparse item.
+     * @return the converted item
+     * @throws JSONException never
+     */
+    @Benchmark
+    public MediaQueueItem createMediaQueueItemSparse() throws JSONException {
+        return ChromecastUtilities.createMediaQueueItem(sparseQueueItem);
+    }
+
+    /**
+     * The Legacy createMediaQueueItem of a sparse item.
+     * @return the converted item
+     * @throws JSONException never
+     */
+    @Benchmark
+    public MediaQueueItem legacyCreateMediaQueueItemSparse() throws JSONException {
+        return ChromecastBenchmark.Legacy.createMediaQueueItem(sparseQueueItem);
+    }
+
+    /**
+     * ChromecastUtilities.createMediaInfo.
+     * @return the converted media
+     */
+    @Benchmark
+    public Object createMediaInfo() {
+        return ChromecastUtilities.createMediaInfo(mediaInfo);
+    }
+
+    /**
+     * ChromecastUtilities.parseTextTrackStyle.
+     * @return the converted style
+     */
+    @Benchmark
+    public Object parseTextTrackStyle() {
+        return ChromecastUtilities.parseTextTrackStyle(textTrackStyle);
+    }
+
+    /**
+     * ChromecastUtilities.createQueueItem, the other way, with 10 text tracks.
+     * @return the javascript item
+     */
+    @Benchmark
+    public JSONObject createQueueItem() {
+        return ChromecastUtilities.createQueueItem(item, 0);
+    }
+
+    /**
+     * The action table of Chromecast.execute.
+     * @return what the action returned
+     */
+    @Benchmark
+    public boolean dispatchTable() {
+        int i = call++ % DISPATCH_ACTIONS.length;
+        Chromecast.Action handler = actions.get(DISPATCH_ACTIONS[i]);
+        return handler != null && handler.run(dispatchArgs[i], callback);
+    }
+
+    /**
+     * The reflective dispatch the action table replaced.
+     * @return what the action returned
+     * @throws JSONException never
+     */
+    @Benchmark
+    public boolean dispatchReflective() throws JSONException {
+        int i = call++ % DISPATCH_ACTIONS.length;
+        return ChromecastBenchmark.Legacy.execute(target, DISPATCH_ACTIONS[i], dispatchArgs[i], callback);
+    }
+}
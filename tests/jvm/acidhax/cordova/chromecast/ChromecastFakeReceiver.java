@@ -0,0 +1,662 @@
+package acidhax.cordova.chromecast;
+
+import com.google.android.gms.cast.Cast;
+import com.google.android.gms.cast.MediaInfo;
+import com.google.android.gms.cast.MediaLoadRequestData;
+import com.google.android.gms.cast.MediaQueueItem;
+import com.google.android.gms.cast.MediaSeekOptions;
+import com.google.android.gms.cast.MediaStatus;
+import com.google.android.gms.cast.TextTrackStyle;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An in-memory receiver, used to drive ChromecastSession without a device
+ * (see ChromecastLoadTest).  It is not part of the plugin.
+ *
+ * Every request is handled latency ms after it was made, then the queue
+ * callbacks, the status updates and the result are delivered on the main
+ * thread, in that order, like the SDK does.  The queue items are fetched like
+ * MediaQueue does: the first getQueueItemAtIndex of an item returns null and
+ * itemsUpdatedAtIndexes follows fetchLatency ms later.
+ *
+ * The requests must be made on the main thread, tick and advance can be
+ * called from any thread.
+ */
+final class ChromecastFakeReceiver implements ChromecastSession.Receiver {
+
+    /** The application id of the default media receiver. */
+    private static final String APP_ID = "CC1AD845";
+    /** The friendly name of the receiver. */
+    private static final String NAME = "Fake receiver";
+
+    /** Delivers the events and the results. */
+    private final ChromecastLoop main;
+    /** The session id. */
+    private final String sessionId;
+    /** How long (ms) the receiver takes to handle a request. */
+    private final long latency;
+    /** How long (ms) the receiver takes to send a queue item. */
+    private final long fetchLatency;
+    /** The items of the queue, in order. */
+    private final List<MediaQueueItem> queue = new ArrayList<>();
+    /** The ids of the items that were fetched. */
+    private final Set<Integer> fetched = new HashSet<>();
+    /** The ids of the items being fetched. */
+    private final Set<Integer> fetching = new HashSet<>();
+    /** Notified of the status and application events. */
+    private Listener listener;
+    /** Notified of the changes of the queue. */
+    private QueueListener queueListener;
+    /** The id of the next item added to the queue. */
+    private int nextItemId = 1;
+    /** Whether there is media, ie. a media status. */
+    private boolean hasMedia;
+    /** The current media. */
+    private MediaInfo mediaInfo;
+    /** The id of the current item. */
+    private int currentItemId = MediaQueueItem.INVALID_ITEM_ID;
+    /** MediaStatus.PLAYER_STATE_*. */
+    private int playerState = MediaStatus.PLAYER_STATE_IDLE;
+    /** MediaStatus.IDLE_REASON_*. */
+    private int idleReason = MediaStatus.IDLE_REASON_NONE;
+    /** The stream position (ms). */
+    private long position;
+    /** The playback rate. */
+    private double rate = 1;
+    /** MediaStatus.REPEAT_MODE_*. */
+    private int repeatMode = MediaStatus.REPEAT_MODE_REPEAT_OFF;
+    /** The stream volume. */
+    private double streamLevel = 1;
+    /** Whether the stream is muted. */
+    private boolean streamMute;
+    /** The active track ids, or null. */
+    private long[] activeTrackIds;
+    /** The receiver volume. */
+    private double level = 1;
+    /** Whether the receiver is muted. */
+    private boolean mute;
+
+    /**
+     * Constructor.
+     * @param mainLoop delivers the events and the results on the main thread
+     * @param id the session id
+     * @param requestLatency how long (ms) the receiver takes to handle a request
+     * @param itemLatency how long (ms) the receiver takes to send a queue item
+     */
+    ChromecastFakeReceiver(ChromecastLoop mainLoop, String id, long requestLatency, long itemLatency) {
+        this.main = mainLoop;
+        this.sessionId = id;
+        this.latency = Math.max(0, requestLatency);
+        this.fetchLatency = Math.max(0, itemLatency);
+    }
+
+    /**
+     * Emits a status update with the position moved by elapsedMs if playing.
+     * @param elapsedMs how long (ms) the media played since the last tick
+     */
+    void tick(final long elapsedMs) {
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                if (!hasMedia) {
+                    return;
+                }
+                if (playerState == MediaStatus.PLAYER_STATE_PLAYING) {
+                    position += Math.round(elapsedMs * rate);
+                }
+                statusUpdated();
+            }
+        }, 0);
+    }
+
+    /**
+     * Ends the current item: the player goes through LOADING to the next item,
+     * or to IDLE / FINISHED at the end of the queue.
+     */
+    void advance() {
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                if (!hasMedia || queue.isEmpty()) {
+                    return;
+                }
+                playerState = MediaStatus.PLAYER_STATE_LOADING;
+                statusUpdated();
+                deliver(new Runnable() {
+                    @Override
+                    public void run() {
+                        int index = indexOf(currentItemId) + 1;
+                        if (index >= queue.size() && repeatMode == MediaStatus.REPEAT_MODE_REPEAT_ALL) {
+                            index = 0;
+                        }
+                        if (index < queue.size()) {
+                            play(queue.get(index), 0);
+                        } else {
+                            setIdle(MediaStatus.IDLE_REASON_FINISHED);
+                        }
+                        statusUpdated();
+                    }
+                }, latency);
+            }
+        }, 0);
+    }
+
+    @Override
+    public String getModelName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean hasMediaStatus() {
+        return hasMedia;
+    }
+
+    @Override
+    public int getPlayerState() {
+        return hasMedia ? playerState : MediaStatus.PLAYER_STATE_UNKNOWN;
+    }
+
+    @Override
+    public int getCurrentItemId() {
+        return hasMedia ? currentItemId : MediaQueueItem.INVALID_ITEM_ID;
+    }
+
+    @Override
+    public MediaSnapshot captureMedia(List<String> queueItems) {
+        if (!hasMedia) {
+            return null;
+        }
+        return MediaSnapshot.create(sessionId, mediaInfo, currentItemId, playerState, idleReason, position, rate,
+                repeatMode, streamLevel, streamMute, activeTrackIds, queueItems);
+    }
+
+    @Override
+    public SessionSnapshot captureSession(List<String> queueItems, String state) {
+        return SessionSnapshot.create(sessionId, APP_ID, "Default Media Receiver", captureMedia(queueItems),
+                ReceiverSnapshot.create(NAME, "fake-" + sessionId, level, mute), state);
+    }
+
+    @Override
+    public void setListener(Listener statusListener) {
+        this.listener = statusListener;
+    }
+
+    @Override
+    public void setQueueListener(QueueListener changeListener) {
+        this.queueListener = changeListener;
+    }
+
+    @Override
+    public void addMessageListener(String namespace, Cast.MessageReceivedCallback callback) {
+    }
+
+    @Override
+    public void sendMessage(String namespace, String message, final Result result) {
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                result.onResult(true, null);
+            }
+        }, latency);
+    }
+
+    @Override
+    public void setVolume(final double volume) {
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                level = volume;
+                applicationUpdated();
+            }
+        }, latency);
+    }
+
+    @Override
+    public void setMute(final boolean muted) {
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                mute = muted;
+                applicationUpdated();
+            }
+        }, latency);
+    }
+
+    @Override
+    public void load(final MediaLoadRequestData request, final Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                MediaQueueItem item = withId(new MediaQueueItem.Builder(request.getMediaInfo()).build());
+                queue.clear();
+                queue.add(item);
+                fetched.clear();
+                fetching.clear();
+                repeatMode = MediaStatus.REPEAT_MODE_REPEAT_OFF;
+                play(item, request.getCurrentTime());
+                activeTrackIds = request.getActiveTrackIds();
+                queueReloaded();
+                return true;
+            }
+        }, result);
+    }
+
+    @Override
+    public void play(Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                playerState = MediaStatus.PLAYER_STATE_PLAYING;
+                return hasMedia;
+            }
+        }, result);
+    }
+
+    @Override
+    public void pause(Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                playerState = MediaStatus.PLAYER_STATE_PAUSED;
+                return hasMedia;
+            }
+        }, result);
+    }
+
+    @Override
+    public void stop(Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                setIdle(MediaStatus.IDLE_REASON_CANCELED);
+                return hasMedia;
+            }
+        }, result);
+    }
+
+    @Override
+    public void seek(final MediaSeekOptions options, Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                position = options.getPosition();
+                if (options.getResumeState() == MediaSeekOptions.RESUME_STATE_PLAY) {
+                    playerState = MediaStatus.PLAYER_STATE_PLAYING;
+                } else if (options.getResumeState() == MediaSeekOptions.RESUME_STATE_PAUSE) {
+                    playerState = MediaStatus.PLAYER_STATE_PAUSED;
+                }
+                return hasMedia;
+            }
+        }, result);
+    }
+
+    @Override
+    public void setStreamVolume(final double volume, Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                streamLevel = volume;
+                return hasMedia;
+            }
+        }, result);
+    }
+
+    @Override
+    public void setStreamMute(final boolean muted, Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                streamMute = muted;
+                return hasMedia;
+            }
+        }, result);
+    }
+
+    @Override
+    public void setActiveMediaTracks(final long[] trackIds, Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                activeTrackIds = trackIds;
+                return hasMedia;
+            }
+        }, result);
+    }
+
+    @Override
+    public void setTextTrackStyle(TextTrackStyle style, Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                return hasMedia;
+            }
+        }, result);
+    }
+
+    @Override
+    public void queueLoad(final MediaQueueItem[] items, final int startIndex, final int mode, final long playPosition,
+                          JSONObject customData, Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                if (items.length == 0 || startIndex < 0 || startIndex >= items.length) {
+                    return false;
+                }
+                queue.clear();
+                fetched.clear();
+                fetching.clear();
+                for (MediaQueueItem item : items) {
+                    queue.add(withId(item));
+                }
+                repeatMode = mode;
+                activeTrackIds = null;
+                play(queue.get(startIndex), playPosition);
+                queueReloaded();
+                return true;
+            }
+        }, result);
+    }
+
+    @Override
+    public void queueInsertItems(final MediaQueueItem[] items, final int insertBeforeItemId, JSONObject customData,
+                                 Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                int index = insertBeforeItemId == MediaQueueItem.INVALID_ITEM_ID ? queue.size() : indexOf(insertBeforeItemId);
+                if (index == -1) {
+                    return false;
+                }
+                for (int i = 0; i < items.length; i++) {
+                    queue.add(index + i, withId(items[i]));
+                }
+                if (queueListener != null) {
+                    queueListener.itemsInsertedInRange(index, items.length);
+                }
+                queueStatusUpdated();
+                return true;
+            }
+        }, result);
+    }
+
+    @Override
+    public void queueRemoveItems(final int[] itemIds, JSONObject customData, Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                int[] indexes = indexesOf(itemIds);
+                if (indexes == null) {
+                    return false;
+                }
+                int currentIndex = indexOf(currentItemId);
+                boolean removedCurrent = false;
+                for (int i = indexes.length - 1; i >= 0; i--) {
+                    MediaQueueItem removed = queue.remove(indexes[i]);
+                    fetched.remove(removed.getItemId());
+                    if (removed.getItemId() == currentItemId) {
+                        removedCurrent = true;
+                    } else if (indexes[i] < currentIndex) {
+                        currentIndex--;
+                    }
+                }
+                if (queueListener != null) {
+                    queueListener.itemsRemovedAtIndexes(indexes);
+                }
+                if (removedCurrent) {
+                    if (currentIndex < queue.size()) {
+                        play(queue.get(currentIndex), 0);
+                    } else {
+                        setIdle(MediaStatus.IDLE_REASON_INTERRUPTED);
+                    }
+                }
+                queueStatusUpdated();
+                return true;
+            }
+        }, result);
+    }
+
+    @Override
+    public void queueReorderItems(final int[] itemIds, final int insertBeforeItemId, JSONObject customData,
+                                  Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                int[] indexes = indexesOf(itemIds);
+                if (indexes == null) {
+                    return false;
+                }
+                List<MediaQueueItem> itemsBefore = new ArrayList<>(queue);
+                List<MediaQueueItem> moved = new ArrayList<>();
+                for (int itemId : itemIds) {
+                    moved.add(queue.get(indexOf(itemId)));
+                }
+                queue.removeAll(moved);
+                if (insertBeforeItemId != MediaQueueItem.INVALID_ITEM_ID && indexOf(insertBeforeItemId) == -1) {
+                    // Unknown or moved itself
+                    queue.clear();
+                    queue.addAll(itemsBefore);
+                    return false;
+                }
+                int insertBeforeIndex = insertBeforeItemId == MediaQueueItem.INVALID_ITEM_ID
+                        ? queue.size() : indexOf(insertBeforeItemId);
+                queue.addAll(insertBeforeIndex, moved);
+                if (queueListener != null) {
+                    List<Integer> from = new ArrayList<>();
+                    for (int index : indexes) {
+                        from.add(index);
+                    }
+                    queueListener.itemsReorderedAtIndexes(from, insertBeforeIndex);
+                }
+                queueStatusUpdated();
+                return true;
+            }
+        }, result);
+    }
+
+    @Override
+    public void queueUpdateItems(final MediaQueueItem[] items, JSONObject customData, Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                int[] indexes = new int[items.length];
+                for (int i = 0; i < items.length; i++) {
+                    indexes[i] = indexOf(items[i].getItemId());
+                    if (indexes[i] == -1) {
+                        return false;
+                    }
+                }
+                for (int i = 0; i < items.length; i++) {
+                    queue.set(indexes[i], items[i]);
+                    fetched.remove(items[i].getItemId());
+                }
+                if (queueListener != null) {
+                    queueListener.itemsUpdatedAtIndexes(indexes);
+                }
+                queueStatusUpdated();
+                return true;
+            }
+        }, result);
+    }
+
+    @Override
+    public void queueJumpToItem(final int itemId, JSONObject customData, Result result) {
+        handle(new Request() {
+            @Override
+            public boolean apply() {
+                int index = indexOf(itemId);
+                if (index == -1) {
+                    return false;
+                }
+                play(queue.get(index), 0);
+                queueStatusUpdated();
+                return true;
+            }
+        }, result);
+    }
+
+    @Override
+    public int getQueueItemCount() {
+        return queue.size();
+    }
+
+    @Override
+    public int[] getQueueItemIds() {
+        int[] ids = new int[queue.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = queue.get(i).getItemId();
+        }
+        return ids;
+    }
+
+    @Override
+    public int getQueueItemIdAtIndex(int index) {
+        return index >= 0 && index < queue.size() ? queue.get(index).getItemId() : MediaQueueItem.INVALID_ITEM_ID;
+    }
+
+    @Override
+    public int getQueueIndexOfItemWithId(int itemId) {
+        return indexOf(itemId);
+    }
+
+    @Override
+    public MediaQueueItem getQueueItemAtIndex(int index) {
+        if (index < 0 || index >= queue.size()) {
+            return null;
+        }
+        MediaQueueItem item = queue.get(index);
+        final int itemId = item.getItemId();
+        if (fetched.contains(itemId)) {
+            return item;
+        }
+        if (fetching.add(itemId)) {
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    fetching.remove(itemId);
+                    int fetchedIndex = indexOf(itemId);
+                    if (fetchedIndex == -1) {
+                        return;
+                    }
+                    fetched.add(itemId);
+                    if (queueListener != null) {
+                        queueListener.itemsUpdatedAtIndexes(new int[] {fetchedIndex});
+                    }
+                }
+            }, fetchLatency);
+        }
+        return null;
+    }
+
+    /**
+     * A request, applied on the main thread once the latency elapsed.
+     */
+    private interface Request {
+        /**
+         * Changes the state of the receiver, and sends the queue callbacks.
+         * @return whether the request succeeded
+         */
+        boolean apply();
+    }
+
+    private void handle(final Request request, final Result result) {
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                boolean success = request.apply();
+                if (success) {
+                    statusUpdated();
+                }
+                result.onResult(success, null);
+            }
+        }, latency);
+    }
+
+    private void deliver(Runnable work, long delay) {
+        main.post(work, delay);
+    }
+
+    private void statusUpdated() {
+        if (listener != null) {
+            listener.onStatusUpdated();
+        }
+    }
+
+    private void queueStatusUpdated() {
+        if (listener != null) {
+            listener.onQueueStatusUpdated();
+        }
+    }
+
+    private void applicationUpdated() {
+        if (listener != null) {
+            listener.onApplicationUpdated();
+        }
+    }
+
+    private void queueReloaded() {
+        if (queueListener != null) {
+            queueListener.itemsReloaded();
+        }
+        queueStatusUpdated();
+    }
+
+    private void play(MediaQueueItem item, long playPosition) {
+        hasMedia = true;
+        mediaInfo = item.getMedia();
+        currentItemId = item.getItemId();
+        playerState = MediaStatus.PLAYER_STATE_PLAYING;
+        idleReason = MediaStatus.IDLE_REASON_NONE;
+        position = Math.max(0, playPosition);
+    }
+
+    private void setIdle(int reason) {
+        playerState = MediaStatus.PLAYER_STATE_IDLE;
+        idleReason = reason;
+    }
+
+    private int indexOf(int itemId) {
+        for (int i = 0; i < queue.size(); i++) {
+            if (queue.get(i).getItemId() == itemId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param itemIds ids of items of the queue
+     * @return their indexes in ascending order, or null if one isn't in the queue
+     */
+    private int[] indexesOf(int[] itemIds) {
+        int[] indexes = new int[itemIds.length];
+        for (int i = 0; i < itemIds.length; i++) {
+            indexes[i] = indexOf(itemIds[i]);
+            if (indexes[i] == -1) {
+                return null;
+            }
+        }
+        Arrays.sort(indexes);
+        return indexes;
+    }
+
+    /**
+     * Gives an item the next item id, like the receiver does when it is added to the queue.
+     * @param item the item
+     * @return a copy of the item with its id
+     */
+    private MediaQueueItem withId(MediaQueueItem item) {
+        try {
+            return new MediaQueueItem.Builder(item.toJson().put("itemId", nextItemId++)).build();
+        } catch (JSONException e) {
+            return item;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package acidhax.cordova.chromecast;
+
+import com.google.android.gms.cast.CastDevice;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the session and queue pipeline on a plain JVM, without a device.
+ * It is not part of the plugin (see "Load tests" in the README).
+ *
+ * A ChromecastSession drives a ChromecastFakeReceiver, and its events go through a
+ * ChromecastEventPipeline to a callback that counts the crossings and their bytes,
+ * like Chromecast does with the javascript side.  The main, background and event
+ * threads are plain threads.
+ *
+ * A queue of items is loaded (progressively if asked), then the receiver sends
+ * a number of status updates (one per tick ms of media time, rate per second or as
+ * fast as they can be handled if 0), ends the current item every advanceEvery updates
+ * and gets a command (seek, pause, play, stream volume) every commandsEvery updates.
+ *
+ * Usage: ChromecastLoadTest [updates=N] [rate=N] [items=N] [latency=ms] [fetchLatency=ms]
+ *        [window=ms] [tick=ms] [advanceEvery=N] [commandsEvery=N] [progressive=true]
+ * Prints {options, queueLoadMs, wallMs, updatesPerSec, commands, commandErrors, crossings,
+ * bytes, executor, pipeline} as JSON, queueLoadMs is until all the items are in the queue.
+ */
+public final class ChromecastLoadTest {
+
+    /** Max time (s) to wait for the session to catch up. */
+    private static final long TIMEOUT = 60;
+
+    private ChromecastLoadTest() {
+        //not called
+    }
+
+    /**
+     * Runs the load test.
+     * @param args the options, as name=value
+     * @throws Exception if the test could not run
+     */
+    public static void main(String[] args) throws Exception {
+        JSONObject options = new JSONObject()
+                .put("updates", 100000)
+                .put("rate", 0)
+                .put("items", 1000)
+                .put("latency", 5)
+                .put("fetchLatency", 2)
+                .put("window", 16)
+                .put("tick", 250)
+                .put("advanceEvery", 500)
+                .put("commandsEvery", 100)
+                .put("progressive", false);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq == -1 || !options.has(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+            String value = arg.substring(eq + 1);
+            options.put(arg.substring(0, eq), "true".equals(value) || "false".equals(value)
+                    ? (Object) Boolean.valueOf(value) : (Object) Long.valueOf(value));
+        }
+        System.out.println(run(options).toString(2));
+    }
+
+    /**
+     * Runs the load test.
+     * @param options see main
+     * @return the results
+     * @throws Exception if the test could not run
+     */
+    static JSONObject run(JSONObject options) throws Exception {
+        int updates = options.getInt("updates");
+        int advanceEvery = Math.max(1, options.getInt("advanceEvery"));
+        int commandsEvery = Math.max(1, options.getInt("commandsEvery"));
+        long tick = options.getLong("tick");
+        long rate = options.getLong("rate");
+
+        ChromecastTracer tracer = new ChromecastTracer(0);
+        JvmLoop main = new JvmLoop("main");
+        JvmLoop events = new JvmLoop("ChromecastEvents");
+        final ChromecastExecutor executor = new ChromecastExecutor(main, new JvmLoop("ChromecastWorker"), false, tracer);
+        final ChromecastEventPipeline pipeline = new ChromecastEventPipeline(events, options.getInt("window"), true, tracer);
+        final Counter crossings = new Counter();
+        pipeline.setCallback(crossings);
+        final CountDownLatch queueLoaded = new CountDownLatch(1);
+        final AtomicLong queueLoadedAt = new AtomicLong();
+
+        ChromecastSession session = new ChromecastSession(null, executor, new ChromecastSession.Listener() {
+            @Override
+            public void onMediaLoaded(final MediaSnapshot snapshot) {
+                pipeline.send("MEDIA_LOAD", new ChromecastEventPipeline.Args() {
+                    @Override
+                    public void write(ChromecastJsonWriter out) {
+                        out.beginArray();
+                        if (snapshot != null) {
+                            ChromecastSerializer.writeMediaObject(out, snapshot);
+                        } else {
+                            out.nullValue();
+                        }
+                        out.endArray();
+                    }
+                });
+            }
+            @Override
+            public void onMediaUpdate(MediaSnapshot snapshot) {
+                boolean ended = snapshot == null || ChromecastUtilities.getMediaIdleReason(snapshot.getIdleReason()) != null;
+                pipeline.sendMedia(snapshot, !ended);
+            }
+            @Override
+            public void onSessionUpdate(final SessionSnapshot snapshot) {
+                pipeline.sendLatest("SESSION_UPDATE", snapshot, new ChromecastEventPipeline.Args() {
+                    @Override
+                    public void write(ChromecastJsonWriter out) {
+                        out.beginArray();
+                        ChromecastSerializer.writeSessionObject(out, snapshot);
+                        out.endArray();
+                    }
+                });
+            }
+            @Override
+            public void onSessionEnd(JSONObject jsonSession) {
+                pipeline.send("SESSION_UPDATE", new JSONArray().put(jsonSession));
+            }
+            @Override
+            public void onQueueLoadProgress(JSONObject progress) {
+                pipeline.send("QUEUE_LOAD_PROGRESS", new JSONArray().put(progress));
+                if (progress.optBoolean("done")) {
+                    queueLoadedAt.set(System.nanoTime());
+                    queueLoaded.countDown();
+                }
+            }
+            @Override
+            public void onMessageReceived(CastDevice device, String namespace, String message) {
+            }
+        });
+        ChromecastFakeReceiver receiver = new ChromecastFakeReceiver(main, "load-test",
+                options.getLong("latency"), options.getLong("fetchLatency"));
+        session.setReceiver(receiver);
+        drain(main);
+
+        Command load = new Command(1);
+        boolean progressive = options.getBoolean("progressive");
+        long loadStart = System.nanoTime();
+        session.queueLoad(createQueueLoadRequest(options.getInt("items"), progressive), load);
+        load.await();
+        if (load.errors.get() > 0) {
+            throw new IllegalStateException("queueLoad failed: " + load.lastError);
+        }
+        if (!progressive) {
+            queueLoadedAt.set(System.nanoTime());
+            queueLoaded.countDown();
+        }
+
+        int commandCount = updates / commandsEvery;
+        Command commands = new Command(commandCount);
+        long start = System.nanoTime();
+        for (int i = 1; i <= updates; i++) {
+            if (rate > 0) {
+                long wait = start + i * 1000000000L / rate - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            receiver.tick(tick);
+            if (i % advanceEvery == 0) {
+                receiver.advance();
+            }
+            if (i % commandsEvery == 0) {
+                switch (i / commandsEvery % 4) {
+                    case 0:
+                        session.mediaSeek(i * tick, "", commands);
+                        break;
+                    case 1:
+                        session.mediaPause(commands);
+                        break;
+                    case 2:
+                        session.mediaPlay(commands);
+                        break;
+                    default:
+                        session.mediaSetVolume(0.5, null, commands);
+                }
+            }
+        }
+        commands.await();
+        if (!queueLoaded.await(TIMEOUT, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Timed out loading the queue");
+        }
+        // Wait for the updates already posted, then for the events of the last ones
+        drain(main);
+        drain(events);
+        Thread.sleep(options.getInt("window"));
+        drain(events);
+        long wallNanos = System.nanoTime() - start;
+
+        executor.shutdown();
+        pipeline.shutdown();
+        main.quit();
+
+        JSONObject out = new JSONObject();
+        out.put("options", options);
+        out.put("queueLoadMs", (queueLoadedAt.get() - loadStart) / 1000000);
+        out.put("wallMs", wallNanos / 1000000);
+        out.put("updatesPerSec", Math.round(updates / (wallNanos / 1e9)));
+        out.put("commands", commandCount);
+        out.put("commandErrors", commands.errors.get());
+        out.put("crossings", crossings.count.get());
+        out.put("bytes", crossings.bytes.get());
+        out.put("executor", executor.getStats());
+        out.put("pipeline", pipeline.getStats());
+        return out;
+    }
+
+    /**
+     * Creates a chrome.cast.media.QueueLoadRequest.
+     * @param size the number of items
+     * @param progressive whether the items after the first ones are loaded progressively
+     * @return the request
+     * @throws JSONException never
+     */
+    private static JSONObject createQueueLoadRequest(int size, boolean progressive) throws JSONException {
+        JSONArray items = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            JSONObject metadata = new JSONObject()
+                    .put("metadataType", 0)
+                    .put("title", "Item " + i);
+            JSONObject media = new JSONObject()
+                    .put("contentId", "https://example.com/video/" + i + ".m3u8")
+                    .put("contentType", "application/x-mpegURL")
+                    .put("streamType", "BUFFERED")
+                    .put("duration", 600)
+                    .put("metadata", metadata);
+            items.put(new JSONObject()
+                    .put("media", media)
+                    .put("autoplay", true)
+                    .put("startTime", 0)
+                    .put("preloadTime", 0));
+        }
+        JSONObject request = new JSONObject()
+                .put("items", items)
+                .put("startIndex", 0)
+                .put("repeatMode", "REPEAT_ALL");
+        if (progressive) {
+            request.put("progressive", new JSONObject());
+        }
+        return request;
+    }
+
+    /**
+     * Waits for the work already posted to a loop.
+     * @param loop the loop
+     * @throws InterruptedException if interrupted
+     */
+    private static void drain(JvmLoop loop) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        loop.post(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        }, 0);
+        if (!done.await(TIMEOUT, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Timed out");
+        }
+    }
+
+    /**
+     * A loop on a plain thread.
+     */
+    private static final class JvmLoop implements ChromecastLoop {
+        /** Runs the work. */
+        private final ScheduledExecutorService thread;
+        /** The thread of the loop. */
+        private volatile Thread current;
+
+        JvmLoop(final String name) {
+            ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    current = new Thread(r, name);
+                    current.setDaemon(true);
+                    return current;
+                }
+            });
+            pool.prestartAllCoreThreads();
+            this.thread = pool;
+        }
+
+        @Override
+        public boolean isCurrentThread() {
+            return Thread.currentThread() == current;
+        }
+
+        @Override
+        public void post(Runnable work, long delay) {
+            if (delay > 0) {
+                thread.schedule(work, delay, TimeUnit.MILLISECONDS);
+            } else {
+                thread.execute(work);
+            }
+        }
+
+        @Override
+        public void quit() {
+            thread.shutdown();
+        }
+    }
+
+    /**
+     * Counts the PluginResults sent to the javascript side, and their bytes.
+     */
+    private static final class Counter extends CallbackContext {
+        /** Number of PluginResults. */
+        private final AtomicLong count = new AtomicLong();
+        /** Number of bytes of the messages. */
+        private final AtomicLong bytes = new AtomicLong();
+
+        Counter() {
+            super("load-test-events", null);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult result) {
+            count.incrementAndGet();
+            String message = result.getMessage();
+            bytes.addAndGet(message != null ? message.length() : 0);
+        }
+    }
+
+    /**
+     * Waits for the results of a number of commands.
+     */
+    private static final class Command extends CallbackContext {
+        /** Counts the results still expected. */
+        private final CountDownLatch pending;
+        /** Number of errors. */
+        private final AtomicLong errors = new AtomicLong();
+        /** The last error. */
+        private volatile String lastError;
+
+        Command(int count) {
+            super("load-test-command", null);
+            this.pending = new CountDownLatch(count);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult result) {
+            if (result.getStatus() != PluginResult.Status.OK.ordinal()) {
+                errors.incrementAndGet();
+                lastError = result.getMessage();
+            }
+            pending.countDown();
+        }
+
+        void await() throws InterruptedException {
+            if (!pending.await(TIMEOUT, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out, " + pending.getCount() + " results missing");
+            }
+        }
+    }
+}
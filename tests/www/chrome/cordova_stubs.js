@@ -94,6 +94,60 @@
         });
     };
 
+    /**
+     * Gets counters describing the plugin's activity.
+     * @param {function(object)} successCallback
+     * @param {function(chrome.cast.Error)} errorCallback
+     */
+    chrome.cast.cordova.getDiagnostics = function (successCallback, errorCallback) {
+        successCallback({
+            events: { window: 0, eventsIn: 0, eventsCollapsed: 0, eventsSuppressed: 0, crossingsOut: 0 },
+            mainThread: {}
+        });
+    };
+
+    /**
+     * Gets the latency of the commands sent to the receiver.
+     * @param {function(object)} successCallback
+     * @param {function(chrome.cast.Error)} errorCallback
+     */
+    chrome.cast.cordova.getMetrics = function (successCallback, errorCallback) {
+        successCallback({ uptimeMs: 0, commands: {} });
+    };
+
+    /**
+     * Starts recording the plugin's activity (nothing to record in chrome).
+     * @param {number} bufferSize
+     * @param {function()} successCallback
+     * @param {function(chrome.cast.Error)} errorCallback
+     */
+    chrome.cast.cordova.startTrace = function (bufferSize, successCallback, errorCallback) {
+        successCallback();
+    };
+
+    /**
+     * Gets the recorded activity.
+     * @param {function(object)} successCallback
+     * @param {function(chrome.cast.Error)} errorCallback
+     */
+    chrome.cast.cordova.getTrace = function (successCallback, errorCallback) {
+        successCallback({ traceEvents: [], displayTimeUnit: 'ms', otherData: { capacity: 0, dropped: 0 } });
+    };
+
+    /**
+     * Measures the native converters (not available in chrome).
+     * @param {number} iterations
+     * @param {function(object)} successCallback
+     * @param {function(chrome.cast.Error)} errorCallback
+     */
+    chrome.cast.cordova.benchmarkConverters = function (iterations, successCallback, errorCallback) {
+        var results = {};
+        ['createMediaQueueItem', 'createMediaInfo', 'parseTextTrackStyle', 'createQueueItem', 'dispatchTable', 'dispatchReflective'].forEach(function (name) {
+            results[name] = { nsPerOp: 0, opsPerSec: 0, bytesPerOp: -1 };
+        });
+        successCallback({ iterations: iterations, results: results });
+    };
+
     chrome.cast.cordova.Route = function (jsonRoute) {
         this.id = jsonRoute.id;
         this.name = jsonRoute.name;
@@ -114,9 +114,27 @@
             assert.exists(chrome.cast.media.Media.prototype.getEstimatedTime);
             assert.exists(chrome.cast.media.Media.prototype.addUpdateListener);
             assert.exists(chrome.cast.media.Media.prototype.removeUpdateListener);
+            if (utils.isAndroid()) {
+                assert.exists(chrome.cast.media.Media.prototype.addQueueLoadProgressListener);
+                assert.exists(chrome.cast.media.Media.prototype.removeQueueLoadProgressListener);
+                assert.exists(chrome.cast.media.Media.prototype.queueGetItems);
+                assert.exists(chrome.cast.media.Media.prototype.queueInsertItems);
+                assert.exists(chrome.cast.media.Media.prototype.queueRemoveItems);
+                assert.exists(chrome.cast.media.Media.prototype.queueReorderItems);
+                assert.exists(chrome.cast.media.Media.prototype.queueUpdateItems);
+                assert.exists(chrome.cast.media.QueueInsertItemsRequest);
+                assert.exists(chrome.cast.media.QueueRemoveItemsRequest);
+                assert.exists(chrome.cast.media.QueueReorderItemsRequest);
+                assert.exists(chrome.cast.media.QueueUpdateItemsRequest);
+            }
             assert.exists(chrome.cast.cordova.startRouteScan);
             assert.exists(chrome.cast.cordova.stopRouteScan);
             assert.exists(chrome.cast.cordova.selectRoute);
+            assert.exists(chrome.cast.cordova.getDiagnostics);
+            assert.exists(chrome.cast.cordova.getMetrics);
+            assert.exists(chrome.cast.cordova.startTrace);
+            assert.exists(chrome.cast.cordova.getTrace);
+            assert.exists(chrome.cast.cordova.benchmarkConverters);
             assert.exists(chrome.cast.cordova.Route);
         });
 
@@ -207,8 +225,100 @@
                     assert.exists(chrome.cast.cordova.startRouteScan);
                     assert.exists(chrome.cast.cordova.stopRouteScan);
                     assert.exists(chrome.cast.cordova.selectRoute);
+                    assert.exists(chrome.cast.cordova.getDiagnostics);
+                    assert.exists(chrome.cast.cordova.getMetrics);
+                    assert.exists(chrome.cast.cordova.startTrace);
+                    assert.exists(chrome.cast.cordova.getTrace);
+                    assert.exists(chrome.cast.cordova.benchmarkConverters);
                     assert.exists(chrome.cast.cordova.Route);
                 });
+                it('getDiagnostics should return the event counters', function (done) {
+                    if (utils.isIos()) {
+                        // Android only (stubbed in chrome)
+                        this.skip();
+                    }
+                    chrome.cast.cordova.getDiagnostics(function (diagnostics) {
+                        assert.isObject(diagnostics);
+                        assert.isObject(diagnostics.events);
+                        assert.isNumber(diagnostics.events.eventsIn);
+                        assert.isNumber(diagnostics.events.eventsCollapsed);
+                        assert.isNumber(diagnostics.events.eventsSuppressed);
+                        assert.isNumber(diagnostics.events.crossingsOut);
+                        assert.isAtMost(diagnostics.events.crossingsOut, diagnostics.events.eventsIn);
+                        assert.isObject(diagnostics.mainThread);
+                        Object.keys(diagnostics.mainThread).forEach(function (task) {
+                            var stats = diagnostics.mainThread[task];
+                            assert.isAtMost(stats.p50Us, stats.p95Us);
+                            assert.isAtMost(stats.queueDelay.p50Us, stats.queueDelay.p95Us);
+                        });
+                        done();
+                    }, function (err) {
+                        assert.fail('Unexpected Error: ' + err.code + ': ' + err.description);
+                    });
+                });
+                it('getMetrics should return the command latencies', function (done) {
+                    if (utils.isIos()) {
+                        // Android only (stubbed in chrome)
+                        this.skip();
+                    }
+                    chrome.cast.cordova.getMetrics(function (metrics) {
+                        assert.isObject(metrics);
+                        assert.isNumber(metrics.uptimeMs);
+                        assert.isObject(metrics.commands);
+                        Object.keys(metrics.commands).forEach(function (command) {
+                            Object.keys(metrics.commands[command]).forEach(function (model) {
+                                var stats = metrics.commands[command][model];
+                                assert.equal(stats.count, stats.success + stats.failure);
+                                assert.isAtMost(stats.p50Ms, stats.p99Ms);
+                            });
+                        });
+                        done();
+                    }, function (err) {
+                        assert.fail('Unexpected Error: ' + err.code + ': ' + err.description);
+                    });
+                });
+                it('getTrace should return the recorded trace events', function (done) {
+                    if (utils.isIos()) {
+                        // Android only (stubbed in chrome)
+                        this.skip();
+                    }
+                    chrome.cast.cordova.startTrace(1000, function () {
+                        chrome.cast.cordova.getTrace(function (trace) {
+                            assert.isArray(trace.traceEvents);
+                            assert.isObject(trace.otherData);
+                            trace.traceEvents.forEach(function (event) {
+                                assert.isString(event.ph);
+                                assert.isString(event.name);
+                            });
+                            chrome.cast.cordova.startTrace(0, done, function (err) {
+                                assert.fail('Unexpected Error: ' + err.code + ': ' + err.description);
+                            });
+                        }, function (err) {
+                            assert.fail('Unexpected Error: ' + err.code + ': ' + err.description);
+                        });
+                    }, function (err) {
+                        assert.fail('Unexpected Error: ' + err.code + ': ' + err.description);
+                    });
+                });
+                it('benchmarkConverters should measure each converter', function (done) {
+                    if (utils.isIos()) {
+                        // Android only (stubbed in chrome)
+                        this.skip();
+                    }
+                    chrome.cast.cordova.benchmarkConverters(100, function (benchmark) {
+                        assert.equal(benchmark.iterations, 100);
+                        assert.isObject(benchmark.results);
+                        ['createMediaQueueItem', 'createMediaInfo', 'parseTextTrackStyle', 'createQueueItem', 'dispatchTable', 'dispatchReflective'].forEach(function (name) {
+                            assert.isObject(benchmark.results[name]);
+                            assert.isNumber(benchmark.results[name].nsPerOp);
+                            assert.isNumber(benchmark.results[name].opsPerSec);
+                            assert.isNumber(benchmark.results[name].bytesPerOp);
+                        });
+                        done();
+                    }, function (err) {
+                        assert.fail('Unexpected Error: ' + err.code + ': ' + err.description);
+                    });
+                });
                 it('startRouteScan 2nd call should result in error for first', function (done) {
                     var called = utils.waitForAllCalls([
                         { id: success, repeats: false },
@@ -482,6 +592,13 @@
                         assert.fail('Unexpected Error: ' + err.code + ': ' + err.description);
                     });
                 });
+                it('session.sendMessage should call success once the message is sent', function (done) {
+                    session.sendMessage('urn:x-cast:com.google.cast.media', { type: 'GET_STATUS', requestId: 1 }, function () {
+                        done();
+                    }, function (err) {
+                        assert.fail('Unexpected Error: ' + err.code + ': ' + err.description);
+                    });
+                });
                 it('session.stop should stop the session', function (done) {
                     // Set up the expected calls
                     var called = utils.callOrder([
@@ -1323,6 +1440,66 @@
                             assert.fail('Unexpected Error: ' + err.code + ': ' + err.description);
                         });
                     });
+                    it('media.queueGetItems should page through the whole queue', function (done) {
+                        if (!utils.isAndroid()) {
+                            // Android only
+                            this.skip();
+                        }
+                        media.queueGetItems(0, 3, function (page) {
+                            assert.equal(page.offset, 0);
+                            assert.equal(page.totalItems, request.items.length);
+                            assert.equal(page.items.length, 3);
+                            utils.testQueueItems(page.items);
+                            assertVideoItem(page.items[0].media);
+                            assert.equal(page.items[0].orderId, 0);
+                            assertAudioItem(page.items[2].media);
+                            assert.equal(page.items[2].orderId, 2);
+                            assert.isString(page.nextCursor);
+                            media.queueGetItems(page.nextCursor, 3, function (page) {
+                                assert.equal(page.offset, 3);
+                                assert.equal(page.items.length, 1);
+                                assertAudioItem(page.items[0].media);
+                                assert.equal(page.items[0].orderId, 3);
+                                assert.isNull(page.nextCursor);
+                                done();
+                            }, function (err) {
+                                assert.fail('Unexpected Error: ' + err.code + ': ' + err.description);
+                            });
+                        }, function (err) {
+                            assert.fail('Unexpected Error: ' + err.code + ': ' + err.description);
+                        });
+                    });
+                    it('media.queueInsertItems and queueRemoveItems should change several items at once', function (done) {
+                        if (!utils.isAndroid()) {
+                            // Android only
+                            this.skip();
+                        }
+                        var fail = function (err) {
+                            assert.fail('Unexpected Error: ' + err.code + ': ' + err.description);
+                        };
+                        var insert = new chrome.cast.media.QueueInsertItemsRequest([
+                            new chrome.cast.media.QueueItem(request.items[2].media),
+                            new chrome.cast.media.QueueItem(request.items[3].media)
+                        ]);
+                        media.queueInsertItems(insert, function () {
+                            media.queueGetItems(request.items.length, 2, function (page) {
+                                assert.equal(page.totalItems, request.items.length + 2);
+                                assert.equal(page.items.length, 2);
+                                assertAudioItem(page.items[0].media);
+                                assertAudioItem(page.items[1].media);
+                                var remove = new chrome.cast.media.QueueRemoveItemsRequest([
+                                    page.items[0].itemId,
+                                    page.items[1].itemId
+                                ]);
+                                media.queueRemoveItems(remove, function () {
+                                    media.queueGetItems(0, 100, function (page) {
+                                        assert.equal(page.totalItems, request.items.length);
+                                        done();
+                                    }, fail);
+                                }, fail);
+                            }, fail);
+                        }, fail);
+                    });
                 });
                 after(function (done) {
                     // Set up the expected calls
@@ -111,6 +111,21 @@
         });
     };
 
+    /**
+     * Returns true when running in the Android app, some of the plugin's
+     * functions are only implemented there (not on iOS or in chrome).
+     */
+    utils.isAndroid = function () {
+        return !!window.cordova && window.cordova.platformId === 'android';
+    };
+
+    /**
+     * Returns true when running in the iOS app.
+     */
+    utils.isIos = function () {
+        return !!window.cordova && window.cordova.platformId === 'ios';
+    };
+
     /**
      * Returns the current queue item's index in the items array.
      */
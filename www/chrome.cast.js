@@ -352,6 +352,11 @@ chrome.cast = {
          * list of media items.
          * @param {chrome.cast.media.QueueItem} items - The list of media items
          *        to load. Must not be null or empty.  Value must not be null.
+         * @property {object} progressive (Android only) To start playback of a very
+         *        large queue sooner: {initialItems: 20, batchSize: 100, maxInFlight: 2}.
+         *        Only initialItems items from startIndex are loaded at first, the others
+         *        are then inserted batchSize at a time, with at most maxInFlight requests
+         *        waiting on the receiver.  See Media.addQueueLoadProgressListener.
          */
         QueueLoadRequest: function (items) {
             this.type = 'QUEUE_LOAD';
@@ -360,6 +365,53 @@ chrome.cast = {
             this.startIndex = 0;
             this.repeatMode = chrome.cast.media.RepeatMode.OFF;
             this.customData = null;
+            this.progressive = null;
+        },
+
+        /**
+         * A request to insert a list of new media items into the queue (Android only).
+         * @param {chrome.cast.media.QueueItem[]} itemsToInsert - List of items to be
+         *        inserted into the queue.  Value must not be null.
+         * @property {number} insertBefore ID of the item that will be located immediately
+         *        after the inserted list, the items are appended if null.
+         */
+        QueueInsertItemsRequest: function (itemsToInsert) {
+            this.items = itemsToInsert;
+            this.insertBefore = null;
+            this.customData = null;
+        },
+
+        /**
+         * A request to remove a list of items from the queue (Android only).
+         * @param {number[]} itemIdsToRemove - IDs of the items to be removed.
+         *        Value must not be null.
+         */
+        QueueRemoveItemsRequest: function (itemIdsToRemove) {
+            this.itemIds = itemIdsToRemove;
+            this.customData = null;
+        },
+
+        /**
+         * A request to reorder items in the queue (Android only).
+         * @param {number[]} itemIdsToReorder - IDs of the items to be reordered, in
+         *        their new order.  Value must not be null.
+         * @property {number} insertBefore ID of the item that will be located immediately
+         *        after the reordered list, the items are moved to the end if null.
+         */
+        QueueReorderItemsRequest: function (itemIdsToReorder) {
+            this.itemIds = itemIdsToReorder;
+            this.insertBefore = null;
+            this.customData = null;
+        },
+
+        /**
+         * A request to update properties of items in the queue (Android only).
+         * @param {chrome.cast.media.QueueItem[]} itemsToUpdate - The items to update,
+         *        identified by their itemId.  Value must not be null.
+         */
+        QueueUpdateItemsRequest: function (itemsToUpdate) {
+            this.items = itemsToUpdate;
+            this.customData = null;
         },
 
         /**
@@ -521,15 +573,25 @@ var _receiverListener;
 
 var _session;
 
+// The last media object received from MEDIA_UPDATE/MEDIA_DELTA and its sequence number
+var _mediaState = null;
+var _mediaSeq;
+// Whether a full media object was asked for and hasn't arrived yet
+var _mediaResyncPending = false;
+
 /**
  * Initializes the API. Note that either successCallback and errorCallback will be invoked once the API has finished initialization.
  * The sessionListener and receiverListener may be invoked at any time afterwards, and possibly more than once.
  * @param  {chrome.cast.ApiConfig} apiConfig       The object with parameters to initialize the API. Must not be null.
+ *                                                 (Android only) apiConfig.queueWindow = {before, after} sets how many
+ *                                                 queue items around the current one are in media.items (default 1 each).
+ *                                                 (Android only) apiConfig.joinRetry = {maxAttempts, initialDelay, maxDelay,
+ *                                                 multiplier, jitter, deadline, retryOn} sets how joining a route is retried.
  * @param  {function} successCallback
  * @param  {function} errorCallback
  */
 chrome.cast.initialize = function (apiConfig, successCallback, errorCallback) {
-    execute('initialize', apiConfig.sessionRequest.appId, apiConfig.autoJoinPolicy, apiConfig.defaultActionPolicy, function (err) {
+    execute('initialize', apiConfig.sessionRequest.appId, apiConfig.autoJoinPolicy, apiConfig.defaultActionPolicy, apiConfig.queueWindow || null, apiConfig.joinRetry || null, function (err) {
         if (!err) {
             // Don't set the listeners config until success
             _initialized = true;
@@ -1083,6 +1145,22 @@ chrome.cast.media.Media.prototype._preCheck = function (errorCallback) {
     }
 };
 
+/**
+ * Fails the functions that only the Android side implements, rather than
+ * leaving them waiting forever for an answer on other platforms.
+ * @param  {string}   name          The name of the function, for the error.
+ * @param  {function} errorCallback Invoked with the error.
+ * @return {chrome.cast.Error}      The error, if not on Android.
+ */
+function androidPreCheck (name, errorCallback) {
+    if (window.cordova.platformId !== 'android') {
+        var err = new chrome.cast.Error(
+            chrome.cast.ErrorCode.API_NOT_INITIALIZED, name + ' is only available on Android.');
+        errorCallback && errorCallback(err);
+        return err;
+    }
+}
+
 /**
  * Plays the media item.
  * @param  {chrome.cast.media.PlayRequest}     playRequest     The optional media play request.
@@ -1255,6 +1333,114 @@ chrome.cast.media.Media.prototype.queueJumpToItem = function (itemId, successCal
     });
 };
 
+/**
+ * Inserts a list of new media items into the queue (Android only).
+ * All the items are sent to the receiver in a single request.
+ *
+ * @param {chrome.cast.media.QueueInsertItemsRequest} request Value must not be null.
+ * @param {function()}                           successCallback Invoked on success.
+ * @param {function(not-null chrome.cast.Error)} errorCallback Invoked on error.
+ **/
+chrome.cast.media.Media.prototype.queueInsertItems = function (request, successCallback, errorCallback) {
+    if (androidPreCheck('queueInsertItems', errorCallback)) { return; }
+    if (this._preCheck(errorCallback)) { return; }
+    execute('queueInsertItems', request, function (err) {
+        if (!err) {
+            successCallback && successCallback();
+        } else {
+            handleError(err, errorCallback);
+        }
+    });
+};
+
+/**
+ * Removes a list of items from the queue (Android only).
+ * If the resulting queue is empty, the current media session will be terminated.
+ * All the items are sent to the receiver in a single request.
+ *
+ * @param {chrome.cast.media.QueueRemoveItemsRequest} request Value must not be null.
+ * @param {function()}                           successCallback Invoked on success.
+ * @param {function(not-null chrome.cast.Error)} errorCallback Invoked on error.
+ **/
+chrome.cast.media.Media.prototype.queueRemoveItems = function (request, successCallback, errorCallback) {
+    if (androidPreCheck('queueRemoveItems', errorCallback)) { return; }
+    if (this._preCheck(errorCallback)) { return; }
+    execute('queueRemoveItems', request, function (err) {
+        if (!err) {
+            successCallback && successCallback();
+        } else {
+            handleError(err, errorCallback);
+        }
+    });
+};
+
+/**
+ * Reorders a list of media items in the queue (Android only).
+ * All the items are sent to the receiver in a single request.
+ *
+ * @param {chrome.cast.media.QueueReorderItemsRequest} request Value must not be null.
+ * @param {function()}                           successCallback Invoked on success.
+ * @param {function(not-null chrome.cast.Error)} errorCallback Invoked on error.
+ **/
+chrome.cast.media.Media.prototype.queueReorderItems = function (request, successCallback, errorCallback) {
+    if (androidPreCheck('queueReorderItems', errorCallback)) { return; }
+    if (this._preCheck(errorCallback)) { return; }
+    execute('queueReorderItems', request, function (err) {
+        if (!err) {
+            successCallback && successCallback();
+        } else {
+            handleError(err, errorCallback);
+        }
+    });
+};
+
+/**
+ * Updates properties of the given items of the queue (Android only).
+ * Only the items whose itemId is in the queue are updated.
+ * All the items are sent to the receiver in a single request.
+ *
+ * @param {chrome.cast.media.QueueUpdateItemsRequest} request Value must not be null.
+ * @param {function()}                           successCallback Invoked on success.
+ * @param {function(not-null chrome.cast.Error)} errorCallback Invoked on error.
+ **/
+chrome.cast.media.Media.prototype.queueUpdateItems = function (request, successCallback, errorCallback) {
+    if (androidPreCheck('queueUpdateItems', errorCallback)) { return; }
+    if (this._preCheck(errorCallback)) { return; }
+    execute('queueUpdateItems', request, function (err) {
+        if (!err) {
+            successCallback && successCallback();
+        } else {
+            handleError(err, errorCallback);
+        }
+    });
+};
+
+/**
+ * Gets a page of the queue items (Android only).
+ * Unlike media.items (the items around the current one), any part of the queue can be read.
+ * To get the following page, pass the page's nextCursor instead of an offset: the cursor
+ * follows the items, so pages don't skip or repeat items when the queue changes meanwhile.
+ *
+ * @param {number|string}                        offset Index of the first item, or the nextCursor of a previous page.
+ * @param {number}                               limit Max number of items (at most 100).
+ * @param {function(object)}                     successCallback Invoked with the page:
+ *                                               {items: object[], offset: number,
+ *                                               totalItems: number, nextCursor: string|null}
+ * @param {function(not-null chrome.cast.Error)} errorCallback Invoked on error.
+ **/
+chrome.cast.media.Media.prototype.queueGetItems = function (offset, limit, successCallback, errorCallback) {
+    if (androidPreCheck('queueGetItems', errorCallback)) { return; }
+    if (this._preCheck(errorCallback)) { return; }
+    var cursor = typeof offset === 'string' ? offset : null;
+    execute('queueGetItems', cursor ? null : offset, cursor, limit, function (err, page) {
+        if (!err) {
+            successCallback && successCallback(page);
+        } else {
+            handleError(err, errorCallback);
+        }
+    });
+};
+
 /**
  * Adds a listener that is invoked when the status of the media has changed.
  * Changes to the following properties will trigger the listener: currentTime, volume, metadata, playbackRate, playerState, customData.
@@ -1272,6 +1458,25 @@ chrome.cast.media.Media.prototype.removeUpdateListener = function (listener) {
     this.removeListener('_mediaUpdated', listener);
 };
 
+/**
+ * Adds a listener that is invoked as the rest of a progressively loaded queue is
+ * inserted (Android only, see chrome.cast.media.QueueLoadRequest.progressive).
+ * @param {function(object)} listener Invoked with {loadedItems: number, totalItems: number,
+ *                                    done: boolean, error: chrome.cast.Error|null}.
+ *                                    Loading is over once done is true.
+ */
+chrome.cast.media.Media.prototype.addQueueLoadProgressListener = function (listener) {
+    this.on('_queueLoadProgress', listener);
+};
+
+/**
+ * Removes a previously added queue load progress listener for this Media.
+ * @param {function} listener The listener to remove.
+ */
+chrome.cast.media.Media.prototype.removeQueueLoadProgressListener = function (listener) {
+    this.removeListener('_queueLoadProgress', listener);
+};
+
 chrome.cast.media.Media.prototype._update = function (obj) {
     for (var attr in obj) {
         if (['media', 'volume'].indexOf(attr) === -1) {
@@ -1307,23 +1512,48 @@ chrome.cast.cordova = {
     /**
      * Will actively scan for routes and send the complete list of
      * active routes whenever a route change is detected.
+     * On Android, only the changes cross the bridge, once the routes stayed
+     * unchanged for quietPeriod ms.  They are also given as the 2nd argument:
+     * {added: [Route], changed: [Route], removed: [routeId]}.
      * It is super important that client calls "stopScan", otherwise the
      * battery could drain quickly.
      * https://github.com/jellyfin/cordova-plugin-chromecast/issues/22#issuecomment-530773677
-     * @param {function(routes)} successCallback
+     * @param {function(routes, diff)} successCallback
      * @param {function(chrome.cast.Error)} successCallback
+     * @param {number=} quietPeriod ms, defaults to 200 (Android only)
      */
-    startRouteScan: function (successCallback, errorCallback) {
-        execute('startRouteScan', function (err, routes) {
-            if (!err) {
-                for (var i = 0; i < routes.length; i++) {
-                    routes[i] = new chrome.cast.cordova.Route(routes[i]);
+    startRouteScan: function (successCallback, errorCallback, quietPeriod) {
+        var routes = {};
+        var toRoutes = function (jsonRoutes) {
+            for (var i = 0; i < jsonRoutes.length; i++) {
+                jsonRoutes[i] = new chrome.cast.cordova.Route(jsonRoutes[i]);
+                routes[jsonRoutes[i].id] = jsonRoutes[i];
+            }
+            return jsonRoutes;
+        };
+        var onUpdate = function (err, diff) {
+            if (!err && Array.isArray(diff)) {
+                // The complete list of routes (iOS)
+                routes = {};
+                successCallback(toRoutes(diff));
+            } else if (!err) {
+                diff.added = toRoutes(diff.added);
+                diff.changed = toRoutes(diff.changed);
+                for (var i = 0; i < diff.removed.length; i++) {
+                    delete routes[diff.removed[i]];
                 }
-                successCallback(routes);
+                successCallback(Object.keys(routes).map(function (id) {
+                    return routes[id];
+                }), diff);
             } else {
                 handleError(err, errorCallback);
             }
-        });
+        };
+        if (quietPeriod !== undefined) {
+            execute('startRouteScan', quietPeriod, onUpdate);
+        } else {
+            execute('startRouteScan', onUpdate);
+        }
     },
     /**
      * Stops any active scanForRoutes.
@@ -1354,6 +1584,98 @@ chrome.cast.cordova = {
             }
         });
     },
+    /**
+     * Gets counters describing the plugin's activity (Android only).
+     * eg. diagnostics.events contains the number of events sent by the
+     * plugin (eventsIn), how many were replaced by a newer event
+     * (eventsCollapsed) and how many times the bridge was crossed (crossingsOut).
+     * @param {function(object)} successCallback
+     * @param {function(chrome.cast.Error)} errorCallback
+     */
+    getDiagnostics: function (successCallback, errorCallback) {
+        if (androidPreCheck('getDiagnostics', errorCallback)) { return; }
+        execute('getDiagnostics', function (err, diagnostics) {
+            if (!err) {
+                successCallback(diagnostics);
+            } else {
+                handleError(err, errorCallback);
+            }
+        });
+    },
+    /**
+     * Gets the latency of the commands sent to the receiver (Android only),
+     * from the call to the receiver's answer, per command and receiver model.
+     * eg. metrics.commands.loadMedia['Chromecast Ultra'] contains count,
+     * success, failure, avgMs, p50Ms, p90Ms, p99Ms and maxMs.
+     * @param {function(object)} successCallback
+     * @param {function(chrome.cast.Error)} errorCallback
+     */
+    getMetrics: function (successCallback, errorCallback) {
+        if (androidPreCheck('getMetrics', errorCallback)) { return; }
+        execute('getMetrics', function (err, metrics) {
+            if (!err) {
+                successCallback(metrics);
+            } else {
+                handleError(err, errorCallback);
+            }
+        });
+    },
+    /**
+     * Starts recording a timeline of the plugin's activity (Android only):
+     * bridge calls, main thread tasks, Cast SDK callbacks and events sent to
+     * javascript.  Only the newest bufferSize events are kept.
+     * Recording can also be started with the ChromecastTraceBuffer preference.
+     * @param {number} bufferSize number of events to keep, 0 to stop recording
+     * @param {function()} successCallback
+     * @param {function(chrome.cast.Error)} errorCallback
+     */
+    startTrace: function (bufferSize, successCallback, errorCallback) {
+        if (androidPreCheck('startTrace', errorCallback)) { return; }
+        execute('startTrace', bufferSize, function (err) {
+            if (!err) {
+                successCallback();
+            } else {
+                handleError(err, errorCallback);
+            }
+        });
+    },
+    /**
+     * Gets the timeline recorded since startTrace (Android only), in the
+     * Chrome trace-event format, eg. to save it to a .json file and open it
+     * in chrome://tracing or https://ui.perfetto.dev.
+     * @param {function(object)} successCallback
+     * @param {function(chrome.cast.Error)} errorCallback
+     */
+    getTrace: function (successCallback, errorCallback) {
+        if (androidPreCheck('getTrace', errorCallback)) { return; }
+        execute('getTrace', function (err, trace) {
+            if (!err) {
+                successCallback(trace);
+            } else {
+                handleError(err, errorCallback);
+            }
+        });
+    },
+    /**
+     * Measures the converters between the javascript objects and the native
+     * Cast SDK objects on this device (Android only), eg. to compare builds.
+     * Takes a few seconds, best run while the app is otherwise idle.
+     * results.results[converter] contains nsPerOp, opsPerSec and bytesPerOp
+     * (-1 when the allocations can't be counted).
+     * @param {number} [iterations] number of measured iterations of each converter
+     * @param {function(object)} successCallback
+     * @param {function(chrome.cast.Error)} errorCallback
+     */
+    benchmarkConverters: function (iterations, successCallback, errorCallback) {
+        if (androidPreCheck('benchmarkConverters', errorCallback)) { return; }
+        execute('benchmarkConverters', iterations, function (err, results) {
+            if (!err) {
+                successCallback(results);
+            } else {
+                handleError(err, errorCallback);
+            }
+        });
+    },
     Route: function (jsonRoute) {
         this.id = jsonRoute.id;
         this.name = jsonRoute.name;
@@ -1411,13 +1733,50 @@ execute('setup', function (err, args) {
                 _session.emit('_sessionUpdated', _session.status !== chrome.cast.SessionStatus.STOPPED);
             }
         },
-        MEDIA_UPDATE: function (media) {
+        MEDIA_UPDATE: function (media, seq) {
+            _mediaState = media || null;
+            _mediaSeq = seq;
+            _mediaResyncPending = false;
             if (!_session) {
                 return;
             }
             _session._updateMedia(media);
             _session._emitMediaUpdated(media ? !!media.isAlive : false);
         },
+        /**
+         * Only contains the fields that changed since the previous media update.
+         * @param {number} seq The sequence number of this update
+         * @param {object} changes The changed fields
+         * @param {Array} removed The keys of the fields that were removed
+         */
+        MEDIA_DELTA: function (seq, changes, removed) {
+            if (!_mediaState || seq !== _mediaSeq + 1) {
+                // We missed an update, so ask for the full media object, once
+                _mediaSeq = undefined;
+                if (!_mediaResyncPending) {
+                    _mediaResyncPending = true;
+                    execute('mediaResync', function (err) {
+                        if (err) {
+                            // Let the next delta ask again
+                            _mediaResyncPending = false;
+                        }
+                    });
+                }
+                return;
+            }
+            var media = {};
+            var key;
+            for (key in _mediaState) {
+                media[key] = _mediaState[key];
+            }
+            for (key in changes) {
+                media[key] = changes[key];
+            }
+            for (var i = 0; i < removed.length; i++) {
+                delete media[removed[i]];
+            }
+            events.MEDIA_UPDATE(media, seq);
+        },
         MEDIA_LOAD: function (media) {
             if (_session) {
                 // Add new media
@@ -1425,8 +1784,35 @@ execute('setup', function (err, args) {
                 _session._emitMediaListener();
             }
         },
-        SESSION_LISTENER: function (javaSession) {
+        // Only sent by Android, for progressive queue loads
+        QUEUE_LOAD_PROGRESS: function (progress) {
+            var media = _session && _session._getMedia();
+            if (!media) {
+                return;
+            }
+            if (progress.error) {
+                handleError(progress.error, function (err) {
+                    progress.error = err;
+                });
+            }
+            media.emit('_queueLoadProgress', progress);
+        },
+        /**
+         * @param {object} javaSession The session to rejoin
+         * @param {boolean} provisional (Android only) Whether it is the session of the last app run, which
+         *                              is confirmed by a SESSION_LISTENER with the same sessionId, or
+         *                              ended by a SESSION_UPDATE with the 'stopped' status
+         */
+        SESSION_LISTENER: function (javaSession, provisional) {
+            if (!provisional && _session && _session._provisional && _session.sessionId === javaSession.sessionId) {
+                // The provisional session was resumed, the listener already has it
+                _session._provisional = false;
+                _session._update(javaSession);
+                _session.emit('_sessionUpdated', true);
+                return;
+            }
             _session = createNewSession(javaSession);
+            _session._provisional = !!provisional;
             _sessionListener && _sessionListener(_session);
         },
         RECEIVER_MESSAGE: function (namespace, message) {
@@ -1436,11 +1822,22 @@ execute('setup', function (err, args) {
         }
     };
 
-    var event = events[eventName];
-    if (!event) {
-        throw new Error('cordova-plugin-chromecast: No event called "' + eventName + '".');
+    function handleEvent (eventName, args) {
+        var event = events[eventName];
+        if (!event) {
+            throw new Error('cordova-plugin-chromecast: No event called "' + eventName + '".');
+        }
+        event.apply(null, args);
+    }
+
+    if (eventName === 'BATCH') {
+        // Several events were buffered and sent together, run them in order
+        for (var i = 0; i < args.length; i++) {
+            handleEvent(args[i][0], args[i][1]);
+        }
+    } else {
+        handleEvent(eventName, args);
     }
-    event.apply(null, args);
 });
 
 module.exports = chrome.cast;